@@ -0,0 +1,432 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.snmp.snmp4j;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang.ObjectUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snmp4j.PDU;
+import org.snmp4j.Snmp;
+import org.snmp4j.Target;
+import org.snmp4j.TransportMapping;
+import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.event.ResponseListener;
+import org.snmp4j.mp.MPv3;
+import org.snmp4j.mp.MessageProcessingModel;
+import org.snmp4j.security.SecurityProtocols;
+import org.snmp4j.security.USM;
+import org.snmp4j.security.UsmUser;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.transport.DefaultUdpTransportMapping;
+
+/**
+ * A process-wide SNMP4J session that multiplexes all outgoing requests over a
+ * small, fixed set of UDP sockets.
+ *
+ * <p>Creating a {@link DefaultUdpTransportMapping} per request costs a socket
+ * and a listener thread, and for SNMPv3 a fresh USM that has to rediscover the
+ * agent's engine ID every time.  Instead, a single {@link Snmp} instance is
+ * bound to {@link #SESSION_POOL_SIZE_PROPERTY} transports; SNMP4J's message
+ * dispatcher already correlates responses to requests by request ID, so
+ * concurrent walks, gets and sets can share the sockets freely.  The USM and
+ * the MPv3 engine ID cache are shared as well.</p>
+ *
+ * <p>SNMPv3 users are keyed by security name in the shared USM.  If an agent
+ * uses a security name that is already registered with different credentials,
+ * that request falls back to a dedicated session from
+ * {@link Snmp4JAgentConfig#createSnmpSession()}.</p>
+ *
+ * <p>The number of outstanding requests per agent can be capped with
+ * {@link #MAX_REQUESTS_PER_AGENT_PROPERTY}; a walk counts as one request for
+ * its whole lifetime.</p>
+ *
+ * <p>Responses to asynchronous requests on the shared session are handed to
+ * a pool of {@link #CALLBACK_THREADS_PROPERTY} threads, so that a slow
+ * listener doesn't hold up the transport threads every agent's responses
+ * arrive on.</p>
+ */
+public class Snmp4JSessionPool {
+
+    private static final transient Logger LOG = LoggerFactory.getLogger(Snmp4JSessionPool.class);
+
+    /**
+     * Set to <code>false</code> to go back to one session per request.
+     */
+    public static final String SHARED_SESSIONS_PROPERTY = "org.opennms.snmp.snmp4j.sharedSessions";
+
+    /**
+     * Number of UDP sockets the shared session sends from.  Defaults to 4.
+     */
+    public static final String SESSION_POOL_SIZE_PROPERTY = "org.opennms.snmp.snmp4j.sessionPoolSize";
+
+    /**
+     * Maximum number of outstanding requests per agent address.  Defaults to
+     * 0, which means unlimited.
+     */
+    public static final String MAX_REQUESTS_PER_AGENT_PROPERTY = "org.opennms.snmp.snmp4j.maxRequestsPerAgent";
+
+    /**
+     * Number of threads that run the response listeners of the shared
+     * session.  Defaults to the number of processors, but at least 2.
+     */
+    public static final String CALLBACK_THREADS_PROPERTY = "org.opennms.snmp.snmp4j.callbackThreads";
+
+    private static Snmp4JSessionPool s_instance;
+
+    private final boolean m_shared;
+    private final int m_poolSize;
+    private final int m_maxRequestsPerAgent;
+    private final int m_callbackThreads;
+
+    private Snmp m_session;
+    private TransportMapping[] m_transports;
+    private USM m_usm;
+    private ExecutorService m_callbacks;
+    private int m_nextTransport = 0;
+
+    private final ConcurrentMap<OctetString, UsmUser> m_users = new ConcurrentHashMap<OctetString, UsmUser>();
+    private final ConcurrentMap<InetAddress, Semaphore> m_agentPermits = new ConcurrentHashMap<InetAddress, Semaphore>();
+
+    public static synchronized Snmp4JSessionPool getInstance() {
+        if (s_instance == null) {
+            s_instance = new Snmp4JSessionPool(
+                    Boolean.valueOf(System.getProperty(SHARED_SESSIONS_PROPERTY, "true")),
+                    Integer.getInteger(SESSION_POOL_SIZE_PROPERTY, 4),
+                    Integer.getInteger(MAX_REQUESTS_PER_AGENT_PROPERTY, 0));
+        }
+        return s_instance;
+    }
+
+    public Snmp4JSessionPool(boolean shared, int poolSize, int maxRequestsPerAgent) {
+        this(shared, poolSize, maxRequestsPerAgent, Integer.getInteger(CALLBACK_THREADS_PROPERTY, Math.max(2, Runtime.getRuntime().availableProcessors())));
+    }
+
+    public Snmp4JSessionPool(boolean shared, int poolSize, int maxRequestsPerAgent, int callbackThreads) {
+        m_shared = shared;
+        m_poolSize = Math.max(1, poolSize);
+        m_maxRequestsPerAgent = maxRequestsPerAgent;
+        m_callbackThreads = Math.max(1, callbackThreads);
+    }
+
+    public int getPoolSize() {
+        return m_poolSize;
+    }
+
+    public int getMaxRequestsPerAgent() {
+        return m_maxRequestsPerAgent;
+    }
+
+    /**
+     * Opens a session for the given agent.  The caller must
+     * {@link Snmp4JSession#close()} it when finished so that the agent's
+     * request permit is returned; closing never closes the shared sockets.
+     */
+    public Snmp4JSession openSession(final Snmp4JAgentConfig agentConfig) throws IOException {
+        final Semaphore permits = acquire(agentConfig);
+        try {
+            if (m_shared && registerUser(agentConfig)) {
+                return openSharedSession(permits);
+            }
+
+            final Snmp session = agentConfig.createSnmpSession();
+            session.listen();
+            return new Snmp4JSession(session, null, null, permits, true);
+        } catch (final IOException e) {
+            release(permits);
+            throw e;
+        } catch (final RuntimeException e) {
+            release(permits);
+            throw e;
+        }
+    }
+
+    /**
+     * Closes the shared sockets.  A later {@link #openSession(Snmp4JAgentConfig)}
+     * opens them again.  Responses already handed to the callback threads
+     * are still delivered.
+     */
+    public synchronized void close() {
+        if (m_session == null) {
+            return;
+        }
+        try {
+            m_session.close();
+        } catch (final IOException e) {
+            LOG.error("error closing shared SNMP session", e);
+        }
+        m_callbacks.shutdown();
+        m_session = null;
+        m_transports = null;
+        m_usm = null;
+        m_callbacks = null;
+        m_users.clear();
+    }
+
+    private synchronized Snmp getSharedSession() throws IOException {
+        if (m_session == null) {
+            final TransportMapping[] transports = new TransportMapping[m_poolSize];
+            for (int i = 0; i < transports.length; i++) {
+                transports[i] = new DefaultUdpTransportMapping();
+            }
+
+            final Snmp session = new Snmp(transports[0]);
+            for (int i = 1; i < transports.length; i++) {
+                session.addTransportMapping(transports[i]);
+            }
+
+            // Same MPv3 swap as Snmp4JAgentConfig.createSnmpSession(), but done once so
+            // that the USM and the discovered engine IDs survive between requests
+            final USM usm = new USM(SecurityProtocols.getInstance(), new OctetString(MPv3.createLocalEngineID()), 0);
+            final MessageProcessingModel oldModel = session.getMessageDispatcher().getMessageProcessingModel(MessageProcessingModel.MPv3);
+            if (oldModel != null) {
+                session.getMessageDispatcher().removeMessageProcessingModel(oldModel);
+            }
+            session.getMessageDispatcher().addMessageProcessingModel(new MPv3(usm));
+
+            session.listen();
+            LOG.info("Opened shared SNMP session on {} UDP transports", transports.length);
+
+            m_transports = transports;
+            m_usm = usm;
+            m_callbacks = Executors.newFixedThreadPool(m_callbackThreads, new CallbackThreadFactory());
+            m_session = session;
+        }
+        return m_session;
+    }
+
+    private synchronized Snmp4JSession openSharedSession(final Semaphore permits) throws IOException {
+        final Snmp session = getSharedSession();
+        final TransportMapping transport = m_transports[m_nextTransport];
+        m_nextTransport = (m_nextTransport + 1) % m_transports.length;
+        return new Snmp4JSession(session, transport, m_callbacks, permits, false);
+    }
+
+    /**
+     * Makes sure the agent's SNMPv3 user is known to the shared USM.
+     *
+     * @return false if another agent already registered the same security
+     *         name with different credentials
+     */
+    private boolean registerUser(final Snmp4JAgentConfig agentConfig) throws IOException {
+        if (!agentConfig.isSnmpV3()) {
+            return true;
+        }
+
+        final UsmUser user = new UsmUser(
+            agentConfig.getSecurityName(),
+            agentConfig.getAuthProtocol(),
+            agentConfig.getAuthPassPhrase(),
+            agentConfig.getPrivProtocol(),
+            agentConfig.getPrivPassPhrase()
+        );
+
+        synchronized (this) {
+            getSharedSession();
+            final UsmUser existing = m_users.get(user.getSecurityName());
+            if (existing == null) {
+                m_usm.addUser(user.getSecurityName(), user);
+                m_users.put(user.getSecurityName(), user);
+                return true;
+            }
+            if (sameCredentials(existing, user)) {
+                return true;
+            }
+        }
+
+        LOG.debug("SNMPv3 user {} is already registered with different credentials, using a dedicated session for {}", user.getSecurityName(), agentConfig.getInetAddress());
+        return false;
+    }
+
+    private static boolean sameCredentials(final UsmUser a, final UsmUser b) {
+        return ObjectUtils.equals(a.getAuthenticationProtocol(), b.getAuthenticationProtocol())
+            && ObjectUtils.equals(a.getAuthenticationPassphrase(), b.getAuthenticationPassphrase())
+            && ObjectUtils.equals(a.getPrivacyProtocol(), b.getPrivacyProtocol())
+            && ObjectUtils.equals(a.getPrivacyPassphrase(), b.getPrivacyPassphrase());
+    }
+
+    private Semaphore acquire(final Snmp4JAgentConfig agentConfig) throws IOException {
+        if (m_maxRequestsPerAgent <= 0) {
+            return null;
+        }
+
+        final InetAddress address = agentConfig.getInetAddress();
+        Semaphore permits = m_agentPermits.get(address);
+        if (permits == null) {
+            final Semaphore created = new Semaphore(m_maxRequestsPerAgent, true);
+            permits = m_agentPermits.putIfAbsent(address, created);
+            if (permits == null) {
+                permits = created;
+            }
+        }
+
+        // wait no longer than a single request to the agent could take
+        final long wait = (long)agentConfig.getTimeout() * (agentConfig.getRetries() + 1);
+        try {
+            if (!permits.tryAcquire(wait, TimeUnit.MILLISECONDS)) {
+                throw new IOException("Timed out after " + wait + "ms waiting for one of " + m_maxRequestsPerAgent + " outstanding requests to " + address.getHostAddress() + " to complete");
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting to send a request to " + address.getHostAddress());
+        }
+        return permits;
+    }
+
+    private static void release(final Semaphore permits) {
+        if (permits != null) {
+            permits.release();
+        }
+    }
+
+    private static final class CallbackThreadFactory implements ThreadFactory {
+        private final AtomicInteger m_count = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread thread = new Thread(r, "Snmp4JSessionPool-Callback-" + m_count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * Runs a response listener on the callback threads instead of the
+     * transport thread the response arrived on.
+     */
+    private static final class CallbackDispatcher implements ResponseListener {
+        private final ResponseListener m_listener;
+        private final ExecutorService m_executor;
+
+        private CallbackDispatcher(final ResponseListener listener, final ExecutorService executor) {
+            m_listener = listener;
+            m_executor = executor;
+        }
+
+        @Override
+        public void onResponse(final ResponseEvent event) {
+            try {
+                m_executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        m_listener.onResponse(event);
+                    }
+                });
+            } catch (final RejectedExecutionException e) {
+                // the pool has been closed; deliver it here rather than lose it
+                m_listener.onResponse(event);
+            }
+        }
+    }
+
+    /**
+     * A handle on either the shared session or a dedicated one.  Requests
+     * sent through a shared handle always go out on the same transport so
+     * that a walk stays on one socket.
+     */
+    public static class Snmp4JSession {
+        private final Snmp m_session;
+        private final TransportMapping m_transport;
+        private final ExecutorService m_callbacks;
+        private final boolean m_dedicated;
+        private final ConcurrentMap<ResponseListener, ResponseListener> m_dispatchers = new ConcurrentHashMap<ResponseListener, ResponseListener>();
+        private Semaphore m_permits;
+
+        private Snmp4JSession(final Snmp session, final TransportMapping transport, final ExecutorService callbacks, final Semaphore permits, final boolean dedicated) {
+            m_session = session;
+            m_transport = transport;
+            m_callbacks = callbacks;
+            m_permits = permits;
+            m_dedicated = dedicated;
+        }
+
+        public boolean isDedicated() {
+            return m_dedicated;
+        }
+
+        public ResponseEvent send(final PDU pdu, final Target target) throws IOException {
+            return m_transport == null ? m_session.send(pdu, target) : m_session.send(pdu, target, m_transport);
+        }
+
+        public void send(final PDU pdu, final Target target, final ResponseListener listener) throws IOException {
+            if (m_transport == null) {
+                m_session.send(pdu, target, null, dispatcherFor(listener));
+            } else {
+                m_session.send(pdu, target, m_transport, null, dispatcherFor(listener));
+            }
+        }
+
+        public void cancel(final PDU request, final ResponseListener listener) {
+            m_session.cancel(request, dispatcherFor(listener));
+        }
+
+        /**
+         * SNMP4J matches a cancel to its request by listener, so the same
+         * listener always has to map to the same dispatcher.
+         */
+        private ResponseListener dispatcherFor(final ResponseListener listener) {
+            if (m_callbacks == null) {
+                return listener;
+            }
+            ResponseListener dispatcher = m_dispatchers.get(listener);
+            if (dispatcher == null) {
+                final ResponseListener created = new CallbackDispatcher(listener, m_callbacks);
+                dispatcher = m_dispatchers.putIfAbsent(listener, created);
+                if (dispatcher == null) {
+                    dispatcher = created;
+                }
+            }
+            return dispatcher;
+        }
+
+        public synchronized void close() throws IOException {
+            final Semaphore permits = m_permits;
+            m_permits = null;
+            try {
+                if (m_dedicated) {
+                    m_session.close();
+                }
+            } finally {
+                release(permits);
+            }
+        }
+    }
+}
@@ -132,11 +132,21 @@ public class Snmp4JStrategy implements SnmpStrategy {
     }
     
     /**
-     * Not yet implemented.  Use a walker.
+     * SNMP GetBulk implementation.  Every OID is treated as a repeater and
+     * the agent's configured max-repetitions is used.
+     * 
+     * @param agentConfig
+     * @param oids
+     * @return
+     *        Returns an array of Snmp4JValues.  If the
+     *        getBulk was unsuccessful, then the first element
+     *        of the array will be null and length of 1. 
      */
         @Override
-    public SnmpValue[] getBulk(SnmpAgentConfig agentConfig, SnmpObjId[] oid) {
-    	throw new UnsupportedOperationException("Snmp4JStrategy.getBulk not yet implemented.");
+    public SnmpValue[] getBulk(SnmpAgentConfig agentConfig, SnmpObjId[] oids) {
+    	LOG.debug("getBulk: OID: {} for Agent: {}", oids, agentConfig);
+        
+        return buildAndSendPdu(agentConfig, PDU.GETBULK, oids, null);
     }
 
         @Override
@@ -227,7 +237,14 @@ public class Snmp4JStrategy implements SnmpStrategy {
     private SnmpValue[] buildAndSendPdu(SnmpAgentConfig agentConfig, int type, SnmpObjId[] oids, SnmpValue[] values) {
         Snmp4JAgentConfig snmp4jAgentConfig = new Snmp4JAgentConfig(agentConfig);
         
-        PDU pdu = buildPdu(snmp4jAgentConfig, type, oids, values);
+        final PDU pdu;
+        try {
+            // a GETBULK against an SNMPv1 agent is rejected here, report it like any other failed request
+            pdu = buildPdu(snmp4jAgentConfig, type, oids, values);
+        } catch (final RuntimeException e) {
+            LOG.error("buildAndSendPdu: could not build {} PDU for agent {}", PDU.getTypeString(type), snmp4jAgentConfig, e);
+            return new SnmpValue[] { null };
+        }
         if (pdu == null) {
             return null;
         }
@@ -246,25 +263,16 @@ public class Snmp4JStrategy implements SnmpStrategy {
      * @return
      */
     protected SnmpValue[] send(Snmp4JAgentConfig agentConfig, PDU pdu, boolean expectResponse) {
-        Snmp session;
+        Snmp4JSessionPool.Snmp4JSession session;
 
         try {
-            session = agentConfig.createSnmpSession();
+            session = Snmp4JSessionPool.getInstance().openSession(agentConfig);
         } catch (IOException e) {
             LOG.error("send: Could not create SNMP session for agent {}", agentConfig, e);
             return new SnmpValue[] { null };
         }
 
         try {
-            if (expectResponse) {
-                try {
-                    session.listen();
-                } catch (IOException e) {
-                    LOG.error("send: error setting up listener for SNMP responses", e);
-                    return new SnmpValue[] { null };
-                }
-            }
-    
             try {
                 final ResponseEvent responseEvent = session.send(pdu, agentConfig.getTarget());
 
@@ -289,6 +297,11 @@ public class Snmp4JStrategy implements SnmpStrategy {
     protected PDU buildPdu(Snmp4JAgentConfig agentConfig, int pduType, SnmpObjId[] oids, SnmpValue[] values) {
         PDU pdu = agentConfig.createPdu(pduType);
         
+        if (pduType == PDU.GETBULK) {
+            pdu.setNonRepeaters(0);
+            pdu.setMaxRepetitions(agentConfig.getMaxRepetitions());
+        }
+        
         if (values == null) {
             for (SnmpObjId oid : oids) {
                 pdu.add(new VariableBinding(new OID(oid.toString())));
@@ -599,6 +612,18 @@ public class Snmp4JStrategy implements SnmpStrategy {
 
     }
 
+    private void closeQuietly(Snmp4JSessionPool.Snmp4JSession session) {
+        if (session == null) {
+            return;
+        }
+        
+        try {
+            session.close();
+        } catch (IOException e) {
+            LOG.error("error closing SNMP connection", e);
+        }
+    }
+
     private void closeQuietly(Snmp session) {
         if (session == null) {
             return;
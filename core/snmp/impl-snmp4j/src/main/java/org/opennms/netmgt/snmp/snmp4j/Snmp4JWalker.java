@@ -37,7 +37,6 @@ import org.opennms.netmgt.snmp.SnmpWalker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snmp4j.PDU;
-import org.snmp4j.Snmp;
 import org.snmp4j.Target;
 import org.snmp4j.event.ResponseEvent;
 import org.snmp4j.event.ResponseListener;
@@ -160,7 +159,14 @@ public class Snmp4JWalker extends SnmpWalker {
         @Override
         public void onResponse(ResponseEvent responseEvent) {
             // need to cancel the request here otherwise SNMP4J Keeps it around forever... go figure
-            m_session.cancel(responseEvent.getRequest(), this);
+            final Snmp4JSessionPool.Snmp4JSession session = m_session;
+            if (session == null) {
+                // the walker was closed while this response was in flight
+                LOG.debug("Ignoring late response for closed walker {} of {}", getName(), getAddress());
+                return;
+            }
+            session.cancel(responseEvent.getRequest(), this);
+            clearPendingPdu(responseEvent.getRequest());
 
             // Check to see if we got an interrupted exception
             if (responseEvent.getError() instanceof InterruptedException) {
@@ -181,7 +187,8 @@ public class Snmp4JWalker extends SnmpWalker {
         
     }
     
-    private Snmp m_session;
+    private volatile Snmp4JSessionPool.Snmp4JSession m_session;
+    private volatile PDU m_pendingPdu;
     private final Target m_tgt;
     private final ResponseListener m_listener;
     private final Snmp4JAgentConfig m_agentConfig;
@@ -214,12 +221,19 @@ public class Snmp4JWalker extends SnmpWalker {
     protected void sendNextPdu(WalkerPduBuilder pduBuilder) throws IOException {
         Snmp4JPduBuilder snmp4JPduBuilder = (Snmp4JPduBuilder)pduBuilder;
         if (m_session == null) {
-            m_session = m_agentConfig.createSnmpSession();
-            m_session.listen();
+            m_session = Snmp4JSessionPool.getInstance().openSession(m_agentConfig);
         }
         
-        LOG.debug("Sending tracker pdu of size {}", snmp4JPduBuilder.getPdu().size());
-        m_session.send(snmp4JPduBuilder.getPdu(), m_tgt, null, m_listener);
+        final PDU pdu = snmp4JPduBuilder.getPdu();
+        LOG.debug("Sending tracker pdu of size {}", pdu.size());
+        m_pendingPdu = pdu;
+        m_session.send(pdu, m_tgt, m_listener);
+    }
+
+    private void clearPendingPdu(final PDU request) {
+        if (m_pendingPdu == request) {
+            m_pendingPdu = null;
+        }
     }
     
     protected int getVersion() {
@@ -228,9 +242,17 @@ public class Snmp4JWalker extends SnmpWalker {
 
         @Override
     protected void close() throws IOException {
-        if (m_session != null) {
-            m_session.close();
+        final Snmp4JSessionPool.Snmp4JSession session = m_session;
+        if (session != null) {
             m_session = null;
+            // a shared session outlives the walker, so drop our outstanding
+            // request before giving the permit back
+            final PDU pending = m_pendingPdu;
+            m_pendingPdu = null;
+            if (pending != null) {
+                session.cancel(pending, m_listener);
+            }
+            session.close();
         }
     }
 }
@@ -0,0 +1,285 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.snmp.snmp4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.snmp.ColumnTracker;
+import org.opennms.netmgt.snmp.SnmpAgentConfig;
+import org.opennms.netmgt.snmp.SnmpConfiguration;
+import org.opennms.netmgt.snmp.SnmpObjId;
+import org.opennms.netmgt.snmp.SnmpResult;
+import org.opennms.netmgt.snmp.SnmpWalker;
+import org.opennms.netmgt.snmp.SnmpValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snmp4j.PDU;
+import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.event.ResponseListener;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.VariableBinding;
+
+/**
+ * Tests for the shared SNMP4J session: getBulk, shared SNMPv3 users, the
+ * per-agent request limit and callback dispatch, plus concurrent walks against
+ * the mock agent that check the number of live threads.  Set
+ * <code>org.opennms.snmp.snmp4j.benchmarkWalksPerThread</code> to turn the
+ * concurrent walk test into a load test that also logs walks/sec.
+ */
+public class Snmp4JSessionPoolTest extends MockSnmpAgentTestCase {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Snmp4JSessionPoolTest.class);
+
+    private static final int THREADS = 20;
+    private static final int BENCHMARK_WALKS_PER_THREAD = Integer.getInteger("org.opennms.snmp.snmp4j.benchmarkWalksPerThread", 0);
+    private static final int WALKS_PER_THREAD = BENCHMARK_WALKS_PER_THREAD > 0 ? BENCHMARK_WALKS_PER_THREAD : 2;
+
+    private final Snmp4JStrategy m_strategy = new Snmp4JStrategy();
+
+    @Override
+    protected boolean usingMockStrategy() {
+        return false;
+    }
+
+    @Test
+    public void testGetUsesSharedSession() throws Exception {
+        final SnmpValue value = m_strategy.get(getAgentConfig(), SnmpObjId.get(".1.3.5.1.1.3.0"));
+        assertEquals(42, value.toInt());
+
+        final Snmp4JSessionPool.Snmp4JSession session = Snmp4JSessionPool.getInstance().openSession(new Snmp4JAgentConfig(getAgentConfig()));
+        try {
+            assertFalse("session should be shared", session.isDedicated());
+        } finally {
+            session.close();
+        }
+    }
+
+    @Test
+    public void testGetBulk() throws Exception {
+        final SnmpAgentConfig config = getAgentConfig();
+        config.setVersion(SnmpAgentConfig.VERSION2C);
+        config.setMaxRepetitions(3);
+
+        final SnmpValue[] values = m_strategy.getBulk(config, new SnmpObjId[] { SnmpObjId.get(".1.3.5.1.1") });
+        assertEquals(3, values.length);
+        assertEquals("TestData", values[0].toString());
+        assertEquals(42, values[2].toInt());
+    }
+
+    @Test
+    public void testSharedV3User() throws Exception {
+        final SnmpAgentConfig config = getAgentConfig();
+        config.setVersion(SnmpAgentConfig.VERSION3);
+        config.setSecurityLevel(SnmpConfiguration.AUTH_PRIV);
+
+        // both requests go through the one USM entry registered for opennmsUser
+        assertEquals(42, m_strategy.get(config, SnmpObjId.get(".1.3.5.1.1.3.0")).toInt());
+        assertEquals(42, m_strategy.get(new SnmpAgentConfig(config.getAddress(), config), SnmpObjId.get(".1.3.5.1.1.3.0")).toInt());
+
+        final Snmp4JSessionPool pool = Snmp4JSessionPool.getInstance();
+        final Snmp4JSessionPool.Snmp4JSession first = pool.openSession(new Snmp4JAgentConfig(config));
+        final Snmp4JSessionPool.Snmp4JSession second = pool.openSession(new Snmp4JAgentConfig(config));
+        try {
+            assertFalse("first v3 session should be shared", first.isDedicated());
+            assertFalse("second v3 session should be shared", second.isDedicated());
+        } finally {
+            first.close();
+            second.close();
+        }
+
+        // the same security name with other credentials can't share the USM
+        final SnmpAgentConfig other = new SnmpAgentConfig(config.getAddress(), config);
+        other.setAuthPassPhrase("somethingElse");
+        final Snmp4JSessionPool.Snmp4JSession dedicated = pool.openSession(new Snmp4JAgentConfig(other));
+        try {
+            assertTrue("conflicting credentials should get a dedicated session", dedicated.isDedicated());
+        } finally {
+            dedicated.close();
+        }
+    }
+
+    @Test
+    public void testMaxRequestsPerAgent() throws Exception {
+        final Snmp4JSessionPool pool = new Snmp4JSessionPool(true, 1, 1);
+        try {
+            final SnmpAgentConfig config = getAgentConfig();
+            config.setTimeout(200);
+            config.setRetries(0);
+            final Snmp4JAgentConfig agent = new Snmp4JAgentConfig(config);
+            final Snmp4JAgentConfig otherAgent = new Snmp4JAgentConfig(new SnmpAgentConfig(InetAddressUtils.addr("192.0.2.1"), config));
+
+            final Snmp4JSessionPool.Snmp4JSession first = pool.openSession(agent);
+
+            // a different agent has its own permit
+            pool.openSession(otherAgent).close();
+
+            try {
+                pool.openSession(agent);
+                fail("a second request to the agent should have timed out waiting for the first");
+            } catch (final IOException e) {
+                // expected
+            }
+
+            first.close();
+            pool.openSession(agent).close();
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testSlowCallbackDoesNotStallOthers() throws Exception {
+        final Snmp4JSessionPool pool = new Snmp4JSessionPool(true, 1, 0, 2);
+        try {
+            final Snmp4JAgentConfig agent = new Snmp4JAgentConfig(getAgentConfig());
+            final CountDownLatch releaseSlow = new CountDownLatch(1);
+            final CountDownLatch slowStarted = new CountDownLatch(1);
+            final AtomicReference<ResponseEvent> fast = new AtomicReference<ResponseEvent>();
+            final CountDownLatch fastDone = new CountDownLatch(1);
+
+            final Snmp4JSessionPool.Snmp4JSession slowSession = pool.openSession(agent);
+            final Snmp4JSessionPool.Snmp4JSession fastSession = pool.openSession(agent);
+            try {
+                slowSession.send(getPdu(agent), agent.getTarget(), new ResponseListener() {
+                    @Override
+                    public void onResponse(final ResponseEvent event) {
+                        slowSession.cancel(event.getRequest(), this);
+                        slowStarted.countDown();
+                        try {
+                            releaseSlow.await(30, TimeUnit.SECONDS);
+                        } catch (final InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+                assertTrue("the slow listener was never called", slowStarted.await(10, TimeUnit.SECONDS));
+
+                // both sessions share the one transport, so this response
+                // arrives on the same listener thread as the slow one
+                fastSession.send(getPdu(agent), agent.getTarget(), new ResponseListener() {
+                    @Override
+                    public void onResponse(final ResponseEvent event) {
+                        fastSession.cancel(event.getRequest(), this);
+                        fast.set(event);
+                        fastDone.countDown();
+                    }
+                });
+                assertTrue("a slow listener held up another agent's response", fastDone.await(10, TimeUnit.SECONDS));
+                assertNotNull(fast.get().getResponse());
+            } finally {
+                releaseSlow.countDown();
+                slowSession.close();
+                fastSession.close();
+            }
+        } finally {
+            pool.close();
+        }
+    }
+
+    private static PDU getPdu(final Snmp4JAgentConfig agent) {
+        final PDU pdu = agent.createPdu(PDU.GET);
+        pdu.add(new VariableBinding(new OID(".1.3.5.1.1.3.0")));
+        return pdu;
+    }
+
+    @Test
+    public void testConcurrentWalks() throws Exception {
+        // warm up so the shared transports are already listening
+        assertEquals(9, walk());
+
+        final int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+        final long start = System.nanoTime();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    int total = 0;
+                    for (int j = 0; j < WALKS_PER_THREAD; j++) {
+                        total += walk();
+                    }
+                    return total;
+                }
+            }));
+        }
+
+        int peakThreads = 0;
+        for (final Future<Integer> future : futures) {
+            peakThreads = Math.max(peakThreads, ManagementFactory.getThreadMXBean().getThreadCount());
+            assertEquals(9 * WALKS_PER_THREAD, future.get().intValue());
+        }
+        final long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+
+        final int walks = THREADS * WALKS_PER_THREAD;
+        if (BENCHMARK_WALKS_PER_THREAD > 0) {
+            LOG.info("{} walks in {}ms ({} walks/sec), threads before: {}, peak: {}", walks, elapsed / 1000000, String.format("%.1f", walks * 1000000000.0 / elapsed), threadsBefore, peakThreads);
+        }
+
+        // the walking threads themselves, but no socket listener thread per walk
+        assertTrue("too many threads: " + peakThreads, peakThreads <= threadsBefore + THREADS + Snmp4JSessionPool.getInstance().getPoolSize());
+    }
+
+    private int walk() throws Exception {
+        final List<SnmpResult> results = new ArrayList<SnmpResult>();
+        final ColumnTracker tracker = new ColumnTracker(SnmpObjId.get(".1.3.5.1.1")) {
+            @Override
+            protected void storeResult(final SnmpResult result) {
+                results.add(result);
+            }
+        };
+
+        final SnmpWalker walker = m_strategy.createWalker(getAgentConfig(), "load test", tracker);
+        walker.start();
+        walker.waitFor();
+        assertFalse(walker.getErrorMessage(), walker.failed());
+        return results.size();
+    }
+}
@@ -301,7 +301,7 @@ public class VacuumdTest implements TemporaryDatabaseAware<MockDatabase>, Initia
      */
     @Test
     public final void testGetAutomations() {
-        assertEquals(29, VacuumdConfigFactory.getInstance().getAutomations().size());
+        assertEquals(33, VacuumdConfigFactory.getInstance().getAutomations().size());
     }
 
     /**
@@ -309,7 +309,7 @@ public class VacuumdTest implements TemporaryDatabaseAware<MockDatabase>, Initia
      */
     @Test
     public final void testGetTriggers() {
-        assertEquals(14,VacuumdConfigFactory.getInstance().getTriggers().size());
+        assertEquals(16,VacuumdConfigFactory.getInstance().getTriggers().size());
     }
     
     /**
@@ -319,7 +319,7 @@ public class VacuumdTest implements TemporaryDatabaseAware<MockDatabase>, Initia
     public final void testGetActions() {
         AutomationProcessor ap = new AutomationProcessor(VacuumdConfigFactory.getInstance().getAutomation("cosmicClear"));
         
-        assertEquals(28,VacuumdConfigFactory.getInstance().getActions().size());
+        assertEquals(31,VacuumdConfigFactory.getInstance().getActions().size());
         assertEquals(2, ap.getAction().getTokenCount(VacuumdConfigFactory.getInstance().getAction("delete").getStatement().getContent()));
     }
     
@@ -462,6 +462,106 @@ public class VacuumdTest implements TemporaryDatabaseAware<MockDatabase>, Initia
         assertEquals("alarms with severity > 2", 2, m_jdbcTemplate.queryForLong("select count(*) from alarms where severity > 2"));
     }
 
+    /**
+     * Runs the cosmicClear action as a single statement joined against its
+     * trigger and makes sure it clears the same alarms as the row by row
+     * version.
+     * @throws InterruptedException 
+     */
+    @Test
+    @JUnitTemporaryDatabase(tempDbClass=MockDatabase.class) // Relies on records created in @Before so we need a fresh database
+    public final void testCosmicClearSetBasedAutomation() throws InterruptedException {
+        bringNodeDownCreatingEvent(1);
+        bringNodeDownCreatingEvent(2);
+        Thread.sleep(1000);
+        bringNodeUpCreatingEvent(1);
+        Thread.sleep(1000);
+
+        assertEquals("should have one alarm for each event", 3, m_jdbcTemplate.queryForLong("select count(*) from alarms"));
+
+        AutomationProcessor ap = new AutomationProcessor(VacuumdConfigFactory.getInstance().getAutomation("cosmicClearSetBased"));
+        ap.run();
+        Thread.sleep(1000);
+
+        assertEquals("alarms with severity == 2", 1, m_jdbcTemplate.queryForLong("select count(*) from alarms where severity = 2"));
+        assertEquals("alarms with severity > 2", 2, m_jdbcTemplate.queryForLong("select count(*) from alarms where severity > 2"));
+
+        AutomationStats stats = AutomationStats.forAutomation("cosmicClearSetBased");
+        assertTrue("the action should have been joined against the trigger", stats.isLastRunSetBased());
+        assertEquals(1, stats.getLastRowsAffected());
+        assertEquals(1, stats.getLastBatches());
+        assertEquals(0, stats.getFailures());
+    }
+
+    /**
+     * Runs an action with a batch size of 2 over five trigger rows so that
+     * it takes three batches.
+     * @throws Exception
+     */
+    @Test
+    @JUnitTemporaryDatabase(tempDbClass=MockDatabase.class) // Relies on records created in @Before so we need a fresh database
+    public final void testBatchedAction() throws Exception {
+        createFiveAlarms();
+
+        AutomationProcessor ap = new AutomationProcessor(VacuumdConfigFactory.getInstance().getAutomation("batchedUpdate"));
+        assertTrue(ap.runAutomation());
+
+        assertEquals("alarms with severity == 7", 5, m_jdbcTemplate.queryForLong("select count(*) from alarms where severity = 7"));
+
+        AutomationStats stats = AutomationStats.forAutomation("batchedUpdate");
+        assertEquals(5, stats.getLastRowsAffected());
+        assertEquals(3, stats.getLastBatches());
+        assertEquals(0, stats.getFailures());
+    }
+
+    /**
+     * Fails the second of three batches and makes sure the first batch is
+     * rolled back along with it, since the batches aren't committed on
+     * their own by default.
+     * @throws Exception
+     */
+    @Test
+    @JUnitTemporaryDatabase(tempDbClass=MockDatabase.class) // Relies on records created in @Before so we need a fresh database
+    public final void testBatchedActionFailureRollsBack() throws Exception {
+        createFiveAlarms();
+
+        AutomationProcessor ap = new AutomationProcessor(VacuumdConfigFactory.getInstance().getAutomation("batchedUpdateFailing"));
+        assertFalse(ap.runAutomation());
+
+        assertEquals("alarms with severity == 7", 0, m_jdbcTemplate.queryForLong("select count(*) from alarms where severity = 7"));
+        assertEquals(1, AutomationStats.forAutomation("batchedUpdateFailing").getFailures());
+    }
+
+    /**
+     * Fails the second of three batches of an action with commit-batches
+     * set and makes sure the first batch stays committed.
+     * @throws Exception
+     */
+    @Test
+    @JUnitTemporaryDatabase(tempDbClass=MockDatabase.class) // Relies on records created in @Before so we need a fresh database
+    public final void testCommittedBatchesFailure() throws Exception {
+        createFiveAlarms();
+
+        AutomationProcessor ap = new AutomationProcessor(VacuumdConfigFactory.getInstance().getAutomation("committedBatchesFailing"));
+        assertFalse(ap.runAutomation());
+
+        assertEquals("alarms with severity == 7", 2, m_jdbcTemplate.queryForLong("select count(*) from alarms where severity = 7"));
+        assertEquals(1, AutomationStats.forAutomation("committedBatchesFailing").getFailures());
+    }
+
+    private void createFiveAlarms() throws InterruptedException {
+        bringNodeDownCreatingEvent(1);
+        bringNodeDownCreatingEvent(2);
+        bringNodeDownCreatingEvent(3);
+        Thread.sleep(1000);
+        bringNodeUpCreatingEvent(1);
+        bringNodeUpCreatingEvent(2);
+        Thread.sleep(1000);
+
+        assertEquals("should have one alarm for each event", 5, m_jdbcTemplate.queryForLong("select count(*) from alarms"));
+        assertEquals("alarms with severity == 7", 0, m_jdbcTemplate.queryForLong("select count(*) from alarms where severity = 7"));
+    }
+
     /**
      * @throws InterruptedException 
      */
@@ -55,6 +55,8 @@ public class Action implements Serializable, Named {
 
     private static final String DEFAULT_DATA_SOURCE = "opennms";
 
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+
     // --------------------------/
     // - Class/Member Variables -/
     // --------------------------/
@@ -71,6 +73,27 @@ public class Action implements Serializable, Named {
     @XmlAttribute(name = "data-source")
     private String _dataSource;
 
+    /**
+     * How many trigger rows are sent to the database in one JDBC batch. 0 or
+     * 1 runs the statement once per row.
+     */
+    @XmlAttribute(name = "batch-size")
+    private Integer _batchSize;
+
+    /**
+     * Commit each batch on its own instead of running the whole action in
+     * the automation's transaction.
+     */
+    @XmlAttribute(name = "commit-batches")
+    private Boolean _commitBatches;
+
+    /**
+     * Run the action once, joined against the trigger query, instead of
+     * once per trigger row.
+     */
+    @XmlAttribute(name = "set-based")
+    private Boolean _setBased;
+
     /**
      * Just a generic string used for SQL statements
      */
@@ -125,6 +148,27 @@ public class Action implements Serializable, Named {
                     return false;
             } else if (temp._dataSource != null)
                 return false;
+            if (this._batchSize != null) {
+                if (temp._batchSize == null)
+                    return false;
+                else if (!(this._batchSize.equals(temp._batchSize)))
+                    return false;
+            } else if (temp._batchSize != null)
+                return false;
+            if (this._commitBatches != null) {
+                if (temp._commitBatches == null)
+                    return false;
+                else if (!(this._commitBatches.equals(temp._commitBatches)))
+                    return false;
+            } else if (temp._commitBatches != null)
+                return false;
+            if (this._setBased != null) {
+                if (temp._setBased == null)
+                    return false;
+                else if (!(this._setBased.equals(temp._setBased)))
+                    return false;
+            } else if (temp._setBased != null)
+                return false;
             if (this._statement != null) {
                 if (temp._statement == null)
                     return false;
@@ -146,6 +190,33 @@ public class Action implements Serializable, Named {
         return _dataSource == null ? DEFAULT_DATA_SOURCE : _dataSource;
     }
 
+    /**
+     * Returns the value of field 'batchSize'.
+     *
+     * @return the value of field 'BatchSize'.
+     */
+    public int getBatchSize() {
+        return _batchSize == null ? DEFAULT_BATCH_SIZE : _batchSize;
+    }
+
+    /**
+     * Returns the value of field 'commitBatches'.
+     *
+     * @return the value of field 'CommitBatches'.
+     */
+    public boolean getCommitBatches() {
+        return _commitBatches == null ? false : _commitBatches;
+    }
+
+    /**
+     * Returns the value of field 'setBased'.
+     *
+     * @return the value of field 'SetBased'.
+     */
+    public boolean getSetBased() {
+        return _setBased == null ? false : _setBased;
+    }
+
     /**
      * Returns the value of field 'name'.
      *
@@ -182,6 +253,15 @@ public class Action implements Serializable, Named {
         if (_dataSource != null) {
             result = 37 * result + _dataSource.hashCode();
         }
+        if (_batchSize != null) {
+            result = 37 * result + _batchSize.hashCode();
+        }
+        if (_commitBatches != null) {
+            result = 37 * result + _commitBatches.hashCode();
+        }
+        if (_setBased != null) {
+            result = 37 * result + _setBased.hashCode();
+        }
         if (_statement != null) {
             result = 37 * result + _statement.hashCode();
         }
@@ -199,6 +279,36 @@ public class Action implements Serializable, Named {
         this._dataSource = dataSource;
     }
 
+    /**
+     * Sets the value of field 'batchSize'.
+     *
+     * @param batchSize
+     *            the value of field 'batchSize'.
+     */
+    public void setBatchSize(final Integer batchSize) {
+        this._batchSize = batchSize;
+    }
+
+    /**
+     * Sets the value of field 'commitBatches'.
+     *
+     * @param commitBatches
+     *            the value of field 'commitBatches'.
+     */
+    public void setCommitBatches(final Boolean commitBatches) {
+        this._commitBatches = commitBatches;
+    }
+
+    /**
+     * Sets the value of field 'setBased'.
+     *
+     * @param setBased
+     *            the value of field 'setBased'.
+     */
+    public void setSetBased(final Boolean setBased) {
+        this._setBased = setBased;
+    }
+
     /**
      * Sets the value of field 'name'.
      *
@@ -0,0 +1,291 @@
+package org.opennms.netmgt.xml.eventconf;
+
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_SNMP_GENERIC;
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_SNMP_SPECIFIC;
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_UEI;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * An immutable, compiled view of a loaded event configuration used to find
+ * the event definition for an incoming event without scanning every
+ * definition.
+ * <p>
+ * Each definition is filed in a decision tree keyed first on its
+ * {@link Partition} key and then on the exact values it requires for the
+ * UEI, SNMP specific and SNMP generic fields.  Definitions that accept any
+ * value for a level (no such mask element, or a prefix or regular
+ * expression value) are filed under that level's wildcard branch.  A lookup
+ * only visits the branches that can possibly match and then runs the full
+ * {@link Event#matches(org.opennms.netmgt.xml.event.Event)} check on the
+ * few remaining candidates, so the result is the same as
+ * {@link Events#findFirstMatchingEvent(org.opennms.netmgt.xml.event.Event)}.
+ * <p>
+ * Build a new index whenever the configuration changes and publish it by
+ * swapping a reference; an index is safe to share between threads.
+ */
+public class EventConfIndex {
+
+	private static final String[] FIELD_LEVELS = { TAG_UEI, TAG_SNMP_SPECIFIC, TAG_SNMP_GENERIC };
+
+	private static final Field[] FIELDS = { EventMatchers.field(TAG_UEI), EventMatchers.field(TAG_SNMP_SPECIFIC), EventMatchers.field(TAG_SNMP_GENERIC) };
+
+	/** the partition level plus one level per field */
+	private static final int LEVELS = FIELD_LEVELS.length + 1;
+
+	private static final Comparator<Candidate> RANK_ORDER = new Comparator<Candidate>() {
+		@Override
+		public int compare(Candidate a, Candidate b) {
+			return a.m_rank < b.m_rank ? -1 : (a.m_rank == b.m_rank ? 0 : 1);
+		}
+	};
+
+	/**
+	 * An event definition along with its position in the search order of
+	 * {@link Events#findFirstMatchingEvent(org.opennms.netmgt.xml.event.Event)}
+	 * and the exact values it requires at each level (null for any value).
+	 */
+	private static final class Candidate {
+		private final int m_rank;
+		private final Event m_event;
+		private final List<List<String>> m_levelValues;
+
+		Candidate(int rank, Event event, List<List<String>> levelValues) {
+			m_rank = rank;
+			m_event = event;
+			m_levelValues = levelValues;
+		}
+	}
+
+	private static final class Node {
+		private final Map<String, Node> m_children;
+		private final Node m_wildcard;
+		private final Candidate[] m_candidates;
+
+		Node(Map<String, Node> children, Node wildcard, Candidate[] candidates) {
+			m_children = children;
+			m_wildcard = wildcard;
+			m_candidates = candidates;
+		}
+	}
+
+	private final Partition m_partition;
+	private final Node m_root;
+	private final Map<String, List<Event>> m_eventsByUei;
+	private final int m_eventCount;
+
+	private EventConfIndex(Partition partition, Node root, Map<String, List<Event>> eventsByUei, int eventCount) {
+		m_partition = partition;
+		m_root = root;
+		m_eventsByUei = eventsByUei;
+		m_eventCount = eventCount;
+	}
+
+	/**
+	 * Compile an index of the given (initialized) root event configuration
+	 * and the event files loaded from it.
+	 *
+	 * @param root the root event configuration
+	 * @param partition the partition the configuration was initialized with
+	 * @return the index
+	 */
+	public static EventConfIndex build(Events root, Partition partition) {
+		final List<Events> files = new ArrayList<Events>();
+		collectFiles(root, files);
+
+		final List<Candidate> candidates = new ArrayList<Candidate>();
+		final Map<String, List<Event>> eventsByUei = new LinkedHashMap<String, List<Event>>();
+		int rank = 0;
+		int count = 0;
+		for (Events file : files) {
+			// Events.findFirstMatchingEvent() tries the partitioned events of a file before the others
+			final List<Event> unpartitioned = new ArrayList<Event>();
+			for (Event event : file.getEventCollection()) {
+				count++;
+				if (event.getUei() != null) {
+					List<Event> sameUei = eventsByUei.get(event.getUei());
+					if (sameUei == null) {
+						sameUei = new ArrayList<Event>(1);
+						eventsByUei.put(event.getUei(), sameUei);
+					}
+					sameUei.add(event);
+				}
+
+				final List<String> keys = partition.group(event);
+				if (keys == null) {
+					unpartitioned.add(event);
+				} else {
+					addCandidate(candidates, rank++, event, keys);
+				}
+			}
+			for (Event event : unpartitioned) {
+				addCandidate(candidates, rank++, event, null);
+			}
+		}
+
+		final Map<String, List<Event>> unmodifiable = new HashMap<String, List<Event>>(eventsByUei.size());
+		for (Entry<String, List<Event>> entry : eventsByUei.entrySet()) {
+			unmodifiable.put(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+		}
+
+		return new EventConfIndex(partition, buildNode(candidates, 0), unmodifiable, count);
+	}
+
+	private static void collectFiles(Events events, List<Events> files) {
+		files.add(events);
+		for (Events loaded : events.getLoadedEventFiles()) {
+			collectFiles(loaded, files);
+		}
+	}
+
+	private static void addCandidate(List<Candidate> candidates, int rank, Event event, List<String> partitionKeys) {
+		final boolean hasMask = event.getMask() != null && event.getMask().getMaskelementCount() > 0;
+		if (!hasMask && event.getUei() == null) {
+			// matches nothing
+			return;
+		}
+
+		final List<List<String>> levelValues = new ArrayList<List<String>>(LEVELS);
+		levelValues.add(partitionKeys);
+		for (String field : FIELD_LEVELS) {
+			if (!hasMask) {
+				// without a mask, the event only matches on UEI
+				levelValues.add(TAG_UEI.equals(field) ? Collections.singletonList(event.getUei()) : null);
+			} else {
+				levelValues.add(exactValues(event.getMaskElementValues(field)));
+			}
+		}
+		candidates.add(new Candidate(rank, event, levelValues));
+	}
+
+	/**
+	 * @return the mask element values if they are all exact matches, or
+	 *         null if the mask element accepts other values too
+	 */
+	private static List<String> exactValues(List<String> values) {
+		if (values == null || values.isEmpty()) {
+			return null;
+		}
+		for (String value : values) {
+			if (value == null || value.startsWith("~") || value.endsWith("%")) {
+				return null;
+			}
+		}
+		return values;
+	}
+
+	private static Node buildNode(List<Candidate> candidates, int level) {
+		if (candidates.isEmpty()) {
+			return null;
+		}
+
+		if (level == LEVELS) {
+			Collections.sort(candidates, RANK_ORDER);
+			return new Node(null, null, candidates.toArray(new Candidate[candidates.size()]));
+		}
+
+		final Map<String, List<Candidate>> byValue = new HashMap<String, List<Candidate>>();
+		final List<Candidate> wildcard = new ArrayList<Candidate>();
+		for (Candidate candidate : candidates) {
+			final List<String> values = candidate.m_levelValues.get(level);
+			if (values == null) {
+				wildcard.add(candidate);
+			} else {
+				for (String value : values) {
+					List<Candidate> list = byValue.get(value);
+					if (list == null) {
+						list = new ArrayList<Candidate>();
+						byValue.put(value, list);
+					}
+					// a definition listing the same value twice only needs to be filed once
+					if (list.isEmpty() || list.get(list.size() - 1) != candidate) {
+						list.add(candidate);
+					}
+				}
+			}
+		}
+
+		Map<String, Node> children = null;
+		if (!byValue.isEmpty()) {
+			children = new HashMap<String, Node>(byValue.size() * 2);
+			for (Entry<String, List<Candidate>> entry : byValue.entrySet()) {
+				children.put(entry.getKey(), buildNode(entry.getValue(), level + 1));
+			}
+		}
+		return new Node(children, buildNode(wildcard, level + 1), null);
+	}
+
+	/**
+	 * Find the first event definition, in configuration order, matching the
+	 * given event.
+	 *
+	 * @param matchingEvent the event to match
+	 * @return the matching definition, or null if there is none
+	 */
+	public Event findFirstMatchingEvent(org.opennms.netmgt.xml.event.Event matchingEvent) {
+		final Candidate match = search(m_root, 0, matchingEvent, null);
+		return match == null ? null : match.m_event;
+	}
+
+	private Candidate search(Node node, int level, org.opennms.netmgt.xml.event.Event matchingEvent, Candidate best) {
+		if (node == null) {
+			return best;
+		}
+
+		if (level == LEVELS) {
+			for (Candidate candidate : node.m_candidates) {
+				if (best != null && candidate.m_rank >= best.m_rank) {
+					break;
+				}
+				if (candidate.m_event.matches(matchingEvent)) {
+					return candidate;
+				}
+			}
+			return best;
+		}
+
+		if (node.m_children != null) {
+			final String value = level == 0 ? m_partition.group(matchingEvent) : FIELDS[level - 1].get(matchingEvent);
+			if (value != null) {
+				best = search(node.m_children.get(value), level + 1, matchingEvent, best);
+			}
+		}
+		return search(node.m_wildcard, level + 1, matchingEvent, best);
+	}
+
+	/**
+	 * Find the first event definition, in configuration order, with the
+	 * given UEI.
+	 *
+	 * @param uei the UEI
+	 * @return the definition, or null if there is none
+	 */
+	public Event findByUei(String uei) {
+		final List<Event> events = m_eventsByUei.get(uei);
+		return events == null ? null : events.get(0);
+	}
+
+	/**
+	 * Get all event definitions, in configuration order, with the given UEI.
+	 *
+	 * @param uei the UEI
+	 * @return an unmodifiable list of definitions, or null if there are none
+	 */
+	public List<Event> getEventsByUei(String uei) {
+		return m_eventsByUei.get(uei);
+	}
+
+	/**
+	 * @return the number of event definitions in the index
+	 */
+	public int getEventCount() {
+		return m_eventCount;
+	}
+}
@@ -37,6 +37,7 @@ import java.io.Serializable;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.Iterator;
@@ -450,6 +451,14 @@ public class Events implements Serializable {
 
 	}
 
+	/**
+	 * @return the event files loaded from this configuration, in the order
+	 *         they are searched for matches
+	 */
+	public Collection<Events> getLoadedEventFiles() {
+		return Collections.unmodifiableCollection(m_loadedEventFiles.values());
+	}
+
 	public Events getLoadEventsByFile(String relativePath) {
 		return m_loadedEventFiles.get(relativePath);
 	}
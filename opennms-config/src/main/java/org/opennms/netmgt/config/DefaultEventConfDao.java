@@ -38,9 +38,9 @@ import java.util.TreeSet;
 
 import org.opennms.core.xml.JaxbUtils;
 import org.opennms.netmgt.xml.eventconf.Event;
+import org.opennms.netmgt.xml.eventconf.EventConfIndex;
 import org.opennms.netmgt.xml.eventconf.Events;
 import org.opennms.netmgt.xml.eventconf.Events.EventCallback;
-import org.opennms.netmgt.xml.eventconf.Events.EventCriteria;
 import org.opennms.netmgt.xml.eventconf.Partition;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.core.io.Resource;
@@ -56,7 +56,13 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
      */
     private String m_programmaticStoreRelativePath = DEFAULT_PROGRAMMATIC_STORE_RELATIVE_PATH;
 
-	private Events m_events;
+	private volatile Events m_events;
+
+	/**
+	 * Compiled lookup structure for {@link #m_events}, rebuilt and swapped
+	 * in whenever the configuration changes.
+	 */
+	private volatile EventConfIndex m_index;
 
 	private Resource m_configResource;
 
@@ -81,18 +87,8 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
 
 	@Override
 	public List<Event> getEvents(final String uei) {
-		List<Event> events = m_events.forEachEvent(new ArrayList<Event>(), new EventCallback<List<Event>>() {
-
-			@Override
-			public List<Event> process(List<Event> accum, Event event) {
-				if (uei.equals(event.getUei())) {
-					accum.add(event);
-				}
-				return accum;
-			}
-		});
-		
-		return events.isEmpty() ? null : events;
+		final List<Event> events = m_index.getEventsByUei(uei);
+		return events == null ? null : new ArrayList<Event>(events);
 	}
 
 	@Override
@@ -160,13 +156,14 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
 	}
 
 	@Override
-	public void addEvent(Event event) {
+	public synchronized void addEvent(Event event) {
 		m_events.addEvent(event);
 		m_events.initialize(m_partition);
+		m_index = EventConfIndex.build(m_events, m_partition);
 	}
 
 	@Override
-	public void addEventToProgrammaticStore(Event event) {
+	public synchronized void addEventToProgrammaticStore(Event event) {
 		Events programmaticEvents = m_events.getLoadEventsByFile(m_programmaticStoreRelativePath);
 		if (programmaticEvents == null) {
 			programmaticEvents = new Events();
@@ -175,11 +172,11 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
 
 		programmaticEvents.addEvent(event);
 		programmaticEvents.initialize(m_partition);
-
+		m_index = EventConfIndex.build(m_events, m_partition);
 	}
 
 	@Override
-	public boolean removeEventFromProgrammaticStore(Event event) {
+	public synchronized boolean removeEventFromProgrammaticStore(Event event) {
 		Events programmaticEvents = m_events.getLoadEventsByFile(m_programmaticStoreRelativePath);
 		if (programmaticEvents == null) return false;
 
@@ -189,6 +186,7 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
 		} else {
 			programmaticEvents.initialize(m_partition);
 		}
+		m_index = EventConfIndex.build(m_events, m_partition);
 		return true;
 
 	}
@@ -200,18 +198,12 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
 
 	@Override
 	public Event findByUei(final String uei) {
-		return m_events.findFirstMatchingEvent(new EventCriteria() {
-
-			@Override
-			public boolean matches(Event e) {
-				return uei.equals(e.getUei());
-			}
-		});
+		return m_index.findByUei(uei);
 	}
 
 	@Override
 	public Event findByEvent(final org.opennms.netmgt.xml.event.Event matchingEvent) {
-		return m_events.findFirstMatchingEvent(matchingEvent);
+		return m_index.findFirstMatchingEvent(matchingEvent);
 	}
 
 	@Override
@@ -233,10 +225,12 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
 			Events events = JaxbUtils.unmarshal(Events.class, m_configResource);
 			events.loadEventFiles(m_configResource);
 			
-			m_partition = new EnterpriseIdPartition();
-			events.initialize(m_partition);
-
+			final Partition partition = new EnterpriseIdPartition();
+			events.initialize(partition);
+			final EventConfIndex index = EventConfIndex.build(events, partition);
+			m_partition = partition;
 			m_events = events;
+			m_index = index;
 
 		} catch (Exception e) {
 			throw new DataRetrievalFailureException("Unabled to load " + m_configResource, e);
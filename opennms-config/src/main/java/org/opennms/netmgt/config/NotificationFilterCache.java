@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.config;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the result of evaluating a notification filter rule against the
+ * node/interface/service of an event. Results are grouped by node ID so that
+ * inventory events for a node only drop the results that could have
+ * changed. Entries also expire after a fixed time so that changes that are
+ * not announced by an event are eventually seen.
+ */
+class NotificationFilterCache {
+    /** Results for events without a node ID; these can depend on any node. */
+    private static final long NO_NODE = 0L;
+
+    private final ConcurrentMap<Long, ConcurrentMap<String, CachedResult>> m_results = new ConcurrentHashMap<Long, ConcurrentMap<String, CachedResult>>();
+    private final AtomicInteger m_size = new AtomicInteger();
+    private final AtomicLong m_hits = new AtomicLong();
+    private final AtomicLong m_misses = new AtomicLong();
+    private final long m_ttl;
+    private final int m_maxEntries;
+
+    NotificationFilterCache(final long ttl, final int maxEntries) {
+        m_ttl = ttl;
+        m_maxEntries = maxEntries;
+    }
+
+    boolean isEnabled() {
+        return m_ttl > 0 && m_maxEntries > 0;
+    }
+
+    /**
+     * @return the cached result, or null if there is none or it has expired
+     */
+    Boolean get(final long nodeId, final String rule) {
+        if (!isEnabled()) {
+            return null;
+        }
+        final Map<String, CachedResult> results = m_results.get(nodeId);
+        final CachedResult result = results == null ? null : results.get(rule);
+        if (result == null || System.currentTimeMillis() - result.getTimestamp() > m_ttl) {
+            m_misses.incrementAndGet();
+            return null;
+        }
+        m_hits.incrementAndGet();
+        return result.getValue();
+    }
+
+    void put(final long nodeId, final String rule, final boolean value) {
+        if (!isEnabled()) {
+            return;
+        }
+        if (m_size.get() >= m_maxEntries) {
+            clear();
+        }
+        ConcurrentMap<String, CachedResult> results = m_results.get(nodeId);
+        if (results == null) {
+            final ConcurrentMap<String, CachedResult> newResults = new ConcurrentHashMap<String, CachedResult>();
+            results = m_results.putIfAbsent(nodeId, newResults);
+            if (results == null) {
+                results = newResults;
+            }
+        }
+        if (results.put(rule, new CachedResult(value)) == null) {
+            m_size.incrementAndGet();
+        }
+    }
+
+    /**
+     * Drops all results for the given node as well as the results that were
+     * computed for events without a node ID.
+     */
+    void invalidate(final long nodeId) {
+        remove(nodeId);
+        if (nodeId != NO_NODE) {
+            remove(NO_NODE);
+        }
+    }
+
+    void clear() {
+        m_results.clear();
+        m_size.set(0);
+    }
+
+    int size() {
+        return m_size.get();
+    }
+
+    long getHits() {
+        return m_hits.get();
+    }
+
+    long getMisses() {
+        return m_misses.get();
+    }
+
+    private void remove(final long nodeId) {
+        final Map<String, CachedResult> results = m_results.remove(nodeId);
+        if (results != null) {
+            m_size.addAndGet(-results.size());
+        }
+    }
+
+    private static final class CachedResult {
+        private final boolean m_value;
+        private final long m_timestamp = System.currentTimeMillis();
+
+        CachedResult(final boolean value) {
+            m_value = value;
+        }
+
+        boolean getValue() {
+            return m_value;
+        }
+
+        long getTimestamp() {
+            return m_timestamp;
+        }
+    }
+}
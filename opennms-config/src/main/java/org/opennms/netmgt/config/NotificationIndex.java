@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.opennms.netmgt.config.notifications.Notification;
+import org.opennms.netmgt.config.notifications.Notifications;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Lookup structure over the notifications configuration that is built once
+ * per configuration load. Exact UEIs are found through a hash lookup, while
+ * <code>MATCH-ANY-UEI</code> and <code>~regex</code> notifications are kept
+ * in a single bucket with their patterns precompiled. Candidates are always
+ * returned in configuration order so that "first match wins" semantics are
+ * preserved.
+ */
+class NotificationIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(NotificationIndex.class);
+
+    static final String MATCH_ANY_UEI = "MATCH-ANY-UEI";
+
+    private final Notifications m_source;
+    private final int m_size;
+    private final Map<String, List<Entry>> m_exact = new HashMap<String, List<Entry>>();
+    private final List<Entry> m_wildcards = new ArrayList<Entry>();
+
+    NotificationIndex(final Notifications notifications) {
+        m_source = notifications;
+
+        final List<Notification> notifs = notifications == null ? Collections.<Notification>emptyList() : notifications.getNotificationCollection();
+        m_size = notifs.size();
+
+        int position = 0;
+        for (final Notification notif : notifs) {
+            final Entry entry = new Entry(position++, notif);
+            final String uei = notif.getUei();
+
+            if (uei == null) {
+                LOG.warn("Notification {} has no UEI and will never match", notif.getName());
+            } else if (MATCH_ANY_UEI.equals(uei) || uei.startsWith("~")) {
+                m_wildcards.add(entry);
+            } else {
+                List<Entry> entries = m_exact.get(uei);
+                if (entries == null) {
+                    entries = new ArrayList<Entry>(1);
+                    m_exact.put(uei, entries);
+                }
+                entries.add(entry);
+            }
+        }
+
+        LOG.debug("Indexed {} notifications: {} distinct UEIs, {} wildcard/regex entries", m_size, m_exact.size(), m_wildcards.size());
+    }
+
+    /**
+     * Returns true if this index still describes the given configuration
+     * object. Anything that replaces the configuration or adds or removes
+     * notifications without going through {@link NotificationManager} is
+     * picked up here.
+     */
+    boolean isBuiltFrom(final Notifications notifications) {
+        return m_source == notifications && (notifications == null ? 0 : notifications.getNotificationCollection().size()) == m_size;
+    }
+
+    boolean hasUei(final String uei) {
+        if (m_exact.containsKey(uei)) {
+            return true;
+        }
+        for (final Entry entry : m_wildcards) {
+            if (entry.matchesUei(uei)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the notifications whose UEI matches the given event UEI, in
+     * configuration order.
+     */
+    List<Entry> getCandidates(final String uei) {
+        final List<Entry> exact = m_exact.get(uei);
+        final List<Entry> candidates = new ArrayList<Entry>((exact == null ? 0 : exact.size()) + m_wildcards.size());
+
+        int i = 0;
+        final int exactSize = exact == null ? 0 : exact.size();
+        for (final Entry wildcard : m_wildcards) {
+            while (i < exactSize && exact.get(i).getPosition() < wildcard.getPosition()) {
+                candidates.add(exact.get(i++));
+            }
+            if (wildcard.matchesUei(uei)) {
+                candidates.add(wildcard);
+            }
+        }
+        while (i < exactSize) {
+            candidates.add(exact.get(i++));
+        }
+        return candidates;
+    }
+
+    static final class Entry {
+        private final int m_position;
+        private final Notification m_notification;
+        private final Pattern m_ueiPattern;
+        private final boolean m_ueiPatternValid;
+        private volatile String m_severity;
+        private volatile Pattern m_severityPattern;
+
+        Entry(final int position, final Notification notification) {
+            m_position = position;
+            m_notification = notification;
+
+            final String uei = notification.getUei();
+            Pattern ueiPattern = null;
+            boolean valid = true;
+            if (uei != null && uei.startsWith("~")) {
+                try {
+                    ueiPattern = Pattern.compile(uei.substring(1));
+                } catch (final PatternSyntaxException e) {
+                    LOG.error("Invalid UEI regular expression for notification {}: {}", notification.getName(), uei, e);
+                    valid = false;
+                }
+            }
+            m_ueiPattern = ueiPattern;
+            m_ueiPatternValid = valid;
+
+            compileSeverity(notification.getEventSeverity());
+        }
+
+        int getPosition() {
+            return m_position;
+        }
+
+        Notification getNotification() {
+            return m_notification;
+        }
+
+        boolean matchesUei(final String uei) {
+            if (m_ueiPattern != null) {
+                return m_ueiPattern.matcher(uei).matches();
+            }
+            return m_ueiPatternValid && MATCH_ANY_UEI.equals(m_notification.getUei());
+        }
+
+        /**
+         * Matches the (case-insensitive) event severity against the
+         * notification's severity pattern. Notifications without a severity
+         * match everything.
+         */
+        boolean matchesSeverity(final String severity) {
+            final String configured = m_notification.getEventSeverity();
+            if (configured == null) {
+                return true;
+            }
+            if (!configured.equals(m_severity)) {
+                // the notification was edited in place since the index was built
+                compileSeverity(configured);
+            }
+            final Pattern pattern = m_severityPattern;
+            return pattern != null && severity != null && pattern.matcher(severity.toLowerCase()).matches();
+        }
+
+        private void compileSeverity(final String severity) {
+            Pattern pattern = null;
+            if (severity != null) {
+                try {
+                    pattern = Pattern.compile(severity.toLowerCase());
+                } catch (final PatternSyntaxException e) {
+                    LOG.error("Invalid event severity expression for notification {}: {}", m_notification.getName(), severity, e);
+                }
+            }
+            m_severityPattern = pattern;
+            m_severity = severity;
+        }
+    }
+}
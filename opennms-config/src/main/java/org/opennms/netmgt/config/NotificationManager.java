@@ -94,6 +94,14 @@ public abstract class NotificationManager {
      * 
      */
     private Header oldHeader;
+
+    /**
+     * UEI lookup structure over {@link #m_notifications}, rebuilt whenever
+     * the configuration is loaded or saved.
+     */
+    private volatile NotificationIndex m_index;
+
+    private final NotificationFilterCache m_filterCache = new NotificationFilterCache(Long.getLong("org.opennms.notifd.filterCacheTtl", 60000L), Integer.getInteger("org.opennms.notifd.filterCacheSize", 100000));
     /** Constant <code>PARAM_TYPE="-t"</code> */
     public static final String PARAM_TYPE = "-t";
     /** Constant <code>PARAM_DESTINATION="-d"</code> */
@@ -215,6 +223,8 @@ public abstract class NotificationManager {
     public synchronized void parseXML(final Reader reader) throws MarshalException, ValidationException {
         m_notifications = CastorUtils.unmarshal(Notifications.class, reader, true);
         oldHeader = m_notifications.getHeader();
+        m_index = new NotificationIndex(m_notifications);
+        m_filterCache.clear();
     }
 
     /**
@@ -227,6 +237,8 @@ public abstract class NotificationManager {
     public synchronized void parseXML(final InputStream stream) throws MarshalException, ValidationException {
         m_notifications = CastorUtils.unmarshal(Notifications.class, stream, true);
         oldHeader = m_notifications.getHeader();
+        m_index = new NotificationIndex(m_notifications);
+        m_filterCache.clear();
     }
 
     /**
@@ -240,19 +252,17 @@ public abstract class NotificationManager {
      */
     public boolean hasUei(final String uei) throws IOException, MarshalException, ValidationException {
         update();
-    
-        for (Notification notif : m_notifications.getNotificationCollection()) {
-            if (uei.equals(notif.getUei()) || "MATCH-ANY-UEI".equals(notif.getUei())) {
-                 return true;
-            } else if (notif.getUei().charAt(0) == '~') {
-               if (uei.matches(notif.getUei().substring(1))) {
-                       return true;
-               }
-    
-            }
+        return getIndex().hasUei(uei);
+    }
+
+    private NotificationIndex getIndex() {
+        final Notifications notifications = m_notifications;
+        NotificationIndex index = m_index;
+        if (index == null || !index.isBuiltFrom(notifications)) {
+            index = new NotificationIndex(notifications);
+            m_index = index;
         }
-    
-        return false;
+        return index;
     }
     
     /**
@@ -280,37 +290,19 @@ public abstract class NotificationManager {
             return null;
         }
     
-        for (Notification curNotif : m_notifications.getNotificationCollection()) {
+        // Only notifications whose UEI (exact, regex or MATCH-ANY-UEI) matches are returned, in config order
+        for (NotificationIndex.Entry candidate : getIndex().getCandidates(event.getUei())) {
+            final Notification curNotif = candidate.getNotification();
 
-            LOG.debug("Checking {} against {}", curNotif.getUei(), event.getUei());
- 
-            if (event.getUei().equals(curNotif.getUei()) || "MATCH-ANY-UEI".equals(curNotif.getUei())) {
-               // Match!
-            } else if (curNotif.getUei().charAt(0) == '~') {
-               if (event.getUei().matches(curNotif.getUei().substring(1))) {
-                    // Match!
-               } else {
-
-                   LOG.debug("Notification regex {} failed to match event UEI: {}", event.getUei(), curNotif.getUei());
-                   continue;
-               }
-            } else {
-
-                LOG.debug("Event UEI {} did not match {}", curNotif.getUei(), event.getUei());
-                continue;
-            }
+            LOG.debug("Event UEI {} matched {}", event.getUei(), curNotif.getUei());
 
             /**
              * Check if event severity matches pattern in notification
              */
 
             LOG.debug("Checking event severity: {} against notification severity: {}", curNotif.getEventSeverity(), event.getSeverity());
-            // parameter is optional, return true if not set
-            if (curNotif.getEventSeverity() == null) {
-                // Skip matching on severity
-            } else if (event.getSeverity().toLowerCase().matches(curNotif.getEventSeverity().toLowerCase())) {
-                // Severities match
-            } else {
+            // parameter is optional, matches if not set
+            if (!candidate.matchesSeverity(event.getSeverity())) {
 
                 LOG.debug("Event severity: {} did not match notification severity: {}", curNotif.getEventSeverity(), event.getSeverity());
                 continue;
@@ -409,12 +401,18 @@ public abstract class NotificationManager {
         
         String rule = "((" + notif.getRule() + ")" + constraints + ")";
 
-        return isRuleMatchingFilter(notif, rule);
+        return isRuleMatchingFilter(notif, event.getNodeid(), rule);
     }
     
-    private boolean isRuleMatchingFilter(final Notification notif, final String rule) {
+    private boolean isRuleMatchingFilter(final Notification notif, final long nodeId, final String rule) {
+        final Boolean cached = m_filterCache.get(nodeId, rule);
+        if (cached != null) {
+            return cached;
+        }
         try {
-            return FilterDaoFactory.getInstance().isRuleMatching(rule);
+            final boolean matches = FilterDaoFactory.getInstance().isRuleMatching(rule);
+            m_filterCache.put(nodeId, rule, matches);
+            return matches;
         } catch (FilterParseException e) {
             LOG.error("Invalid filter rule for notification {}: {}", notif.getName(), notif.getRule(), e);
             throw e;
@@ -1064,6 +1062,28 @@ public abstract class NotificationManager {
         saveXML(xmlString);
     
         update();
+
+        // notifications may have been edited in place, so always re-index
+        m_index = null;
+        m_filterCache.clear();
+    }
+
+    /**
+     * Drops the cached filter rule results for a node, along with the
+     * results for events that had no node ID. Called when the node's
+     * interfaces, services, categories or assets change.
+     *
+     * @param nodeId the node whose inventory changed
+     */
+    public void invalidateFilterCache(final long nodeId) {
+        m_filterCache.invalidate(nodeId);
+    }
+
+    /**
+     * Drops all cached filter rule results.
+     */
+    public void clearFilterCache() {
+        m_filterCache.clear();
     }
     /**
      * <p>saveXML</p>
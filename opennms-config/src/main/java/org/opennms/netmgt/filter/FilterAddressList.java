@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.filter;
+
+import java.net.InetAddress;
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * An unmodifiable list of the addresses selected by a filter rule, in the
+ * order the database returned them, that also keeps a hash index of them.
+ *
+ * The package-to-IP maps built by pollerd, collectd and threshd call
+ * {@link #contains(Object)} on these lists for every interface they
+ * schedule; with tens of thousands of interfaces a linear scan there turns
+ * startup quadratic.
+ */
+final class FilterAddressList extends AbstractList<InetAddress> implements RandomAccess {
+    private final InetAddress[] m_addresses;
+    private final Set<InetAddress> m_index;
+
+    FilterAddressList(final Collection<InetAddress> addresses) {
+        m_addresses = addresses.toArray(new InetAddress[addresses.size()]);
+        m_index = new HashSet<InetAddress>(addresses);
+    }
+
+    @Override
+    public InetAddress get(final int index) {
+        return m_addresses[index];
+    }
+
+    @Override
+    public int size() {
+        return m_addresses.length;
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+        return m_index.contains(o);
+    }
+}
@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.filter;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.opennms.netmgt.EventConstants;
+import org.opennms.netmgt.model.events.EventProcessor;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Header;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+/**
+ * Turns on the result cache of a {@link JdbcFilterDao} and clears it
+ * whenever an event reports a change to the nodes, interfaces, services,
+ * categories or assets that filter rules select on.
+ *
+ * This runs as an eventd {@link EventProcessor} ahead of the broadcast to
+ * listeners, so that a daemon reacting to, say, nodeGainedService by
+ * re-running its package filters never sees a result cached before the
+ * change.  If the configured {@link FilterDao} is not a
+ * {@link JdbcFilterDao} this bean does nothing.
+ *
+ * @version $Id: $
+ */
+public class FilterCacheInvalidator implements EventProcessor, InitializingBean, DisposableBean {
+    private static final Logger LOG = LoggerFactory.getLogger(FilterCacheInvalidator.class);
+
+    private static final Set<String> UEIS = new HashSet<String>(Arrays.asList(
+        EventConstants.NODE_ADDED_EVENT_UEI,
+        EventConstants.NODE_UPDATED_EVENT_UEI,
+        EventConstants.NODE_DELETED_EVENT_UEI,
+        EventConstants.DUP_NODE_DELETED_EVENT_UEI,
+        EventConstants.NODE_LABEL_CHANGED_EVENT_UEI,
+        EventConstants.NODE_INFO_CHANGED_EVENT_UEI,
+        EventConstants.NODE_CATEGORY_MEMBERSHIP_CHANGED_EVENT_UEI,
+        EventConstants.ASSET_INFO_CHANGED_EVENT_UEI,
+        EventConstants.NODE_GAINED_INTERFACE_EVENT_UEI,
+        EventConstants.INTERFACE_DELETED_EVENT_UEI,
+        EventConstants.INTERFACE_REPARENTED_EVENT_UEI,
+        EventConstants.INTERFACE_INDEX_CHANGED_EVENT_UEI,
+        EventConstants.PRIMARY_SNMP_INTERFACE_CHANGED_EVENT_UEI,
+        EventConstants.NODE_GAINED_SERVICE_EVENT_UEI,
+        EventConstants.SERVICE_DELETED_EVENT_UEI,
+        EventConstants.SERVICE_UNMANAGED_EVENT_UEI
+    ));
+
+    private FilterDao m_filterDao;
+    private JdbcFilterDao m_jdbcFilterDao;
+
+    /**
+     * <p>setFilterDao</p>
+     *
+     * @param filterDao a {@link org.opennms.netmgt.filter.FilterDao} object.
+     */
+    public void setFilterDao(final FilterDao filterDao) {
+        m_filterDao = filterDao;
+    }
+
+    /**
+     * <p>afterPropertiesSet</p>
+     */
+    @Override
+    public void afterPropertiesSet() {
+        Assert.state(m_filterDao != null, "property filterDao cannot be null");
+
+        if (!(m_filterDao instanceof JdbcFilterDao)) {
+            LOG.info("Filter DAO {} is not a JdbcFilterDao; filter results will not be cached", m_filterDao);
+            return;
+        }
+        m_jdbcFilterDao = (JdbcFilterDao) m_filterDao;
+        m_jdbcFilterDao.setCacheEnabled(true);
+    }
+
+    /**
+     * <p>destroy</p>
+     */
+    @Override
+    public void destroy() {
+        if (m_jdbcFilterDao != null) {
+            m_jdbcFilterDao.setCacheEnabled(false);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void process(final Header eventHeader, final Event event) {
+        if (m_jdbcFilterDao != null && UEIS.contains(event.getUei())) {
+            LOG.debug("process: clearing filter cache on {}", event.getUei());
+            m_jdbcFilterDao.clearCache();
+        }
+    }
+}
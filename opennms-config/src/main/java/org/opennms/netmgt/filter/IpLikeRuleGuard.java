@@ -0,0 +1,243 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.filter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.opennms.core.utils.IPLike;
+
+/**
+ * A necessary condition on the IP address extracted from the IPLIKE terms of
+ * a filter rule.  An address for which {@link #mightMatch(String)} returns
+ * false can never be selected by the rule, so the rule does not need to be
+ * run against the database to reject it.
+ *
+ * Only the parts of the rule that can be proven to constrain the address are
+ * kept: a top-level conjunction keeps every IPLIKE term (and every
+ * disjunction made up only of IPLIKE terms) and ignores the rest, while a
+ * disjunction is only kept if all of its branches are IPLIKE terms.  Rules
+ * with no such terms do not compile to a guard at all.
+ */
+final class IpLikeRuleGuard {
+    private static final Pattern IPLIKE_OPERATOR = Pattern.compile("ipaddr\\s+iplike\\s+(?:'([^']*)'|\"([^\"]*)\"|([0-9a-fA-F.:*,%\\-]+))", Pattern.CASE_INSENSITIVE);
+    private static final Pattern IPLIKE_FUNCTION = Pattern.compile("iplike\\s*\\(\\s*ipaddr\\s*,\\s*(?:'([^']*)'|\"([^\"]*)\")\\s*\\)", Pattern.CASE_INSENSITIVE);
+
+    private final List<String> m_patterns;
+    private final List<IpLikeRuleGuard> m_children;
+
+    private IpLikeRuleGuard(final List<String> patterns, final List<IpLikeRuleGuard> children) {
+        m_patterns = patterns;
+        m_children = children;
+    }
+
+    /**
+     * Compile the IPLIKE terms of a filter rule.
+     *
+     * @param rule the filter rule
+     * @return the guard, or null if the rule does not constrain the address
+     *         through IPLIKE alone
+     */
+    static IpLikeRuleGuard compile(final String rule) {
+        if (rule == null) {
+            return null;
+        }
+        try {
+            return compileExpression(rule);
+        } catch (final IllegalArgumentException e) {
+            // unbalanced quotes or parentheses; let the database complain
+            return null;
+        }
+    }
+
+    /**
+     * <p>mightMatch</p>
+     *
+     * @param addr the textual IP address of an interface
+     * @return false if the rule can not possibly select this address
+     */
+    boolean mightMatch(final String addr) {
+        if (m_patterns != null) {
+            for (final String pattern : m_patterns) {
+                try {
+                    if (IPLike.matches(addr, pattern)) {
+                        return true;
+                    }
+                } catch (final RuntimeException e) {
+                    // a pattern IPLike can't evaluate; don't reject on its account
+                    return true;
+                }
+            }
+            return false;
+        }
+        for (final IpLikeRuleGuard child : m_children) {
+            if (!child.mightMatch(addr)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static IpLikeRuleGuard compileExpression(final String rule) {
+        final String expr = stripEnclosingParens(rule.trim());
+
+        final List<String> disjuncts = split(expr, '|', "or");
+        if (disjuncts.size() > 1) {
+            final List<String> patterns = new ArrayList<String>();
+            for (final String disjunct : disjuncts) {
+                final IpLikeRuleGuard guard = compileExpression(disjunct);
+                if (guard == null || guard.m_patterns == null) {
+                    return null;
+                }
+                patterns.addAll(guard.m_patterns);
+            }
+            return new IpLikeRuleGuard(patterns, null);
+        }
+
+        final List<String> conjuncts = split(expr, '&', "and");
+        if (conjuncts.size() > 1) {
+            final List<IpLikeRuleGuard> children = new ArrayList<IpLikeRuleGuard>();
+            for (final String conjunct : conjuncts) {
+                final IpLikeRuleGuard guard = compileExpression(conjunct);
+                if (guard != null) {
+                    children.add(guard);
+                }
+            }
+            if (children.isEmpty()) {
+                return null;
+            } else if (children.size() == 1) {
+                return children.get(0);
+            }
+            return new IpLikeRuleGuard(null, children);
+        }
+
+        return compileTerm(expr);
+    }
+
+    private static IpLikeRuleGuard compileTerm(final String term) {
+        Matcher m = IPLIKE_OPERATOR.matcher(term);
+        if (!m.matches()) {
+            m = IPLIKE_FUNCTION.matcher(term);
+            if (!m.matches()) {
+                return null;
+            }
+        }
+        for (int i = 1; i <= m.groupCount(); i++) {
+            if (m.group(i) != null) {
+                return new IpLikeRuleGuard(Collections.singletonList(m.group(i).trim()), null);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Strip parentheses that enclose the whole expression, so that
+     * "((a | b))" is handled the same as "a | b".
+     */
+    private static String stripEnclosingParens(final String expr) {
+        String s = expr;
+        while (s.length() > 1 && s.charAt(0) == '(' && closingParen(s, 0) == s.length() - 1) {
+            s = s.substring(1, s.length() - 1).trim();
+        }
+        return s;
+    }
+
+    private static int closingParen(final String s, final int open) {
+        int depth = 0;
+        char quote = 0;
+        for (int i = open; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (quote != 0) {
+                if (c == quote) quote = 0;
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                if (--depth == 0) return i;
+            }
+        }
+        throw new IllegalArgumentException("unbalanced parentheses in " + s);
+    }
+
+    /**
+     * Split an expression on a binary operator at the top level, that is,
+     * outside of quotes and parentheses.  The operator may be written as a
+     * single or doubled symbol ("&amp;", "&amp;&amp;") or as an SQL keyword
+     * surrounded by white space.
+     */
+    private static List<String> split(final String expr, final char symbol, final String keyword) {
+        final List<String> parts = new ArrayList<String>();
+        int depth = 0;
+        char quote = 0;
+        int start = 0;
+        int i = 0;
+        while (i < expr.length()) {
+            final char c = expr.charAt(i);
+            if (quote != 0) {
+                if (c == quote) quote = 0;
+                i++;
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+                i++;
+            } else if (c == '(') {
+                depth++;
+                i++;
+            } else if (c == ')') {
+                if (--depth < 0) throw new IllegalArgumentException("unbalanced parentheses in " + expr);
+                i++;
+            } else if (depth == 0 && c == symbol) {
+                parts.add(expr.substring(start, i));
+                i += (i + 1 < expr.length() && expr.charAt(i + 1) == symbol) ? 2 : 1;
+                start = i;
+            } else if (depth == 0 && Character.isWhitespace(c) && isKeywordAt(expr, i + 1, keyword)) {
+                parts.add(expr.substring(start, i));
+                i += 1 + keyword.length();
+                start = i;
+            } else {
+                i++;
+            }
+        }
+        if (quote != 0 || depth != 0) {
+            throw new IllegalArgumentException("unbalanced quotes or parentheses in " + expr);
+        }
+        parts.add(expr.substring(start));
+        return parts;
+    }
+
+    private static boolean isKeywordAt(final String expr, final int pos, final String keyword) {
+        final int end = pos + keyword.length();
+        return end < expr.length()
+            && expr.regionMatches(true, pos, keyword, 0, keyword.length())
+            && Character.isWhitespace(expr.charAt(end));
+    }
+}
@@ -44,6 +44,9 @@ import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -72,9 +75,34 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
 	private static final Pattern SQL_VALUE_COLUMN_PATTERN = Pattern.compile("[a-zA-Z0-9_\\-]*[a-zA-Z][a-zA-Z0-9_\\-]*");
 	private static final Pattern SQL_IPLIKE_PATTERN = Pattern.compile("(\\w+)\\s+IPLIKE\\s+([0-9.*,-]+|###@\\d+@###)", Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
 
+	private static final int MAX_CACHED_RULES = 1000;
+
 	private DataSource m_dataSource;
     private DatabaseSchemaConfigFactory m_databaseSchemaConfigFactory;
 
+    private volatile boolean m_cacheEnabled = false;
+    private final AtomicLong m_cacheGeneration = new AtomicLong();
+    private final ConcurrentMap<String, CachedResult<List<InetAddress>>> m_activeAddressCache = new ConcurrentHashMap<String, CachedResult<List<InetAddress>>>();
+    private final ConcurrentMap<String, CachedResult<List<InetAddress>>> m_addressCache = new ConcurrentHashMap<String, CachedResult<List<InetAddress>>>();
+    private final ConcurrentMap<String, CachedResult<SortedMap<Integer, String>>> m_nodeMapCache = new ConcurrentHashMap<String, CachedResult<SortedMap<Integer, String>>>();
+    private final ConcurrentMap<String, IpLikeRuleGuard> m_guards = new ConcurrentHashMap<String, IpLikeRuleGuard>();
+    private final Set<String> m_unguardedRules = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * A query result tagged with the cache generation it was read in, so a
+     * result that raced with {@link JdbcFilterDao#clearCache()} is never
+     * handed out afterwards.
+     */
+    private static final class CachedResult<T> {
+        private final long m_generation;
+        private final T m_value;
+
+        CachedResult(final long generation, final T value) {
+            m_generation = generation;
+            m_value = value;
+        }
+    }
+
     /**
      * <p>setDataSource</p>
      *
@@ -111,6 +139,60 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
         return m_databaseSchemaConfigFactory;
     }
 
+    /**
+     * Enable caching of filter results by rule.  Cached results are only
+     * correct as long as {@link #clearCache()} is called whenever nodes,
+     * interfaces, services, categories or assets change, so this should only
+     * be turned on by something that listens for those events, such as
+     * {@link FilterCacheInvalidator}.
+     *
+     * @param cacheEnabled a boolean.
+     */
+    public void setCacheEnabled(final boolean cacheEnabled) {
+        m_cacheEnabled = cacheEnabled;
+        clearCache();
+    }
+
+    /**
+     * <p>isCacheEnabled</p>
+     *
+     * @return a boolean.
+     */
+    public boolean isCacheEnabled() {
+        return m_cacheEnabled;
+    }
+
+    /**
+     * Discard all cached filter results.
+     */
+    public void clearCache() {
+        m_cacheGeneration.incrementAndGet();
+        m_activeAddressCache.clear();
+        m_addressCache.clear();
+        m_nodeMapCache.clear();
+    }
+
+    private <T> T getCached(final ConcurrentMap<String, CachedResult<T>> cache, final String rule) {
+        if (!m_cacheEnabled) {
+            return null;
+        }
+        final CachedResult<T> result = cache.get(rule);
+        if (result == null || result.m_generation != m_cacheGeneration.get()) {
+            return null;
+        }
+        return result.m_value;
+    }
+
+    private <T> void putCached(final ConcurrentMap<String, CachedResult<T>> cache, final String rule, final long generation, final T value) {
+        if (!m_cacheEnabled) {
+            return;
+        }
+        if (cache.size() >= MAX_CACHED_RULES) {
+            cache.clear();
+        }
+        cache.put(rule, new CachedResult<T>(generation, value));
+    }
+
     /**
      * <p>afterPropertiesSet</p>
      */
@@ -131,7 +213,14 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
      */
     @Override
     public SortedMap<Integer, String> getNodeMap(final String rule) throws FilterParseException {
+        final SortedMap<Integer, String> cached = getCached(m_nodeMapCache, rule);
+        if (cached != null) {
+            LOG.debug("Filter.getNodeMap({}): cached", rule);
+            return cached;
+        }
+
     	final SortedMap<Integer, String> resultMap = new TreeMap<Integer, String>();
+        final long generation = m_cacheGeneration.get();
         String sqlString;
 
         LOG.debug("Filter.getNodeMap({})", rule);
@@ -172,7 +261,9 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
             d.cleanUp();
         }
 
-        return Collections.unmodifiableSortedMap(resultMap);
+        final SortedMap<Integer, String> nodeMap = Collections.unmodifiableSortedMap(resultMap);
+        putCached(m_nodeMapCache, rule, generation, nodeMap);
+        return nodeMap;
     }
 
     /** {@inheritDoc} */
@@ -252,7 +343,15 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
     }
 
     private List<InetAddress> getIPAddressList(final String rule, final boolean filterDeleted) throws FilterParseException {
+        final ConcurrentMap<String, CachedResult<List<InetAddress>>> cache = filterDeleted ? m_activeAddressCache : m_addressCache;
+        final List<InetAddress> cached = getCached(cache, rule);
+        if (cached != null) {
+            LOG.debug("Filter.getIPAddressList({}): cached, {} addresses", rule, cached.size());
+            return cached;
+        }
+
     	final List<InetAddress> resultList = new ArrayList<InetAddress>();
+        final long generation = m_cacheGeneration.get();
         String sqlString;
 
         LOG.debug("Filter.getIPAddressList({})", rule);
@@ -303,13 +402,20 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
         }
 
         LOG.debug("Filter.getIPAddressList({}): resultList = {}", rule, resultList);
-        return resultList;
+        final List<InetAddress> addresses = new FilterAddressList(resultList);
+        putCached(cache, rule, generation, addresses);
+        return addresses;
     }
 
 	/**
      * {@inheritDoc}
      *
      * This method verifies if an ip address adheres to a given rule.
+     *
+     * If the rule constrains the address through IPLIKE terms and the
+     * address does not satisfy them, this is decided without going to the
+     * database; otherwise the address is looked up in the (possibly cached)
+     * set of addresses selected by the rule.
      * @exception FilterParseException
      *                if a rule is syntactically incorrect or failed in
      *                executing the SQL statement.
@@ -319,6 +425,12 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
         if (rule.length() == 0) {
             return true;
         } else {
+            final IpLikeRuleGuard guard = getGuard(rule);
+            if (guard != null && !guard.mightMatch(addr)) {
+                LOG.debug("Filter.isValid({}, {}): rejected by IPLIKE terms", addr, rule);
+                return false;
+            }
+
             /*
              * see if the ip address is contained in the list that the
              * rule returns
@@ -327,6 +439,24 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
         }
     }
 
+    private IpLikeRuleGuard getGuard(final String rule) {
+        IpLikeRuleGuard guard = m_guards.get(rule);
+        if (guard != null || m_unguardedRules.contains(rule)) {
+            return guard;
+        }
+        guard = IpLikeRuleGuard.compile(rule);
+        if (m_guards.size() + m_unguardedRules.size() >= MAX_CACHED_RULES) {
+            m_guards.clear();
+            m_unguardedRules.clear();
+        }
+        if (guard == null) {
+            m_unguardedRules.add(rule);
+        } else {
+            m_guards.put(rule, guard);
+        }
+        return guard;
+    }
+
     /** {@inheritDoc} */
     @Override
     public boolean isRuleMatching(final String rule) throws FilterParseException {
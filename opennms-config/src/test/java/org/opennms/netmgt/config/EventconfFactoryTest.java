@@ -35,6 +35,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.opennms.core.utils.InetAddressUtils.str;
@@ -84,6 +85,12 @@ import org.springframework.util.StringUtils;
 public class EventconfFactoryTest {
     private static final Logger LOG = LoggerFactory.getLogger(EventconfFactoryTest.class);
 
+    /**
+     * Whether {@link #testIndexedMatchingAgreesWithLinearScan()} also times
+     * both lookups.
+     */
+    private static final boolean BENCHMARK = Boolean.getBoolean("org.opennms.eventconf.benchmark");
+
     private static final String knownUEI1="uei.opennms.org/internal/capsd/snmpConflictsWithDb";
     private static final String knownLabel1="OpenNMS-defined capsd event: snmpConflictsWithDb";
     private static final String knownSubfileUEI1="uei.opennms.org/IETF/Bridge/traps/newRoot";
@@ -156,6 +163,71 @@ public class EventconfFactoryTest {
         assertEquals("UEI", bldr.getEvent().getUei(), eventConf.getUei());
     }
 
+    @Test
+    public void testIndexedMatchingAgreesWithLinearScan() throws Exception {
+        final Events root = m_eventConfDao.getRootEvents();
+        final List<org.opennms.netmgt.xml.event.Event> events = new ArrayList<org.opennms.netmgt.xml.event.Event>();
+        for (Event eventConf : m_eventConfDao.getAllEvents()) {
+            events.add(createMatchingEvent(eventConf));
+        }
+        assertTrue("the stock eventconf should have lots of events", events.size() > 1000);
+
+        for (org.opennms.netmgt.xml.event.Event event : events) {
+            assertSame("event configuration for " + event.getUei(), root.findFirstMatchingEvent(event), m_eventConfDao.findByEvent(event));
+        }
+
+        if (!BENCHMARK) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        for (org.opennms.netmgt.xml.event.Event event : events) {
+            root.findFirstMatchingEvent(event);
+        }
+        long linear = System.currentTimeMillis() - start;
+
+        start = System.currentTimeMillis();
+        for (org.opennms.netmgt.xml.event.Event event : events) {
+            m_eventConfDao.findByEvent(event);
+        }
+        long indexed = System.currentTimeMillis() - start;
+        LOG.info("{} events: linear scan {} ms, indexed {} ms.", events.size(), linear, indexed);
+    }
+
+    /**
+     * Build an event that satisfies the UEI, enterprise ID, generic and
+     * specific parts of the given event configuration's mask.
+     */
+    private static org.opennms.netmgt.xml.event.Event createMatchingEvent(Event eventConf) {
+        final EventBuilder bldr = new EventBuilder(eventConf.getUei(), "testIndexedMatchingAgreesWithLinearScan");
+        final org.opennms.netmgt.xml.event.Event event = bldr.getEvent();
+
+        final String id = firstExactValue(eventConf.getMaskElementValues("id"));
+        final String generic = firstExactValue(eventConf.getMaskElementValues("generic"));
+        final String specific = firstExactValue(eventConf.getMaskElementValues("specific"));
+        if (id != null || generic != null || specific != null) {
+            final org.opennms.netmgt.xml.event.Snmp snmp = new org.opennms.netmgt.xml.event.Snmp();
+            snmp.setId(id == null ? ".1.3.6.1.4.1.5813" : id);
+            snmp.setVersion("v1");
+            if (generic != null && generic.matches("\\d+")) {
+                snmp.setGeneric(Integer.parseInt(generic));
+            }
+            if (specific != null && specific.matches("\\d+")) {
+                snmp.setSpecific(Integer.parseInt(specific));
+            }
+            event.setSnmp(snmp);
+        }
+        return event;
+    }
+
+    private static String firstExactValue(List<String> values) {
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        final String value = values.get(0);
+        return value.endsWith("%") ? value.substring(0, value.length() - 1) : value;
+    }
+
     public class EventCreator  {
         
         private EventBuilder m_eventBuilder;
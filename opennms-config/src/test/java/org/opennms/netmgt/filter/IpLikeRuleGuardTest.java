@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.filter;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class IpLikeRuleGuardTest {
+
+    @Test
+    public void testOperatorForms() {
+        for (final String rule : new String[] {
+                "IPADDR IPLIKE 10.1.*.*",
+                "ipaddr iplike '10.1.*.*'",
+                "IPADDR IPLIKE \"10.1.*.*\"",
+                "IPLIKE(ipaddr, '10.1.*.*')",
+                "((IPADDR IPLIKE 10.1.*.*))"
+        }) {
+            final IpLikeRuleGuard guard = IpLikeRuleGuard.compile(rule);
+            assertNotNull(rule, guard);
+            assertTrue(rule, guard.mightMatch("10.1.2.3"));
+            assertFalse(rule, guard.mightMatch("10.2.2.3"));
+        }
+    }
+
+    @Test
+    public void testConjunctionKeepsOnlyIpLikeTerms() {
+        final IpLikeRuleGuard guard = IpLikeRuleGuard.compile("IPADDR IPLIKE 10.1.*.* & (catincRouters) & (nodeId == 3) & (serverName == \"localhost\")");
+        assertNotNull(guard);
+        assertTrue(guard.mightMatch("10.1.0.1"));
+        assertFalse(guard.mightMatch("192.168.0.1"));
+
+        final IpLikeRuleGuard both = IpLikeRuleGuard.compile("IPADDR IPLIKE 10.*.*.* AND IPADDR IPLIKE *.*.*.1-10");
+        assertTrue(both.mightMatch("10.0.0.5"));
+        assertFalse(both.mightMatch("10.0.0.50"));
+        assertFalse(both.mightMatch("11.0.0.5"));
+    }
+
+    @Test
+    public void testDisjunction() {
+        final IpLikeRuleGuard guard = IpLikeRuleGuard.compile("(IPADDR IPLIKE 10.*.*.* | IPADDR IPLIKE 172.16.*.*) & isICMP");
+        assertTrue(guard.mightMatch("10.0.0.1"));
+        assertTrue(guard.mightMatch("172.16.3.4"));
+        assertFalse(guard.mightMatch("192.168.0.1"));
+
+        // an OR with any non-IPLIKE branch says nothing about the address
+        assertNull(IpLikeRuleGuard.compile("IPADDR IPLIKE 10.*.*.* | catincRouters"));
+        assertNull(IpLikeRuleGuard.compile("IPADDR IPLIKE 10.*.*.* OR nodeLabel == 'a & b'"));
+    }
+
+    @Test
+    public void testUnguardedRules() {
+        assertNull(IpLikeRuleGuard.compile(null));
+        assertNull(IpLikeRuleGuard.compile("IPADDR != '0.0.0.0'"));
+        assertNull(IpLikeRuleGuard.compile("catincServers & isSNMP"));
+        assertNull(IpLikeRuleGuard.compile("!IPADDR IPLIKE 10.*.*.*"));
+        assertNull(IpLikeRuleGuard.compile("NOT IPADDR IPLIKE 10.*.*.*"));
+        assertNull(IpLikeRuleGuard.compile("(IPADDR IPLIKE 10.*.*.*"));
+    }
+
+    @Test
+    public void testQuotedOperatorsAreIgnored() {
+        final IpLikeRuleGuard guard = IpLikeRuleGuard.compile("nodeLabel == 'a | b' & IPADDR IPLIKE 10.*.*.*");
+        assertNotNull(guard);
+        assertFalse(guard.mightMatch("11.0.0.1"));
+    }
+}
@@ -92,6 +92,13 @@ public interface ProvisiondConfigurationDao {
      */
     public Integer getWriteThreads();
     
+    /**
+     * <p>getImportConcurrency</p>
+     *
+     * @return the maximum number of nodes of a single import that are scanned and persisted at once
+     */
+    public Integer getImportConcurrency();
+    
     /**
      * <p>getRequisitionDir</p>
      *
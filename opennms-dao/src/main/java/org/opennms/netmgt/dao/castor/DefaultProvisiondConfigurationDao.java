@@ -161,5 +161,15 @@ public class DefaultProvisiondConfigurationDao extends AbstractCastorConfigDao<P
     public Integer getWriteThreads() {
         return Integer.valueOf((int)getConfig().getWriteThreads());
     }
+
+    /**
+     * <p>getImportConcurrency</p>
+     *
+     * @return a {@link java.lang.Integer} object.
+     */
+    @Override
+    public Integer getImportConcurrency() {
+        return Integer.valueOf((int)getConfig().getImportConcurrency());
+    }
     
 }
@@ -0,0 +1,295 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.config;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.ConfigurationTestUtils;
+import org.opennms.netmgt.config.NotificationManagerTest.NotificationManagerImpl;
+import org.opennms.netmgt.config.mock.MockNotifdConfigManager;
+import org.opennms.netmgt.config.notifications.Notification;
+import org.opennms.netmgt.config.notifications.Notifications;
+import org.opennms.netmgt.filter.FilterDao;
+import org.opennms.netmgt.filter.FilterDaoFactory;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.xml.event.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checks that indexed notification matching returns the same notifications,
+ * in the same order, as a linear scan of the configuration over a synthetic
+ * event stream.  Setting org.opennms.notifd.benchmarkEvents also times the
+ * two over a stream of that size.
+ */
+public class NotificationIndexTest {
+    private static final Logger LOG = LoggerFactory.getLogger(NotificationIndexTest.class);
+
+    private static final int BENCHMARK_EVENTS = Integer.getInteger("org.opennms.notifd.benchmarkEvents", 0);
+    private static final int EXACT_UEIS = 300;
+    private static final String[] SEVERITIES = { "Critical", "Major", "Minor", "Warning", "Normal", "Cleared", "Indeterminate" };
+
+    private NotificationManagerImpl m_notificationManager;
+    private FilterDao m_filterDao;
+
+    @Before
+    public void setUp() throws Exception {
+        m_notificationManager = new NotificationManagerImpl(new MockNotifdConfigManager(ConfigurationTestUtils.getConfigForResourceWithReplacements(this, "notifd-configuration.xml")), null);
+        m_notificationManager.m_notifications = createNotifications();
+    }
+
+    @After
+    public void tearDown() {
+        FilterDaoFactory.setInstance(null);
+    }
+
+    @Test
+    public void testHasUei() throws Exception {
+        useFilterDao(true);
+
+        assertTrue(m_notificationManager.hasUei("uei.opennms.org/test/exact/7"));
+        assertTrue(m_notificationManager.hasUei("uei.opennms.org/test/regex/anything"));
+        // MATCH-ANY-UEI means every UEI maps to a notice
+        assertTrue(m_notificationManager.hasUei("uei.opennms.org/unknown"));
+
+        final Notifications notifications = createNotifications();
+        notifications.removeNotification(findNotification(notifications, "match any"));
+        m_notificationManager.m_notifications = notifications;
+        assertFalse("index was not rebuilt for the new configuration", m_notificationManager.hasUei("uei.opennms.org/unknown"));
+    }
+
+    @Test
+    public void testReplayMatchesLinearScan() throws Exception {
+        useFilterDao(true);
+
+        final List<Event> events = createEventStream(BENCHMARK_EVENTS > 0 ? BENCHMARK_EVENTS : 1000);
+        final boolean matchAll = m_notificationManager.getConfigManager().getNotificationMatch();
+
+        int matched = 0;
+        for (final Event event : events) {
+            final List<String> expected = linearScan(event, matchAll);
+            final List<String> actual = names(m_notificationManager.getNotifForEvent(event));
+            assertEquals("notifications for " + event.getUei() + "/" + event.getSeverity(), expected, actual);
+            matched += actual.size();
+        }
+
+        if (BENCHMARK_EVENTS <= 0) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        for (final Event event : events) {
+            linearScan(event, matchAll);
+        }
+        final long linear = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (final Event event : events) {
+            m_notificationManager.getNotifForEvent(event);
+        }
+        final long indexed = System.nanoTime() - start;
+
+        LOG.info("{} events against {} notifications ({} matches): linear scan {}ns/event, indexed {}ns/event",
+                 events.size(), m_notificationManager.m_notifications.getNotificationCollection().size(), matched,
+                 linear / events.size(), indexed / events.size());
+    }
+
+    @Test
+    public void testFilterResultsAreCachedUntilInvalidated() throws Exception {
+        m_filterDao = createMock(FilterDao.class);
+        expect(m_filterDao.isRuleMatching((String)anyObject())).andReturn(true).times(2);
+        replay(m_filterDao);
+        FilterDaoFactory.setInstance(m_filterDao);
+
+        final Notifications notifications = new Notifications();
+        notifications.addNotification(createNotification("exact", "uei.opennms.org/test/exact/1", null, "on"));
+        m_notificationManager.m_notifications = notifications;
+
+        final Event event = createEvent("uei.opennms.org/test/exact/1", "Major", 5);
+        assertEquals(1, m_notificationManager.getNotifForEvent(event).length);
+        assertEquals(1, m_notificationManager.getNotifForEvent(event).length);
+
+        // a different node is evaluated independently, so this one stays cached
+        m_notificationManager.invalidateFilterCache(6);
+        assertEquals(1, m_notificationManager.getNotifForEvent(event).length);
+
+        m_notificationManager.invalidateFilterCache(5);
+        assertEquals(1, m_notificationManager.getNotifForEvent(event).length);
+
+        verify(m_filterDao);
+    }
+
+    @Test
+    public void testSeverityAndStatus() throws Exception {
+        useFilterDao(true);
+
+        final Notifications notifications = new Notifications();
+        notifications.addNotification(createNotification("major only", "uei.opennms.org/test/exact/1", "Major", "on"));
+        notifications.addNotification(createNotification("off", "uei.opennms.org/test/exact/1", null, "off"));
+        m_notificationManager.m_notifications = notifications;
+
+        assertEquals("major only", m_notificationManager.getNotifForEvent(createEvent("uei.opennms.org/test/exact/1", "MAJOR", 1))[0].getName());
+        assertNull(m_notificationManager.getNotifForEvent(createEvent("uei.opennms.org/test/exact/1", "Minor", 1)));
+
+        // severity edited in place after the index was built
+        notifications.getNotificationCollection().get(0).setEventSeverity("minor|major");
+        assertEquals(1, m_notificationManager.getNotifForEvent(createEvent("uei.opennms.org/test/exact/1", "Minor", 1)).length);
+    }
+
+    private void useFilterDao(final boolean matches) {
+        m_filterDao = createNiceMock(FilterDao.class);
+        expect(m_filterDao.isRuleMatching((String)anyObject())).andReturn(matches).anyTimes();
+        replay(m_filterDao);
+        FilterDaoFactory.setInstance(m_filterDao);
+    }
+
+    /**
+     * The matching rules as they were applied before the index existed.
+     * The filter DAO always matches and no notification has a varbind, so
+     * only UEI, severity and status are relevant.
+     */
+    private List<String> linearScan(final Event event, final boolean matchAll) {
+        final List<String> names = new ArrayList<String>();
+        for (final Notification notif : m_notificationManager.m_notifications.getNotificationCollection()) {
+            if (event.getUei().equals(notif.getUei()) || "MATCH-ANY-UEI".equals(notif.getUei())) {
+                // match
+            } else if (notif.getUei().charAt(0) == '~') {
+                if (!event.getUei().matches(notif.getUei().substring(1))) {
+                    continue;
+                }
+            } else {
+                continue;
+            }
+            if (notif.getEventSeverity() != null && !event.getSeverity().toLowerCase().matches(notif.getEventSeverity().toLowerCase())) {
+                continue;
+            }
+            if (!"on".equals(notif.getStatus())) {
+                continue;
+            }
+            names.add(notif.getName());
+            if (!matchAll) {
+                break;
+            }
+        }
+        return names;
+    }
+
+    private static List<String> names(final Notification[] notifications) {
+        final List<String> names = new ArrayList<String>();
+        if (notifications != null) {
+            for (final Notification notif : notifications) {
+                names.add(notif.getName());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * A configuration shaped like a large production one: mostly exact
+     * UEIs, a few regular expressions and a catch-all.
+     */
+    private static Notifications createNotifications() {
+        final Notifications notifications = new Notifications();
+        for (int i = 0; i < EXACT_UEIS; i++) {
+            final String severity = (i % 5 == 0) ? "Critical|Major" : null;
+            final String status = (i % 17 == 0) ? "off" : "on";
+            notifications.addNotification(createNotification("exact " + i, "uei.opennms.org/test/exact/" + i, severity, status));
+            if (i % 50 == 0) {
+                notifications.addNotification(createNotification("regex " + i, "~uei.opennms.org/test/exact/" + i + "[0-9]*", null, "on"));
+            }
+        }
+        notifications.addNotification(createNotification("regex", "~uei.opennms.org/test/regex/.*", "major", "on"));
+        notifications.addNotification(createNotification("match any", "MATCH-ANY-UEI", "critical", "on"));
+        notifications.addNotification(createNotification("exact 1 again", "uei.opennms.org/test/exact/1", null, "on"));
+        return notifications;
+    }
+
+    private static Notification findNotification(final Notifications notifications, final String name) {
+        for (final Notification notif : notifications.getNotificationCollection()) {
+            if (name.equals(notif.getName())) {
+                return notif;
+            }
+        }
+        return null;
+    }
+
+    private static Notification createNotification(final String name, final String uei, final String severity, final String status) {
+        final Notification notif = new Notification();
+        notif.setName(name);
+        notif.setUei(uei);
+        notif.setRule("IPADDR IPLIKE *.*.*.*");
+        notif.setEventSeverity(severity);
+        notif.setStatus(status);
+        return notif;
+    }
+
+    private static List<Event> createEventStream(final int count) {
+        final Random random = new Random(42);
+        final List<Event> events = new ArrayList<Event>(count);
+        for (int i = 0; i < count; i++) {
+            final String uei;
+            switch (random.nextInt(10)) {
+            case 0:
+                uei = "uei.opennms.org/test/regex/" + random.nextInt(100);
+                break;
+            case 1:
+                uei = "uei.opennms.org/test/unknown/" + random.nextInt(100);
+                break;
+            default:
+                uei = "uei.opennms.org/test/exact/" + random.nextInt(EXACT_UEIS * 2);
+            }
+            events.add(createEvent(uei, SEVERITIES[random.nextInt(SEVERITIES.length)], 1 + random.nextInt(50)));
+        }
+        return events;
+    }
+
+    private static Event createEvent(final String uei, final String severity, final long nodeId) {
+        final EventBuilder builder = new EventBuilder(uei, "Test.Event");
+        builder.setSeverity(severity);
+        builder.setNodeid(nodeId);
+        return builder.getEvent();
+    }
+}
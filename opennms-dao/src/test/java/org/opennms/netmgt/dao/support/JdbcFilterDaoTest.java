@@ -31,7 +31,9 @@ package org.opennms.netmgt.dao.support;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.opennms.core.utils.InetAddressUtils.addr;
 
 import java.io.InputStream;
 import java.net.InetAddress;
@@ -54,6 +56,8 @@ import org.opennms.netmgt.dao.DatabasePopulator;
 import org.opennms.netmgt.dao.api.IpInterfaceDao;
 import org.opennms.netmgt.dao.api.NodeDao;
 import org.opennms.netmgt.dao.api.ServiceTypeDao;
+import org.opennms.netmgt.EventConstants;
+import org.opennms.netmgt.filter.FilterCacheInvalidator;
 import org.opennms.netmgt.filter.FilterDaoFactory;
 import org.opennms.netmgt.filter.JdbcFilterDao;
 import org.opennms.netmgt.model.AbstractEntityVisitor;
@@ -61,6 +65,7 @@ import org.opennms.netmgt.model.EntityVisitor;
 import org.opennms.netmgt.model.OnmsIpInterface;
 import org.opennms.netmgt.model.OnmsNode;
 import org.opennms.netmgt.model.OnmsServiceType;
+import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.test.JUnitConfigurationEnvironment;
 import org.opennms.test.ThrowableAnticipator;
 import org.springframework.beans.factory.InitializingBean;
@@ -272,6 +277,40 @@ public class JdbcFilterDaoTest implements InitializingBean {
         });
     }
 
+    @Test
+    @JUnitTemporaryDatabase // This test manages its own transactions so use a fresh database
+    public void testCachedActiveIPListIsClearedByEvents() throws Exception {
+        final FilterCacheInvalidator invalidator = new FilterCacheInvalidator();
+        invalidator.setFilterDao(m_dao);
+        invalidator.afterPropertiesSet();
+        assertTrue("cache should be enabled by the invalidator", m_dao.isCacheEnabled());
+
+        final String rule = "ipaddr IPLIKE 192.168.1.*";
+        final List<InetAddress> before = m_dao.getActiveIPAddressList(rule);
+        assertTrue("192.168.1.1 should match", before.contains(addr("192.168.1.1")));
+        assertTrue("isValid should match", m_dao.isValid("192.168.1.1", rule));
+        assertFalse("isValid should reject addresses outside of the IPLIKE range", m_dao.isValid("10.1.1.1", rule));
+
+        m_transTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            public void doInTransactionWithoutResult(TransactionStatus status) {
+                final OnmsIpInterface iface = m_interfaceDao.findByIpAddress("192.168.1.1").get(0);
+                iface.setIsManaged("D");
+                m_interfaceDao.save(iface);
+                m_interfaceDao.flush();
+            }
+        });
+
+        assertSame("result should come from the cache until an event arrives", before, m_dao.getActiveIPAddressList(rule));
+
+        invalidator.process(null, new EventBuilder(EventConstants.NODE_LABEL_CHANGED_EVENT_UEI, "test").getEvent());
+        assertFalse("192.168.1.1 was deleted", m_dao.getActiveIPAddressList(rule).contains(addr("192.168.1.1")));
+        assertFalse("isValid should no longer match", m_dao.isValid("192.168.1.1", rule));
+
+        invalidator.destroy();
+        assertFalse(m_dao.isCacheEnabled());
+    }
+
     @Test
     @Transactional
     public void testIsValid() throws Exception {
@@ -275,6 +275,29 @@ public class FilesystemForeignSourceRepository extends AbstractForeignSourceRepo
         }
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Streams the requisition file and binds only the requested node, so
+     * looking up one node doesn't load the whole requisition.
+     */
+    @Override
+    public OnmsNodeRequisition getNodeRequisition(final String foreignSource, final String foreignId) throws ForeignSourceRepositoryException {
+        if (foreignSource == null) {
+            throw new ForeignSourceRepositoryException("can't get a node requisition with a null foreign source name!");
+        }
+        m_readLock.lock();
+        try {
+            final File inputFile = RequisitionFileUtils.encodeFileName(m_requisitionPath, foreignSource);
+            if (inputFile != null && inputFile.exists()) {
+                return RequisitionFileUtils.getNodeRequisitionFromFile(inputFile, foreignSource, foreignId);
+            }
+            return null;
+        } finally {
+            m_readLock.unlock();
+        }
+    }
+
     /**
      * <p>getRequisition</p>
      *
@@ -28,17 +28,23 @@
 
 package org.opennms.netmgt.provision.persist;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.opennms.core.xml.JaxbUtils;
 import org.opennms.netmgt.provision.persist.foreignsource.ForeignSource;
 import org.opennms.netmgt.provision.persist.requisition.Requisition;
+import org.opennms.netmgt.provision.persist.requisition.RequisitionNode;
+import org.opennms.netmgt.provision.persist.requisition.RequisitionStreamReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.io.FileSystemResource;
@@ -60,6 +66,43 @@ public class RequisitionFileUtils {
         return new File(path, foreignSourceName + ".xml");
   }
 
+    /**
+     * Reads a single node out of a requisition file without loading the
+     * rest of the requisition.
+     */
+    static OnmsNodeRequisition getNodeRequisitionFromFile(final File inputFile, final String foreignSourceName, final String foreignId) throws ForeignSourceRepositoryException {
+        final String[] foreignSource = new String[] { foreignSourceName };
+        final RequisitionNode[] found = new RequisitionNode[1];
+        InputStream in = null;
+        try {
+            in = new BufferedInputStream(new FileInputStream(inputFile));
+            new RequisitionStreamReader().read(in, new RequisitionStreamReader.Handler() {
+                @Override
+                public void startRequisition(final String requisitionForeignSource) {
+                    if (requisitionForeignSource != null) {
+                        foreignSource[0] = requisitionForeignSource;
+                    }
+                }
+
+                @Override
+                public boolean acceptNode(final String nodeForeignId) {
+                    return foreignId.equals(nodeForeignId);
+                }
+
+                @Override
+                public boolean handleNode(final RequisitionNode node) {
+                    found[0] = node;
+                    return false;
+                }
+            });
+        } catch (final Throwable e) {
+            throw new ForeignSourceRepositoryException("unable to read node " + foreignId + " from " + inputFile.getPath(), e);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+        return found[0] == null ? null : new OnmsNodeRequisition(foreignSource[0], found[0]);
+    }
+
     static ForeignSource getForeignSourceFromFile(final File inputFile) throws ForeignSourceRepositoryException {
         return JaxbUtils.unmarshal(ForeignSource.class, inputFile);
     }
@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.provision.persist.requisition;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Reads a requisition one node at a time.
+ *
+ * <p>Unmarshalling a whole {@link Requisition} keeps every node in memory.
+ * This reader walks the document with StAX and only binds one
+ * <code>&lt;node&gt;</code> element at a time, so the memory used does not
+ * grow with the size of the requisition.  Nodes the caller is not
+ * interested in are skipped without being bound at all.</p>
+ */
+public class RequisitionStreamReader {
+    private static final String NAMESPACE = "http://xmlns.opennms.org/xsd/config/model-import";
+
+    private static final XMLInputFactory s_inputFactory;
+    private static volatile JAXBContext s_context;
+
+    static {
+        s_inputFactory = XMLInputFactory.newInstance();
+        s_inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        s_inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        s_inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    }
+
+    /**
+     * Receives the contents of a requisition as it is read.
+     */
+    public interface Handler {
+        /**
+         * Called once, before any node, with the foreign source of the
+         * requisition.
+         */
+        void startRequisition(String foreignSource);
+
+        /**
+         * Called before a node is bound.
+         *
+         * @return false to skip the node without binding it
+         */
+        boolean acceptNode(String foreignId);
+
+        /**
+         * Called for each accepted node, in document order.
+         *
+         * @return false to stop reading
+         */
+        boolean handleNode(RequisitionNode node);
+    }
+
+    /**
+     * Reads the requisition from the stream, handing each node to the
+     * handler.  The stream is not closed.
+     *
+     * @param in the requisition document
+     * @param handler receives the foreign source and the nodes
+     * @throws XMLStreamException if the document can't be parsed
+     * @throws JAXBException if a node can't be bound
+     */
+    public void read(final InputStream in, final Handler handler) throws XMLStreamException, JAXBException {
+        final XMLStreamReader reader = new DefaultNamespaceReader(s_inputFactory.createXMLStreamReader(in));
+        try {
+            final Unmarshaller unmarshaller = getContext().createUnmarshaller();
+
+            int event = reader.next();
+            while (event != XMLStreamConstants.START_ELEMENT) {
+                if (event == XMLStreamConstants.END_DOCUMENT) {
+                    throw new XMLStreamException("no requisition found in document");
+                }
+                event = reader.next();
+            }
+            if (!"model-import".equals(reader.getLocalName())) {
+                throw new XMLStreamException("expected a model-import document but found " + reader.getLocalName(), reader.getLocation());
+            }
+            handler.startRequisition(reader.getAttributeValue(null, "foreign-source"));
+
+            event = reader.next();
+            while (event != XMLStreamConstants.END_ELEMENT && event != XMLStreamConstants.END_DOCUMENT) {
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    if ("node".equals(reader.getLocalName()) && handler.acceptNode(reader.getAttributeValue(null, "foreign-id"))) {
+                        final RequisitionNode node = unmarshaller.unmarshal(reader, RequisitionNode.class).getValue();
+                        if (!handler.handleNode(node)) {
+                            return;
+                        }
+                        // the unmarshaller leaves the reader on the event after the node
+                        event = reader.getEventType();
+                        continue;
+                    }
+                    skipElement(reader);
+                }
+                event = reader.next();
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads the requisition at the given URL, handing each node to the
+     * handler.
+     *
+     * @param url the requisition document
+     * @param handler receives the foreign source and the nodes
+     * @throws IOException if the document can't be opened
+     * @throws XMLStreamException if the document can't be parsed
+     * @throws JAXBException if a node can't be bound
+     */
+    public void read(final URL url, final Handler handler) throws IOException, XMLStreamException, JAXBException {
+        final InputStream in = new BufferedInputStream(url.openStream());
+        try {
+            read(in, handler);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    private static void skipElement(final XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private static JAXBContext getContext() throws JAXBException {
+        if (s_context == null) {
+            s_context = JAXBContext.newInstance(RequisitionNode.class);
+        }
+        return s_context;
+    }
+
+    /**
+     * Puts elements without a namespace into the model-import namespace,
+     * the same way JaxbUtils does for whole documents.
+     */
+    private static class DefaultNamespaceReader extends StreamReaderDelegate {
+        public DefaultNamespaceReader(final XMLStreamReader reader) {
+            super(reader);
+        }
+
+        private boolean isUnqualifiedElement() {
+            final int event = getEventType();
+            if (event != XMLStreamConstants.START_ELEMENT && event != XMLStreamConstants.END_ELEMENT) {
+                return false;
+            }
+            final String namespace = super.getNamespaceURI();
+            return namespace == null || namespace.length() == 0;
+        }
+
+        @Override
+        public String getNamespaceURI() {
+            return isUnqualifiedElement() ? NAMESPACE : super.getNamespaceURI();
+        }
+
+        @Override
+        public QName getName() {
+            return isUnqualifiedElement() ? new QName(NAMESPACE, getLocalName()) : super.getName();
+        }
+    }
+}
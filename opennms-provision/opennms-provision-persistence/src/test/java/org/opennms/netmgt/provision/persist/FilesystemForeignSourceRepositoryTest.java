@@ -29,6 +29,7 @@
 package org.opennms.netmgt.provision.persist;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
@@ -114,6 +115,22 @@ public class FilesystemForeignSourceRepositoryTest extends ForeignSourceReposito
         assertRequisitionsMatch("foreign source is the expected one", requisition, m_foreignSourceRepository.getRequisition(foreignSource));
     }
 
+    @Test
+    public void testGetNodeRequisition() throws Exception {
+        final Requisition requisition = createRequisition();
+        final OnmsNodeRequisition expected = requisition.getNodeRequistion("4244");
+
+        final OnmsNodeRequisition nodeReq = m_foreignSourceRepository.getNodeRequisition(m_defaultForeignSourceName, "4244");
+        assertNotNull(nodeReq);
+        assertEquals(expected.getForeignSource(), nodeReq.getForeignSource());
+        assertEquals(expected.getForeignId(), nodeReq.getForeignId());
+        assertEquals(expected.getNodeLabel(), nodeReq.getNodeLabel());
+        assertEquals(expected.getNode(), nodeReq.getNode());
+
+        assertNull(m_foreignSourceRepository.getNodeRequisition(m_defaultForeignSourceName, "no-such-node"));
+        assertNull(m_foreignSourceRepository.getNodeRequisition("no-such-foreign-source", "4244"));
+    }
+
     @Test
     public void testDefaultForeignSource() throws Exception {
         createRequisition();
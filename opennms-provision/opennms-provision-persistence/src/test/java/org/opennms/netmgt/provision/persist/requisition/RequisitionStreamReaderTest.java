@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.provision.persist.requisition;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.core.xml.JaxbUtils;
+import org.springframework.core.io.ClassPathResource;
+
+public class RequisitionStreamReaderTest {
+
+    private static class CollectingHandler implements RequisitionStreamReader.Handler {
+        private final String m_foreignId;
+        private String m_foreignSource;
+        private final List<RequisitionNode> m_nodes = new ArrayList<RequisitionNode>();
+
+        public CollectingHandler(final String foreignId) {
+            m_foreignId = foreignId;
+        }
+
+        @Override
+        public void startRequisition(final String foreignSource) {
+            m_foreignSource = foreignSource;
+        }
+
+        @Override
+        public boolean acceptNode(final String foreignId) {
+            return m_foreignId == null || m_foreignId.equals(foreignId);
+        }
+
+        @Override
+        public boolean handleNode(final RequisitionNode node) {
+            m_nodes.add(node);
+            return true;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        MockLogAppender.setupLogging();
+    }
+
+    @Test
+    public void testReadMatchesUnmarshal() throws Exception {
+        final Requisition requisition = JaxbUtils.unmarshal(Requisition.class, new ClassPathResource("/requisition-test.xml"));
+
+        final CollectingHandler handler = new CollectingHandler(null);
+        final InputStream in = new ClassPathResource("/requisition-test.xml").getInputStream();
+        try {
+            new RequisitionStreamReader().read(in, handler);
+        } finally {
+            in.close();
+        }
+
+        assertEquals(requisition.getNodes(), handler.m_nodes);
+        assertEquals(4, handler.m_nodes.get(0).getInterfaceCount());
+    }
+
+    @Test
+    public void testSkipNodes() throws Exception {
+        final CollectingHandler handler = new CollectingHandler("4244");
+        final InputStream in = new ClassPathResource("/requisition-test.xml").getInputStream();
+        try {
+            new RequisitionStreamReader().read(in, handler);
+        } finally {
+            in.close();
+        }
+
+        assertEquals(1, handler.m_nodes.size());
+        assertEquals("wan0", handler.m_nodes.get(0).getNodeLabel());
+        assertEquals("10.0.0.1", handler.m_nodes.get(0).getInterfaces().get(0).getIpAddr());
+    }
+
+    @Test
+    public void testReadWithoutNamespace() throws Exception {
+        final String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<model-import foreign-source=\"test\">\n"
+            + "  <node foreign-id=\"1\" node-label=\"node1\">\n"
+            + "    <interface ip-addr=\"192.168.0.1\" snmp-primary=\"P\">\n"
+            + "      <monitored-service service-name=\"ICMP\"/>\n"
+            + "    </interface>\n"
+            + "    <category name=\"Servers\"/>\n"
+            + "  </node>\n"
+            + "  <node foreign-id=\"2\" node-label=\"node2\"/>\n"
+            + "</model-import>\n";
+
+        final CollectingHandler handler = new CollectingHandler(null);
+        new RequisitionStreamReader().read(new ByteArrayInputStream(xml.getBytes("UTF-8")), handler);
+
+        assertEquals("test", handler.m_foreignSource);
+        assertEquals(2, handler.m_nodes.size());
+        final RequisitionNode node = handler.m_nodes.get(0);
+        assertEquals("node1", node.getNodeLabel());
+        assertEquals(1, node.getInterfaceCount());
+        assertEquals("ICMP", node.getInterfaces().get(0).getMonitoredServices().get(0).getServiceName());
+        assertEquals("Servers", node.getCategories().get(0).getName());
+        assertEquals("node2", handler.m_nodes.get(1).getNodeLabel());
+    }
+}
@@ -28,7 +28,7 @@
 
 package org.opennms.netmgt.provision.service;
 
-import java.util.Collection;
+import java.net.URL;
 import java.util.Map;
 
 import org.opennms.core.tasks.BatchTask;
@@ -40,12 +40,15 @@ import org.opennms.netmgt.provision.persist.AbstractRequisitionVisitor;
 import org.opennms.netmgt.provision.persist.OnmsNodeRequisition;
 import org.opennms.netmgt.provision.persist.RequisitionVisitor;
 import org.opennms.netmgt.provision.persist.requisition.Requisition;
-import org.opennms.netmgt.provision.service.lifecycle.LifeCycleInstance;
+import org.opennms.netmgt.provision.persist.requisition.RequisitionNode;
+import org.opennms.netmgt.provision.persist.requisition.RequisitionStreamReader;
 import org.opennms.netmgt.provision.service.lifecycle.Phase;
 import org.opennms.netmgt.provision.service.lifecycle.annotations.Activity;
 import org.opennms.netmgt.provision.service.lifecycle.annotations.ActivityProvider;
 import org.opennms.netmgt.provision.service.operations.ImportOperation;
 import org.opennms.netmgt.provision.service.operations.ImportOperationsManager;
+import org.opennms.netmgt.provision.service.operations.NoOpProvisionMonitor;
+import org.opennms.netmgt.provision.service.operations.ProvisionMonitor;
 import org.opennms.netmgt.provision.service.operations.RequisitionImport;
 import org.springframework.core.io.Resource;
 
@@ -59,49 +62,101 @@ import org.springframework.core.io.Resource;
 public class CoreImportActivities {
     private static final Logger LOG = LoggerFactory.getLogger(CoreImportActivities.class);
     
+    /**
+     * The number of nodes of a single import that are scanned and persisted
+     * at the same time when the provisiond configuration doesn't say.
+     */
+    public static final int DEFAULT_IMPORT_CONCURRENCY = 100;
+
     ProvisionService m_provisionService;
+
+    private int m_importConcurrency = DEFAULT_IMPORT_CONCURRENCY;
     
     public CoreImportActivities(final ProvisionService provisionService) {
         m_provisionService = provisionService;
     }
 
+    /**
+     * <p>setImportConcurrency</p>
+     *
+     * @param importConcurrency the maximum number of nodes of an import that are in flight at once
+     */
+    public void setImportConcurrency(final int importConcurrency) {
+        m_importConcurrency = importConcurrency;
+    }
+
+    /**
+     * <p>getImportConcurrency</p>
+     *
+     * @return a int.
+     */
+    public int getImportConcurrency() {
+        return m_importConcurrency;
+    }
+
     @Activity( lifecycle = "import", phase = "validate", schedulingHint="import")
-    public RequisitionImport loadSpecFile(final Resource resource) {
+    public RequisitionImport loadSpecFile(final Resource resource, final Boolean rescanExisting, final ProvisionMonitor monitor) {
         final RequisitionImport ri = new RequisitionImport();
+        final ProvisionMonitor mon = monitorOrNoOp(monitor);
 
         info("Loading requisition from resource %s", resource);
+        mon.beginLoadingResource(resource);
         try {
             final Requisition specFile = m_provisionService.loadRequisition(resource);
             ri.setRequisition(specFile);
             debug("Finished loading requisition.");
+
+            // Without a rescan, existing nodes are left alone, so the rest of
+            // the import only needs foreign IDs and new nodes: stream those
+            // from the deployed copy instead of holding the whole requisition.
+            if (Boolean.FALSE.equals(rescanExisting) && !ri.isAborted()) {
+                final URL requisitionURL = m_provisionService.getDeployedRequisitionURL(specFile.getForeignSource());
+                if (requisitionURL != null) {
+                    info("Streaming requisition %s from %s for the rest of the import", specFile.getForeignSource(), requisitionURL);
+                    ri.streamFrom(requisitionURL);
+                }
+            }
         } catch (final Throwable t) {
             ri.abort(t);
+        } finally {
+            mon.finishLoadingResource(resource);
         }
 
         return ri;
     }
     
     @Activity( lifecycle = "import", phase = "audit", schedulingHint="import" )
-    public ImportOperationsManager auditNodes(final RequisitionImport ri, final Boolean rescanExisting) {
+    public ImportOperationsManager auditNodes(final RequisitionImport ri, final Boolean rescanExisting, final ProvisionMonitor monitor) {
         if (ri.isAborted()) {
             info("The import has been aborted, skipping audit phase import.");
             return null;
         }
         
-        final Requisition specFile = ri.getRequisition();
+        final String foreignSource = ri.getForeignSource();
 
-        info("Auditing nodes for requisition %s", specFile);
+        info("Auditing nodes for requisition %s", foreignSource);
 
         // @ipv6
         m_provisionService.createDistPollerIfNecessary("localhost", "127.0.0.1");
         
-        final String foreignSource = specFile.getForeignSource();
         final Map<String, Integer> foreignIdsToNodes = m_provisionService.getForeignIdToNodeIdMap(foreignSource);
 
         final ImportOperationsManager opsMgr = new ImportOperationsManager(foreignIdsToNodes, m_provisionService, rescanExisting);
         
+        final ProvisionMonitor mon = monitorOrNoOp(monitor);
+        mon.beginAuditNodes();
         opsMgr.setForeignSource(foreignSource);
-        opsMgr.auditNodes(specFile);
+        try {
+            if (ri.getRequisitionURL() == null) {
+                opsMgr.auditNodes(ri.getRequisition());
+            } else {
+                opsMgr.auditNodes(ri.getRequisitionURL());
+            }
+        } catch (final Throwable t) {
+            ri.abort(t);
+        } finally {
+            mon.finishAuditNodes();
+        }
 
         debug("Finished auditing nodes.");
         
@@ -109,40 +164,39 @@ public class CoreImportActivities {
     }
     
     @Activity( lifecycle = "import", phase = "scan", schedulingHint="import" )
-    public void scanNodes(final Phase currentPhase, final ImportOperationsManager opsMgr, final RequisitionImport ri) {
+    public void scanNodes(final Phase currentPhase, final ImportOperationsManager opsMgr, final RequisitionImport ri, final ProvisionMonitor monitor) {
         if (ri.isAborted()) {
             info("The import has been aborted, skipping scan phase import.");
             return;
         }
 
-        info("Scheduling nodes for phase %s", currentPhase);
-        
-        final Collection<ImportOperation> operations = opsMgr.getOperations();
-        
-        for(final ImportOperation op : operations) {
-            final LifeCycleInstance nodeScan = currentPhase.createNestedLifeCycle("nodeImport");
-
-            debug("Created lifecycle %s for operation %s", nodeScan, op);
-            
-            nodeScan.setAttribute("operation", op);
-            nodeScan.setAttribute("requisitionImport", ri);
-            nodeScan.trigger();
-        }
+        LOG.info("Scheduling nodes for phase {}, {} at a time", currentPhase, m_importConcurrency);
 
+        final ProvisionMonitor mon = monitorOrNoOp(monitor);
+        mon.beginProcessingOps(opsMgr.getDeleteCount(), opsMgr.getUpdateCount(), opsMgr.getInsertCount());
+        mon.beginPreprocessingOps();
 
+        final NodeImportScheduler scheduler = new NodeImportScheduler(currentPhase, ri, opsMgr.operationIterator(), opsMgr.getOperationCount(), mon);
+        scheduler.start(m_importConcurrency);
     }
     
     
     @Activity( lifecycle = "nodeImport", phase = "scan", schedulingHint="import" )
-    public void scanNode(final ImportOperation operation, final RequisitionImport ri, final Boolean rescanExisting) {
+    public void scanNode(final ImportOperation operation, final RequisitionImport ri, final Boolean rescanExisting, final ProvisionMonitor monitor) {
         if (ri.isAborted()) {
             info("The import has been aborted, skipping scan phase nodeImport.");
             return;
         }
 
         if (rescanExisting == null || rescanExisting) {
+            final ProvisionMonitor mon = monitorOrNoOp(monitor);
             info("Running scan phase of %s", operation);
-            operation.scan();
+            mon.beginPreprocessing(operation);
+            try {
+                operation.scan();
+            } finally {
+                mon.finishPreprocessing(operation);
+            }
     
             info("Finished Running scan phase of %s", operation);
         } else {
@@ -151,59 +205,105 @@ public class CoreImportActivities {
     }
     
     @Activity( lifecycle = "nodeImport", phase = "persist" , schedulingHint = "import" )
-    public void persistNode(final ImportOperation operation, final RequisitionImport ri) {
-        if (ri.isAborted()) {
-            info("The import has been aborted, skipping persist phase.");
-            return;
-        }
-
-        info("Running persist phase of %s", operation);
-        operation.persist();
-        info("Finished Running persist phase of %s", operation);
+    public void persistNode(final ImportOperation operation, final RequisitionImport ri, final NodeImportScheduler scheduler, final ProvisionMonitor monitor) {
+        try {
+            if (ri.isAborted()) {
+                info("The import has been aborted, skipping persist phase.");
+                return;
+            }
 
+            final ProvisionMonitor mon = monitorOrNoOp(monitor);
+            info("Running persist phase of %s", operation);
+            mon.beginPersisting(operation);
+            try {
+                operation.persist();
+            } finally {
+                mon.finishPersisting(operation);
+            }
+            info("Finished Running persist phase of %s", operation);
+        } finally {
+            if (scheduler != null) {
+                scheduler.operationComplete(operation);
+            }
+        }
     }
     
     @Activity( lifecycle = "import", phase = "relate" , schedulingHint = "import" )
-    public void relateNodes(final BatchTask currentPhase, final RequisitionImport ri) {
+    public void relateNodes(final BatchTask currentPhase, final RequisitionImport ri, final ProvisionMonitor monitor) {
         if (ri.isAborted()) {
             info("The import has been aborted, skipping relate phase.");
             return;
         }
 
         info("Running relate phase");
+        final ProvisionMonitor mon = monitorOrNoOp(monitor);
+        mon.beginRelateNodes();
         
-        final Requisition requisition = ri.getRequisition();
-        RequisitionVisitor visitor = new AbstractRequisitionVisitor() {
-            @Override
-            public void visitNode(final OnmsNodeRequisition nodeReq) {
-                LOG.debug("Scheduling relate of node {}", nodeReq);
-                currentPhase.add(parentSetter(m_provisionService, nodeReq, requisition.getForeignSource()));
+        final String foreignSource = ri.getForeignSource();
+        try {
+            if (ri.getRequisitionURL() == null) {
+                RequisitionVisitor visitor = new AbstractRequisitionVisitor() {
+                    @Override
+                    public void visitNode(final OnmsNodeRequisition nodeReq) {
+                        LOG.debug("Scheduling relate of node {}", nodeReq);
+                        currentPhase.add(parentSetter(m_provisionService, nodeReq, foreignSource));
+                    }
+                };
+
+                ri.getRequisition().visit(visitor);
+            } else {
+                new RequisitionStreamReader().read(ri.getRequisitionURL(), new RequisitionStreamReader.Handler() {
+                    @Override
+                    public void startRequisition(final String requisitionForeignSource) {
+                    }
+
+                    @Override
+                    public boolean acceptNode(final String foreignId) {
+                        return true;
+                    }
+
+                    @Override
+                    public boolean handleNode(final RequisitionNode node) {
+                        final OnmsNodeRequisition nodeReq = new OnmsNodeRequisition(foreignSource, node);
+                        LOG.debug("Scheduling relate of node {}", nodeReq);
+                        currentPhase.add(parentSetter(m_provisionService, nodeReq, foreignSource));
+                        return true;
+                    }
+                });
             }
-        };
-        
-        requisition.visit(visitor);
+        } catch (final Throwable t) {
+            ri.abort(t);
+        } finally {
+            mon.finishRelateNodes();
+        }
         
         LOG.info("Finished Running relate phase");
 
     }
     
     private static Runnable parentSetter(final ProvisionService provisionService, final OnmsNodeRequisition nodeReq, final String foreignSource) {
+        // copy out what's needed so that queued tasks don't hold on to the nodes
+        final String foreignId = nodeReq.getForeignId();
+        final String nodeLabel = nodeReq.getNodeLabel();
+        // If the node requisition does not include a parent foreign source
+        // name, then use the foreign source of the current requisition
+        // as the default value
+        //
+        // @see http://issues.opennms.org/browse/NMS-4109
+        //
+        final String parentForeignSource = nodeReq.getParentForeignSource() == null ? 
+            foreignSource : nodeReq.getParentForeignSource();
+        final String parentForeignId = nodeReq.getParentForeignId();
+        final String parentNodeLabel = nodeReq.getParentNodeLabel();
         return new Runnable() {
             @Override
             public void run() {
                 provisionService.setNodeParentAndDependencies(
                     foreignSource,
-                    nodeReq.getForeignId(),
-                    // If the node requisition does not include a parent foreign source
-                    // name, then use the foreign source of the current requisition
-                    // as the default value
-                    //
-                    // @see http://issues.opennms.org/browse/NMS-4109
-                    //
-                    nodeReq.getParentForeignSource() == null ? 
-                        foreignSource : nodeReq.getParentForeignSource(),
-                    nodeReq.getParentForeignId(),
-                    nodeReq.getParentNodeLabel()
+                    foreignId,
+                    parentForeignSource,
+                    parentForeignId,
+                    parentNodeLabel
                 );
 
                 provisionService.clearCache();
@@ -211,11 +311,15 @@ public class CoreImportActivities {
 
             @Override
             public String toString() {
-                return "set parent for node "+nodeReq.getNodeLabel();
+                return "set parent for node "+nodeLabel;
             }
         }; 
     }
 
+    private static ProvisionMonitor monitorOrNoOp(final ProvisionMonitor monitor) {
+        return monitor == null ? new NoOpProvisionMonitor() : monitor;
+    }
+
     protected void info(String format, Object... args) {
     	LOG.info(format, args);
     }
@@ -32,6 +32,7 @@ import static org.opennms.core.utils.InetAddressUtils.addr;
 import static org.opennms.core.utils.InetAddressUtils.str;
 
 import java.net.InetAddress;
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -908,6 +909,24 @@ public class DefaultProvisionService implements ProvisionService, InitializingBe
         return r;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public URL getDeployedRequisitionURL(final String foreignSource) {
+        try {
+            // make sure a caching repository has written the requisition out
+            m_foreignSourceRepository.flush();
+            final URL url = m_foreignSourceRepository.getRequisitionURL(foreignSource);
+            if (url != null && "file".equals(url.getProtocol())) {
+                return url;
+            }
+        } catch (final ForeignSourceRepositoryException e) {
+            LOG.debug("unable to get the deployed requisition URL for foreign source '{}'", foreignSource, e);
+        } catch (final UnsupportedOperationException e) {
+            LOG.debug("the deployed repository doesn't keep foreign source '{}' in a file", foreignSource, e);
+        }
+        return null;
+    }
+
     /* (non-Javadoc)
      * @see org.opennms.netmgt.provision.service.ProvisionService#updateNodeInfo(org.opennms.netmgt.model.OnmsNode)
      */
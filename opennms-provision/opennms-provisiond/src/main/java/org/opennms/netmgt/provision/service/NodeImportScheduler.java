@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.provision.service;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.opennms.netmgt.provision.service.lifecycle.LifeCycleInstance;
+import org.opennms.netmgt.provision.service.lifecycle.Phase;
+import org.opennms.netmgt.provision.service.operations.ImportOperation;
+import org.opennms.netmgt.provision.service.operations.ProvisionMonitor;
+import org.opennms.netmgt.provision.service.operations.RequisitionImport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Feeds the operations of an import into nested <code>nodeImport</code>
+ * lifecycles, keeping at most a fixed number of them in flight.  Each
+ * finished node schedules the next one, so the import thread never blocks
+ * waiting for room and only the operations in flight are held in memory.
+ */
+public class NodeImportScheduler {
+    private static final Logger LOG = LoggerFactory.getLogger(NodeImportScheduler.class);
+
+    private final Phase m_phase;
+    private final RequisitionImport m_requisitionImport;
+    private final Iterator<ImportOperation> m_operations;
+    private final ProvisionMonitor m_monitor;
+    private final int m_total;
+    private final int m_progressInterval;
+    private final AtomicInteger m_completed = new AtomicInteger(0);
+
+    /**
+     * <p>Constructor for NodeImportScheduler.</p>
+     *
+     * @param phase the phase the node lifecycles are nested in
+     * @param ri the import being run
+     * @param operations the operations to run, built lazily
+     * @param total the number of operations the iterator returns
+     * @param monitor the monitor that receives the timings of the import
+     */
+    public NodeImportScheduler(final Phase phase, final RequisitionImport ri, final Iterator<ImportOperation> operations, final int total, final ProvisionMonitor monitor) {
+        m_phase = phase;
+        m_requisitionImport = ri;
+        m_operations = operations;
+        m_total = total;
+        m_monitor = monitor;
+        m_progressInterval = Math.max(1, total / 10);
+    }
+
+    /**
+     * Schedules the first operations.  Returns immediately; the rest are
+     * scheduled as earlier ones complete.
+     *
+     * @param concurrency the maximum number of nodes imported at once
+     */
+    public void start(final int concurrency) {
+        if (m_total == 0) {
+            finish();
+            return;
+        }
+        for (int i = 0; i < Math.max(1, concurrency); i++) {
+            if (!scheduleNext()) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Called by the persist phase of each node once it is done, whether or
+     * not the import was aborted.
+     *
+     * @param operation the operation that completed
+     */
+    public void operationComplete(final ImportOperation operation) {
+        final int completed = m_completed.incrementAndGet();
+        if (completed % m_progressInterval == 0 || completed == m_total) {
+            LOG.info("Imported {} of {} nodes for {}", completed, m_total, m_requisitionImport.getForeignSource());
+        }
+
+        scheduleNext();
+
+        if (completed == m_total) {
+            finish();
+        }
+    }
+
+    private void finish() {
+        m_monitor.finishPreprocessingOps();
+        m_monitor.finishProcessingOps();
+    }
+
+    private boolean scheduleNext() {
+        final ImportOperation operation;
+        synchronized (m_operations) {
+            if (!m_operations.hasNext()) {
+                return false;
+            }
+            if (m_requisitionImport.isAborted()) {
+                // count the remaining operations as done so the import still finishes
+                int skipped = 0;
+                while (m_operations.hasNext()) {
+                    m_operations.next();
+                    skipped++;
+                }
+                LOG.info("The import has been aborted, skipping the remaining {} nodes.", skipped);
+                if (m_completed.addAndGet(skipped) == m_total) {
+                    finish();
+                }
+                return false;
+            }
+            operation = m_operations.next();
+        }
+
+        final LifeCycleInstance nodeScan = m_phase.createNestedLifeCycle("nodeImport");
+
+        LOG.debug("Created lifecycle {} for operation {}", nodeScan, operation);
+
+        nodeScan.setAttribute("operation", operation);
+        nodeScan.setAttribute("requisitionImport", m_requisitionImport);
+        nodeScan.setAttribute("nodeImportScheduler", this);
+        nodeScan.setAttribute("monitor", m_monitor);
+        nodeScan.trigger();
+        return true;
+    }
+
+    /**
+     * <p>getCompleted</p>
+     *
+     * @return the number of operations that have completed
+     */
+    public int getCompleted() {
+        return m_completed.get();
+    }
+
+    /**
+     * <p>getTotal</p>
+     *
+     * @return the number of operations in the import
+     */
+    public int getTotal() {
+        return m_total;
+    }
+}
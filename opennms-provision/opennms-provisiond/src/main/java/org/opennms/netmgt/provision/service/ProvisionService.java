@@ -29,6 +29,7 @@
 package org.opennms.netmgt.provision.service;
 
 import java.net.InetAddress;
+import java.net.URL;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -315,6 +316,16 @@ public interface ProvisionService {
      */
     Requisition loadRequisition(Resource resource);
 
+    /**
+     * Returns the file the deployed copy of a requisition is kept in, so
+     * that it can be streamed instead of held in memory.
+     *
+     * @param foreignSource the foreign source of the requisition
+     * @return a file URL, or null if the deployed repository doesn't keep
+     *         requisitions in files
+     */
+    URL getDeployedRequisitionURL(String foreignSource);
+
     /**
      * <p>getDetectorsForForeignSource</p>
      *
@@ -49,16 +49,29 @@ public class RequisitionAccountant extends AbstractRequisitionVisitor {
     public RequisitionAccountant(ImportOperationsManager opsMgr) {
         m_opsMgr = opsMgr;
     }
+
+    /**
+     * <p>Constructor for a RequisitionAccountant that fills in the details of
+     * a single, already created operation.</p>
+     *
+     * @param operation a {@link org.opennms.netmgt.provision.service.operations.SaveOrUpdateOperation} object.
+     */
+    public RequisitionAccountant(SaveOrUpdateOperation operation) {
+        m_opsMgr = null;
+        m_currentOp = operation;
+    }
     
     /** {@inheritDoc} */
     @Override
     public void visitNode(OnmsNodeRequisition nodeReq) {
+        if (m_opsMgr == null) return;
         m_currentOp = m_opsMgr.foundNode(nodeReq.getForeignId(), nodeReq.getNodeLabel(), nodeReq.getBuilding(), nodeReq.getCity());        
     }
     
     /** {@inheritDoc} */
     @Override
     public void completeNode(OnmsNodeRequisition nodeReq) {
+        if (m_opsMgr == null) return;
         m_currentOp = null;
     }
 
@@ -29,6 +29,7 @@
 package org.opennms.netmgt.provision.service;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.opennms.netmgt.provision.service.operations.ImportOperation;
 import org.opennms.netmgt.provision.service.operations.ProvisionMonitor;
@@ -56,7 +57,8 @@ public class TimeTrackingMonitor implements ProvisionMonitor {
 	private int m_deleteCount;
 	private int m_insertCount;
 	private int m_updateCount;
-	private int m_eventCount;
+	private final AtomicInteger m_eventCount = new AtomicInteger(0);
+	private final AtomicInteger m_persistedCount = new AtomicInteger(0);
 
 	/** {@inheritDoc} */
         @Override
@@ -118,12 +120,22 @@ public class TimeTrackingMonitor implements ProvisionMonitor {
         @Override
 	public void finishPersisting(ImportOperation oper) {
 		m_processingEffort.end();
+		m_persistedCount.incrementAndGet();
+	}
+
+	/**
+	 * <p>getPersistedCount</p>
+	 *
+	 * @return the number of nodes persisted so far
+	 */
+	public int getPersistedCount() {
+		return m_persistedCount.get();
 	}
 
 	/** {@inheritDoc} */
         @Override
 	public void beginSendingEvents(ImportOperation oper, List<Event> events) {
-		if (events != null) m_eventCount += events.size();
+		if (events != null) m_eventCount.addAndGet(events.size());
 		m_eventEffort.begin();
 	}
 
@@ -204,7 +216,8 @@ public class TimeTrackingMonitor implements ProvisionMonitor {
 		StringBuffer stats = new StringBuffer();
 		stats.append("Deletes: ").append(m_deleteCount).append(", ");
 		stats.append("Updates: ").append(m_updateCount).append(", ");
-		stats.append("Inserts: ").append(m_insertCount).append("\n");
+		stats.append("Inserts: ").append(m_insertCount).append(", ");
+		stats.append("Persisted: ").append(m_persistedCount.get()).append('/').append(m_deleteCount + m_updateCount + m_insertCount).append("\n");
 		stats.append(m_importDuration).append(", ");
 		stats.append(m_loadingDuration).append(", ");
 		stats.append(m_auditDuration).append('\n');
@@ -214,8 +227,9 @@ public class TimeTrackingMonitor implements ProvisionMonitor {
 		stats.append(m_preprocessingEffort).append(", ");
 		stats.append(m_processingEffort).append(", ");
 		stats.append(m_eventEffort);
-		if (m_eventCount > 0) {
-			stats.append(", Avg ").append((double)m_eventEffort.getTotalTime()/(double)m_eventCount).append(" ms per event");
+		final int eventCount = m_eventCount.get();
+		if (eventCount > 0) {
+			stats.append(", Avg ").append((double)m_eventEffort.getTotalTime()/(double)eventCount).append(" ms per event");
 		}
 		
 		return stats.toString();
@@ -63,7 +63,7 @@ public class WorkEffort {
 	/**
 	 * <p>end</p>
 	 */
-	public void end() {
+	public synchronized void end() {
 		WorkDuration pending = m_pendingSection.get();
 		m_sectionCount++;
 		m_totalTime += pending.getLength();
@@ -74,7 +74,7 @@ public class WorkEffort {
 	 *
 	 * @return a long.
 	 */
-	public long getTotalTime() {
+	public synchronized long getTotalTime() {
 		return m_totalTime;
 	}
 	
@@ -84,7 +84,7 @@ public class WorkEffort {
 	 * @return a {@link java.lang.String} object.
 	 */
         @Override
-	public String toString() {
+	public synchronized String toString() {
 		StringBuffer buf = new StringBuffer();
 		buf.append("Total ").append(m_name).append(": ");
 		buf.append((double)m_totalTime/(double)1000L).append(" thread-seconds");
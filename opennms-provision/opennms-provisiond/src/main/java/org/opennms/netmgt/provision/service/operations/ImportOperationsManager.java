@@ -28,13 +28,14 @@
 
 package org.opennms.netmgt.provision.service.operations;
 
+import java.io.IOException;
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -42,8 +43,14 @@ import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 
-import org.opennms.netmgt.model.OnmsNode;
+import javax.xml.bind.JAXBException;
+import javax.xml.stream.XMLStreamException;
+
+import org.opennms.netmgt.provision.persist.AbstractRequisitionVisitor;
+import org.opennms.netmgt.provision.persist.OnmsNodeRequisition;
 import org.opennms.netmgt.provision.persist.requisition.Requisition;
+import org.opennms.netmgt.provision.persist.requisition.RequisitionNode;
+import org.opennms.netmgt.provision.persist.requisition.RequisitionStreamReader;
 import org.opennms.netmgt.provision.service.ProvisionService;
 import org.opennms.netmgt.provision.service.RequisitionAccountant;
 import org.slf4j.Logger;
@@ -69,13 +76,32 @@ public class ImportOperationsManager {
 	}
 
 	/**
-     * TODO: Seth 2012-03-08: These lists may consume a lot of RAM for large provisioning 
-     * groups. We may need to figure out how to use flyweight objects instead of heavier 
-     * {@link OnmsNode} objects in these lists. Our goal is to handle 50,000+ nodes per 
-     * import operation.
-     */
-    private final List<ImportOperation> m_inserts = new LinkedList<ImportOperation>();
-    private final List<ImportOperation> m_updates = new LinkedList<ImportOperation>();
+	 * A node found in the requisition.  The audit only records which
+	 * requisition node goes with which database node; the operation, with
+	 * its {@link org.opennms.netmgt.model.OnmsNode}, is built when it is
+	 * about to run so that only the operations in flight are held in memory.
+	 */
+	private static final class PendingOperation {
+	    private final OnmsNodeRequisition m_nodeReq;
+	    private final Integer m_nodeId;
+	    private final ImportOperation m_operation;
+
+	    PendingOperation(final OnmsNodeRequisition nodeReq, final Integer nodeId) {
+	        m_nodeReq = nodeReq;
+	        m_nodeId = nodeId;
+	        m_operation = null;
+	    }
+
+	    PendingOperation(final ImportOperation operation) {
+	        m_nodeReq = null;
+	        m_nodeId = null;
+	        m_operation = operation;
+	    }
+	}
+
+    private final List<PendingOperation> m_inserts = new ArrayList<PendingOperation>();
+    private final List<PendingOperation> m_updates = new ArrayList<PendingOperation>();
+    private int m_skippedUpdates = 0;
     
     private final ProvisionService m_provisionService;
     private final Map<String, Integer> m_foreignIdToNodeMap;
@@ -121,21 +147,56 @@ public class ImportOperationsManager {
     }
     
     private SaveOrUpdateOperation insertNode(final String foreignId, final String nodeLabel, final String building, final String city) {
-        SaveOrUpdateOperation insertOperation = new InsertOperation(getForeignSource(), foreignId, nodeLabel, building, city, m_provisionService);
-        m_inserts.add(insertOperation);
+        SaveOrUpdateOperation insertOperation = createInsertOperation(foreignId, nodeLabel, building, city);
+        m_inserts.add(new PendingOperation(insertOperation));
         return insertOperation;
     }
 
     private SaveOrUpdateOperation updateNode(final String foreignId, final String nodeLabel, final String building, final String city) {
     	final Integer nodeId = processForeignId(foreignId);
-    	final UpdateOperation updateOperation;
+    	final UpdateOperation updateOperation = createUpdateOperation(nodeId, foreignId, nodeLabel, building, city);
+        m_updates.add(new PendingOperation(updateOperation));
+        return updateOperation;
+    }
+
+    private SaveOrUpdateOperation createInsertOperation(final String foreignId, final String nodeLabel, final String building, final String city) {
+        return new InsertOperation(getForeignSource(), foreignId, nodeLabel, building, city, m_provisionService);
+    }
+
+    private UpdateOperation createUpdateOperation(final Integer nodeId, final String foreignId, final String nodeLabel, final String building, final String city) {
     	if (m_rescanExisting) {
-            updateOperation = new UpdateOperation(nodeId, getForeignSource(), foreignId, nodeLabel, building, city, m_provisionService);
+            return new UpdateOperation(nodeId, getForeignSource(), foreignId, nodeLabel, building, city, m_provisionService);
     	} else {
-            updateOperation = new NullUpdateOperation(nodeId, getForeignSource(), foreignId, nodeLabel, building, city, m_provisionService);
+            return new NullUpdateOperation(nodeId, getForeignSource(), foreignId, nodeLabel, building, city, m_provisionService);
     	}
-        m_updates.add(updateOperation);
-        return updateOperation;
+    }
+
+    /**
+     * Records a node of the requisition as an insert or an update without
+     * building its operation yet.
+     */
+    private void foundNodeRequisition(final OnmsNodeRequisition nodeReq) {
+        final String foreignId = nodeReq.getForeignId();
+        if (nodeExists(foreignId)) {
+            m_updates.add(new PendingOperation(nodeReq, processForeignId(foreignId)));
+        } else {
+            m_inserts.add(new PendingOperation(nodeReq, null));
+        }
+    }
+
+    private ImportOperation buildOperation(final PendingOperation pending) {
+        if (pending.m_operation != null) {
+            return pending.m_operation;
+        }
+        final OnmsNodeRequisition nodeReq = pending.m_nodeReq;
+        final SaveOrUpdateOperation operation;
+        if (pending.m_nodeId == null) {
+            operation = createInsertOperation(nodeReq.getForeignId(), nodeReq.getNodeLabel(), nodeReq.getBuilding(), nodeReq.getCity());
+        } else {
+            operation = createUpdateOperation(pending.m_nodeId, nodeReq.getForeignId(), nodeReq.getNodeLabel(), nodeReq.getBuilding(), nodeReq.getCity());
+        }
+        nodeReq.visit(new RequisitionAccountant(operation));
+        return operation;
     }
 
     /**
@@ -175,6 +236,15 @@ public class ImportOperationsManager {
         return m_updates.size();
     }
 
+    /**
+     * <p>getSkippedUpdateCount</p>
+     *
+     * @return the number of existing nodes a streamed audit left alone
+     */
+    public int getSkippedUpdateCount() {
+        return m_skippedUpdates;
+    }
+
     /**
      * <p>getDeleteCount</p>
      *
@@ -207,6 +277,30 @@ public class ImportOperationsManager {
     	
     }
     
+    private class PendingIterator implements Iterator<ImportOperation> {
+
+        private final Iterator<PendingOperation> m_pendingIterator;
+
+        PendingIterator(final List<PendingOperation> pending) {
+            m_pendingIterator = pending.iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return m_pendingIterator.hasNext();
+        }
+
+        @Override
+        public ImportOperation next() {
+            return buildOperation(m_pendingIterator.next());
+        }
+
+        @Override
+        public void remove() {
+            m_pendingIterator.remove();
+        }
+    }
+
     private class OperationIterator implements Iterator<ImportOperation>, Enumeration<ImportOperation> {
     	
     	Iterator<Iterator<ImportOperation>> m_iterIter;
@@ -215,8 +309,8 @@ public class ImportOperationsManager {
     	OperationIterator() {
     		List<Iterator<ImportOperation>> iters = new ArrayList<Iterator<ImportOperation>>(3);
     		iters.add(new DeleteIterator());
-    		iters.add(m_updates.iterator());
-    		iters.add(m_inserts.iterator());
+    		iters.add(new PendingIterator(m_updates));
+    		iters.add(new PendingIterator(m_inserts));
     		m_iterIter = iters.iterator();
     	}
     	
@@ -279,6 +373,18 @@ public class ImportOperationsManager {
     public Collection<ImportOperation> getOperations() {
         return Collections.list(new OperationIterator());
     }
+
+    /**
+     * Returns the operations one at a time: deletes first, then updates,
+     * then inserts.  Update and insert operations are built from the
+     * requisition as they are returned, so callers that don't hold on to
+     * them only keep the operations in flight in memory.
+     *
+     * @return an iterator over the operations
+     */
+    public Iterator<ImportOperation> operationIterator() {
+        return new OperationIterator();
+    }
     
     @SuppressWarnings("unused")
     private Runnable sequence(final Executor pool, final Runnable a, final Runnable b) {
@@ -319,7 +425,54 @@ public class ImportOperationsManager {
      * @param requisition a {@link org.opennms.netmgt.provision.persist.requisition.Requisition} object.
      */
     public void auditNodes(Requisition requisition) {
-        requisition.visit(new RequisitionAccountant(this));
+        requisition.visit(new AbstractRequisitionVisitor() {
+            @Override
+            public void visitNode(final OnmsNodeRequisition nodeReq) {
+                foundNodeRequisition(nodeReq);
+            }
+        });
+        LOG.info("Audited requisition {}: {} inserts, {} updates, {} deletes", getForeignSource(), getInsertCount(), getUpdateCount(), getDeleteCount());
+    }
+
+    /**
+     * Audits a requisition by streaming it from a file instead of visiting
+     * it in memory.  Only valid when existing nodes are not rescanned: their
+     * update doesn't change anything then, so they are matched by foreign ID
+     * and counted without being bound or scheduled.  Only the nodes that are
+     * new to the database are read in, so memory grows with the number of
+     * inserts rather than with the size of the requisition.
+     *
+     * @param requisitionURL the deployed copy of the requisition
+     * @throws IOException if the requisition can't be opened
+     * @throws XMLStreamException if the requisition can't be parsed
+     * @throws JAXBException if a node can't be bound
+     */
+    public void auditNodes(final URL requisitionURL) throws IOException, XMLStreamException, JAXBException {
+        if (m_rescanExisting == null || m_rescanExisting) {
+            throw new IllegalStateException("a streamed audit would skip the rescan of existing nodes");
+        }
+        new RequisitionStreamReader().read(requisitionURL, new RequisitionStreamReader.Handler() {
+            @Override
+            public void startRequisition(final String foreignSource) {
+            }
+
+            @Override
+            public boolean acceptNode(final String foreignId) {
+                if (nodeExists(foreignId)) {
+                    processForeignId(foreignId);
+                    m_skippedUpdates++;
+                    return false;
+                }
+                return true;
+            }
+
+            @Override
+            public boolean handleNode(final RequisitionNode node) {
+                m_inserts.add(new PendingOperation(new OnmsNodeRequisition(getForeignSource(), node), null));
+                return true;
+            }
+        });
+        LOG.info("Audited requisition {} from {}: {} inserts, {} existing nodes left as they are, {} deletes", getForeignSource(), requisitionURL, getInsertCount(), m_skippedUpdates, getDeleteCount());
     }
 
     @SuppressWarnings("unused")
@@ -28,6 +28,8 @@
 
 package org.opennms.netmgt.provision.service.operations;
 
+import java.net.URL;
+
 import javax.xml.bind.ValidationException;
 
 import org.slf4j.Logger;
@@ -37,12 +39,42 @@ import org.opennms.netmgt.provision.persist.requisition.Requisition;
 public class RequisitionImport {
     private static final Logger LOG = LoggerFactory.getLogger(RequisitionImport.class);
     private Requisition m_requisition;
+    private String m_foreignSource;
+    private URL m_requisitionURL;
     private Throwable m_throwable;
 
+    /**
+     * Returns the requisition being imported, or null once the import has
+     * switched to {@link #streamFrom(URL) streaming} it.
+     */
     public Requisition getRequisition() {
         return m_requisition;
     }
 
+    public String getForeignSource() {
+        return m_requisition == null ? m_foreignSource : m_requisition.getForeignSource();
+    }
+
+    /**
+     * Returns the file the requisition is streamed from, or null if the
+     * whole requisition is held in memory.
+     */
+    public URL getRequisitionURL() {
+        return m_requisitionURL;
+    }
+
+    /**
+     * Drops the in-memory requisition; the remaining phases read it one
+     * node at a time from the given file instead.
+     *
+     * @param requisitionURL the deployed copy of the requisition
+     */
+    public void streamFrom(final URL requisitionURL) {
+        m_foreignSource = getForeignSource();
+        m_requisitionURL = requisitionURL;
+        m_requisition = null;
+    }
+
     public void setRequisition(final Requisition requisition) {
         m_requisition = requisition;
         try {
@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.provision.service.operations;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ImportOperationsManagerTest {
+    private static final String REQUISITION =
+        "<model-import xmlns=\"http://xmlns.opennms.org/xsd/config/model-import\" foreign-source=\"streamed\">\n" +
+        "  <node foreign-id=\"1\" node-label=\"existing\">\n" +
+        "    <interface ip-addr=\"10.0.0.1\" snmp-primary=\"P\"/>\n" +
+        "  </node>\n" +
+        "  <node foreign-id=\"2\" node-label=\"new\">\n" +
+        "    <interface ip-addr=\"10.0.0.2\" snmp-primary=\"P\"/>\n" +
+        "  </node>\n" +
+        "</model-import>\n";
+
+    private File m_requisitionFile;
+
+    @Before
+    public void setUp() throws Exception {
+        m_requisitionFile = File.createTempFile("streamed", ".xml");
+        FileUtils.writeStringToFile(m_requisitionFile, REQUISITION, "UTF-8");
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(m_requisitionFile);
+    }
+
+    @Test
+    public void testStreamedAudit() throws Exception {
+        final Map<String, Integer> foreignIdToNodeId = new HashMap<String, Integer>();
+        foreignIdToNodeId.put("1", 1);
+        foreignIdToNodeId.put("3", 3);
+
+        final ImportOperationsManager opsMgr = new ImportOperationsManager(foreignIdToNodeId, null, false);
+        opsMgr.setForeignSource("streamed");
+        opsMgr.auditNodes(m_requisitionFile.toURI().toURL());
+
+        assertEquals(1, opsMgr.getInsertCount());
+        assertEquals(0, opsMgr.getUpdateCount());
+        assertEquals(1, opsMgr.getSkippedUpdateCount());
+        assertEquals(1, opsMgr.getDeleteCount());
+
+        // the existing node is never scheduled, only the delete and the insert
+        final Collection<ImportOperation> operations = opsMgr.getOperations();
+        assertEquals(2, operations.size());
+        assertEquals(2, opsMgr.getOperationCount());
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testStreamedAuditRequiresNoRescan() throws Exception {
+        final ImportOperationsManager opsMgr = new ImportOperationsManager(new HashMap<String, Integer>(), null, true);
+        opsMgr.setForeignSource("streamed");
+        opsMgr.auditNodes(m_requisitionFile.toURI().toURL());
+    }
+}
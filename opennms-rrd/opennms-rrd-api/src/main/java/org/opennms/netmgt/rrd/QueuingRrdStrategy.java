@@ -31,16 +31,23 @@ package org.opennms.netmgt.rrd;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
 import java.util.Properties;
-import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -77,6 +84,12 @@ import org.slf4j.LoggerFactory;
  * This implementation delegates all the actual writing to another RrdStrategy
  * implementation.
  *
+ * Operations are kept in a per-file queue with its own lock, and files that
+ * are ready to be written wait in a significant or an insignificant ready
+ * queue.  A write thread claims a file by flipping its "owned" flag, so
+ * collection threads and write threads only ever contend on the same file,
+ * never on the strategy as a whole.
+ *
  * System properties effecting the operation:
  *
  * org.opennms.rrd.queuing.writethreads: (default 2) The number of rrd write
@@ -136,6 +149,8 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 
     static final int CREATE = 1;
 
+    private static final double[] ZERO_VALUES = new double[] { 0.0 };
+
     private int m_writeThreads;
 
     private boolean m_queueCreates;
@@ -359,41 +374,58 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         m_writeThreadExitDelay = writeThreadExitDelay;
     }
 
-    LinkedList<String> filesWithSignificantWork = new LinkedList<String>();
+    /**
+     * Pending operations for every file that has work queued or is being
+     * written, keyed by file name.
+     */
+    final ConcurrentMap<String, FileQueue> pendingFileOperations = new ConcurrentHashMap<String, FileQueue>();
 
-    LinkedList<String> filesWithInsignificantWork = new LinkedList<String>();
+    /**
+     * Files that are ready to be written, at least one of them significant.
+     * A file may appear in both ready queues (or twice in one) after a
+     * promotion; whichever entry is taken first claims the file and later
+     * entries are skipped.
+     */
+    final BlockingDeque<FileQueue> filesWithSignificantWork = new LinkedBlockingDeque<FileQueue>();
 
-    Map<String, LinkedList<Operation>> pendingFileOperations = new HashMap<String, LinkedList<Operation>>();
+    final BlockingDeque<FileQueue> filesWithInsignificantWork = new LinkedBlockingDeque<FileQueue>();
 
-    Map<Thread, String> fileAssignments = new HashMap<Thread, String>();
+    /**
+     * One permit per entry in the ready queues; write threads block on this
+     * when there is nothing to do.
+     */
+    private final Semaphore m_readyFiles = new Semaphore(0);
 
-    Set<String> reservedFiles = new HashSet<String>();
+    /**
+     * The file the current write thread owns, if any.
+     */
+    private final ThreadLocal<FileQueue> m_assignment = new ThreadLocal<FileQueue>();
 
-    private long m_totalOperationsPending = 0;
+    private final AtomicLong m_totalOperationsPending = new AtomicLong();
 
-    private long m_enqueuedOperations = 0;
+    private final AtomicLong m_enqueuedOperations = new AtomicLong();
 
-    private long m_dequeuedOperations = 0;
+    private final AtomicLong m_dequeuedOperations = new AtomicLong();
 
-    private long m_significantOpsEnqueued = 0;
+    private final AtomicLong m_significantOpsEnqueued = new AtomicLong();
 
-    private long m_significantOpsDequeued = 0;
+    private final AtomicLong m_significantOpsDequeued = new AtomicLong();
 
-    private long m_significantOpsCompleted = 0;
+    private final AtomicLong m_significantOpsCompleted = new AtomicLong();
 
-    private long m_dequeuedItems = 0;
+    private final AtomicLong m_dequeuedItems = new AtomicLong();
 
-    private long m_createsCompleted = 0;
+    private final AtomicLong m_createsCompleted = new AtomicLong();
 
-    private long m_updatesCompleted = 0;
+    private final AtomicLong m_updatesCompleted = new AtomicLong();
 
-    private long m_errors = 0;
+    private final AtomicLong m_errors = new AtomicLong();
 
-    int threadsRunning = 0;
+    final AtomicInteger threadsRunning = new AtomicInteger();
 
-    private long m_startTime = 0;
+    private final AtomicLong m_startTime = new AtomicLong();
 
-    private long m_promotionCount = 0;
+    private final AtomicLong m_promotionCount = new AtomicLong();
 
     long lastLap = System.currentTimeMillis();
 
@@ -413,6 +445,42 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 
     long lastOpsPending = 0;
 
+    /**
+     * The operations waiting for a single file.  All fields are guarded by
+     * the FileQueue's own monitor, so enqueuing for one file never contends
+     * with work on another.
+     */
+    static class FileQueue {
+        final String fileName;
+
+        LinkedList<Operation> operations = new LinkedList<Operation>();
+
+        /** true while a write thread is processing this file */
+        boolean owned = false;
+
+        /** true while the file sits in a ready queue waiting to be claimed */
+        boolean scheduled = false;
+
+        /** true if the file has been put in the significant ready queue */
+        boolean scheduledSignificant = false;
+
+        /** true once the file has been dropped from pendingFileOperations */
+        boolean retired = false;
+
+        FileQueue(String fileName) {
+            this.fileName = fileName;
+        }
+
+        boolean hasSignificant() {
+            for (Operation op : operations) {
+                if (op.isSignificant()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
     /**
      * This is the base class for an enqueue able operation
      */
@@ -488,7 +556,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
             m_delegate.createFile(getData(), attributeMappings);
 
             // keep stats
-            setCreatesCompleted(getCreatesCompleted() + 1);
+            m_createsCompleted.incrementAndGet();
 
             // return the file
             return rrd;
@@ -527,10 +595,45 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
             }
 
             // keep stats
-            setUpdatesCompleted(getUpdatesCompleted() + 1);
-            if (getUpdatesCompleted() % m_modulus == 0) {
-                logStats();
+            updateCompleted();
+            // return the open rrd for further processing
+            return rrd;
+
+        }
+
+    }
+
+    /**
+     * Represents an update that was handed to us as typed values rather than
+     * an update string.
+     */
+    public class ValuesUpdateOperation extends Operation {
+
+        final long timeStamp;
+
+        ValuesUpdateOperation(String fileName, long timeStamp, double[] values) {
+            super(fileName, UPDATE, values, true);
+            this.timeStamp = timeStamp;
+        }
+
+        @Override
+        Object process(Object rrd) throws Exception {
+            // open the file if we need to
+            if (rrd == null) rrd = m_delegate.openFile(getFileName());
+
+            final double[] values = (double[]) getData();
+
+            try {
+                // process the update
+                m_delegate.updateFile(rrd, "", timeStamp, values);
+            } catch (final Throwable e) {
+                final String error = String.format("Error processing update for file %s: %d %s", getFileName(), timeStamp, Arrays.toString(values));
+                m_log.debug(error, e);
+                throw new Exception(error, e);
             }
+
+            // keep stats
+            updateCompleted();
             // return the open rrd for further processing
             return rrd;
 
@@ -564,20 +667,16 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
                 if (rrd == null)
                     rrd = m_delegate.openFile(getFileName());
 
-                String update = ts + ":0";
                 try {
                     // process the update
-                    m_delegate.updateFile(rrd, "", update);
+                    m_delegate.updateFile(rrd, "", ts, ZERO_VALUES);
                 } catch (Throwable e) {
-                    throw new Exception("Error processing update " + i + " for file " + getFileName() + ": " + update, e);
+                    throw new Exception("Error processing update " + i + " for file " + getFileName() + ": " + ts + ":0", e);
                 }
                 ts += getInterval();
 
                 // keep stats
-                setUpdatesCompleted(getUpdatesCompleted() + 1);
-                if (getUpdatesCompleted() % m_modulus == 0) {
-                    logStats();
-                }
+                updateCompleted();
             }
             return rrd;
         }
@@ -681,10 +780,33 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         return new UpdateOperation(fileName, update);
     }
 
+    /**
+     * <p>makeUpdateOperation</p>
+     *
+     * @param fileName a {@link java.lang.String} object.
+     * @param owner a {@link java.lang.String} object.
+     * @param timeStamp the update time in seconds.
+     * @param values the values, one per data source.  The array is queued
+     * as-is so the caller must not modify it afterwards.
+     * @return a {@link org.opennms.netmgt.rrd.QueuingRrdStrategy.Operation} object.
+     */
+    public Operation makeUpdateOperation(String fileName, String owner, long timeStamp, double[] values) {
+        if (values.length == 1 && values[0] == 0.0) {
+            if (timeStamp == 0)
+                m_log.debug("ZERO ERROR: created a zero update with ts=0 for file: {}, data: {}", fileName, Arrays.toString(values));
+
+            return new ZeroUpdateOperation(fileName, timeStamp);
+        }
+        return new ValuesUpdateOperation(fileName, timeStamp, values);
+    }
+
     // 
     // Queue management functions.
     //
-    // TODO: Put this all in a class of its own. This is really ugly.
+    // Each file has its own FileQueue guarded by its own monitor, and files
+    // that are ready to be written sit in one of two ready queues.  Nothing
+    // here locks the strategy as a whole, so collectors enqueuing for
+    // different files and write threads taking different files don't contend.
     //
 
     /**
@@ -693,31 +815,31 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param op a {@link org.opennms.netmgt.rrd.QueuingRrdStrategy.Operation} object.
      */
     public void addOperation(Operation op) {
-        synchronized (this) {
-            if (queueIsFull()) {
-                m_log.error("RRD Data Queue is Full!! Discarding operation for file {}", op.getFileName());
-                return;
-            }
-            
-            if (op.isSignificant() && sigQueueIsFull()) {
-                m_log.error("RRD Data Significant Queue is Full!! Discarding operation for file {}", op.getFileName());
-                return;
-            }
-            
-            if (!op.isSignificant() && inSigQueueIsFull()) {
-                m_log.error("RRD Insignificant Data Queue is Full!! Discarding operation for file {}", op.getFileName());
-                return;
-            }
-            
-            storeAssignment(op);
-
-            setTotalOperationsPending(getTotalOperationsPending() + 1);
-            setEnqueuedOperations(getEnqueuedOperations() + 1);
-            if (op.isSignificant())
-                setSignificantOpsEnqueued(getSignificantOpsEnqueued() + 1);
-            notifyAll();
-            ensureThreadsStarted();
+        if (queueIsFull()) {
+            m_log.error("RRD Data Queue is Full!! Discarding operation for file {}", op.getFileName());
+            return;
+        }
+
+        if (op.isSignificant() && sigQueueIsFull()) {
+            m_log.error("RRD Data Significant Queue is Full!! Discarding operation for file {}", op.getFileName());
+            return;
         }
+
+        if (!op.isSignificant() && inSigQueueIsFull()) {
+            m_log.error("RRD Insignificant Data Queue is Full!! Discarding operation for file {}", op.getFileName());
+            return;
+        }
+
+        // count the op before it becomes visible to the write threads so the
+        // pending count never dips below zero
+        m_totalOperationsPending.incrementAndGet();
+        m_enqueuedOperations.incrementAndGet();
+        if (op.isSignificant())
+            m_significantOpsEnqueued.incrementAndGet();
+
+        storeAssignment(op);
+
+        ensureThreadsStarted();
     }
 
     
@@ -745,53 +867,66 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
     /**
      * Ensure that we have threads started to process the queue.
      */
-    public synchronized void ensureThreadsStarted() {
-        if (threadsRunning < m_writeThreads) {
-            threadsRunning++;
-            new Thread(this, this.getClass().getSimpleName() + "-" + threadsRunning).start();
+    public void ensureThreadsStarted() {
+        int running;
+        while ((running = threadsRunning.get()) < m_writeThreads) {
+            if (threadsRunning.compareAndSet(running, running + 1)) {
+                new Thread(this, this.getClass().getSimpleName() + "-" + (running + 1)).start();
+                return;
+            }
         }
     }
 
     /**
      * Get the operations for the next file that should be worked on.
      *
-     * @return a linkedList of operations to be processed all for the same file.
+     * @return a linkedList of operations to be processed all for the same
+     *         file, or null if no file became ready within the write thread
+     *         sleep time.
      */
     public LinkedList<Operation> getNext() {
-        LinkedList<Operation> ops = null;
-        synchronized (this) {
+        // turn in our previous assignment
+        completeAssignment();
 
-            // turn in our previous assignment
-            completeAssignment();
-
-            String newAssignment;
+        FileQueue newAssignment = null;
+        LinkedList<Operation> ops = null;
+        while (ops == null) {
             // wait until there is work to do
-            while ((newAssignment = selectNewAssignment()) == null) {
-                try {
-                    wait();
-                } catch (InterruptedException e) {
+            try {
+                if (!m_readyFiles.tryAcquire(Math.max(m_writeThreadSleepTime, 1), TimeUnit.MILLISECONDS)) {
+                    return null;
                 }
+            } catch (InterruptedException e) {
+                return null;
             }
 
-            // initialize start time for stats
-            if (getStartTime() == 0)
-                setStartTime(System.currentTimeMillis());
+            newAssignment = filesWithSignificantWork.pollFirst();
+            if (newAssignment == null) {
+                newAssignment = filesWithInsignificantWork.pollFirst();
+            }
+            if (newAssignment == null) {
+                // the entry for our permit is being moved between the ready queues
+                m_readyFiles.release();
+                Thread.yield();
+                continue;
+            }
 
             // reserve the assignment and take work items
             ops = takeAssignment(newAssignment);
+        }
 
-            // keep stats
-            if (ops != null) {
-                for(Operation op : ops) {
-                    setTotalOperationsPending(getTotalOperationsPending()-op.getCount());
-                    setDequeuedOperations(getDequeuedOperations() + op.getCount());
-                    if (op.isSignificant()) {
-                    	setSignificantOpsDequeued(getSignificantOpsDequeued() + op.getCount());
-                    }
-                }
-                setDequeuedItems(getDequeuedItems() + 1);
+        // initialize start time for stats
+        m_startTime.compareAndSet(0, System.currentTimeMillis());
+
+        // keep stats
+        for (Operation op : ops) {
+            m_totalOperationsPending.addAndGet(-op.getCount());
+            m_dequeuedOperations.addAndGet(op.getCount());
+            if (op.isSignificant()) {
+                m_significantOpsDequeued.addAndGet(op.getCount());
             }
         }
+        m_dequeuedItems.incrementAndGet();
 
         return ops;
 
@@ -802,34 +937,63 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * we don't try to process updates for the same file on more than one
      * thread.
      */
-    private synchronized void storeAssignment(Operation op) {
-        // look and see if there a pending ops list for this file
-        LinkedList<Operation> pendingOperations = pendingFileOperations.get(op.getFileName());
-
-        // if not then we create an ops list for the file and add the file to
-        // the work items list
-        if (pendingOperations == null) {
-            pendingOperations = new LinkedList<Operation>();
-            pendingFileOperations.put(op.getFileName(), pendingOperations);
-
-            // add the file to the correct list based on what type of work we
-            // are adding.  (if we aren't prioritizing then every file is counted as
-            // signficant
-            if (!m_prioritizeSignificantUpdates || op.isSignificant())
-                filesWithSignificantWork.addLast(op.getFileName());
-            else
-                filesWithInsignificantWork.addLast(op.getFileName());
-        } else if (m_prioritizeSignificantUpdates && op.isSignificant() && hasOnlyInsignificant(pendingOperations)) {
-            // only do this when we are prioritizing as this bumps files from inSig
-            // up to insig
-            // promote the file to the significant list if this is the first
-            // significant
-            filesWithSignificantWork.addLast(op.getFileName());
+    private void storeAssignment(Operation op) {
+        while (true) {
+            // look and see if there a pending ops list for this file
+            FileQueue fileQueue = pendingFileOperations.get(op.getFileName());
+
+            // if not then we create an ops list for the file
+            if (fileQueue == null) {
+                final FileQueue created = new FileQueue(op.getFileName());
+                fileQueue = pendingFileOperations.putIfAbsent(op.getFileName(), created);
+                if (fileQueue == null) {
+                    fileQueue = created;
+                }
+            }
+
+            synchronized (fileQueue) {
+                if (fileQueue.retired) {
+                    // a write thread just finished with the file and dropped it, start over
+                    continue;
+                }
+
+                op.addToPendingList(fileQueue.operations);
+
+                if (fileQueue.owned) {
+                    // the thread writing the file reschedules it in completeAssignment
+                } else if (!fileQueue.scheduled) {
+                    // add the file to the correct list based on what type of work we
+                    // are adding.  (if we aren't prioritizing then every file is counted as
+                    // signficant
+                    schedule(fileQueue, !m_prioritizeSignificantUpdates || op.isSignificant(), false);
+                } else if (m_prioritizeSignificantUpdates && op.isSignificant() && !fileQueue.scheduledSignificant) {
+                    // only do this when we are prioritizing as this bumps files from inSig
+                    // up to sig
+                    // promote the file to the significant list if this is the first
+                    // significant
+                    schedule(fileQueue, true, false);
+                }
+            }
+            break;
         }
 
         promoteAgedFiles();
+    }
 
-        op.addToPendingList(pendingOperations);
+    /**
+     * Put a file on one of the ready queues.  Must be called holding the
+     * FileQueue's monitor.
+     */
+    private void schedule(FileQueue fileQueue, boolean significant, boolean first) {
+        final BlockingDeque<FileQueue> readyQueue = significant ? filesWithSignificantWork : filesWithInsignificantWork;
+        fileQueue.scheduled = true;
+        fileQueue.scheduledSignificant |= significant;
+        if (first) {
+            readyQueue.offerFirst(fileQueue);
+        } else {
+            readyQueue.offerLast(fileQueue);
+        }
+        m_readyFiles.release();
     }
 
     /**
@@ -837,7 +1001,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * necessary
      * 
      */
-    private synchronized void promoteAgedFiles() {
+    private void promoteAgedFiles() {
         
         // no need to do this is we aren't prioritizing
         if (!m_prioritizeSignificantUpdates) return;
@@ -853,88 +1017,120 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         // calculate the milliseconds between promotions necessary to age
         // insignificant files into
         // the significant queue
-        double millisPerPromotion = ((m_maxInsigUpdateSeconds * 1000.0) / filesWithInsignificantWork.size());
+        double millisPerPromotion = ((m_maxInsigUpdateSeconds * 1000.0) / Math.max(filesWithInsignificantWork.size(), 1));
 
         // calculate the number of millis since start until the next file needs
         // to be promotoed
         long nextPromotionMillis = (long) (millisPerPromotion * getPromotionCount());
 
         // if more time has elapsed than the next promotion time then promote a
-        // file
+        // file; the entry keeps its ready permit since it only changes queues
         if (elapsedMillis > nextPromotionMillis) {
-            String file = filesWithInsignificantWork.removeFirst();
-            filesWithSignificantWork.addFirst(file);
-            setPromotionCount(getPromotionCount() + 1);
+            FileQueue file = filesWithInsignificantWork.pollFirst();
+            if (file != null) {
+                synchronized (file) {
+                    file.scheduledSignificant = true;
+                }
+                filesWithSignificantWork.offerFirst(file);
+                m_promotionCount.incrementAndGet();
+            }
         }
 
     }
     
     /** {@inheritDoc} */
     @Override
-    public synchronized void promoteEnqueuedFiles(Collection<String> rrdFiles) {
-        filesWithSignificantWork.addAll(0, rrdFiles);
-        m_delegate.promoteEnqueuedFiles(rrdFiles);
-    }
-
-    /**
-     * Return true if and only if all the operations in the list are
-     * insignificant
-     */
-    private boolean hasOnlyInsignificant(LinkedList<Operation> pendingOps) {
-        for(Operation op : pendingOps) {
-            if (op.isSignificant()) {
-                return false;
+    public void promoteEnqueuedFiles(Collection<String> rrdFiles) {
+        // walk backwards so the files end up at the head in the order given
+        final List<String> files = new ArrayList<String>(rrdFiles);
+        for (ListIterator<String> it = files.listIterator(files.size()); it.hasPrevious();) {
+            final FileQueue fileQueue = pendingFileOperations.get(it.previous());
+            if (fileQueue == null) {
+                continue;
+            }
+            synchronized (fileQueue) {
+                if (fileQueue.scheduled) {
+                    schedule(fileQueue, true, true);
+                }
             }
         }
-        return true;
+        m_delegate.promoteEnqueuedFiles(rrdFiles);
     }
 
     /**
      * register the file that the currentThread is be working on. This enables
      * us to ensure that another thread doesn't try to work on operations for
-     * that file.  Note: this is not synchronized as it is called from getNext which
-     * is thread safe
+     * that file.
+     *
+     * @return the file's operations, or null if the ready queue entry was
+     *         stale because another thread already claimed the file
      */
-    private LinkedList<Operation> takeAssignment(String newAssignment) {
+    private LinkedList<Operation> takeAssignment(FileQueue newAssignment) {
+        final LinkedList<Operation> ops;
+        synchronized (newAssignment) {
+            if (!newAssignment.scheduled) {
+                return null;
+            }
 
-        // make the file as reserved by the current thread
-        fileAssignments.put(Thread.currentThread(), newAssignment);
-        reservedFiles.add(newAssignment);
+            // mark the file as reserved by the current thread
+            newAssignment.scheduled = false;
+            newAssignment.scheduledSignificant = false;
+            newAssignment.owned = true;
 
-        // get the assignments work list and return it
-        return pendingFileOperations.remove(newAssignment);
+            // get the assignments work list and return it
+            ops = newAssignment.operations;
+            newAssignment.operations = new LinkedList<Operation>();
+        }
+        m_assignment.set(newAssignment);
+        return ops;
     }
 
     /**
-     * Return the name of the next file with available work
-     */
-    private String selectNewAssignment() {
-        for (Iterator<String> it = filesWithSignificantWork.iterator(); it.hasNext();) {
-            String fn = it.next();
-            if (!reservedFiles.contains(fn)) {
-                it.remove();
-                return fn;
-            }
+     * Record that fact that the current thread has finished process operations
+     * for its current assignment
+     */
+    private void completeAssignment() {
+        // remove any existing reservation of the current thread
+        final FileQueue previousAssignment = m_assignment.get();
+        if (previousAssignment == null) {
+            return;
         }
-        for (Iterator<String> it = filesWithInsignificantWork.iterator(); it.hasNext();) {
-            String fn = it.next();
-            if (!reservedFiles.contains(fn)) {
-                it.remove();
-                return fn;
+        m_assignment.remove();
+
+        synchronized (previousAssignment) {
+            previousAssignment.owned = false;
+            if (previousAssignment.operations.isEmpty()) {
+                previousAssignment.retired = true;
+                pendingFileOperations.remove(previousAssignment.fileName, previousAssignment);
+            } else {
+                // more work arrived while we were writing the file
+                schedule(previousAssignment, !m_prioritizeSignificantUpdates || previousAssignment.hasSignificant(), false);
             }
         }
-        return null;
+    }
+
+    void updateCompleted() {
+        if (m_updatesCompleted.incrementAndGet() % m_modulus == 0) {
+            logStats();
+        }
     }
 
     /**
-     * Record that fact that the current thread has finished process operations
-     * for its current assignment
+     * <p>getFilesWithSignificantWork</p>
+     *
+     * @return the number of entries in the significant ready queue.
      */
-    private synchronized void completeAssignment() {
-        // remove any existing reservation of the current thread
-        String previousAssignment = fileAssignments.remove(Thread.currentThread());
-        if (previousAssignment != null)
-            reservedFiles.remove(previousAssignment);
+    public long getFilesWithSignificantWork() {
+        return filesWithSignificantWork.size();
+    }
+
+    /**
+     * <p>getFilesWithInsignificantWork</p>
+     *
+     * @return the number of entries in the insignificant ready queue.
+     */
+    public long getFilesWithInsignificantWork() {
+        return filesWithInsignificantWork.size();
     }
 
     /**
@@ -1052,6 +1248,12 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         addOperation(makeUpdateOperation((String) rrdFile, owner, data));
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void updateFile(String rrdFile, String owner, long timestamp, double[] values) throws Exception {
+        addOperation(makeUpdateOperation(rrdFile, owner, timestamp, values));
+    }
+
     /** {@inheritDoc} */
     @Override
     public Double fetchLastValue(String rrdFile, String ds, int interval) throws NumberFormatException, RrdException {
@@ -1117,10 +1319,8 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 
             }
         } finally {
-            synchronized (this) {
-                threadsRunning--;
-                completeAssignment();
-            }
+            completeAssignment();
+            threadsRunning.decrementAndGet();
         }
     }
 
@@ -1140,7 +1340,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
             // while we are processing
             for(Operation op : ops) {
                 if (op.isSignificant()) {
-                	setSignificantOpsCompleted(getSignificantOpsCompleted() + 1);
+                	m_significantOpsCompleted.incrementAndGet();
                 }
 
             }
@@ -1150,11 +1350,14 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
                 rrd = op.process(rrd);
             }
         } catch (Throwable e) {
-            setErrors(getErrors() + 1);
+            m_errors.incrementAndGet();
             logLapTime("Error updating file " + fileName + ": " + e.getMessage());
             m_log.debug("Error updating file {}: {}", fileName, e.getMessage(), e);
         } finally {
             processClose(rrd);
+            // hand the file back right away so updates that arrived while we
+            // were writing don't wait for this thread's next turn
+            completeAssignment();
         }
     }
 
@@ -1177,7 +1380,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a {@link java.lang.String} object.
      */
     @Override
-    public String getStats() {
+    public synchronized String getStats() {
         long now = System.currentTimeMillis();
 
         long currentElapsedMillis = Math.max(now - lastStatsTime, 1);
@@ -1325,7 +1528,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getTotalOperationsPending() {
-		return m_totalOperationsPending;
+		return m_totalOperationsPending.get();
 	}
 
 	/**
@@ -1334,7 +1537,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param totalOperationsPending a long.
 	 */
 	public void setTotalOperationsPending(long totalOperationsPending) {
-		m_totalOperationsPending = totalOperationsPending;
+		m_totalOperationsPending.set(totalOperationsPending);
 	}
 
 	/**
@@ -1343,7 +1546,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getCreatesCompleted() {
-		return m_createsCompleted;
+		return m_createsCompleted.get();
 	}
 
 	/**
@@ -1352,7 +1555,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param createsCompleted a long.
 	 */
 	public void setCreatesCompleted(long createsCompleted) {
-		m_createsCompleted = createsCompleted;
+		m_createsCompleted.set(createsCompleted);
 	}
 
 	/**
@@ -1361,7 +1564,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getUpdatesCompleted() {
-		return m_updatesCompleted;
+		return m_updatesCompleted.get();
 	}
 
 	/**
@@ -1370,7 +1573,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param updatesCompleted a long.
 	 */
 	public void setUpdatesCompleted(long updatesCompleted) {
-		m_updatesCompleted = updatesCompleted;
+		m_updatesCompleted.set(updatesCompleted);
 	}
 
 	/**
@@ -1379,7 +1582,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getErrors() {
-		return m_errors;
+		return m_errors.get();
 	}
 
 	/**
@@ -1388,7 +1591,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param errors a long.
 	 */
 	public void setErrors(long errors) {
-		m_errors = errors;
+		m_errors.set(errors);
 	}
 
 	/**
@@ -1397,7 +1600,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getPromotionCount() {
-		return m_promotionCount;
+		return m_promotionCount.get();
 	}
 
 	/**
@@ -1406,7 +1609,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param promotionCount a long.
 	 */
 	public void setPromotionCount(long promotionCount) {
-		m_promotionCount = promotionCount;
+		m_promotionCount.set(promotionCount);
 	}
 
 	/**
@@ -1415,7 +1618,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getSignificantOpsEnqueued() {
-		return m_significantOpsEnqueued;
+		return m_significantOpsEnqueued.get();
 	}
 
 	/**
@@ -1424,7 +1627,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param significantOpsEnqueued a long.
 	 */
 	public void setSignificantOpsEnqueued(long significantOpsEnqueued) {
-		m_significantOpsEnqueued = significantOpsEnqueued;
+		m_significantOpsEnqueued.set(significantOpsEnqueued);
 	}
 
 	/**
@@ -1433,7 +1636,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getSignificantOpsDequeued() {
-		return m_significantOpsDequeued;
+		return m_significantOpsDequeued.get();
 	}
 
 	/**
@@ -1442,7 +1645,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param significantOpsDequeued a long.
 	 */
 	public void setSignificantOpsDequeued(long significantOpsDequeued) {
-		m_significantOpsDequeued = significantOpsDequeued;
+		m_significantOpsDequeued.set(significantOpsDequeued);
 	}
 
 	/**
@@ -1451,7 +1654,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getEnqueuedOperations() {
-		return m_enqueuedOperations;
+		return m_enqueuedOperations.get();
 	}
 
 	/**
@@ -1460,7 +1663,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param enqueuedOperations a long.
 	 */
 	public void setEnqueuedOperations(long enqueuedOperations) {
-		m_enqueuedOperations = enqueuedOperations;
+		m_enqueuedOperations.set(enqueuedOperations);
 	}
 
 	/**
@@ -1469,7 +1672,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getDequeuedOperations() {
-		return m_dequeuedOperations;
+		return m_dequeuedOperations.get();
 	}
 
 	/**
@@ -1478,7 +1681,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param dequeuedOperations a long.
 	 */
 	public void setDequeuedOperations(long dequeuedOperations) {
-		m_dequeuedOperations = dequeuedOperations;
+		m_dequeuedOperations.set(dequeuedOperations);
 	}
 
 	/**
@@ -1487,7 +1690,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getDequeuedItems() {
-		return m_dequeuedItems;
+		return m_dequeuedItems.get();
 	}
 
 	/**
@@ -1496,7 +1699,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param dequeuedItems a long.
 	 */
 	public void setDequeuedItems(long dequeuedItems) {
-		m_dequeuedItems = dequeuedItems;
+		m_dequeuedItems.set(dequeuedItems);
 	}
 
 	/**
@@ -1505,7 +1708,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getSignificantOpsCompleted() {
-		return m_significantOpsCompleted;
+		return m_significantOpsCompleted.get();
 	}
 
 	/**
@@ -1514,7 +1717,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param significantOpsCompleted a long.
 	 */
 	public void setSignificantOpsCompleted(long significantOpsCompleted) {
-		m_significantOpsCompleted = significantOpsCompleted;
+		m_significantOpsCompleted.set(significantOpsCompleted);
 	}
 
 	/**
@@ -1523,7 +1726,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getStartTime() {
-		return m_startTime;
+		return m_startTime.get();
 	}
 
 	/**
@@ -1532,7 +1735,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param updateStart a long.
 	 */
 	public void setStartTime(long updateStart) {
-		m_startTime = updateStart;
+		m_startTime.set(updateStart);
 	}
 
 
@@ -0,0 +1,240 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.rrd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.opennms.netmgt.rrd.QueuingRrdStrategy.Operation;
+import org.opennms.netmgt.rrd.QueuingRrdStrategy.ZeroUpdateOperation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class QueuingRrdStrategyTest {
+    private static final Logger LOG = LoggerFactory.getLogger(QueuingRrdStrategyTest.class);
+
+    /**
+     * Updates sent by each producer in {@link #testThroughputByWriteThreads()}.
+     * The throughput is only measured and logged when this is set.
+     */
+    private static final int BENCHMARK_UPDATES = Integer.getInteger("org.opennms.rrd.queuing.benchmarkUpdates", 0);
+
+    /**
+     * A delegate that writes nothing, but records the timestamps written to
+     * each file and notices if two threads ever have the same file open.
+     */
+    private static class NoOpDelegate implements InvocationHandler {
+        final Map<String, List<Long>> m_updates = new ConcurrentHashMap<String, List<Long>>();
+        final Map<String, Thread> m_open = new ConcurrentHashMap<String, Thread>();
+        final AtomicInteger m_overlaps = new AtomicInteger();
+        final boolean m_record;
+
+        NoOpDelegate(boolean record) {
+            m_record = record;
+        }
+
+        @SuppressWarnings("unchecked")
+        RrdStrategy<Object, Object> getStrategy() {
+            return (RrdStrategy<Object, Object>) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { RrdStrategy.class }, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            final String name = method.getName();
+            if ("openFile".equals(name)) {
+                if (m_record && m_open.put((String) args[0], Thread.currentThread()) != null) {
+                    m_overlaps.incrementAndGet();
+                }
+                return args[0];
+            } else if ("closeFile".equals(name)) {
+                if (m_record) {
+                    m_open.remove(args[0]);
+                }
+            } else if ("updateFile".equals(name) && m_record && args.length == 4) {
+                // only ever touched by the thread that owns the file
+                List<Long> updates = m_updates.get(args[0]);
+                if (updates == null) {
+                    updates = new ArrayList<Long>();
+                    m_updates.put((String) args[0], updates);
+                }
+                updates.add((Long) args[2]);
+            }
+            return null;
+        }
+    }
+
+    private static QueuingRrdStrategy createStrategy(NoOpDelegate delegate, int writeThreads) {
+        QueuingRrdStrategy strategy = new QueuingRrdStrategy(delegate.getStrategy());
+        strategy.setWriteThreads(writeThreads);
+        strategy.setPrioritizeSignificantUpdates(true);
+        strategy.setModulus(Long.MAX_VALUE);
+        strategy.setWriteThreadSleepTime(10);
+        strategy.setWriteThreadExitDelay(500);
+        return strategy;
+    }
+
+    private static void waitForUpdates(QueuingRrdStrategy strategy, long expected) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + 60000;
+        while (strategy.getUpdatesCompleted() < expected && System.currentTimeMillis() < timeout) {
+            Thread.sleep(5);
+        }
+        assertEquals("updates completed", expected, strategy.getUpdatesCompleted());
+    }
+
+    @Test
+    public void testUpdatesForAFileAreWrittenInOrderByOneThreadAtATime() throws Exception {
+        final NoOpDelegate delegate = new NoOpDelegate(true);
+        final QueuingRrdStrategy strategy = createStrategy(delegate, 8);
+
+        final int files = 100;
+        final int updatesPerFile = 50;
+        for (int ts = 1; ts <= updatesPerFile; ts++) {
+            for (int file = 0; file < files; file++) {
+                strategy.updateFile("file" + file, "test", ts, new double[] { ts });
+            }
+        }
+
+        waitForUpdates(strategy, files * updatesPerFile);
+        assertEquals("files open on two threads at once", 0, delegate.m_overlaps.get());
+        assertEquals(files, delegate.m_updates.size());
+        for (List<Long> updates : delegate.m_updates.values()) {
+            assertEquals(updatesPerFile, updates.size());
+            for (int i = 0; i < updatesPerFile; i++) {
+                assertEquals(Long.valueOf(i + 1), updates.get(i));
+            }
+        }
+        assertEquals(0, strategy.getTotalOperationsPending());
+    }
+
+    @Test
+    public void testZeroUpdatesAreCoalesced() throws Exception {
+        // no write threads, so we can look at the queue
+        final QueuingRrdStrategy strategy = createStrategy(new NoOpDelegate(false), 0);
+
+        for (int i = 0; i < 10; i++) {
+            strategy.updateFile("zeros", "test", 1000 + 300 * i, new double[] { 0.0 });
+        }
+        strategy.updateFile("nonzero", "test", 1000, new double[] { 1.0 });
+
+        assertEquals(11, strategy.getTotalOperationsPending());
+        assertEquals(1, strategy.getFilesWithSignificantWork());
+        assertEquals(1, strategy.getFilesWithInsignificantWork());
+
+        // the significant file comes first
+        LinkedList<Operation> ops = strategy.getNext();
+        assertEquals("nonzero", ops.getFirst().getFileName());
+
+        ops = strategy.getNext();
+        assertEquals(1, ops.size());
+        ZeroUpdateOperation zeros = (ZeroUpdateOperation) ops.getFirst();
+        assertEquals(10, zeros.getCount());
+        assertEquals(1000, zeros.getFirstTimeStamp());
+        assertEquals(1000 + 300 * 9, zeros.getLastTimeStamp());
+        assertEquals(0, strategy.getTotalOperationsPending());
+    }
+
+    @Test
+    public void testHighWaterMarkDiscardsOperations() throws Exception {
+        final QueuingRrdStrategy strategy = createStrategy(new NoOpDelegate(false), 0);
+        strategy.setQueueHighWaterMark(5);
+
+        for (int i = 0; i < 10; i++) {
+            strategy.updateFile("file" + i, "test", 1000, new double[] { 1.0 });
+        }
+
+        assertEquals(5, strategy.getTotalOperationsPending());
+        assertEquals(5, strategy.getEnqueuedOperations());
+    }
+
+    /**
+     * Checks every update from several producers is written whatever the
+     * number of write threads.  With a benchmark size set it is also enough,
+     * though not a real benchmark, to see how enqueue/dequeue throughput
+     * scales with the number of write threads when the writes themselves cost
+     * nothing.
+     */
+    @Test
+    public void testThroughputByWriteThreads() throws Exception {
+        final int producers = 4;
+        final int files = 10000;
+        final int updatesPerProducer = BENCHMARK_UPDATES > 0 ? BENCHMARK_UPDATES : 500;
+        final int[] writeThreadCounts = BENCHMARK_UPDATES > 0 ? new int[] { 1, 2, 4, 8, 16 } : new int[] { 1, 4 };
+
+        for (int writeThreads : writeThreadCounts) {
+            final QueuingRrdStrategy strategy = createStrategy(new NoOpDelegate(false), writeThreads);
+            final CountDownLatch start = new CountDownLatch(1);
+            final List<Thread> threads = new ArrayList<Thread>();
+            for (int p = 0; p < producers; p++) {
+                final int producer = p;
+                Thread thread = new Thread("producer-" + p) {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                            double[] values = new double[] { 1.0 };
+                            for (int i = 0; i < updatesPerProducer; i++) {
+                                strategy.updateFile("file" + ((i * producers + producer) % files), "test", i, values);
+                            }
+                        } catch (Exception e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+                };
+                thread.start();
+                threads.add(thread);
+            }
+
+            long begin = System.nanoTime();
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            waitForUpdates(strategy, producers * updatesPerProducer);
+            long elapsed = System.nanoTime() - begin;
+
+            if (BENCHMARK_UPDATES > 0) {
+                LOG.info("{} write threads: {} ops in {}ms ({} ops/sec)", writeThreads, producers * updatesPerProducer, elapsed / 1000000, String.format("%.0f", producers * updatesPerProducer * 1000000000.0 / elapsed));
+            }
+            assertTrue(strategy.getDequeuedItems() > 0);
+        }
+    }
+}
@@ -63,6 +63,11 @@ import org.slf4j.LoggerFactory;
  * FILE mode (NIO is too memory consuming for the large number of files that we
  * open)
  *
+ * If org.opennms.rrd.jrobin.cache.maxOpenFiles is set, handles are kept open
+ * in an {@link RrdDbCache} between updates, bounded by that number of files
+ * and by org.opennms.rrd.jrobin.cache.maxMemory bytes; this also keeps the
+ * memory used by the NIO backends fixed.
+ *
  * @author ranger
  * @version $Id: $
  */
@@ -70,6 +75,10 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
     private static final Logger LOG = LoggerFactory.getLogger(JRobinRrdStrategy.class);
     private static final String BACKEND_FACTORY_PROPERTY = "org.jrobin.core.RrdBackendFactory";
     private static final String DEFAULT_BACKEND_FACTORY = "FILE";
+    private static final String CACHE_MAX_OPEN_FILES_PROPERTY = "org.opennms.rrd.jrobin.cache.maxOpenFiles";
+    private static final String CACHE_MAX_MEMORY_PROPERTY = "org.opennms.rrd.jrobin.cache.maxMemory";
+    private static final String CACHE_IDLE_TIMEOUT_PROPERTY = "org.opennms.rrd.jrobin.cache.idleTimeout";
+    private static final long DEFAULT_CACHE_IDLE_TIMEOUT = 300000L;
 
     /*
      * Ensure that we only initialize certain things *once* per
@@ -79,6 +88,12 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
 
     private Properties m_configurationProperties;
 
+    /**
+     * Open handles kept between updates, or null if every update opens and
+     * closes the file.
+     */
+    private RrdDbCache m_cache;
+
     /**
      * An extremely simple Plottable for holding static datasources that
      * can't be represented with an SDEF -- currently used only for PERCENT
@@ -135,6 +150,29 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
                 LOG.error("Could not set default JRobin RRD factory", e);
             }
         }
+
+        if (m_cache != null) {
+            m_cache.close();
+            m_cache = null;
+        }
+        if (m_configurationProperties != null) {
+            final int maxOpenFiles = Integer.parseInt(m_configurationProperties.getProperty(CACHE_MAX_OPEN_FILES_PROPERTY, "0"));
+            if (maxOpenFiles > 0) {
+                final long maxMemory = Long.parseLong(m_configurationProperties.getProperty(CACHE_MAX_MEMORY_PROPERTY, "0"));
+                final long idleTimeout = Long.parseLong(m_configurationProperties.getProperty(CACHE_IDLE_TIMEOUT_PROPERTY, String.valueOf(DEFAULT_CACHE_IDLE_TIMEOUT)));
+                LOG.info("Caching up to {} open RRD files ({} bytes, {}ms idle timeout)", maxOpenFiles, maxMemory, idleTimeout);
+                m_cache = new RrdDbCache(maxOpenFiles, maxMemory, idleTimeout);
+            }
+        }
+    }
+
+    /**
+     * <p>getCache</p>
+     *
+     * @return the cache of open RrdDb handles, or null if caching is disabled
+     */
+    public RrdDbCache getCache() {
+        return m_cache;
     }
 
     /**
@@ -145,7 +183,11 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
      */
     @Override
     public void closeFile(final RrdDb rrdFile) throws Exception {
-        rrdFile.close();
+        if (m_cache == null) {
+            rrdFile.close();
+        } else {
+            m_cache.release(rrdFile);
+        }
     }
 
     /** {@inheritDoc} */
@@ -200,6 +242,11 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
         }
         LOG.info("createRRD: creating RRD file {}", rrdDef.getPath());
 
+        if (m_cache != null) {
+            // don't keep writing to a handle for the file we are replacing
+            m_cache.evict(rrdDef.getPath());
+        }
+
         RrdDb rrd = new RrdDb(rrdDef);
         rrd.close();
 
@@ -216,10 +263,14 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
     /**
      * {@inheritDoc}
      *
-     * Opens the JRobin RrdDb by name and returns it.
+     * Opens the JRobin RrdDb by name and returns it, reusing an already
+     * open handle if caching is enabled.
      */
     @Override
     public RrdDb openFile(final String fileName) throws Exception {
+        if (m_cache != null) {
+            return m_cache.acquire(fileName);
+        }
         RrdDb rrd = new RrdDb(fileName);
         return rrd;
     }
@@ -235,6 +286,19 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
         sample.setAndUpdate(data);
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Creates a sample from the JRobin RrdDb and sets the values directly,
+     * skipping the string parsing done by {@link Sample#setAndUpdate(String)}.
+     */
+    @Override
+    public void updateFile(final RrdDb rrdFile, final String owner, final long timestamp, final double[] values) throws Exception {
+        Sample sample = rrdFile.createSample(timestamp);
+        sample.setValues(values);
+        sample.update();
+    }
+
     /**
      * Initialized the RrdDb to use the FILE factory because the NIO factory
      * uses too much memory for our implementation.
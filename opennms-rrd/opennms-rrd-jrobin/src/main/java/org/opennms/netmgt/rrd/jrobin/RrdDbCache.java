@@ -0,0 +1,356 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.rrd.jrobin;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.jrobin.core.RrdDb;
+import org.jrobin.core.RrdException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded, least-recently-used cache of open {@link RrdDb} handles.
+ *
+ * Opening an RrdDb reads and validates the header, datasource and archive
+ * definitions of the file, which costs more than the update itself for the
+ * typical one-sample write.  Keeping the handles for recently written files
+ * open lets repeated updates to the same file skip that work.
+ *
+ * The cache is bounded by the number of open files and by the total size of
+ * the open files (a fair estimate of the memory used by the NIO backends),
+ * and handles that have not been used for the idle timeout are closed.  A
+ * handle is only ever lent to one caller at a time; if a second caller asks
+ * for a file that is already in use it gets a private handle that is closed
+ * when it is released.
+ */
+public class RrdDbCache {
+    private static final Logger LOG = LoggerFactory.getLogger(RrdDbCache.class);
+
+    private static class Entry {
+        final String path;
+        final RrdDb rrdDb;
+        final long size;
+        boolean inUse = false;
+        long lastUsed = System.currentTimeMillis();
+
+        Entry(String path, RrdDb rrdDb, long size) {
+            this.path = path;
+            this.rrdDb = rrdDb;
+            this.size = size;
+        }
+    }
+
+    private final int m_maxOpenFiles;
+    private final long m_maxMemory;
+    private final long m_idleTimeout;
+
+    /** all cached entries, least recently used first */
+    private final LinkedHashMap<String, Entry> m_entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    /** cached entries that are currently lent out */
+    private final Map<RrdDb, Entry> m_inUse = new IdentityHashMap<RrdDb, Entry>();
+
+    private final Timer m_timer;
+
+    private long m_memory = 0;
+    private long m_hits = 0;
+    private long m_misses = 0;
+    private long m_evictions = 0;
+
+    /**
+     * <p>Constructor for RrdDbCache.</p>
+     *
+     * @param maxOpenFiles the maximum number of handles to keep open
+     * @param maxMemory the maximum total size in bytes of the open files, or 0 for no limit
+     * @param idleTimeout the number of milliseconds after which an unused handle is closed, or 0 to never close idle handles
+     */
+    public RrdDbCache(final int maxOpenFiles, final long maxMemory, final long idleTimeout) {
+        m_maxOpenFiles = maxOpenFiles;
+        m_maxMemory = maxMemory;
+        m_idleTimeout = idleTimeout;
+
+        if (m_idleTimeout > 0) {
+            m_timer = new Timer("JRobin-RrdDbCache", true);
+            final long period = Math.max(m_idleTimeout / 2, 1000);
+            m_timer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    evictIdle();
+                }
+            }, period, period);
+        } else {
+            m_timer = null;
+        }
+    }
+
+    /**
+     * Returns an open handle for the given file, reusing a cached one when
+     * possible.  Every handle returned must be given back with
+     * {@link #release(RrdDb)}.
+     *
+     * @param path the path of the RRD file
+     * @return an open {@link RrdDb}
+     * @throws IOException if the file could not be opened
+     * @throws RrdException if the file is not a valid RRD
+     */
+    public RrdDb acquire(final String path) throws IOException, RrdException {
+        synchronized (this) {
+            final Entry entry = m_entries.get(path);
+            if (entry != null && !entry.inUse) {
+                entry.inUse = true;
+                m_inUse.put(entry.rrdDb, entry);
+                m_hits++;
+                return entry.rrdDb;
+            }
+            m_misses++;
+            if (entry != null) {
+                // someone else is writing this file, give the caller a private handle
+                return new RrdDb(path);
+            }
+        }
+
+        // open outside the lock, this is the expensive part
+        final RrdDb rrdDb = new RrdDb(path);
+        final Entry entry = new Entry(path, rrdDb, new File(path).length());
+        entry.inUse = true;
+
+        final List<Entry> evicted;
+        synchronized (this) {
+            if (m_entries.containsKey(path)) {
+                // lost a race to open the same file, keep ours private
+                return rrdDb;
+            }
+            m_entries.put(path, entry);
+            m_inUse.put(rrdDb, entry);
+            m_memory += entry.size;
+            evicted = evictOverBudget();
+        }
+        closeAll(evicted);
+        return rrdDb;
+    }
+
+    /**
+     * Gives back a handle obtained from {@link #acquire(String)}.  Cached
+     * handles stay open; private ones are closed.
+     *
+     * @param rrdDb the handle to release
+     * @throws IOException if a private handle could not be closed
+     */
+    public void release(final RrdDb rrdDb) throws IOException {
+        final List<Entry> evicted;
+        synchronized (this) {
+            final Entry entry = m_inUse.remove(rrdDb);
+            if (entry != null) {
+                entry.inUse = false;
+                entry.lastUsed = System.currentTimeMillis();
+                evicted = evictOverBudget();
+            } else {
+                evicted = null;
+            }
+        }
+        if (evicted == null) {
+            rrdDb.close();
+        } else {
+            closeAll(evicted);
+        }
+    }
+
+    /**
+     * Drops and closes the cached handle for a file, if it is not in use.
+     * Used when a file is about to be (re)created underneath the cache.
+     *
+     * @param path the path of the RRD file
+     */
+    public void evict(final String path) {
+        Entry entry;
+        synchronized (this) {
+            entry = m_entries.get(path);
+            if (entry == null || entry.inUse) {
+                return;
+            }
+            remove(entry);
+        }
+        closeQuietly(entry);
+    }
+
+    /**
+     * Closes all handles that have not been used for the idle timeout.
+     */
+    public void evictIdle() {
+        final List<Entry> evicted = new ArrayList<Entry>();
+        synchronized (this) {
+            final long cutoff = System.currentTimeMillis() - m_idleTimeout;
+            final Iterator<Entry> it = m_entries.values().iterator();
+            while (it.hasNext()) {
+                final Entry entry = it.next();
+                if (entry.inUse) {
+                    continue;
+                }
+                if (entry.lastUsed > cutoff) {
+                    // entries are in access order, the rest are newer
+                    break;
+                }
+                it.remove();
+                m_memory -= entry.size;
+                m_evictions++;
+                evicted.add(entry);
+            }
+        }
+        closeAll(evicted);
+    }
+
+    /**
+     * Closes every handle that is not in use and stops the idle timer.
+     */
+    public void close() {
+        if (m_timer != null) {
+            m_timer.cancel();
+        }
+        final List<Entry> evicted = new ArrayList<Entry>();
+        synchronized (this) {
+            final Iterator<Entry> it = m_entries.values().iterator();
+            while (it.hasNext()) {
+                final Entry entry = it.next();
+                if (!entry.inUse) {
+                    it.remove();
+                    m_memory -= entry.size;
+                    evicted.add(entry);
+                }
+            }
+        }
+        closeAll(evicted);
+    }
+
+    /**
+     * Must be called holding the lock.  Removes least recently used handles
+     * that are not in use until the cache is within its budget, returning
+     * them so they can be closed outside the lock.
+     */
+    private List<Entry> evictOverBudget() {
+        List<Entry> evicted = null;
+        final Iterator<Entry> it = m_entries.values().iterator();
+        while (overBudget() && it.hasNext()) {
+            final Entry entry = it.next();
+            if (entry.inUse) {
+                continue;
+            }
+            it.remove();
+            m_memory -= entry.size;
+            m_evictions++;
+            if (evicted == null) {
+                evicted = new ArrayList<Entry>();
+            }
+            evicted.add(entry);
+        }
+        return evicted;
+    }
+
+    private boolean overBudget() {
+        return m_entries.size() > m_maxOpenFiles || (m_maxMemory > 0 && m_memory > m_maxMemory);
+    }
+
+    private void remove(final Entry entry) {
+        m_entries.remove(entry.path);
+        m_memory -= entry.size;
+        m_evictions++;
+    }
+
+    private static void closeAll(final List<Entry> entries) {
+        if (entries == null) {
+            return;
+        }
+        for (final Entry entry : entries) {
+            closeQuietly(entry);
+        }
+    }
+
+    private static void closeQuietly(final Entry entry) {
+        try {
+            entry.rrdDb.close();
+        } catch (final IOException e) {
+            LOG.warn("Failed to close cached rrd file: {}", entry.path, e);
+        }
+    }
+
+    /**
+     * <p>getOpenFiles</p>
+     *
+     * @return the number of cached handles, in use or not
+     */
+    public synchronized int getOpenFiles() {
+        return m_entries.size();
+    }
+
+    /**
+     * <p>getMemory</p>
+     *
+     * @return the total size in bytes of the files with cached handles
+     */
+    public synchronized long getMemory() {
+        return m_memory;
+    }
+
+    /**
+     * <p>getHits</p>
+     *
+     * @return the number of acquires served from the cache
+     */
+    public synchronized long getHits() {
+        return m_hits;
+    }
+
+    /**
+     * <p>getMisses</p>
+     *
+     * @return the number of acquires that had to open the file
+     */
+    public synchronized long getMisses() {
+        return m_misses;
+    }
+
+    /**
+     * <p>getEvictions</p>
+     *
+     * @return the number of handles closed to stay within budget or because they were idle
+     */
+    public synchronized long getEvictions() {
+        return m_evictions;
+    }
+}
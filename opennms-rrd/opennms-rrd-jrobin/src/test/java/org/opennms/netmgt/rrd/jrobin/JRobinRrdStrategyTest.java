@@ -173,6 +173,20 @@ public class JRobinRrdStrategyTest {
         m_strategy.closeFile(openedFile);
     }
 
+    @Test
+    public void testUpdateWithValues() throws Exception {
+        File rrdFile = createRrdFile();
+        long now = System.currentTimeMillis() / 1000;
+        
+        RrdDb openedFile = m_strategy.openFile(rrdFile.getAbsolutePath());
+        m_strategy.updateFile(openedFile, "huh?", now - 300, new double[] { Double.NaN });
+        m_strategy.updateFile(openedFile, "huh?", now, new double[] { 1.234234 });
+        
+        assertEquals("last update time", now, openedFile.getLastUpdateTime());
+        assertEquals("last value", 1.234234, openedFile.getDatasource(0).getLastValue(), 0.0);
+        m_strategy.closeFile(openedFile);
+    }
+
     @Test
     public void testSampleSetFloatingPointValueGood() throws Exception {
         File rrdFile = createRrdFile();
@@ -0,0 +1,256 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.rrd.jrobin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Properties;
+
+import org.jrobin.core.RrdDb;
+import org.jrobin.core.RrdDef;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class RrdDbCacheTest {
+    private static final Logger LOG = LoggerFactory.getLogger(RrdDbCacheTest.class);
+
+    private File m_tempDir;
+
+    @Before
+    public void setUp() throws Exception {
+        MockLogAppender.setupLogging(true, "INFO");
+
+        m_tempDir = File.createTempFile("RrdDbCacheTest", "");
+        m_tempDir.delete();
+        m_tempDir.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        final File[] files = m_tempDir.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                file.delete();
+            }
+        }
+        m_tempDir.delete();
+    }
+
+    private String createRrdFile(final String name) throws Exception {
+        final String path = new File(m_tempDir, name + ".jrb").getAbsolutePath();
+        final RrdDef def = new RrdDef(path);
+        def.setStartTime(1000);
+        def.setStep(300);
+        def.addDatasource("bar", "GAUGE", 600, Double.NaN, Double.NaN);
+        def.addArchive("AVERAGE", 0.5, 1, 288);
+        new RrdDb(def).close();
+        return path;
+    }
+
+    @Test
+    public void testHandleIsReused() throws Exception {
+        final String path = createRrdFile("foo");
+        final RrdDbCache cache = new RrdDbCache(10, 0, 0);
+
+        final RrdDb first = cache.acquire(path);
+        cache.release(first);
+        final RrdDb second = cache.acquire(path);
+        cache.release(second);
+
+        assertSame(first, second);
+        assertFalse(first.isClosed());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getOpenFiles());
+
+        cache.close();
+        assertTrue(first.isClosed());
+        assertEquals(0, cache.getOpenFiles());
+    }
+
+    @Test
+    public void testHandleInUseIsNotShared() throws Exception {
+        final String path = createRrdFile("foo");
+        final RrdDbCache cache = new RrdDbCache(10, 0, 0);
+
+        final RrdDb cached = cache.acquire(path);
+        final RrdDb other = cache.acquire(path);
+        assertNotSame(cached, other);
+
+        cache.release(other);
+        assertTrue("private handle should be closed on release", other.isClosed());
+        cache.release(cached);
+        assertFalse(cached.isClosed());
+
+        cache.close();
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() throws Exception {
+        final String foo = createRrdFile("foo");
+        final String bar = createRrdFile("bar");
+        final String baz = createRrdFile("baz");
+        final RrdDbCache cache = new RrdDbCache(2, 0, 0);
+
+        final RrdDb fooDb = cache.acquire(foo);
+        cache.release(fooDb);
+        final RrdDb barDb = cache.acquire(bar);
+        cache.release(barDb);
+        // touch foo so bar becomes the least recently used
+        cache.release(cache.acquire(foo));
+        cache.release(cache.acquire(baz));
+
+        assertEquals(2, cache.getOpenFiles());
+        assertEquals(1, cache.getEvictions());
+        assertTrue(barDb.isClosed());
+        assertFalse(fooDb.isClosed());
+
+        cache.close();
+    }
+
+    @Test
+    public void testMemoryBudget() throws Exception {
+        final String foo = createRrdFile("foo");
+        final String bar = createRrdFile("bar");
+        final RrdDbCache cache = new RrdDbCache(10, new File(foo).length(), 0);
+
+        cache.release(cache.acquire(foo));
+        cache.release(cache.acquire(bar));
+
+        assertEquals(1, cache.getOpenFiles());
+        assertEquals(new File(bar).length(), cache.getMemory());
+
+        cache.close();
+        assertEquals(0, cache.getMemory());
+    }
+
+    @Test
+    public void testIdleHandlesAreClosed() throws Exception {
+        final String path = createRrdFile("foo");
+        final RrdDbCache cache = new RrdDbCache(10, 0, 1);
+
+        final RrdDb rrdDb = cache.acquire(path);
+        cache.evictIdle();
+        assertFalse("handles in use are never evicted", rrdDb.isClosed());
+
+        cache.release(rrdDb);
+        Thread.sleep(10);
+        cache.evictIdle();
+        assertTrue(rrdDb.isClosed());
+        assertEquals(0, cache.getOpenFiles());
+
+        cache.close();
+    }
+
+    @Test
+    public void testStrategyUsesCache() throws Exception {
+        final String path = createRrdFile("foo");
+        final JRobinRrdStrategy strategy = new JRobinRrdStrategy();
+        final Properties props = new Properties();
+        props.setProperty("org.jrobin.core.RrdBackendFactory", "FILE");
+        props.setProperty("org.opennms.rrd.jrobin.cache.maxOpenFiles", "10");
+        strategy.setConfigurationProperties(props);
+
+        RrdDb rrdDb = strategy.openFile(path);
+        strategy.updateFile(rrdDb, "test", 1300, new double[] { 1.0 });
+        strategy.closeFile(rrdDb);
+        rrdDb = strategy.openFile(path);
+        strategy.updateFile(rrdDb, "test", 1600, new double[] { 2.0 });
+        strategy.closeFile(rrdDb);
+
+        assertEquals(1, strategy.getCache().getHits());
+
+        // the update is visible to an independent reader while the handle stays open
+        final RrdDb reader = new RrdDb(path, true);
+        assertEquals(1600, reader.getLastUpdateTime());
+        reader.close();
+
+        strategy.getCache().close();
+    }
+
+    /**
+     * A synthetic workload: a number of rounds of one update to each of many
+     * files, with and without the cache.  Only runs when asked for, with
+     * for example -Dorg.opennms.rrd.jrobin.cacheTest.files=100000.
+     */
+    @Test
+    public void testSyntheticWorkload() throws Exception {
+        final int fileCount = Integer.getInteger("org.opennms.rrd.jrobin.cacheTest.files", 0);
+        if (fileCount <= 0) {
+            return;
+        }
+        final int rounds = 3;
+
+        final String[] paths = new String[fileCount];
+        for (int i = 0; i < fileCount; i++) {
+            paths[i] = createRrdFile("file" + i);
+        }
+
+        runWorkload("no cache", 0, paths, rounds, 0);
+        runWorkload("cache all files", fileCount, paths, rounds, 1);
+        runWorkload("cache 10% of files", Math.max(fileCount / 10, 1), paths, rounds, 2);
+    }
+
+    private void runWorkload(final String name, final int maxOpenFiles, final String[] paths, final int rounds, final int pass) throws Exception {
+        final JRobinRrdStrategy strategy = new JRobinRrdStrategy();
+        final Properties props = new Properties();
+        props.setProperty("org.jrobin.core.RrdBackendFactory", "FILE");
+        props.setProperty("org.opennms.rrd.jrobin.cache.maxOpenFiles", String.valueOf(maxOpenFiles));
+        strategy.setConfigurationProperties(props);
+
+        final long begin = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            final long timestamp = 1000 + 300 * (pass * rounds + round + 1);
+            final double[] values = new double[] { round };
+            for (final String path : paths) {
+                final RrdDb rrdDb = strategy.openFile(path);
+                strategy.updateFile(rrdDb, "test", timestamp, values);
+                strategy.closeFile(rrdDb);
+            }
+        }
+        final long elapsed = System.nanoTime() - begin;
+
+        final int updates = paths.length * rounds;
+        LOG.info("{}, {} files: {} updates in {}ms ({} updates/sec)", name, paths.length, updates, elapsed / 1000000, String.format("%.0f", updates * 1000000000.0 / elapsed));
+        if (strategy.getCache() != null) {
+            LOG.info("{}: hits={} misses={} evictions={} open={} bytes={}", name, strategy.getCache().getHits(), strategy.getCache().getMisses(), strategy.getCache().getEvictions(), strategy.getCache().getOpenFiles(), strategy.getCache().getMemory());
+            strategy.getCache().close();
+        }
+    }
+}
@@ -34,6 +34,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -215,6 +216,38 @@ public class JniRrdStrategy implements RrdStrategy<JniRrdStrategy.CreateCommand
         rrd.append(data);
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Appends the values straight onto the pending update command instead of
+     * building an intermediate data string.  Unknown values are written as
+     * 'U' and integral values without a fraction or exponent, since rrdtool
+     * only accepts plain integers for COUNTER and DERIVE data sources.
+     */
+        @Override
+    public void updateFile(StringBuffer rrd, String owner, long timestamp, double[] values) throws Exception {
+        rrd.append(' ');
+        rrd.append(timestamp);
+        for (final double value : values) {
+            rrd.append(':');
+            appendValue(rrd, value);
+        }
+    }
+
+    private static void appendValue(StringBuffer buf, double value) {
+        if (Double.isNaN(value)) {
+            buf.append('U');
+        } else if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            if (Math.abs(value) < Long.MAX_VALUE) {
+                buf.append((long) value);
+            } else {
+                buf.append(new BigDecimal(value).toPlainString());
+            }
+        } else {
+            buf.append(value);
+        }
+    }
+
     /**
      * Initialized the JNI Interface
      *
@@ -0,0 +1,524 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.rrd.tcp;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.rrd.tcp.PerformanceDataProtos.PerformanceDataReadings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends {@link PerformanceDataReadings} batches to a remote receiver over a
+ * single persistent TCP connection.
+ * <p>
+ * Each batch is written with length-delimited framing (a varint length
+ * followed by the message, see <code>writeDelimitedTo</code>) so that the
+ * receiver can read any number of batches from the same stream with
+ * <code>parseDelimitedFrom</code>. Batches are written by a background
+ * thread; callers wait at most <code>offerTimeout</code> milliseconds for
+ * space in the queue while the receiver is connected.
+ * </p>
+ * <p>
+ * When the receiver is unreachable or the queue stays full, batches are
+ * appended to files in the spool directory (if one is configured) up to
+ * <code>maxSpoolSize</code> bytes, and everything beyond that is dropped.
+ * The connection is retried with exponential backoff and spooled data is
+ * replayed as soon as it is back. Delivery is at-least-once: a batch only
+ * counts as sent once the stream it was written to has been flushed to the
+ * socket, and batches that were written but not flushed when the connection
+ * failed are spooled or sent again after reconnecting, as is a spool file
+ * that was only partially sent. Data the operating system had already
+ * accepted for the socket when the connection failed is not sent again.
+ * </p>
+ */
+public class PerformanceDataExporter {
+    private static final Logger LOG = LoggerFactory.getLogger(PerformanceDataExporter.class);
+
+    private static final String SPOOL_PREFIX = "perfdata-";
+    private static final String SPOOL_SUFFIX = ".spool";
+    private static final long SPOOL_FILE_SIZE = 8L * 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String m_host;
+    private final int m_port;
+
+    private int m_queueSize = 1000;
+    private long m_offerTimeout = 500;
+    private int m_connectTimeout = 5000;
+    private long m_minBackoff = 1000;
+    private long m_maxBackoff = 60000;
+    private File m_spoolDirectory = null;
+    private long m_maxSpoolSize = 64L * 1024 * 1024;
+
+    private volatile BlockingQueue<byte[]> m_queue;
+    private volatile boolean m_running = false;
+    private volatile boolean m_connected = false;
+    private Thread m_writer;
+
+    // only used by the writer thread
+    private Socket m_socket;
+    private OutputStream m_out;
+    private final List<byte[]> m_unflushed = new ArrayList<byte[]>();
+    private long m_unflushedBytes = 0;
+
+    private final Object m_spoolLock = new Object();
+    private OutputStream m_spoolOut;
+    private long m_spoolFileSize = 0;
+    private long m_spoolSize = 0;
+    private int m_spoolSequence = 0;
+    private boolean m_dropping = false;
+
+    private final AtomicLong m_batchesSent = new AtomicLong();
+    private final AtomicLong m_bytesSent = new AtomicLong();
+    private final AtomicLong m_batchesSpooled = new AtomicLong();
+    private final AtomicLong m_batchesDropped = new AtomicLong();
+    private final AtomicLong m_connects = new AtomicLong();
+
+    public PerformanceDataExporter(final String host, final int port) {
+        m_host = host;
+        m_port = port;
+    }
+
+    public void setQueueSize(final int queueSize) {
+        m_queueSize = queueSize;
+    }
+
+    /**
+     * @param offerTimeout how long, in milliseconds, {@link #send} waits for
+     * room in the queue before spooling the batch
+     */
+    public void setOfferTimeout(final long offerTimeout) {
+        m_offerTimeout = offerTimeout;
+    }
+
+    public void setConnectTimeout(final int connectTimeout) {
+        m_connectTimeout = connectTimeout;
+    }
+
+    public void setMinBackoff(final long minBackoff) {
+        m_minBackoff = minBackoff;
+    }
+
+    public void setMaxBackoff(final long maxBackoff) {
+        m_maxBackoff = maxBackoff;
+    }
+
+    /**
+     * @param spoolDirectory where batches are kept while the receiver is
+     * unavailable, or null to drop them
+     */
+    public void setSpoolDirectory(final File spoolDirectory) {
+        m_spoolDirectory = spoolDirectory;
+    }
+
+    public void setMaxSpoolSize(final long maxSpoolSize) {
+        m_maxSpoolSize = maxSpoolSize;
+    }
+
+    public synchronized void start() {
+        if (m_running) {
+            return;
+        }
+        if (m_spoolDirectory != null) {
+            if (!m_spoolDirectory.isDirectory() && !m_spoolDirectory.mkdirs()) {
+                LOG.warn("Unable to create performance data spool directory {}, data will be dropped while {}:{} is unavailable", m_spoolDirectory, m_host, m_port);
+                m_spoolDirectory = null;
+            } else {
+                synchronized (m_spoolLock) {
+                    m_spoolSize = 0;
+                    for (final File file : listSpoolFiles()) {
+                        m_spoolSize += file.length();
+                    }
+                }
+                if (m_spoolSize > 0) {
+                    LOG.info("Found {} bytes of spooled performance data for {}:{}", m_spoolSize, m_host, m_port);
+                }
+            }
+        }
+
+        m_queue = new ArrayBlockingQueue<byte[]>(m_queueSize);
+        m_running = true;
+        m_writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, getClass().getSimpleName() + "-" + m_host + ":" + m_port);
+        m_writer.setDaemon(true);
+        m_writer.start();
+    }
+
+    /**
+     * Stops the writer thread. Batches that have not been written yet are
+     * spooled, or dropped if there is no spool directory.
+     */
+    public synchronized void stop() {
+        if (!m_running) {
+            return;
+        }
+        m_running = false;
+        m_writer.interrupt();
+        try {
+            m_writer.join(m_connectTimeout + 1000);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        final List<byte[]> remaining = new ArrayList<byte[]>();
+        m_queue.drainTo(remaining);
+        for (final byte[] frame : remaining) {
+            spool(frame);
+        }
+        synchronized (m_spoolLock) {
+            closeSpoolFile();
+        }
+    }
+
+    /**
+     * Queues a batch of readings for delivery.
+     *
+     * @return false if the batch had to be dropped
+     */
+    public boolean send(final PerformanceDataReadings readings) {
+        if (readings.getMessageCount() == 0) {
+            return true;
+        }
+        final byte[] frame = toFrame(readings);
+        if (m_running && m_connected) {
+            try {
+                if (m_queue.offer(frame, m_offerTimeout, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        } else if (m_running && m_queue.offer(frame)) {
+            // the writer picks it up, or spools it, once it knows whether the receiver is back
+            return true;
+        }
+        return spool(frame);
+    }
+
+    public int getQueueDepth() {
+        final BlockingQueue<byte[]> queue = m_queue;
+        return queue == null ? 0 : queue.size();
+    }
+
+    public boolean isConnected() {
+        return m_connected;
+    }
+
+    public long getBatchesSent() {
+        return m_batchesSent.get();
+    }
+
+    public long getBytesSent() {
+        return m_bytesSent.get();
+    }
+
+    public long getBatchesSpooled() {
+        return m_batchesSpooled.get();
+    }
+
+    public long getBatchesDropped() {
+        return m_batchesDropped.get();
+    }
+
+    public long getConnects() {
+        return m_connects.get();
+    }
+
+    public long getSpoolSize() {
+        synchronized (m_spoolLock) {
+            return m_spoolSize;
+        }
+    }
+
+    private static byte[] toFrame(final PerformanceDataReadings readings) {
+        final ByteArrayOutputStream frame = new ByteArrayOutputStream(readings.getSerializedSize() + 5);
+        try {
+            readings.writeDelimitedTo(frame);
+        } catch (final IOException e) {
+            // ByteArrayOutputStream does not throw
+            throw new IllegalStateException(e);
+        }
+        return frame.toByteArray();
+    }
+
+    private void writeLoop() {
+        long backoff = m_minBackoff;
+        // batches to send again, ahead of the queue, after the connection failed
+        final LinkedList<byte[]> resend = new LinkedList<byte[]>();
+        try {
+            while (m_running) {
+                try {
+                    if (m_socket == null) {
+                        connect();
+                        backoff = m_minBackoff;
+                        replaySpool();
+                    }
+
+                    byte[] frame = resend.poll();
+                    if (frame == null) {
+                        frame = m_queue.poll(1, TimeUnit.SECONDS);
+                    }
+                    if (frame != null) {
+                        m_unflushed.add(frame);
+                        m_unflushedBytes += frame.length;
+                        m_out.write(frame);
+                        // keep writing while there is more to send, flush once there isn't
+                        if ((resend.isEmpty() && m_queue.isEmpty()) || m_unflushedBytes >= BUFFER_SIZE) {
+                            flush();
+                        }
+                    } else if (getSpoolSize() > 0) {
+                        replaySpool();
+                    }
+                } catch (final IOException e) {
+                    if (m_connected) {
+                        LOG.warn("Lost connection to performance data receiver {}:{}, retrying in {}ms: {}", m_host, m_port, backoff, e.getMessage());
+                    } else {
+                        LOG.debug("Unable to connect to performance data receiver {}:{}, retrying in {}ms: {}", m_host, m_port, backoff, e.getMessage());
+                    }
+                    disconnect();
+
+                    // nothing written since the last flush is known to have left
+                    resend.addAll(0, m_unflushed);
+                    m_unflushed.clear();
+                    m_unflushedBytes = 0;
+
+                    // with a spool, don't hold on to data while we wait; without one, keep what is queued
+                    if (m_spoolDirectory != null) {
+                        for (final byte[] unsent : resend) {
+                            spool(unsent);
+                        }
+                        resend.clear();
+                        final List<byte[]> queued = new ArrayList<byte[]>();
+                        m_queue.drainTo(queued);
+                        for (final byte[] queuedFrame : queued) {
+                            spool(queuedFrame);
+                        }
+                    }
+
+                    Thread.sleep(backoff);
+                    backoff = Math.min(backoff * 2, m_maxBackoff);
+                }
+            }
+        } catch (final InterruptedException e) {
+            LOG.debug("Performance data writer for {}:{} interrupted", m_host, m_port);
+        } finally {
+            if (m_out != null) {
+                try {
+                    flush();
+                } catch (final IOException e) {
+                    LOG.debug("Unable to flush performance data to {}:{}: {}", m_host, m_port, e.getMessage());
+                }
+            }
+            for (final byte[] unsent : m_unflushed) {
+                spool(unsent);
+            }
+            m_unflushed.clear();
+            m_unflushedBytes = 0;
+            for (final byte[] unsent : resend) {
+                spool(unsent);
+            }
+            disconnect();
+        }
+    }
+
+    /**
+     * Flushes the batches written since the last flush and only then counts
+     * them as sent.
+     */
+    private void flush() throws IOException {
+        m_out.flush();
+        m_batchesSent.addAndGet(m_unflushed.size());
+        m_bytesSent.addAndGet(m_unflushedBytes);
+        m_unflushed.clear();
+        m_unflushedBytes = 0;
+    }
+
+    private void connect() throws IOException {
+        final Socket socket = new Socket();
+        try {
+            socket.setKeepAlive(true);
+            socket.connect(new InetSocketAddress(InetAddressUtils.addr(m_host), m_port), m_connectTimeout);
+            m_out = createOutputStream(socket);
+            m_socket = socket;
+        } catch (final IOException e) {
+            socket.close();
+            throw e;
+        }
+        m_connects.incrementAndGet();
+        m_connected = true;
+        LOG.info("Connected to performance data receiver {}:{}", m_host, m_port);
+    }
+
+    /**
+     * @return the stream batches are written to for a newly connected socket
+     */
+    protected OutputStream createOutputStream(final Socket socket) throws IOException {
+        return new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+    }
+
+    private void disconnect() {
+        m_connected = false;
+        if (m_socket != null) {
+            try {
+                m_socket.close();
+            } catch (final IOException e) {
+                LOG.debug("IOException when closing TCP performance data socket: {}", e.getMessage());
+            }
+        }
+        m_socket = null;
+        m_out = null;
+    }
+
+    /**
+     * Sends all complete spool files. Frames in the spool are already
+     * length-delimited, so the files are copied to the socket as they are.
+     */
+    private void replaySpool() throws IOException {
+        // the spool goes out after anything already written to the stream
+        flush();
+
+        final File[] files;
+        synchronized (m_spoolLock) {
+            if (m_spoolSize == 0) {
+                return;
+            }
+            closeSpoolFile();
+            files = listSpoolFiles();
+        }
+
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        for (final File file : files) {
+            final long length = file.length();
+            final InputStream in = new FileInputStream(file);
+            try {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    m_out.write(buffer, 0, read);
+                }
+            } finally {
+                in.close();
+            }
+            m_out.flush();
+            m_bytesSent.addAndGet(length);
+
+            if (!file.delete()) {
+                LOG.warn("Unable to delete replayed performance data spool file {}", file);
+            }
+            synchronized (m_spoolLock) {
+                m_spoolSize = Math.max(0, m_spoolSize - length);
+            }
+            LOG.debug("Replayed {} bytes of spooled performance data from {}", length, file);
+        }
+    }
+
+    private boolean spool(final byte[] frame) {
+        synchronized (m_spoolLock) {
+            if (m_spoolDirectory != null && m_spoolSize + frame.length <= m_maxSpoolSize) {
+                try {
+                    if (m_spoolOut == null || m_spoolFileSize >= SPOOL_FILE_SIZE) {
+                        closeSpoolFile();
+                        final File file = new File(m_spoolDirectory, String.format("%s%013d-%06d%s", SPOOL_PREFIX, System.currentTimeMillis(), m_spoolSequence++ % 1000000, SPOOL_SUFFIX));
+                        m_spoolOut = new FileOutputStream(file, true);
+                        m_spoolFileSize = 0;
+                    }
+                    m_spoolOut.write(frame);
+                    m_spoolFileSize += frame.length;
+                    m_spoolSize += frame.length;
+                    m_batchesSpooled.incrementAndGet();
+                    m_dropping = false;
+                    return true;
+                } catch (final IOException e) {
+                    LOG.warn("Unable to spool performance data to {}: {}", m_spoolDirectory, e.getMessage());
+                    closeSpoolFile();
+                }
+            }
+
+            m_batchesDropped.incrementAndGet();
+            if (!m_dropping) {
+                LOG.warn("Dropping performance data for {}:{}; the receiver is unavailable and the spool is {}", m_host, m_port, m_spoolDirectory == null ? "disabled" : "full");
+                m_dropping = true;
+            }
+            return false;
+        }
+    }
+
+    private void closeSpoolFile() {
+        if (m_spoolOut != null) {
+            try {
+                m_spoolOut.close();
+            } catch (final IOException e) {
+                LOG.warn("Unable to close performance data spool file: {}", e.getMessage());
+            }
+            m_spoolOut = null;
+        }
+    }
+
+    private File[] listSpoolFiles() {
+        if (m_spoolDirectory == null) {
+            return new File[0];
+        }
+        final File[] files = m_spoolDirectory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(final File file) {
+                return file.isFile() && file.getName().startsWith(SPOOL_PREFIX) && file.getName().endsWith(SPOOL_SUFFIX);
+            }
+        });
+        if (files == null) {
+            return new File[0];
+        }
+        // names start with a fixed-width timestamp, so this is oldest first
+        Arrays.sort(files);
+        return files;
+    }
+}
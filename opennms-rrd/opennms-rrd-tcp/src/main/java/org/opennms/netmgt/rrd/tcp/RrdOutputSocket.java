@@ -31,8 +31,6 @@ package org.opennms.netmgt.rrd.tcp;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.Socket;
-import java.util.ArrayList;
-import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -52,6 +50,7 @@ public class RrdOutputSocket {
     // private final RrdDefinition m_def;
     private final String m_host;
     private final int m_port;
+    private final PerformanceDataExporter m_exporter;
     private final PerformanceDataProtos.PerformanceDataReadings.Builder m_messages;
     private int m_messageCount = 0;
 
@@ -64,6 +63,20 @@ public class RrdOutputSocket {
     public RrdOutputSocket(String host, int port) {
         m_host = host;
         m_port = port;
+        m_exporter = null;
+        m_messages = PerformanceDataProtos.PerformanceDataReadings.newBuilder();
+    }
+
+    /**
+     * Creates a socket that hands its readings to a shared, persistent
+     * exporter instead of opening a connection of its own.
+     *
+     * @param exporter a {@link org.opennms.netmgt.rrd.tcp.PerformanceDataExporter} object.
+     */
+    public RrdOutputSocket(PerformanceDataExporter exporter) {
+        m_host = null;
+        m_port = 0;
+        m_exporter = exporter;
         m_messages = PerformanceDataProtos.PerformanceDataReadings.newBuilder();
     }
 
@@ -75,14 +88,54 @@ public class RrdOutputSocket {
      * @param data a {@link java.lang.String} object.
      */
     public void addData(String filename, String owner, String data) {
-        Long timestamp = parseRrdTimestamp(data);
-        List<Double> values = parseRrdValues(data);
-        m_messages.addMessage(PerformanceDataReading.newBuilder()
+        PerformanceDataReading.Builder reading = PerformanceDataReading.newBuilder()
+                .setPath(filename)
+                .setOwner(owner);
+
+        // Walk the "timestamp:value:value" string in place rather than splitting it;
+        // trailing separators are ignored, as they were with String.split()
+        int end = data.length();
+        while (end > 0 && data.charAt(end - 1) == ':') {
+            end--;
+        }
+        int separator = data.indexOf(':');
+        if (separator < 0 || separator > end) {
+            separator = end;
+        }
+        reading.setTimestamp(parseRrdTimestamp(data.substring(0, separator)));
+
+        int start = separator + 1;
+        while (start <= end) {
+            int next = data.indexOf(':', start);
+            if (next < 0 || next > end) {
+                next = end;
+            }
+            reading.addValue(parseRrdValue(data.substring(start, next)));
+            start = next + 1;
+        }
+
+        m_messages.addMessage(reading);
+        m_messageCount++;
+    }
+
+    /**
+     * <p>addData</p>
+     *
+     * @param filename a {@link java.lang.String} object.
+     * @param owner a {@link java.lang.String} object.
+     * @param timestamp the update time in seconds.
+     * @param values the values, one per data source.
+     */
+    public void addData(String filename, String owner, long timestamp, double[] values) {
+        PerformanceDataReading.Builder reading = PerformanceDataReading.newBuilder()
                 .setPath(filename)
                 .setOwner(owner)
-                .setTimestamp(timestamp).
-                addAllValue(values)
-        );
+                // RRD timestamps are in seconds, we want to send milliseconds
+                .setTimestamp(timestamp * 1000);
+        for (double value : values) {
+            reading.addValue(value);
+        }
+        m_messages.addMessage(reading);
         m_messageCount++;
     }
 
@@ -90,6 +143,13 @@ public class RrdOutputSocket {
      * <p>writeData</p>
      */
     public void writeData() {
+        if (m_exporter != null) {
+            if (m_messageCount > 0 && !m_exporter.send(m_messages.build())) {
+                LOG.debug("Dropped {} performance messages, the receiver is unavailable", m_messageCount);
+            }
+            return;
+        }
+
         Socket socket = null;
         try {
             socket = new Socket(InetAddressUtils.addr(m_host), m_port);
@@ -111,31 +171,24 @@ public class RrdOutputSocket {
         }
     };
 
-    private Long parseRrdTimestamp(String data) {
-        if (data.startsWith("N:")) {
+    private static long parseRrdTimestamp(String timestamp) {
+        if ("N".equals(timestamp)) {
             return System.currentTimeMillis();
         } else {
-            String timestamp = data.split(":")[0];
             // RRD timestamps are in seconds, we want to return milliseconds
-            return Long.valueOf(timestamp) * 1000;
+            return Long.parseLong(timestamp) * 1000;
         }
     }
 
-    private List<Double> parseRrdValues(String data) {
-        List<Double> retval = new ArrayList<Double>();
-        String[] values = data.split(":");
-        // Skip index zero, that's the timestamp
-        for (int i = 1; i < values.length; i++) {
-            if (values[i] == null || "null".equals(values[i])) {
-                // Handle null values
-                retval.add(Double.NaN);
-            } else if ("U".equals(values[i])) {
-                // Parse the RRD value for "unknown"
-                retval.add(Double.NaN);
-            } else {
-                retval.add(new Double(values[i]));
-            }
+    private static double parseRrdValue(String value) {
+        if ("null".equals(value)) {
+            // Handle null values
+            return Double.NaN;
+        } else if ("U".equals(value)) {
+            // Parse the RRD value for "unknown"
+            return Double.NaN;
+        } else {
+            return Double.parseDouble(value);
         }
-        return retval;
     }
 }
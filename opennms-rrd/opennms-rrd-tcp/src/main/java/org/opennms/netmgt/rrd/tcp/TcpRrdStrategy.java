@@ -39,6 +39,7 @@ import java.util.Properties;
 import org.opennms.netmgt.rrd.RrdDataSource;
 import org.opennms.netmgt.rrd.RrdGraphDetails;
 import org.opennms.netmgt.rrd.RrdStrategy;
+import org.springframework.beans.factory.DisposableBean;
 
 /**
  * Provides a TCP socket-based implementation of RrdStrategy that pushes update
@@ -51,7 +52,7 @@ import org.opennms.netmgt.rrd.RrdStrategy;
  * @author ranger
  * @version $Id: $
  */
-public class TcpRrdStrategy implements RrdStrategy<TcpRrdStrategy.RrdDefinition,TcpRrdStrategy.RrdOutputSocketWithFilename> {
+public class TcpRrdStrategy implements RrdStrategy<TcpRrdStrategy.RrdDefinition,TcpRrdStrategy.RrdOutputSocketWithFilename>, DisposableBean {
 	
     public static class RrdDefinition {
         private final String m_directory, m_rrdName;
@@ -132,6 +133,101 @@ public class TcpRrdStrategy implements RrdStrategy<TcpRrdStrategy.RrdDefinition,
         this.m_port = port;
     }
 
+    private boolean m_persistent = true;
+
+    public boolean isPersistent() {
+        return m_persistent;
+    }
+
+    /**
+     * When true (the default), readings are sent over one long-lived
+     * connection with length-delimited framing. When false, every batch is
+     * sent as a single unframed message on a connection of its own, which
+     * is what older receivers expect.
+     */
+    public void setPersistent(boolean persistent) {
+        m_persistent = persistent;
+    }
+
+    private int m_queueSize = 1000;
+
+    public int getQueueSize() {
+        return m_queueSize;
+    }
+
+    public void setQueueSize(int queueSize) {
+        m_queueSize = queueSize;
+    }
+
+    private String m_spoolDirectory = null;
+
+    public String getSpoolDirectory() {
+        return m_spoolDirectory;
+    }
+
+    /**
+     * Directory where batches are kept while the receiver is unavailable.
+     * Blank disables spooling.
+     */
+    public void setSpoolDirectory(String spoolDirectory) {
+        m_spoolDirectory = spoolDirectory;
+    }
+
+    private long m_maxSpoolSize = 64L * 1024 * 1024;
+
+    public long getMaxSpoolSize() {
+        return m_maxSpoolSize;
+    }
+
+    public void setMaxSpoolSize(long maxSpoolSize) {
+        m_maxSpoolSize = maxSpoolSize;
+    }
+
+    private volatile PerformanceDataExporter m_exporter = null;
+
+    /**
+     * Returns the exporter shared by all sockets of this strategy, starting
+     * it on first use.
+     */
+    public PerformanceDataExporter getExporter() {
+        PerformanceDataExporter exporter = m_exporter;
+        if (exporter == null) {
+            synchronized (this) {
+                exporter = m_exporter;
+                if (exporter == null) {
+                    exporter = new PerformanceDataExporter(m_host, m_port);
+                    exporter.setQueueSize(m_queueSize);
+                    if (m_spoolDirectory != null && m_spoolDirectory.trim().length() > 0) {
+                        exporter.setSpoolDirectory(new File(m_spoolDirectory.trim()));
+                    }
+                    exporter.setMaxSpoolSize(m_maxSpoolSize);
+                    exporter.start();
+                    m_exporter = exporter;
+                }
+            }
+        }
+        return exporter;
+    }
+
+    /**
+     * Creates a socket that collects readings until it is written.
+     */
+    public RrdOutputSocket createOutputSocket() {
+        if (m_persistent) {
+            return new RrdOutputSocket(getExporter());
+        } else {
+            return new RrdOutputSocket(m_host, m_port);
+        }
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (m_exporter != null) {
+            m_exporter.stop();
+            m_exporter = null;
+        }
+    }
+
     /**
      * <p>getDefaultFileExtension</p>
      *
@@ -163,7 +259,7 @@ public class TcpRrdStrategy implements RrdStrategy<TcpRrdStrategy.RrdDefinition,
     /** {@inheritDoc} */
     @Override
     public RrdOutputSocketWithFilename openFile(String fileName) throws Exception {
-        return new RrdOutputSocketWithFilename(new RrdOutputSocket(m_host, m_port), fileName);
+        return new RrdOutputSocketWithFilename(createOutputSocket(), fileName);
     }
 
     /** {@inheritDoc} */
@@ -172,6 +268,12 @@ public class TcpRrdStrategy implements RrdStrategy<TcpRrdStrategy.RrdDefinition,
         rrd.getSocket().addData(rrd.getFilename(), owner, data);
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void updateFile(RrdOutputSocketWithFilename rrd, String owner, long timestamp, double[] values) throws Exception {
+        rrd.getSocket().addData(rrd.getFilename(), owner, timestamp, values);
+    }
+
     /**
      * <p>closeFile</p>
      *
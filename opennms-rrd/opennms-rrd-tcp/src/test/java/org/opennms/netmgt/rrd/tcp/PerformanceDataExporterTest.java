@@ -0,0 +1,292 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.rrd.tcp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.rrd.tcp.PerformanceDataProtos.PerformanceDataReading;
+import org.opennms.netmgt.rrd.tcp.PerformanceDataProtos.PerformanceDataReadings;
+import org.opennms.test.FileAnticipator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tests {@link PerformanceDataExporter} against a receiver on the loopback
+ * interface.
+ */
+public class PerformanceDataExporterTest {
+    private static final Logger LOG = LoggerFactory.getLogger(PerformanceDataExporterTest.class);
+
+    /**
+     * Batches sent by {@link #testThroughput()}.  The throughput is only
+     * logged when this is set; otherwise a few batches are sent.
+     */
+    private static final int BENCHMARK_BATCHES = Integer.getInteger("org.opennms.rrd.tcp.benchmarkBatches", 0);
+    private static final int READINGS_PER_BATCH = 50;
+
+    private FileAnticipator m_fileAnticipator;
+    private PerformanceDataExporter m_exporter;
+    private Receiver m_receiver;
+
+    @Before
+    public void setUp() throws Exception {
+        m_fileAnticipator = new FileAnticipator(false);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (m_exporter != null) {
+            m_exporter.stop();
+        }
+        if (m_receiver != null) {
+            m_receiver.close();
+        }
+        m_fileAnticipator.tearDown();
+    }
+
+    @Test
+    public void testThroughput() throws Exception {
+        m_receiver = new Receiver(0);
+        m_exporter = new PerformanceDataExporter("127.0.0.1", m_receiver.getPort());
+        m_exporter.setQueueSize(10000);
+        m_exporter.start();
+
+        final int batches = BENCHMARK_BATCHES > 0 ? BENCHMARK_BATCHES : 200;
+        final PerformanceDataReadings batch = createBatch(READINGS_PER_BATCH);
+        final long start = System.nanoTime();
+        for (int i = 0; i < batches; i++) {
+            assertTrue(m_exporter.send(batch));
+        }
+        m_receiver.waitForReadings(batches * READINGS_PER_BATCH, 30000);
+        final long elapsed = System.nanoTime() - start;
+
+        assertEquals(batches * READINGS_PER_BATCH, m_receiver.getReadings());
+        assertEquals(batches, m_exporter.getBatchesSent());
+        assertEquals(1, m_exporter.getConnects());
+        assertEquals(0, m_exporter.getBatchesDropped());
+
+        if (BENCHMARK_BATCHES > 0) {
+            LOG.info("{} batches of {} readings over one connection in {}ms: {} readings/s, {} KB/s",
+                     batches, READINGS_PER_BATCH, elapsed / 1000000,
+                     (long) (batches * READINGS_PER_BATCH / (elapsed / 1e9)),
+                     (long) (m_exporter.getBytesSent() / 1024 / (elapsed / 1e9)));
+        }
+    }
+
+    @Test
+    public void testSpoolWhileReceiverIsDown() throws Exception {
+        m_fileAnticipator.initialize();
+        final File spoolDir = m_fileAnticipator.tempDir("spool");
+
+        // find a free port, then leave it closed for now
+        final ServerSocket probe = new ServerSocket(0);
+        final int port = probe.getLocalPort();
+        probe.close();
+
+        m_exporter = new PerformanceDataExporter("127.0.0.1", port);
+        m_exporter.setSpoolDirectory(spoolDir);
+        m_exporter.setMinBackoff(50);
+        m_exporter.setMaxBackoff(200);
+        m_exporter.setQueueSize(5);
+        m_exporter.start();
+
+        for (int i = 0; i < 20; i++) {
+            m_exporter.send(createBatch(10));
+        }
+        assertEquals(0, m_exporter.getBatchesDropped());
+
+        // everything that did not fit in the queue ends up in the spool
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (m_exporter.getBatchesSpooled() < 20 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(20, m_exporter.getBatchesSpooled());
+        assertTrue(m_exporter.getSpoolSize() > 0);
+
+        m_receiver = new Receiver(port);
+        m_receiver.waitForReadings(200, 10000);
+        assertEquals(200, m_receiver.getReadings());
+
+        final long spoolDeadline = System.currentTimeMillis() + 5000;
+        while (m_exporter.getSpoolSize() > 0 && System.currentTimeMillis() < spoolDeadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(0, m_exporter.getSpoolSize());
+        assertEquals(0, spoolDir.listFiles().length);
+    }
+
+    @Test
+    public void testDropWithoutSpool() throws Exception {
+        final ServerSocket probe = new ServerSocket(0);
+        final int port = probe.getLocalPort();
+        probe.close();
+
+        m_exporter = new PerformanceDataExporter("127.0.0.1", port);
+        m_exporter.setQueueSize(2);
+        m_exporter.setMinBackoff(10000);
+        m_exporter.start();
+
+        int accepted = 0;
+        for (int i = 0; i < 10; i++) {
+            if (m_exporter.send(createBatch(1))) {
+                accepted++;
+            }
+        }
+        // only what fits in the queue is kept
+        assertEquals(2, accepted);
+        assertEquals(8, m_exporter.getBatchesDropped());
+        assertEquals(2, m_exporter.getQueueDepth());
+    }
+
+    @Test
+    public void testResendUnflushedAfterReconnect() throws Exception {
+        m_receiver = new Receiver(0);
+        final AtomicInteger connections = new AtomicInteger();
+        m_exporter = new PerformanceDataExporter("127.0.0.1", m_receiver.getPort()) {
+            @Override
+            protected OutputStream createOutputStream(final Socket socket) throws IOException {
+                if (connections.incrementAndGet() > 1) {
+                    return super.createOutputStream(socket);
+                }
+                // the first connection breaks before anything written to it leaves the buffer
+                return new FilterOutputStream(new ByteArrayOutputStream()) {
+                    @Override
+                    public void flush() throws IOException {
+                        throw new IOException("connection reset");
+                    }
+                };
+            }
+        };
+        m_exporter.setMinBackoff(50);
+        m_exporter.start();
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(m_exporter.send(createBatch(10)));
+        }
+
+        m_receiver.waitForReadings(50, 10000);
+        assertEquals(50, m_receiver.getReadings());
+
+        // counted once the flush returns, which can be after the receiver has read them
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (m_exporter.getBatchesSent() < 5 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(5, m_exporter.getBatchesSent());
+        assertEquals(2, m_exporter.getConnects());
+        assertEquals(0, m_exporter.getBatchesDropped());
+    }
+
+    private static PerformanceDataReadings createBatch(final int readings) {
+        final PerformanceDataReadings.Builder batch = PerformanceDataReadings.newBuilder();
+        for (int i = 0; i < readings; i++) {
+            batch.addMessage(PerformanceDataReading.newBuilder()
+                             .setPath("/opt/opennms/share/rrd/snmp/1/ifInOctets" + i)
+                             .setOwner("127.0.0.1")
+                             .setTimestamp(System.currentTimeMillis())
+                             .addValue(i)
+                             .addValue(Double.NaN));
+        }
+        return batch.build();
+    }
+
+    /**
+     * Accepts connections and counts the readings in every length-delimited
+     * batch it receives.
+     */
+    private static class Receiver implements Runnable {
+        private final ServerSocket m_serverSocket;
+        private final AtomicInteger m_readings = new AtomicInteger();
+        private final Thread m_thread;
+
+        public Receiver(final int port) throws IOException {
+            m_serverSocket = new ServerSocket(port);
+            m_thread = new Thread(this, "PerformanceDataReceiver");
+            m_thread.setDaemon(true);
+            m_thread.start();
+        }
+
+        public int getPort() {
+            return m_serverSocket.getLocalPort();
+        }
+
+        public int getReadings() {
+            return m_readings.get();
+        }
+
+        public void waitForReadings(final int readings, final long timeout) throws InterruptedException {
+            final long deadline = System.currentTimeMillis() + timeout;
+            while (m_readings.get() < readings && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    final Socket socket = m_serverSocket.accept();
+                    try {
+                        final InputStream in = socket.getInputStream();
+                        PerformanceDataReadings batch;
+                        while ((batch = PerformanceDataReadings.parseDelimitedFrom(in)) != null) {
+                            m_readings.addAndGet(batch.getMessageCount());
+                        }
+                    } finally {
+                        socket.close();
+                    }
+                }
+            } catch (final SocketException e) {
+                // closed
+            } catch (final IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        public void close() throws IOException {
+            m_serverSocket.close();
+        }
+    }
+}
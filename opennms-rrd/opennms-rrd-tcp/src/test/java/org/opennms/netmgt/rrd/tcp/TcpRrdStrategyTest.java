@@ -104,28 +104,33 @@ public class TcpRrdStrategyTest {
                              */
 
                             Socket socket = ssocket.accept();
-                            PerformanceDataProtos.PerformanceDataReadings messages = PerformanceDataProtos.PerformanceDataReadings.parseFrom(socket.getInputStream());
-                            System.out.println("Number of messages in current packet: " + messages.getMessageCount());
-                            for (PerformanceDataProtos.PerformanceDataReading message : messages.getMessageList()) {
-                                StringBuffer values = new StringBuffer();
-                                values.append("{ ");
-                                for (int i = 0; i < message.getValueCount(); i++) {
-                                    if (i != 0) { values.append(", "); }
-                                    values.append(message.getValue(i));
+                            socket.setSoTimeout(500);
+                            // The strategy keeps the connection open and sends length-delimited batches
+                            PerformanceDataProtos.PerformanceDataReadings messages;
+                            while ((messages = readMessages(socket)) != null) {
+                                System.out.println("Number of messages in current packet: " + messages.getMessageCount());
+                                for (PerformanceDataProtos.PerformanceDataReading message : messages.getMessageList()) {
+                                    StringBuffer values = new StringBuffer();
+                                    values.append("{ ");
+                                    for (int i = 0; i < message.getValueCount(); i++) {
+                                        if (i != 0) { values.append(", "); }
+                                        values.append(message.getValue(i));
+                                    }
+                                    values.append(" }");
+                                    System.out.println("Message received: { " + 
+                                            "path: \"" + message.getPath() + "\", " + 
+                                            "owner: \"" + message.getOwner() + "\", " + 
+                                            "timestamp: \"" + message.getTimestamp() + "\", " + 
+                                            "values: " + values.toString() + " }");
+
+                                    /*
+                                     * See comments above re: Jython
+                                    PyDictionary attributes = (PyDictionary)python.eval("parseRrdPath('" + message.getPath() + "')");
+                                    System.out.println(attributes.getClass().getName());
+                                     */
                                 }
-                                values.append(" }");
-                                System.out.println("Message received: { " + 
-                                        "path: \"" + message.getPath() + "\", " + 
-                                        "owner: \"" + message.getOwner() + "\", " + 
-                                        "timestamp: \"" + message.getTimestamp() + "\", " + 
-                                        "values: " + values.toString() + " }");
-
-                                /*
-                                 * See comments above re: Jython
-                                PyDictionary attributes = (PyDictionary)python.eval("parseRrdPath('" + message.getPath() + "')");
-                                System.out.println(attributes.getClass().getName());
-                                 */
                             }
+                            socket.close();
                         } catch (SocketTimeoutException e) {
                             if (this.isInterrupted()) {
                                 this.setName("notfailed");
@@ -152,6 +157,22 @@ public class TcpRrdStrategyTest {
         m_listenerThread.start();
     }
 
+    /**
+     * @return the next batch, or null when the connection was closed or the
+     * listener thread was interrupted
+     */
+    private static PerformanceDataProtos.PerformanceDataReadings readMessages(Socket socket) throws IOException {
+        while (true) {
+            try {
+                return PerformanceDataProtos.PerformanceDataReadings.parseDelimitedFrom(socket.getInputStream());
+            } catch (SocketTimeoutException e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return null;
+                }
+            }
+        }
+    }
+
     @Before
     public void setUp() throws Exception {
 
@@ -45,6 +45,8 @@ import org.opennms.netmgt.model.RrdRepository;
 import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.netmgt.scheduler.ReadyRunnable;
 import org.opennms.netmgt.scheduler.Scheduler;
+import org.opennms.netmgt.threshd.CollectedValueBroker;
+import org.opennms.netmgt.threshd.CollectedValuePublisher;
 import org.opennms.netmgt.threshd.ThresholdingVisitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -59,7 +61,7 @@ import org.springframework.transaction.PlatformTransactionManager;
  * @author <A HREF="http://www.opennms.org/">OpenNMS </A>
  * 
  */
-final class CollectableService implements ReadyRunnable {
+class CollectableService implements ReadyRunnable {
     
     private static final Logger LOG = LoggerFactory.getLogger(CollectableService.class);
     
@@ -92,6 +94,8 @@ final class CollectableService implements ReadyRunnable {
      * The thresholdvisitor for this collectable service; called 
      */
     private final ThresholdingVisitor m_thresholdVisitor;
+
+    private final CollectedValuePublisher m_valuePublisher;
     /**
      * 
      */
@@ -143,6 +147,7 @@ final class CollectableService implements ReadyRunnable {
         m_repository=m_spec.getRrdRepository(m_params.getCollectionName());
 
         m_thresholdVisitor = ThresholdingVisitor.create(m_nodeId, getHostAddress(), m_spec.getServiceName(), m_repository,  m_params.getParameters());
+        m_valuePublisher = new CollectedValuePublisher(CollectedValueBroker.getInstance(), m_nodeId, m_repository);
     }
     
     /**
@@ -154,6 +159,14 @@ final class CollectableService implements ReadyRunnable {
     	return m_agent.getAddress();
     }
     
+    /**
+     * Releases the collector's state for this service's agent.  Only for a
+     * service that was created but is not going to be scheduled.
+     */
+    void release() {
+        m_spec.release(m_agent);
+    }
+
     /**
      * <p>getSpecification</p>
      *
@@ -399,6 +412,11 @@ final class CollectableService implements ReadyRunnable {
                                 result.visit(m_thresholdVisitor);
                             }
                         }
+
+                        // Hand the values to Threshd, so it does not have to read them back from the RRD files
+                        if (m_valuePublisher.isSubscribed()) {
+                            result.visit(m_valuePublisher);
+                        }
                        
                         if (result.getStatus() != ServiceCollector.COLLECTION_SUCCEEDED) {
                             throw new CollectionFailed(result.getStatus());
@@ -0,0 +1,228 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.collectd;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The set of {@link CollectableService}s scheduled by collectd, indexed by
+ * (nodeId, address, package, service) with secondary indexes by node and by
+ * address, so that scheduling and the event handlers don't have to walk
+ * every service to find the ones they care about.
+ *
+ * The node an entry is indexed under is the one it was registered with;
+ * when an interface is reparented the entry must be moved with
+ * {@link #reparent(CollectableService, int)} since the service itself only
+ * picks up its new node ID on its next run.
+ */
+class CollectableServiceRegistry {
+
+    static final class Key {
+        private final int m_nodeId;
+        private final InetAddress m_address;
+        private final String m_packageName;
+        private final String m_serviceName;
+
+        Key(final int nodeId, final InetAddress address, final String packageName, final String serviceName) {
+            m_nodeId = nodeId;
+            m_address = address;
+            m_packageName = packageName;
+            m_serviceName = serviceName;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Key)) return false;
+            final Key k = (Key) o;
+            return m_nodeId == k.m_nodeId
+                && m_address.equals(k.m_address)
+                && m_packageName.equals(k.m_packageName)
+                && m_serviceName.equals(k.m_serviceName);
+        }
+
+        @Override
+        public int hashCode() {
+            int h = m_nodeId;
+            h = 31 * h + m_address.hashCode();
+            h = 31 * h + m_packageName.hashCode();
+            h = 31 * h + m_serviceName.hashCode();
+            return h;
+        }
+
+        @Override
+        public String toString() {
+            return m_nodeId + "/" + m_address + "/" + m_packageName + "/" + m_serviceName;
+        }
+    }
+
+    private final ConcurrentMap<Key, CollectableService> m_services = new ConcurrentHashMap<Key, CollectableService>();
+    private final ConcurrentMap<CollectableService, Key> m_keys = new ConcurrentHashMap<CollectableService, Key>();
+    private final ConcurrentMap<Integer, Set<CollectableService>> m_byNode = new ConcurrentHashMap<Integer, Set<CollectableService>>();
+    private final ConcurrentMap<InetAddress, Set<CollectableService>> m_byAddress = new ConcurrentHashMap<InetAddress, Set<CollectableService>>();
+
+    /**
+     * Register a service.
+     *
+     * @return false if a service with the same node, address, package and
+     *         service name was already registered, in which case the
+     *         registry is left unchanged
+     */
+    boolean add(final CollectableService cSvc) {
+        final Key key = keyFor(cSvc, cSvc.getNodeId());
+        if (m_services.putIfAbsent(key, cSvc) != null) {
+            return false;
+        }
+        m_keys.put(cSvc, key);
+        index(m_byNode, Integer.valueOf(key.m_nodeId), cSvc);
+        index(m_byAddress, key.m_address, cSvc);
+        return true;
+    }
+
+    /**
+     * Unregister a service.
+     *
+     * @return false if it wasn't registered
+     */
+    boolean remove(final CollectableService cSvc) {
+        final Key key = m_keys.remove(cSvc);
+        if (key == null) {
+            return false;
+        }
+        m_services.remove(key, cSvc);
+        unindex(m_byNode, Integer.valueOf(key.m_nodeId), cSvc);
+        unindex(m_byAddress, key.m_address, cSvc);
+        return true;
+    }
+
+    /**
+     * Move a registered service to the index of another node.
+     */
+    void reparent(final CollectableService cSvc, final int newNodeId) {
+        final Key oldKey = m_keys.get(cSvc);
+        if (oldKey == null || oldKey.m_nodeId == newNodeId) {
+            return;
+        }
+        final Key newKey = new Key(newNodeId, oldKey.m_address, oldKey.m_packageName, oldKey.m_serviceName);
+        if (m_services.putIfAbsent(newKey, cSvc) != null) {
+            // the new node already collects this; leave the old entry be
+            return;
+        }
+        m_services.remove(oldKey, cSvc);
+        m_keys.put(cSvc, newKey);
+        unindex(m_byNode, Integer.valueOf(oldKey.m_nodeId), cSvc);
+        index(m_byNode, Integer.valueOf(newNodeId), cSvc);
+    }
+
+    /**
+     * Is the package/service pair already collected on this address of this
+     * node?  This is the same key services are registered under, so the same
+     * address on another node doesn't count.
+     */
+    boolean contains(final int nodeId, final InetAddress address, final String packageName, final String serviceName) {
+        return m_services.containsKey(new Key(nodeId, address, packageName, serviceName));
+    }
+
+    /**
+     * @return a snapshot of the services registered under a node
+     */
+    Collection<CollectableService> getByNode(final int nodeId) {
+        return snapshot(m_byNode.get(Integer.valueOf(nodeId)));
+    }
+
+    /**
+     * @return a snapshot of the services registered on an address
+     */
+    Collection<CollectableService> getByAddress(final InetAddress address) {
+        if (address == null) {
+            return Collections.emptyList();
+        }
+        return snapshot(m_byAddress.get(address));
+    }
+
+    /**
+     * @return a snapshot of all registered services
+     */
+    Collection<CollectableService> getAll() {
+        return new ArrayList<CollectableService>(m_services.values());
+    }
+
+    int size() {
+        return m_services.size();
+    }
+
+    /**
+     * @return the number of node and address buckets in the secondary
+     *         indexes
+     */
+    int indexSize() {
+        return m_byNode.size() + m_byAddress.size();
+    }
+
+    private static Key keyFor(final CollectableService cSvc, final int nodeId) {
+        return new Key(nodeId, (InetAddress) cSvc.getAddress(), cSvc.getPackageName(), cSvc.getServiceName());
+    }
+
+    // updates to an index are serialized on it so that an empty bucket can
+    // be dropped without losing a service added to it concurrently; lookups
+    // don't take the lock
+
+    private static <K> void index(final ConcurrentMap<K, Set<CollectableService>> index, final K key, final CollectableService cSvc) {
+        synchronized (index) {
+            Set<CollectableService> services = index.get(key);
+            if (services == null) {
+                services = Collections.newSetFromMap(new ConcurrentHashMap<CollectableService, Boolean>());
+                index.put(key, services);
+            }
+            services.add(cSvc);
+        }
+    }
+
+    private static <K> void unindex(final ConcurrentMap<K, Set<CollectableService>> index, final K key, final CollectableService cSvc) {
+        synchronized (index) {
+            final Set<CollectableService> services = index.get(key);
+            if (services != null && services.remove(cSvc) && services.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private static List<CollectableService> snapshot(final Set<CollectableService> services) {
+        if (services == null) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<CollectableService>(services);
+    }
+}
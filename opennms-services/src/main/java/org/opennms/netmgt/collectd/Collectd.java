@@ -28,22 +28,26 @@
 
 package org.opennms.netmgt.collectd;
 
+import static org.opennms.core.utils.InetAddressUtils.addr;
 import static org.opennms.core.utils.InetAddressUtils.str;
 
 import java.net.InetAddress;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.lang.StringUtils;
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
 import org.opennms.core.logging.Logging;
 import org.opennms.core.utils.ConfigFileConstants;
 import org.opennms.netmgt.EventConstants;
@@ -67,9 +71,10 @@ import org.opennms.netmgt.model.OnmsNode;
 import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.netmgt.model.events.EventIpcManager;
 import org.opennms.netmgt.model.events.EventListener;
-import org.opennms.netmgt.scheduler.LegacyScheduler;
 import org.opennms.netmgt.scheduler.ReadyRunnable;
 import org.opennms.netmgt.scheduler.Scheduler;
+import org.opennms.netmgt.scheduler.TimingWheelScheduler;
+import org.opennms.netmgt.threshd.CounterStateStore;
 import org.opennms.netmgt.xml.event.Event;
 import org.opennms.netmgt.xml.event.Parm;
 import org.opennms.netmgt.xml.event.Value;
@@ -123,9 +128,15 @@ public class Collectd extends AbstractServiceDaemon implements
     private final Map<String,ServiceCollector> m_collectors = new HashMap<String,ServiceCollector>(4);
 
     /**
-     * List of all CollectableService objects.
+     * Number of threads used to resolve the collection specifications and
+     * initialize the collectors of existing interfaces at startup.
      */
-    private final List<CollectableService> m_collectableServices;
+    private static final int SCHEDULING_THREADS = Math.max(1, Integer.getInteger("org.opennms.collectd.schedulingThreads", Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * All scheduled CollectableService objects.
+     */
+    private final CollectableServiceRegistry m_collectableServices = new CollectableServiceRegistry();
 
     /**
      * Reference to the collection scheduler
@@ -166,8 +177,6 @@ public class Collectd extends AbstractServiceDaemon implements
      */
     public Collectd() {
         super(LOG4J_CATEGORY);
-
-        m_collectableServices = Collections.synchronizedList(new LinkedList<CollectableService>());
     }
 
     /**
@@ -189,6 +198,9 @@ public class Collectd extends AbstractServiceDaemon implements
         
         instantiateCollectors();
 
+        // Pick up the counter values saved when thresholding last stopped
+        CounterStateStore.getInstance().loadSnapshot();
+
         getScheduler().schedule(0, ifScheduler());
 
         installMessageSelectors();
@@ -296,7 +308,7 @@ public class Collectd extends AbstractServiceDaemon implements
                 // Create a scheduler
                 try {
                     LOG.debug("init: Creating collectd scheduler");
-                    setScheduler(new LegacyScheduler("Collectd", getCollectorConfigDao().getSchedulerThreads()));
+                    setScheduler(new TimingWheelScheduler("Collectd", getCollectorConfigDao().getSchedulerThreads()));
                 } catch (final RuntimeException e) {
                     LOG.error("init: Failed to create collectd scheduler", e);
                     throw e;
@@ -326,6 +338,7 @@ public class Collectd extends AbstractServiceDaemon implements
         deinstallMessageSelectors();
 
         setScheduler(null);
+        CounterStateStore.getInstance().saveSnapshot();
     }
 
     /** {@inheritDoc} */
@@ -349,6 +362,8 @@ public class Collectd extends AbstractServiceDaemon implements
     private void scheduleExistingInterfaces() throws SQLException {
         
         instrumentation().beginScheduleExistingInterfaces();
+        final long start = System.currentTimeMillis();
+        final ExecutorService executor = Executors.newFixedThreadPool(SCHEDULING_THREADS, new LogPreservingThreadFactory("Collectd-Scheduling", SCHEDULING_THREADS, false));
         try {
 
             m_transTemplate.execute(new TransactionCallbackWithoutResult() {
@@ -358,26 +373,61 @@ public class Collectd extends AbstractServiceDaemon implements
                     
                     // Loop through collectors and schedule for each one present
                     for(String name : getCollectorNames()) {
-                        scheduleInterfacesWithService(name);
+                        scheduleInterfacesWithService(name, executor);
                     }
                 }
 
             });
         
         } finally {
+            executor.shutdownNow();
+            instrumentation().reportScheduleExistingInterfaces(m_collectableServices.size(), System.currentTimeMillis() - start);
             instrumentation().endScheduleExistingInterfaces();
         }
     }
 
-    private void scheduleInterfacesWithService(String svcName) {
+    /**
+     * Resolve the collection specifications of every interface with the
+     * service, and initialize their collectors, in parallel.  The resulting
+     * services are then scheduled with their first collection spread evenly
+     * over the collection interval, rather than all of them at once.
+     */
+    private void scheduleInterfacesWithService(final String svcName, final ExecutorService executor) {
         instrumentation().beginScheduleInterfacesWithService(svcName);
         try {
         LOG.info("scheduleInterfacesWithService: svcName = {}", svcName);
 
         Collection<OnmsIpInterface> ifsWithServices = findInterfacesWithService(svcName);
-        for (OnmsIpInterface iface : ifsWithServices) {
-            scheduleInterface(iface, svcName, true);
+        final List<Future<List<CollectableService>>> futures = new ArrayList<Future<List<CollectableService>>>(ifsWithServices.size());
+        for (final OnmsIpInterface iface : ifsWithServices) {
+            futures.add(executor.submit(new Callable<List<CollectableService>>() {
+                @Override
+                public List<CollectableService> call() {
+                    return createCollectableServices(iface, svcName, true);
+                }
+            }));
         }
+
+        final List<CollectableService> services = new ArrayList<CollectableService>();
+        for (final Future<List<CollectableService>> future : futures) {
+            try {
+                services.addAll(future.get());
+            } catch (final ExecutionException e) {
+                LOG.error("scheduleInterfacesWithService: Uncaught exception scheduling {}", svcName, e.getCause());
+            } catch (final InterruptedException e) {
+                LOG.warn("scheduleInterfacesWithService: interrupted while scheduling {}", svcName);
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        final int count = services.size();
+        for (int i = 0; i < count; i++) {
+            final CollectableService cSvc = services.get(i);
+            final long offset = (cSvc.getSpecification().getInterval() * i) / count;
+            getScheduler().schedule(offset, cSvc.getReadyRunnable());
+        }
+        LOG.info("scheduleInterfacesWithService: scheduled {} collectable services for {}", count, svcName);
         } finally {
             instrumentation().endScheduleInterfacesWithService(svcName);
         }
@@ -451,20 +501,39 @@ public class Collectd extends AbstractServiceDaemon implements
 	}
 
     private void scheduleInterface(OnmsIpInterface iface, String svcName, boolean existing) {
-        
+        for (final CollectableService cSvc : createCollectableServices(iface, svcName, existing)) {
+            // Schedule the collectable service for immediate collection
+            getScheduler().schedule(0, cSvc.getReadyRunnable());
+
+            LOG.debug("scheduleInterface: {}/{} collection, scheduled", iface, svcName);
+        }
+    }
+
+    /**
+     * Create and register a CollectableService for each package that
+     * collects the service on the interface, without scheduling them.
+     *
+     * This is called concurrently at startup, so it only reads the node ID,
+     * ID and address of the interface and leaves the rest of the (Hibernate)
+     * object alone.
+     */
+    private List<CollectableService> createCollectableServices(OnmsIpInterface iface, String svcName, boolean existing) {
+        final List<CollectableService> created = new ArrayList<CollectableService>();
+
         final String ipAddress = str(iface.getIpAddress());
         if (ipAddress == null) {
-        	LOG.warn("Unable to schedule interface {}, could not determine IP address.", iface);
-        	return;
+        	LOG.warn("Unable to schedule interface {}, could not determine IP address.", iface.getId());
+        	return created;
         }
+        final int nodeId = iface.getNode().getId();
 
-		instrumentation().beginScheduleInterface(iface.getNode().getId(), ipAddress, svcName);
+		instrumentation().beginScheduleInterface(nodeId, ipAddress, svcName);
         try {
         
         Collection<CollectionSpecification> matchingSpecs = getSpecificationsForInterface(iface, svcName);
         StringBuffer sb;
         
-        LOG.debug("scheduleInterface: found {} matching specs for interface: {}", matchingSpecs.size(), iface);
+        LOG.debug("scheduleInterface: found {} matching specs for interface: {}/{}", matchingSpecs.size(), nodeId, ipAddress);
 
         for (CollectionSpecification spec : matchingSpecs) {
 
@@ -477,7 +546,7 @@ public class Collectd extends AbstractServiceDaemon implements
                  * does not already exist in the collectable services list.
                  */
                 if (alreadyScheduled(iface, spec)) {
-                    LOG.debug("scheduleInterface: svc/pkgName {}/{} already in collectable service list, skipping.", iface, spec);
+                    LOG.debug("scheduleInterface: svc/pkgName {}/{} already in collectable service list, skipping.", ipAddress, spec);
                     continue;
                 }
             }
@@ -487,7 +556,7 @@ public class Collectd extends AbstractServiceDaemon implements
                  * Criteria checks have all passed. The interface/service pair
                  * can be scheduled.
                  */
-                LOG.debug("scheduleInterface: now scheduling interface: {}/{}", iface, svcName);
+                LOG.debug("scheduleInterface: now scheduling interface: {}/{}/{}", nodeId, ipAddress, svcName);
                 CollectableService cSvc = null;
 
                 /*
@@ -500,16 +569,17 @@ public class Collectd extends AbstractServiceDaemon implements
                                               m_transTemplate.getTransactionManager());
 
                 // Add new collectable service to the collectable service list.
-                m_collectableServices.add(cSvc);
-
-                // Schedule the collectable service for immediate collection
-                getScheduler().schedule(0, cSvc.getReadyRunnable());
-
-                LOG.debug("scheduleInterface: {}/{} collection, scheduled", iface, svcName);
+                if (!m_collectableServices.add(cSvc)) {
+                    LOG.debug("scheduleInterface: {}/{}/{} was scheduled concurrently, skipping.", ipAddress, spec.getPackageName(), svcName);
+                    // the constructor already initialized the collector for this agent
+                    cSvc.release();
+                    continue;
+                }
+                created.add(cSvc);
             } catch (CollectionInitializationException e) {
                 sb = new StringBuffer();
                 sb.append("scheduleInterface: Unable to schedule ");
-                sb.append(iface);
+                sb.append(nodeId).append('/').append(ipAddress);
                 sb.append('/');
                 sb.append(svcName);
                 sb.append(", reason: ");
@@ -524,13 +594,14 @@ public class Collectd extends AbstractServiceDaemon implements
                     LOG.info(sb.toString());
                 }
             } catch (Throwable t) {
-                LOG.error("scheduleInterface: Uncaught exception, failed to schedule interface {}/{}.", iface, svcName, t);
+                LOG.error("scheduleInterface: Uncaught exception, failed to schedule interface {}/{}/{}.", nodeId, ipAddress, svcName, t);
             }
         } // end while more specifications exist
         
         } finally {
-            instrumentation().endScheduleInterface(iface.getNode().getId(), ipAddress, svcName);
+            instrumentation().endScheduleInterface(nodeId, ipAddress, svcName);
         }
+        return created;
     }
 
     /**
@@ -542,6 +613,7 @@ public class Collectd extends AbstractServiceDaemon implements
      */
     public Collection<CollectionSpecification> getSpecificationsForInterface(OnmsIpInterface iface, String svcName) {
         Collection<CollectionSpecification> matchingPkgs = new LinkedList<CollectionSpecification>();
+        final String ipAddress = str(iface.getIpAddress());
 
 
         /*
@@ -555,18 +627,17 @@ public class Collectd extends AbstractServiceDaemon implements
              * and enabled!
              */
             if (!wpkg.serviceInPackageAndEnabled(svcName)) {
-                LOG.debug("getSpecificationsForInterface: address/service: {}/{} not scheduled, service is not enabled or does not exist in package: {}", iface, svcName, wpkg.getName());
+                LOG.debug("getSpecificationsForInterface: address/service: {}/{} not scheduled, service is not enabled or does not exist in package: {}", ipAddress, svcName, wpkg.getName());
                 continue;
             }
 
             // Is the interface in the package?
-            final String ipAddress = str(iface.getIpAddress());
 			if (!wpkg.interfaceInPackage(ipAddress)) {
-                LOG.debug("getSpecificationsForInterface: address/service: {}/{} not scheduled, interface does not belong to package: {}", iface, svcName, wpkg.getName());
+                LOG.debug("getSpecificationsForInterface: address/service: {}/{} not scheduled, interface does not belong to package: {}", ipAddress, svcName, wpkg.getName());
                 continue;
             }
 
-            LOG.debug("getSpecificationsForInterface: address/service: {}/{} scheduled, interface does belong to package: {}", iface, svcName, wpkg.getName());
+            LOG.debug("getSpecificationsForInterface: address/service: {}/{} scheduled, interface does belong to package: {}", ipAddress, svcName, wpkg.getName());
             
             matchingPkgs.add(new CollectionSpecification(wpkg, svcName, getServiceCollector(svcName)));
         }
@@ -574,8 +645,8 @@ public class Collectd extends AbstractServiceDaemon implements
     }
 
     /**
-     * Returns true if specified address/pkg pair is already represented in
-     * the collectable services list. False otherwise.
+     * Returns true if specified node/address/pkg triple is already represented
+     * in the collectable services list. False otherwise.
      * 
      * @param iface
      *            TODO
@@ -585,44 +656,15 @@ public class Collectd extends AbstractServiceDaemon implements
      *            TODO
      */
     private boolean alreadyScheduled(OnmsIpInterface iface, CollectionSpecification spec) {
-        String ipAddress = str(iface.getIpAddress());
+        final InetAddress ipAddress = iface.getIpAddress();
         
         if (ipAddress == null) {
-            LOG.warn("Cannot determine if interface {} is already scheduled.  Unable to look up IP address.", iface);
+            LOG.warn("Cannot determine if interface {} is already scheduled.  Unable to look up IP address.", iface.getId());
             return false;
         }
 
-        String svcName = spec.getServiceName();
-        String pkgName = spec.getPackageName();
-        StringBuffer sb;
-        boolean isScheduled = false;
-        
-        if (LOG.isDebugEnabled()) {
-            sb = new StringBuffer();
-            sb.append("alreadyScheduled: determining if interface: ");
-            sb.append(iface);
-            sb.append(" is already scheduled.");
-        }
-        
-        synchronized (m_collectableServices) {
-        	for (CollectableService cSvc : m_collectableServices) {
-                InetAddress addr = (InetAddress) cSvc.getAddress();
-                if (str(addr).equals(ipAddress)
-                        && cSvc.getPackageName().equals(pkgName)
-                        && cSvc.getServiceName().equals(svcName)) {
-                    isScheduled = true;
-                    break;
-                }
-            }
-        }
-
-        if (LOG.isDebugEnabled()) {
-            sb = new StringBuffer();
-            sb.append("alreadyScheduled: interface ");
-            sb.append(iface);
-            sb.append("already scheduled check: ");
-            sb.append(isScheduled);
-        }
+        final boolean isScheduled = m_collectableServices.contains(iface.getNode().getId(), ipAddress, spec.getPackageName(), spec.getServiceName());
+        LOG.debug("alreadyScheduled: interface {} already scheduled check: {}", str(ipAddress), isScheduled);
         return isScheduled;
     }
 
@@ -635,15 +677,11 @@ public class Collectd extends AbstractServiceDaemon implements
     }
 
     private void refreshServicePackages() {
-    	for (CollectableService thisService : m_collectableServices) {
+    	for (CollectableService thisService : m_collectableServices.getAll()) {
             thisService.refreshPackage(getCollectorConfigDao());
         }
     }
 
-    private List<CollectableService> getCollectableServices() {
-        return m_collectableServices;
-    }
-
     /**
      * {@inheritDoc}
      *
@@ -792,38 +830,31 @@ public class Collectd extends AbstractServiceDaemon implements
 
         Long nodeId = event.getNodeid();
 
-        // Iterate over the collectable services list and mark any entries
-        // which match the deleted nodeId/IP address pair for deletion
-        synchronized (getCollectableServices()) {
-            CollectableService cSvc = null;
-            ListIterator<CollectableService> liter = getCollectableServices().listIterator();
-            while (liter.hasNext()) {
-                cSvc = liter.next();
-
-                // Only interested in entries with matching nodeId and IP
-                // address
-                InetAddress addr = (InetAddress) cSvc.getAddress();
-                if (!(cSvc.getNodeId() == nodeId && addr.getHostName().equals(ipAddr)))
-                    continue;
-
-                synchronized (cSvc) {
-                    // Retrieve the CollectorUpdates object associated with
-                    // this CollectableService if one exists.
-                    CollectorUpdates updates = cSvc.getCollectorUpdates();
+        // Mark any entries which match the deleted nodeId/IP address pair
+        // for deletion
+        for (final CollectableService cSvc : m_collectableServices.getByAddress(addr(ipAddr))) {
+            // Only interested in entries with matching nodeId
+            if (!(cSvc.getNodeId() == nodeId))
+                continue;
+            InetAddress addr = (InetAddress) cSvc.getAddress();
 
-                    // Now set the update's deletion flag so the next
-                    // time it is selected for execution by the scheduler
-                    // the collection will be skipped and the service will not
-                    // be rescheduled.
-                    LOG.debug("Marking CollectableService for deletion because an interface was deleted:  Service nodeid={}, deleted node:{}service address:{}deleted interface:{}", cSvc.getNodeId(), nodeId, addr.getHostName(), ipAddr);
+            synchronized (cSvc) {
+                // Retrieve the CollectorUpdates object associated with
+                // this CollectableService if one exists.
+                CollectorUpdates updates = cSvc.getCollectorUpdates();
 
-                    updates.markForDeletion();
-                }
+                // Now set the update's deletion flag so the next
+                // time it is selected for execution by the scheduler
+                // the collection will be skipped and the service will not
+                // be rescheduled.
+                LOG.debug("Marking CollectableService for deletion because an interface was deleted:  Service nodeid={}, deleted node:{}service address:{}deleted interface:{}", cSvc.getNodeId(), nodeId, str(addr), ipAddr);
 
-                // Now safe to remove the collectable service from
-                // the collectable services list
-                liter.remove();
+                updates.markForDeletion();
             }
+
+            // Now safe to remove the collectable service from
+            // the collectable services list
+            m_collectableServices.remove(cSvc);
         }
 
             LOG.debug("interfaceDeletedHandler: processing of interfaceDeleted event for {}/{} completed", nodeId, ipAddr);
@@ -900,31 +931,29 @@ public class Collectd extends AbstractServiceDaemon implements
         // subsequent collections will then be updating the appropriate RRDs.
         //
         OnmsIpInterface iface = null;
-        synchronized (getCollectableServices()) {
-            CollectableService cSvc = null;
-            Iterator<CollectableService> iter = getCollectableServices().iterator();
-            while (iter.hasNext()) {
-                cSvc = iter.next();
-
-                InetAddress addr = (InetAddress) cSvc.getAddress();
-				if (addr.equals(event.getInterfaceAddress())) {
-                    synchronized (cSvc) {
-                        // Got a match!
-                        LOG.debug("interfaceReparentedHandler: got a CollectableService match for {}", event.getInterface());
-
-                        // Retrieve the CollectorUpdates object associated
-                        // with
-                        // this CollectableService.
-                        CollectorUpdates updates = cSvc.getCollectorUpdates();
-                        if (iface == null) {
-                        	iface = getIpInterface(event.getNodeid().intValue(), event.getInterface());
-                        }
-
-                        // Now set the reparenting flag
-                        updates.markForReparenting(oldNodeIdStr, newNodeIdStr, iface);
-                        LOG.debug("interfaceReparentedHandler: marking {} for reparenting for service SNMP.", event.getInterface());
-                    }
+        for (final CollectableService cSvc : m_collectableServices.getByAddress(event.getInterfaceAddress())) {
+            synchronized (cSvc) {
+                // Got a match!
+                LOG.debug("interfaceReparentedHandler: got a CollectableService match for {}", event.getInterface());
+
+                // Retrieve the CollectorUpdates object associated
+                // with
+                // this CollectableService.
+                CollectorUpdates updates = cSvc.getCollectorUpdates();
+                if (iface == null) {
+                	iface = getIpInterface(event.getNodeid().intValue(), event.getInterface());
                 }
+
+                // Now set the reparenting flag
+                updates.markForReparenting(oldNodeIdStr, newNodeIdStr, iface);
+                LOG.debug("interfaceReparentedHandler: marking {} for reparenting for service SNMP.", event.getInterface());
+            }
+
+            // Index the service under its new node right away
+            try {
+                m_collectableServices.reparent(cSvc, Integer.parseInt(newNodeIdStr));
+            } catch (final NumberFormatException e) {
+                LOG.warn("interfaceReparentedHandler: invalid new nodeId {}", newNodeIdStr);
             }
         }
 
@@ -971,35 +1000,24 @@ public class Collectd extends AbstractServiceDaemon implements
     }
     
 	private void unscheduleNodeAndMarkForDeletion(Long nodeId) {
-		// Iterate over the collectable service list and mark any entries
-        // which match the deleted nodeId for deletion.
-        synchronized (getCollectableServices()) {
-            CollectableService cSvc = null;
-            final ListIterator<CollectableService> liter = getCollectableServices().listIterator();
-            while (liter.hasNext()) {
-                cSvc = liter.next();
-
-                // Only interested in entries with matching nodeId
-                if (!(cSvc.getNodeId() == nodeId))
-                    continue;
-
-                synchronized (cSvc) {
-                    // Retrieve the CollectorUpdates object associated
-                    // with this CollectableService.
-                    CollectorUpdates updates = cSvc.getCollectorUpdates();
-
-                    // Now set the update's deletion flag so the next
-                    // time it is selected for execution by the scheduler
-                    // the collection will be skipped and the service will not
-                    // be rescheduled.
-                    LOG.debug("Marking CollectableService for deletion because a node was deleted:  Service nodeid={}, deleted node:{}", cSvc.getNodeId(), nodeId);
-                    updates.markForDeletion();
-                }
-
-                // Now safe to remove the collectable service from
-                // the collectable services list
-                liter.remove();
+		// Mark any entries which match the deleted nodeId for deletion.
+        for (final CollectableService cSvc : m_collectableServices.getByNode(nodeId.intValue())) {
+            synchronized (cSvc) {
+                // Retrieve the CollectorUpdates object associated
+                // with this CollectableService.
+                CollectorUpdates updates = cSvc.getCollectorUpdates();
+
+                // Now set the update's deletion flag so the next
+                // time it is selected for execution by the scheduler
+                // the collection will be skipped and the service will not
+                // be rescheduled.
+                LOG.debug("Marking CollectableService for deletion because a node was deleted:  Service nodeid={}, deleted node:{}", cSvc.getNodeId(), nodeId);
+                updates.markForDeletion();
             }
+
+            // Now safe to remove the collectable service from
+            // the collectable services list
+            m_collectableServices.remove(cSvc);
         }
 	}
 
@@ -1056,10 +1074,8 @@ public class Collectd extends AbstractServiceDaemon implements
                 getEventIpcManager().sendNow(ebldr.getEvent());
                 // Updating thresholding visitors to use the new configuration
                 LOG.debug("handleReloadDaemonConfig: Reloading thresholding configuration in collectd");
-                synchronized (m_collectableServices) {
-                    for(CollectableService service: m_collectableServices) {
-                        service.reinitializeThresholding();
-                    }
+                for(CollectableService service: m_collectableServices.getAll()) {
+                    service.reinitializeThresholding();
                 }
                 // Preparing successful event
                 ebldr = new EventBuilder(EventConstants.RELOAD_DAEMON_CONFIG_SUCCESSFUL_UEI, "Collectd");
@@ -1152,32 +1168,22 @@ public class Collectd extends AbstractServiceDaemon implements
             // primary SNMP interface and a service name of "SNMP" for
             // deletion.
             //
-            synchronized (getCollectableServices()) {
-                CollectableService cSvc = null;
-                ListIterator<CollectableService> liter = getCollectableServices().listIterator();
-                while (liter.hasNext()) {
-                    cSvc = liter.next();
-
-                    final InetAddress addr = (InetAddress) cSvc.getAddress();
-                    final String addrString = str(addr);
-					if (addrString != null && addrString.equals(oldPrimaryIfAddr)) {
-                        synchronized (cSvc) {
-                            // Got a match! Retrieve the CollectorUpdates
-                            // object
-                            // associated
-                            // with this CollectableService.
-                            CollectorUpdates updates = cSvc.getCollectorUpdates();
-
-                            // Now set the deleted flag
-                            updates.markForDeletion();
-                            LOG.debug("primarySnmpInterfaceChangedHandler: marking {} as deleted for service SNMP.", oldPrimaryIfAddr);
-                        }
+            for (final CollectableService cSvc : m_collectableServices.getByAddress(addr(oldPrimaryIfAddr))) {
+                synchronized (cSvc) {
+                    // Got a match! Retrieve the CollectorUpdates
+                    // object
+                    // associated
+                    // with this CollectableService.
+                    CollectorUpdates updates = cSvc.getCollectorUpdates();
 
-                        // Now safe to remove the collectable service from
-                        // the collectable services list
-                        liter.remove();
-                    }
+                    // Now set the deleted flag
+                    updates.markForDeletion();
+                    LOG.debug("primarySnmpInterfaceChangedHandler: marking {} as deleted for service SNMP.", oldPrimaryIfAddr);
                 }
+
+                // Now safe to remove the collectable service from
+                // the collectable services list
+                m_collectableServices.remove(cSvc);
             }
         }
 
@@ -1224,29 +1230,19 @@ public class Collectd extends AbstractServiceDaemon implements
         // address for reinitialization
         //
         OnmsIpInterface iface = null;
-        synchronized (getCollectableServices()) {
-            Iterator<CollectableService> iter = getCollectableServices().iterator();
-            while (iter.hasNext()) {
-                CollectableService cSvc = iter.next();
+        for (final CollectableService cSvc : m_collectableServices.getByAddress(addr(ipAddress))) {
+            synchronized (cSvc) {
+            	if (iface == null) {
+                    iface = getIpInterface(nodeid.intValue(), ipAddress);
+            	}
+                // Got a match! Retrieve the CollectorUpdates object
+                // associated
+                // with this CollectableService.
+                CollectorUpdates updates = cSvc.getCollectorUpdates();
         
-                final InetAddress addr = (InetAddress) cSvc.getAddress();
-                final String addrString = str(addr);
-                LOG.debug("Comparing CollectableService ip address = {} and event ip interface = {}", addrString, ipAddress);
-                if (addrString != null && addrString.equals(ipAddress)) {
-                    synchronized (cSvc) {
-                    	if (iface == null) {
-                            iface = getIpInterface(nodeid.intValue(), ipAddress);
-                    	}
-                        // Got a match! Retrieve the CollectorUpdates object
-                        // associated
-                        // with this CollectableService.
-                        CollectorUpdates updates = cSvc.getCollectorUpdates();
-        
-                        // Now set the reinitialization flag
-                        updates.markForReinitialization(iface);
-                        LOG.debug("reinitializePrimarySnmpInterfaceHandler: marking {} for reinitialization for service SNMP.", ipAddress);
-                    }
-                }
+                // Now set the reinitialization flag
+                updates.markForReinitialization(iface);
+                LOG.debug("reinitializePrimarySnmpInterfaceHandler: marking {} for reinitialization for service SNMP.", ipAddress);
             }
         }
     }
@@ -1280,39 +1276,30 @@ public class Collectd extends AbstractServiceDaemon implements
         // Iterate over the collectable services list and mark any entries
         // which match the nodeId/ipAddr of the deleted service
         // for deletion.
-        synchronized (getCollectableServices()) {
-            CollectableService cSvc = null;
-            ListIterator<CollectableService> liter = getCollectableServices().listIterator();
-            while (liter.hasNext()) {
-                cSvc = liter.next();
-
-                // Only interested in entries with matching nodeId, IP address
-                // and service
-                InetAddress addr = (InetAddress) cSvc.getAddress();
-                
-                //WATCH the brackets; there used to be an extra close bracket after the ipAddr comparison which borked this whole expression
-                if (!(cSvc.getNodeId() == nodeId && 
-                        addr.getHostName().equals(ipAddr) && 
-                        cSvc.getServiceName().equals(svcName))) 
-                    continue;
-
-                synchronized (cSvc) {
-                    // Retrieve the CollectorUpdates object associated with
-                    // this CollectableService if one exists.
-                    CollectorUpdates updates = cSvc.getCollectorUpdates();
-
-                    // Now set the update's deletion flag so the next
-                    // time it is selected for execution by the scheduler
-                    // the collection will be skipped and the service will not
-                    // be rescheduled.
-                    LOG.debug("Marking CollectableService for deletion because a service was deleted:  Service nodeid={}, deleted node:{}, service address:{}, deleted interface:{}, service servicename:{}, deleted service name:{}, event source {}", cSvc.getNodeId(), nodeId, addr.getHostName(), ipAddr, cSvc.getServiceName(), svcName, event.getSource());
-                    updates.markForDeletion();
-                }
+        for (final CollectableService cSvc : m_collectableServices.getByAddress(addr(ipAddr))) {
+            // Only interested in entries with matching nodeId and service
+            InetAddress addr = (InetAddress) cSvc.getAddress();
+            
+            if (!(cSvc.getNodeId() == nodeId && 
+                    cSvc.getServiceName().equals(svcName))) 
+                continue;
 
-                // Now safe to remove the collectable service from
-                // the collectable services list
-                liter.remove();
+            synchronized (cSvc) {
+                // Retrieve the CollectorUpdates object associated with
+                // this CollectableService if one exists.
+                CollectorUpdates updates = cSvc.getCollectorUpdates();
+
+                // Now set the update's deletion flag so the next
+                // time it is selected for execution by the scheduler
+                // the collection will be skipped and the service will not
+                // be rescheduled.
+                LOG.debug("Marking CollectableService for deletion because a service was deleted:  Service nodeid={}, deleted node:{}, service address:{}, deleted interface:{}, service servicename:{}, deleted service name:{}, event source {}", cSvc.getNodeId(), nodeId, str(addr), ipAddr, cSvc.getServiceName(), svcName, event.getSource());
+                updates.markForDeletion();
             }
+
+            // Now safe to remove the collectable service from
+            // the collectable services list
+            m_collectableServices.remove(cSvc);
         }
 
         LOG.debug("serviceDeletedHandler: processing of serviceDeleted event for {}/{}/{} completed.", nodeId, ipAddr, svcName);
@@ -44,6 +44,13 @@ public interface CollectdInstrumentation {
      * <p>endScheduleExistingInterfaces</p>
      */
     public void endScheduleExistingInterfaces();
+    /**
+     * Report how long scheduling the existing interfaces took at startup.
+     *
+     * @param serviceCount the number of collectable services scheduled
+     * @param elapsedMillis the elapsed time in milliseconds
+     */
+    public void reportScheduleExistingInterfaces(int serviceCount, long elapsedMillis);
     /**
      * <p>beginScheduleInterfacesWithService</p>
      *
@@ -57,6 +57,15 @@ public class DefaultCollectdInstrumentation implements CollectdInstrumentation {
         });
     }
 
+    @Override
+    public void reportScheduleExistingInterfaces(final int serviceCount, final long elapsedMillis) {
+        Logging.withPrefix("instrumentation", new Runnable() {
+            @Override public void run() {
+                LOG.info("scheduleExistingInterfaces: scheduled {} services in {}ms", serviceCount, elapsedMillis);
+            }
+        });
+    }
+
     @Override
     public void beginScheduleInterfacesWithService(final String svcName) {
         Logging.withPrefix("instrumentation", new Runnable() {
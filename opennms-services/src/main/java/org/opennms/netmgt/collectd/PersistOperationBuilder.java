@@ -67,6 +67,11 @@ public class PersistOperationBuilder {
     /** Constant <code>MAX_DS_NAME_LENGTH=19</code> */
     public static final int MAX_DS_NAME_LENGTH = 19;
 
+    /**
+     * The largest integer a double holds exactly.
+     */
+    private static final long MAX_EXACT_DOUBLE = 1L << 53;
+
     /**
      * <p>Constructor for PersistOperationBuilder.</p>
      *
@@ -149,26 +154,70 @@ public class PersistOperationBuilder {
         final String ownerName = m_resource.getOwnerName();
         final String absolutePath = getResourceDir(m_resource).getAbsolutePath();
         RrdUtils.createRRD(ownerName, absolutePath, m_rrdName, getRepository().getStep(), getDataSources(), getRepository().getRraList(), getAttributeMappings());
-        RrdUtils.updateRRD(ownerName, absolutePath, m_rrdName, m_timeKeeper.getCurrentTime(), getValues());
+        if (allValuesExact()) {
+            RrdUtils.updateRRD(ownerName, absolutePath, m_rrdName, m_timeKeeper.getCurrentTime(), getValues());
+        } else {
+            // a 64-bit counter a double would round; send the exact digits
+            RrdUtils.updateRRD(ownerName, absolutePath, m_rrdName, m_timeKeeper.getCurrentTime(), getValuesString());
+        }
         RrdUtils.createMetaDataFile(absolutePath, m_rrdName, m_metaData);
     }
 
-    private String getValues() {
-        boolean first = true;
-        StringBuffer values = new StringBuffer();
-        for (Iterator<AttributeDefinition> iter = m_declarations.keySet().iterator(); iter.hasNext();) {
-            AttributeDefinition attrDef = iter.next();
-            String value = m_declarations.get(attrDef);
-            if (!first) {
+    private double[] getValues() {
+        double[] values = new double[m_declarations.size()];
+        int i = 0;
+        for (String value : m_declarations.values()) {
+            values[i++] = RrdUtils.parseValue(value);
+        }
+        return values;
+    }
+
+    private String getValuesString() {
+        StringBuilder values = new StringBuilder();
+        for (String value : m_declarations.values()) {
+            if (values.length() > 0) {
                 values.append(':');
-            } else {
-                first = false;
             }
             values.append(value);
         }
         return values.toString();
     }
 
+    private boolean allValuesExact() {
+        for (String value : m_declarations.values()) {
+            if (!isExactAsDouble(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether a value survives being passed as a double.  Only integers
+     * beyond 2^53, such as large Counter64 values, do not; decimals were
+     * always parsed as doubles.
+     */
+    static boolean isExactAsDouble(String value) {
+        if (value == null) {
+            return true;
+        }
+        final int start = value.startsWith("-") ? 1 : 0;
+        if (start == value.length()) {
+            return true;
+        }
+        for (int i = start; i < value.length(); i++) {
+            if (!Character.isDigit(value.charAt(i))) {
+                return true;
+            }
+        }
+        try {
+            return Math.abs(Long.parseLong(value)) <= MAX_EXACT_DOUBLE;
+        } catch (NumberFormatException e) {
+            // beyond the range of a long
+            return false;
+        }
+    }
+
     private Map<String, String> getAttributeMappings() {
         return null;
     }
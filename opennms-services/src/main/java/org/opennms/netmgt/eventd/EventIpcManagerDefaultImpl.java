@@ -28,6 +28,9 @@
 
 package org.opennms.netmgt.eventd;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -36,6 +39,9 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
@@ -43,6 +49,10 @@ import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import org.opennms.core.logging.Logging;
 import org.opennms.core.concurrent.LogPreservingThreadFactory;
 import org.opennms.netmgt.model.events.EventIpcBroadcaster;
@@ -122,11 +132,133 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
 
     private EventIpcManagerProxy m_eventIpcManagerProxy;
 
+    /**
+     * What to do with events for a listener whose queue is full, unless
+     * overridden for that listener in {@link #m_listenerQueuePolicies}.
+     */
+    private EventListenerQueuePolicy m_listenerQueuePolicy = EventListenerQueuePolicy.DISCARD;
+
+    /**
+     * Per-listener queue policies, keyed by listener name.
+     */
+    private Map<String, EventListenerQueuePolicy> m_listenerQueuePolicies = new HashMap<String, EventListenerQueuePolicy>();
+
+    /**
+     * Where listeners with the SPILL policy spool their overflow.
+     */
+    private File m_listenerSpoolDirectory;
+
+    /**
+     * Immutable snapshot of the listener registrations used by
+     * {@link #broadcastNow(Event)}. It is rebuilt (under the registration
+     * lock) whenever a listener is added or removed and published through
+     * this volatile field, so broadcasting never takes a lock.
+     */
+    private volatile DispatchIndex m_dispatchIndex = DispatchIndex.EMPTY;
+
+    /**
+     * A copy-on-write index mapping event UEIs to the de-duplicated set of
+     * listener executors interested in them, including listeners registered
+     * on wildcard "directory" prefixes of the UEI.  Resolved UEIs are cached
+     * so that, once warm, a broadcast costs a single hash lookup and no
+     * allocation.
+     */
+    private static final class DispatchIndex {
+        private static final EventListenerExecutor[] NO_EXECUTORS = new EventListenerExecutor[0];
+
+        /**
+         * Bound on the number of distinct UEIs cached per snapshot, in case
+         * something sends an unbounded set of UEIs.
+         */
+        private static final int MAX_CACHED_UEIS = 10000;
+
+        static final DispatchIndex EMPTY = new DispatchIndex(NO_EXECUTORS, Collections.<String, EventListenerExecutor[]>emptyMap());
+
+        private final EventListenerExecutor[] m_matchAll;
+        private final Map<String, EventListenerExecutor[]> m_registered;
+        private final ConcurrentMap<String, EventListenerExecutor[]> m_resolved = new ConcurrentHashMap<String, EventListenerExecutor[]>();
+
+        private DispatchIndex(final EventListenerExecutor[] matchAll, final Map<String, EventListenerExecutor[]> registered) {
+            m_matchAll = matchAll;
+            m_registered = registered;
+        }
+
+        static DispatchIndex build(final List<EventListener> matchAll, final Map<String, List<EventListener>> ueiListeners, final Map<String, EventListenerExecutor> executors) {
+            final Map<String, EventListenerExecutor[]> registered = new HashMap<String, EventListenerExecutor[]>();
+            for (final Map.Entry<String, List<EventListener>> entry : ueiListeners.entrySet()) {
+                if (!entry.getValue().isEmpty()) {
+                    registered.put(entry.getKey(), toExecutors(entry.getValue(), executors));
+                }
+            }
+            return new DispatchIndex(toExecutors(matchAll, executors), registered);
+        }
+
+        private static EventListenerExecutor[] toExecutors(final Collection<EventListener> listeners, final Map<String, EventListenerExecutor> executors) {
+            final List<EventListenerExecutor> result = new ArrayList<EventListenerExecutor>(listeners.size());
+            for (final EventListener listener : listeners) {
+                final EventListenerExecutor executor = executors.get(listener.getName());
+                if (executor != null) {
+                    result.add(executor);
+                }
+            }
+            return result.isEmpty() ? NO_EXECUTORS : result.toArray(new EventListenerExecutor[result.size()]);
+        }
+
+        EventListenerExecutor[] getMatchAll() {
+            return m_matchAll;
+        }
+
+        EventListenerExecutor[] getForUei(final String uei) {
+            EventListenerExecutor[] executors = m_resolved.get(uei);
+            if (executors == null) {
+                executors = resolve(uei);
+                if (m_resolved.size() < MAX_CACHED_UEIS) {
+                    m_resolved.putIfAbsent(uei, executors);
+                }
+            }
+            return executors;
+        }
+
+        /**
+         * Collect the listeners for the UEI itself and then for each of its
+         * partial wild card "directory" prefixes, without duplicates.
+         */
+        private EventListenerExecutor[] resolve(final String eventUei) {
+            final Set<EventListener> seen = new HashSet<EventListener>();
+            final List<EventListenerExecutor> result = new ArrayList<EventListenerExecutor>();
+            for (String uei = eventUei; uei.length() > 0; ) {
+                final EventListenerExecutor[] executors = m_registered.get(uei);
+                if (executors != null) {
+                    for (final EventListenerExecutor executor : executors) {
+                        if (seen.add(executor.getListener())) {
+                            result.add(executor);
+                        }
+                    }
+                }
+
+                // Try wild cards: Find / before last character
+                int i = uei.lastIndexOf("/", uei.length() - 2);
+                if (i > 0) {
+                    // Split at "/", including the /
+                    uei = uei.substring (0, i + 1);
+                } else {
+                    // No more wild cards to match
+                    break;
+                }
+            }
+            return result.isEmpty() ? NO_EXECUTORS : result.toArray(new EventListenerExecutor[result.size()]);
+        }
+    }
+
     /**
      * A thread dedicated to each listener. The events meant for each listener
      * is added to an execution queue when the 'sendNow()' is called. The
      * ListenerThread reads events off of this queue and sends them to the
      * appropriate listener.
+     *
+     * What happens when the queue is full is decided by the listener's
+     * {@link EventListenerQueuePolicy}, and the queue's statistics are
+     * exposed through JMX as an {@link EventListenerQueueStatsMBean}.
      */
     private static class EventListenerExecutor {
         /**
@@ -137,20 +269,76 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         /**
          * The thread that is running this runnable.
          */
-        private final ExecutorService m_delegateThread;
+        private final ThreadPoolExecutor m_delegateThread;
+
+        private final BlockingQueue<Runnable> m_queue;
+
+        private final EventListenerQueuePolicy m_policy;
+
+        private final EventListenerQueueStats m_stats;
+
+        /**
+         * The on-disk overflow for the {@link EventListenerQueuePolicy#SPILL} policy.
+         */
+        private final EventListenerSpool m_spool;
+
+        private ObjectName m_objectName;
+
+        /**
+         * The unit of work queued for the listener.
+         */
+        private class EventTask implements Runnable {
+            private final Event m_event;
+
+            EventTask(final Event event) {
+                m_event = event;
+            }
+
+            Event getEvent() {
+                return m_event;
+            }
+
+            @Override
+            public void run() {
+                final Event event = m_event;
+                final long start = System.currentTimeMillis();
+                try {
+                    LOG.info("run: calling onEvent on {} for event {} dbid {} with time {}", m_listener.getName(), event.getUei(), event.getDbid(), event.getTime());
+
+                    // Make sure we restore our log4j logging prefix after onEvent is called
+                    Map mdc = Logging.getCopyOfContextMap();
+                    try {
+                        m_listener.onEvent(event);
+                    } finally {
+                        Logging.setContextMap(mdc);
+                    }
+                } catch (Throwable t) {
+                    LOG.warn("run: an unexpected error occured during ListenerThread {}", m_listener.getName(), t);
+                } finally {
+                    m_stats.eventProcessed(System.currentTimeMillis() - start);
+                    drainSpool();
+                }
+            }
+        }
 
         /**
          * Constructor
          */
-        EventListenerExecutor(EventListener listener, Integer handlerQueueLength) {
+        EventListenerExecutor(EventListener listener, Integer handlerQueueLength, EventListenerQueuePolicy policy, File spoolDirectory) {
             m_listener = listener;
+            m_policy = policy;
+            m_queue = handlerQueueLength == null ? new LinkedBlockingQueue<Runnable>() : new LinkedBlockingQueue<Runnable>(handlerQueueLength);
+            m_stats = new EventListenerQueueStats(m_listener.getName(), policy, m_queue);
+            m_spool = createSpool(policy, spoolDirectory);
+            m_stats.setSpool(m_spool);
+
             // You could also do Executors.newSingleThreadExecutor() here
             m_delegateThread = new ThreadPoolExecutor(
                     1,
                     1,
                     0L,
                     TimeUnit.MILLISECONDS,
-                    handlerQueueLength == null ? new LinkedBlockingQueue<Runnable>() : new LinkedBlockingQueue<Runnable>(handlerQueueLength),
+                    m_queue,
                     // This ThreadFactory will ensure that the log prefix of the calling thread
                     // is used for all events that this listener handles. Therefore, if Notifd
                     // registers for an event then all logs for handling that event will end up
@@ -159,31 +347,167 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
                     new RejectedExecutionHandler() {
                         @Override
                         public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
-                            LOG.warn("Listener {}'s event queue is full, discarding event", m_listener.getName());
+                            handleFullQueue((EventTask) r, executor);
                         }
                     }
             );
+            // the BLOCK and SPILL policies put tasks straight on the queue, so the worker must exist
+            m_delegateThread.prestartCoreThread();
+
+            registerStats();
+            drainSpool();
+        }
+
+        private EventListenerSpool createSpool(EventListenerQueuePolicy policy, File spoolDirectory) {
+            if (policy != EventListenerQueuePolicy.SPILL) {
+                return null;
+            }
+            final File directory = new File(spoolDirectory, m_listener.getName().replaceAll("[^A-Za-z0-9._-]", "_"));
+            try {
+                return new EventListenerSpool(directory);
+            } catch (final IOException e) {
+                LOG.warn("Unable to create event spool {} for listener {}; events will be discarded when its queue is full", directory, m_listener.getName(), e);
+                return null;
+            }
+        }
+
+        public EventListener getListener() {
+            return m_listener;
         }
 
         public void addEvent(final Event event) {
-            m_delegateThread.execute(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        LOG.info("run: calling onEvent on {} for event {} dbid {} with time {}", m_listener.getName(), event.getUei(), event.getDbid(), event.getTime());
-
-                        // Make sure we restore our log4j logging prefix after onEvent is called
-                        Map mdc = Logging.getCopyOfContextMap();
-                        try {
-                            m_listener.onEvent(event);
-                        } finally {
-                            Logging.setContextMap(mdc);
-                        }
-                    } catch (Throwable t) {
-                        LOG.warn("run: an unexpected error occured during ListenerThread {}", m_listener.getName(), t);
+            m_stats.eventQueued();
+
+            if (m_spool != null && !m_spool.isEmpty()) {
+                // keep events in order: once we are spilling, newer events go behind the spooled ones
+                spill(event);
+                drainSpool();
+                return;
+            }
+
+            m_delegateThread.execute(new EventTask(event));
+        }
+
+        private void handleFullQueue(final EventTask task, final ThreadPoolExecutor executor) {
+            final Event event = task.getEvent();
+            if (executor.isShutdown()) {
+                LOG.debug("Listener {} has been stopped, discarding event {}", m_listener.getName(), event.getUei());
+                m_stats.eventDropped();
+                return;
+            }
+
+            switch (m_policy) {
+            case BLOCK:
+                final long start = System.currentTimeMillis();
+                try {
+                    m_queue.put(task);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    LOG.warn("Interrupted while waiting for listener {}'s event queue, discarding event", m_listener.getName());
+                    m_stats.eventDropped();
+                } finally {
+                    m_stats.producerBlocked(System.currentTimeMillis() - start);
+                }
+                break;
+
+            case SPILL:
+                spill(event);
+                break;
+
+            case COALESCE:
+                if (isQueued(event)) {
+                    LOG.debug("Listener {}'s event queue is full, coalescing event {} with a queued duplicate", m_listener.getName(), event.getUei());
+                    m_stats.eventCoalesced();
+                    break;
+                }
+                LOG.warn("Listener {}'s event queue is full, discarding event", m_listener.getName());
+                m_stats.eventDropped();
+                break;
+
+            default:
+                LOG.warn("Listener {}'s event queue is full, discarding event", m_listener.getName());
+                m_stats.eventDropped();
+            }
+        }
+
+        /**
+         * Is an event with the same UEI, node, interface and service already
+         * waiting in the queue?
+         */
+        private boolean isQueued(final Event event) {
+            for (final Runnable r : m_queue) {
+                final Event queued = ((EventTask) r).getEvent();
+                if (equal(queued.getUei(), event.getUei())
+                        && equal(queued.getNodeid(), event.getNodeid())
+                        && equal(queued.getInterface(), event.getInterface())
+                        && equal(queued.getService(), event.getService())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static boolean equal(final Object a, final Object b) {
+            return a == null ? b == null : a.equals(b);
+        }
+
+        private void spill(final Event event) {
+            if (m_spool == null) {
+                LOG.warn("Listener {}'s event queue is full, discarding event", m_listener.getName());
+                m_stats.eventDropped();
+                return;
+            }
+            try {
+                m_spool.write(event);
+                m_stats.eventSpilled();
+            } catch (final IOException e) {
+                LOG.warn("Listener {}'s event queue is full and the event could not be spooled, discarding event", m_listener.getName(), e);
+                m_stats.eventDropped();
+            }
+        }
+
+        /**
+         * Move spooled events back onto the queue while it has room.
+         */
+        private void drainSpool() {
+            if (m_spool == null || m_delegateThread == null || m_delegateThread.isShutdown()) {
+                return;
+            }
+            synchronized (m_spool) {
+                while (m_queue.remainingCapacity() > 0) {
+                    final Event event = m_spool.peek();
+                    if (event == null || !m_queue.offer(new EventTask(event))) {
+                        break;
                     }
+                    m_spool.remove();
                 }
-            });
+            }
+        }
+
+        private void registerStats() {
+            try {
+                final ObjectName objectName = new ObjectName("OpenNMS:Name=Eventd,Listener=" + ObjectName.quote(m_listener.getName()));
+                final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                if (server.isRegistered(objectName)) {
+                    server.unregisterMBean(objectName);
+                }
+                server.registerMBean(m_stats, objectName);
+                m_objectName = objectName;
+            } catch (final JMException e) {
+                LOG.warn("Unable to register event queue statistics for listener {}", m_listener.getName(), e);
+            }
+        }
+
+        private void unregisterStats() {
+            if (m_objectName == null) {
+                return;
+            }
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(m_objectName);
+            } catch (final JMException e) {
+                LOG.debug("Unable to unregister event queue statistics for listener {}", m_listener.getName(), e);
+            }
+            m_objectName = null;
         }
 
         /**
@@ -191,6 +515,7 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
          */
         public void stop() {
             m_delegateThread.shutdown();
+            unregisterStats();
         }
     }
 
@@ -264,13 +589,16 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
     public void broadcastNow(Event event) {
         LOG.debug("Event ID {} to be broadcasted: {}", event.getDbid(), event.getUei());
 
-        if (m_listeners.isEmpty()) {
+        final DispatchIndex index = m_dispatchIndex;
+        final EventListenerExecutor[] matchAll = index.getMatchAll();
+
+        if (matchAll.length == 0) {
             LOG.debug("No listeners interested in all events");
         }
 
         // Send to listeners interested in receiving all events
-        for (EventListener listener : m_listeners) {
-            queueEventToListener(event, listener);
+        for (final EventListenerExecutor executor : matchAll) {
+            executor.addEvent(event);
         }
 
         if (event.getUei() == null) {
@@ -278,39 +606,23 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
             return;
         }
 
-        /*
-         * Send to listeners who are interested in this event UEI.
-         * Loop to attempt partial wild card "directory" matches.
-         */
-        Set<EventListener> sentToListeners = new HashSet<EventListener>();
-        for (String uei = event.getUei(); uei.length() > 0; ) {
-            if (m_ueiListeners.containsKey(uei)) {
-                for (EventListener listener : m_ueiListeners.get(uei)) {
-                    if (!sentToListeners.contains(listener)) {
-                        queueEventToListener(event, listener);
-                        sentToListeners.add(listener);
-                    }
-                }
-            }
-            
-            // Try wild cards: Find / before last character
-            int i = uei.lastIndexOf("/", uei.length() - 2);
-            if (i > 0) {
-                // Split at "/", including the /
-                uei = uei.substring (0, i + 1);
-            } else {
-                // No more wild cards to match
-                break;
-            }
+        // Send to listeners who are interested in this event UEI or one of its wild card prefixes
+        final EventListenerExecutor[] ueiExecutors = index.getForUei(event.getUei());
+        for (final EventListenerExecutor executor : ueiExecutors) {
+            executor.addEvent(event);
         }
-        
-        if (sentToListeners.isEmpty()) {
+
+        if (ueiExecutors.length == 0) {
             LOG.debug("No listener interested in event ID {}: {}", event.getDbid(), event.getUei());
         }
     }
 
-    private void queueEventToListener(Event event, EventListener listener) {
-        m_listenerThreads.get(listener.getName()).addEvent(event);
+    /**
+     * Rebuild the broadcast dispatch index from the current registrations.
+     * Must be called with the registration lock held.
+     */
+    private void rebuildDispatchIndex() {
+        m_dispatchIndex = DispatchIndex.build(m_listeners, m_ueiListeners, m_listenerThreads);
     }
 
     /**
@@ -331,6 +643,8 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         for (String uei : m_ueiListeners.keySet()) {
             removeUeiForListener(uei, listener);
         }
+
+        rebuildDispatchIndex();
     }
 
     /**
@@ -358,6 +672,8 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
 
         // Since we have a UEI-specific listener, remove the match-all listener
         removeMatchAllForListener(listener);
+
+        rebuildDispatchIndex();
     }
 
     /**
@@ -392,6 +708,8 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         for (String uei : ueis) {
             removeUeiForListener(uei, listener);
         }
+
+        rebuildDispatchIndex();
     }
 
     /**
@@ -411,6 +729,8 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         Assert.notNull(uei, "uei argument cannot be null");
 
         removeUeiForListener(uei, listener);
+
+        rebuildDispatchIndex();
     }
 
     /**
@@ -437,6 +757,8 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
 
             m_listenerThreads.remove(listener.getName());
         }
+
+        rebuildDispatchIndex();
     }
 
     /**
@@ -448,7 +770,7 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
             return;
         }
         
-        EventListenerExecutor listenerThread = new EventListenerExecutor(listener, m_handlerQueueLength);
+        EventListenerExecutor listenerThread = new EventListenerExecutor(listener, m_handlerQueueLength, getListenerQueuePolicy(listener.getName()), getListenerSpoolDirectory());
         m_listenerThreads.put(listener.getName(), listenerThread);
     }
 
@@ -584,6 +906,77 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         m_handlerQueueLength = size;
     }
 
+    private EventListenerQueuePolicy getListenerQueuePolicy(String listenerName) {
+        final EventListenerQueuePolicy policy = m_listenerQueuePolicies.get(listenerName);
+        return policy == null ? m_listenerQueuePolicy : policy;
+    }
+
+    /**
+     * <p>getListenerQueuePolicy</p>
+     *
+     * @return the default queue policy, as a string
+     */
+    public String getListenerQueuePolicy() {
+        return m_listenerQueuePolicy.toString();
+    }
+
+    /**
+     * Set the policy applied when a listener's queue is full: one of
+     * <code>discard</code>, <code>block</code>, <code>spill</code> or
+     * <code>coalesce</code>.
+     *
+     * @param policy a {@link java.lang.String} object.
+     */
+    public void setListenerQueuePolicy(String policy) {
+        m_listenerQueuePolicy = EventListenerQueuePolicy.fromString(policy);
+    }
+
+    /**
+     * Set per-listener queue policies, overriding the default for the
+     * listeners named in the map.
+     *
+     * @param policies a map of listener name to policy name
+     */
+    public void setListenerQueuePolicies(Map<String, String> policies) {
+        final Map<String, EventListenerQueuePolicy> parsed = new HashMap<String, EventListenerQueuePolicy>();
+        for (final Map.Entry<String, String> entry : policies.entrySet()) {
+            parsed.put(entry.getKey(), EventListenerQueuePolicy.fromString(entry.getValue()));
+        }
+        m_listenerQueuePolicies = parsed;
+    }
+
+    /**
+     * <p>getListenerSpoolDirectory</p>
+     *
+     * @return the directory used by listeners with the SPILL policy
+     */
+    public File getListenerSpoolDirectory() {
+        if (m_listenerSpoolDirectory == null) {
+            return new File(System.getProperty("opennms.home", System.getProperty("java.io.tmpdir")), "share" + File.separator + "eventd" + File.separator + "spool");
+        }
+        return m_listenerSpoolDirectory;
+    }
+
+    /**
+     * <p>setListenerSpoolDirectory</p>
+     *
+     * @param directory a {@link java.io.File} object.
+     */
+    public void setListenerSpoolDirectory(File directory) {
+        m_listenerSpoolDirectory = directory;
+    }
+
+    /**
+     * Get the queue statistics for the named listener.
+     *
+     * @param listenerName the listener name
+     * @return the statistics, or null if no such listener is registered
+     */
+    public synchronized EventListenerQueueStatsMBean getListenerQueueStats(String listenerName) {
+        final EventListenerExecutor executor = m_listenerThreads.get(listenerName);
+        return executor == null ? null : executor.m_stats;
+    }
+
     /**
      * <p>getEventIpcManagerProxy</p>
      *
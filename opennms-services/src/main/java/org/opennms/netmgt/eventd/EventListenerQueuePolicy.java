@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd;
+
+/**
+ * What {@link EventIpcManagerDefaultImpl} does with an event when the queue
+ * in front of a listener is full.
+ */
+public enum EventListenerQueuePolicy {
+    /**
+     * Discard the new event and log a warning.  This is the historical
+     * behavior.
+     */
+    DISCARD,
+
+    /**
+     * Block the broadcasting thread until the listener has room, pushing
+     * back on eventd (and ultimately on the event receivers).
+     */
+    BLOCK,
+
+    /**
+     * Write the event to an on-disk spool and feed it back to the listener
+     * once its queue drains.
+     */
+    SPILL,
+
+    /**
+     * Discard the new event if an event with the same UEI for the same
+     * node, interface and service is already waiting in the queue, and
+     * discard it otherwise as {@link #DISCARD} does.
+     */
+    COALESCE;
+
+    /**
+     * Parse a policy name, ignoring case.
+     *
+     * @param name the policy name
+     * @return the policy
+     * @throws IllegalArgumentException if the name is not a known policy
+     */
+    public static EventListenerQueuePolicy fromString(final String name) {
+        return valueOf(name.trim().toUpperCase());
+    }
+}
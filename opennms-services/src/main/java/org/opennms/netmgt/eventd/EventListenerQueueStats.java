@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and processing time histogram for the queue in front of a single
+ * event listener.
+ */
+public class EventListenerQueueStats implements EventListenerQueueStatsMBean {
+    private static final long[] BUCKETS = new long[] { 1, 5, 10, 50, 100, 500, 1000, 5000 };
+
+    private final String m_listenerName;
+    private final String m_queuePolicy;
+    private final BlockingQueue<Runnable> m_queue;
+    private volatile EventListenerSpool m_spool;
+
+    private volatile long m_startTime = System.currentTimeMillis();
+    private final AtomicLong m_queued = new AtomicLong();
+    private final AtomicLong m_processed = new AtomicLong();
+    private final AtomicLong m_dropped = new AtomicLong();
+    private final AtomicLong m_coalesced = new AtomicLong();
+    private final AtomicLong m_spilled = new AtomicLong();
+    private final AtomicLong m_blockedTime = new AtomicLong();
+    private final AtomicLong m_processingTime = new AtomicLong();
+    private final AtomicLong m_maxProcessingTime = new AtomicLong();
+    // one more bucket than bounds for everything above the last bound
+    private final AtomicLongArray m_histogram = new AtomicLongArray(BUCKETS.length + 1);
+
+    EventListenerQueueStats(final String listenerName, final EventListenerQueuePolicy queuePolicy, final BlockingQueue<Runnable> queue) {
+        m_listenerName = listenerName;
+        m_queuePolicy = queuePolicy.toString();
+        m_queue = queue;
+    }
+
+    void setSpool(final EventListenerSpool spool) {
+        m_spool = spool;
+    }
+
+    void eventQueued() {
+        m_queued.incrementAndGet();
+    }
+
+    void eventDropped() {
+        m_dropped.incrementAndGet();
+    }
+
+    void eventCoalesced() {
+        m_coalesced.incrementAndGet();
+    }
+
+    void eventSpilled() {
+        m_spilled.incrementAndGet();
+    }
+
+    void producerBlocked(final long millis) {
+        m_blockedTime.addAndGet(millis);
+    }
+
+    void eventProcessed(final long millis) {
+        m_processed.incrementAndGet();
+        m_processingTime.addAndGet(millis);
+
+        long max = m_maxProcessingTime.get();
+        while (millis > max && !m_maxProcessingTime.compareAndSet(max, millis)) {
+            max = m_maxProcessingTime.get();
+        }
+
+        int bucket = 0;
+        while (bucket < BUCKETS.length && millis > BUCKETS[bucket]) {
+            bucket++;
+        }
+        m_histogram.incrementAndGet(bucket);
+    }
+
+    @Override
+    public String getListenerName() {
+        return m_listenerName;
+    }
+
+    @Override
+    public String getQueuePolicy() {
+        return m_queuePolicy;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return m_queue.size();
+    }
+
+    @Override
+    public int getSpooledEvents() {
+        final EventListenerSpool spool = m_spool;
+        return spool == null ? 0 : spool.size();
+    }
+
+    @Override
+    public long getEventsQueued() {
+        return m_queued.get();
+    }
+
+    @Override
+    public long getEventsProcessed() {
+        return m_processed.get();
+    }
+
+    @Override
+    public long getEventsDropped() {
+        return m_dropped.get();
+    }
+
+    @Override
+    public long getEventsCoalesced() {
+        return m_coalesced.get();
+    }
+
+    @Override
+    public long getEventsSpilled() {
+        return m_spilled.get();
+    }
+
+    @Override
+    public long getBlockedTime() {
+        return m_blockedTime.get();
+    }
+
+    @Override
+    public double getAverageEnqueueRate() {
+        final long elapsed = System.currentTimeMillis() - m_startTime;
+        return elapsed <= 0 ? 0.0 : m_queued.get() * 1000.0 / elapsed;
+    }
+
+    @Override
+    public double getAverageProcessingTime() {
+        final long processed = m_processed.get();
+        return processed == 0 ? 0.0 : (double) m_processingTime.get() / processed;
+    }
+
+    @Override
+    public long getMaxProcessingTime() {
+        return m_maxProcessingTime.get();
+    }
+
+    @Override
+    public long[] getProcessingTimeBuckets() {
+        return BUCKETS.clone();
+    }
+
+    @Override
+    public long[] getProcessingTimeHistogram() {
+        final long[] histogram = new long[m_histogram.length()];
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = m_histogram.get(i);
+        }
+        return histogram;
+    }
+
+    @Override
+    public void reset() {
+        m_startTime = System.currentTimeMillis();
+        m_queued.set(0);
+        m_processed.set(0);
+        m_dropped.set(0);
+        m_coalesced.set(0);
+        m_spilled.set(0);
+        m_blockedTime.set(0);
+        m_processingTime.set(0);
+        m_maxProcessingTime.set(0);
+        for (int i = 0; i < m_histogram.length(); i++) {
+            m_histogram.set(i, 0);
+        }
+    }
+}
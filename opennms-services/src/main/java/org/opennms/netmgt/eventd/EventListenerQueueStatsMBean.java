@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd;
+
+/**
+ * JMX view of the queue in front of a single event listener.  One of these
+ * is registered for each listener as
+ * <code>OpenNMS:Name=Eventd,Listener=&lt;listener name&gt;</code>.
+ */
+public interface EventListenerQueueStatsMBean {
+    /**
+     * @return the name of the listener this queue feeds
+     */
+    String getListenerName();
+
+    /**
+     * @return the back-pressure policy applied when the queue is full
+     */
+    String getQueuePolicy();
+
+    /**
+     * @return the number of events currently waiting in the queue
+     */
+    int getQueueDepth();
+
+    /**
+     * @return the number of events currently spooled to disk
+     */
+    int getSpooledEvents();
+
+    /**
+     * @return the total number of events handed to the listener's queue
+     */
+    long getEventsQueued();
+
+    /**
+     * @return the total number of events delivered to the listener
+     */
+    long getEventsProcessed();
+
+    /**
+     * @return the number of events discarded because the queue was full
+     */
+    long getEventsDropped();
+
+    /**
+     * @return the number of events merged into an identical queued event
+     */
+    long getEventsCoalesced();
+
+    /**
+     * @return the number of events written to the disk spool
+     */
+    long getEventsSpilled();
+
+    /**
+     * @return the total time, in milliseconds, producers spent blocked on a
+     *         full queue
+     */
+    long getBlockedTime();
+
+    /**
+     * @return the average number of events queued per second since the
+     *         listener was registered
+     */
+    double getAverageEnqueueRate();
+
+    /**
+     * @return the mean time, in milliseconds, the listener spent in onEvent()
+     */
+    double getAverageProcessingTime();
+
+    /**
+     * @return the longest time, in milliseconds, the listener spent in onEvent()
+     */
+    long getMaxProcessingTime();
+
+    /**
+     * @return the upper bounds, in milliseconds, of the processing time
+     *         histogram buckets; the last bucket is unbounded
+     */
+    long[] getProcessingTimeBuckets();
+
+    /**
+     * @return the number of events in each processing time bucket
+     */
+    long[] getProcessingTimeHistogram();
+
+    /**
+     * Reset the counters and the histogram.
+     */
+    void reset();
+}
@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.LinkedList;
+
+import org.opennms.core.xml.JaxbUtils;
+import org.opennms.netmgt.xml.event.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A simple first-in, first-out spool of events on disk, one XML file per
+ * event, used to hold events for a listener whose queue is full.  Files
+ * left over from a previous run are picked up again when the spool is
+ * created.
+ */
+class EventListenerSpool {
+    private static final Logger LOG = LoggerFactory.getLogger(EventListenerSpool.class);
+
+    private static final String SUFFIX = ".xml";
+
+    private final File m_directory;
+    private final LinkedList<File> m_files = new LinkedList<File>();
+    private long m_sequence = 0;
+
+    EventListenerSpool(final File directory) throws IOException {
+        m_directory = directory;
+        if (!m_directory.isDirectory() && !m_directory.mkdirs()) {
+            throw new IOException("Unable to create spool directory " + m_directory);
+        }
+
+        final File[] existing = m_directory.listFiles();
+        if (existing != null) {
+            // names are zero-padded sequence numbers, so they sort in spool order
+            Arrays.sort(existing);
+            for (final File file : existing) {
+                final String name = file.getName();
+                if (!name.endsWith(SUFFIX)) {
+                    continue;
+                }
+                try {
+                    m_sequence = Math.max(m_sequence, Long.parseLong(name.substring(0, name.length() - SUFFIX.length())) + 1);
+                    m_files.add(file);
+                } catch (final NumberFormatException e) {
+                    LOG.warn("Ignoring unexpected file {} in event spool {}", name, m_directory);
+                }
+            }
+        }
+
+        if (!m_files.isEmpty()) {
+            LOG.info("Recovered {} spooled events from {}", m_files.size(), m_directory);
+        }
+    }
+
+    synchronized boolean isEmpty() {
+        return m_files.isEmpty();
+    }
+
+    synchronized int size() {
+        return m_files.size();
+    }
+
+    /**
+     * Append an event to the end of the spool.
+     */
+    synchronized void write(final Event event) throws IOException {
+        final String name = String.format("%020d", m_sequence++);
+        final File tmpFile = new File(m_directory, name + ".tmp");
+        final File file = new File(m_directory, name + SUFFIX);
+
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(tmpFile), "UTF-8");
+        try {
+            JaxbUtils.marshal(event, writer);
+        } finally {
+            writer.close();
+        }
+
+        if (!tmpFile.renameTo(file)) {
+            tmpFile.delete();
+            throw new IOException("Unable to rename " + tmpFile + " to " + file);
+        }
+        m_files.add(file);
+    }
+
+    /**
+     * Read the event at the head of the spool without removing it.
+     *
+     * @return the oldest spooled event, or null if the spool is empty
+     */
+    synchronized Event peek() {
+        while (!m_files.isEmpty()) {
+            final File file = m_files.getFirst();
+            try {
+                return JaxbUtils.unmarshal(Event.class, file);
+            } catch (final Throwable t) {
+                LOG.warn("Unable to read spooled event {}, discarding it", file, t);
+                remove();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Remove the event at the head of the spool.
+     */
+    synchronized void remove() {
+        if (m_files.isEmpty()) {
+            return;
+        }
+        final File file = m_files.removeFirst();
+        if (!file.delete()) {
+            LOG.warn("Unable to delete spooled event {}", file);
+        }
+    }
+}
@@ -34,6 +34,7 @@ import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
 
 import org.opennms.core.utils.DBUtils;
@@ -54,6 +55,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.dao.DataAccessException;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.simple.SimpleJdbcTemplate;
 
 /**
@@ -89,6 +91,53 @@ import org.springframework.jdbc.core.simple.SimpleJdbcTemplate;
  */
 public final class JdbcEventWriter extends AbstractJdbcPersister implements EventProcessor, InitializingBean {
     private static final Logger LOG = LoggerFactory.getLogger(JdbcEventWriter.class);
+
+    /**
+     * The maximum number of events written in a single JDBC batch. A value
+     * of 1 (the default) writes every event in its own transaction.
+     */
+    private int m_batchSize = 1;
+
+    /**
+     * The maximum time, in milliseconds, that a flushing thread waits for
+     * the batch to fill before writing what it has.
+     */
+    private long m_maxBatchDelay = 0;
+
+    /**
+     * The number of event IDs fetched from the sequence in one round-trip.
+     */
+    private int m_idBlockSize = 1;
+
+    /**
+     * SQL returning <code>?</code> rows of new event IDs, used when
+     * {@link #m_idBlockSize} is greater than 1.
+     */
+    private String m_getNextIdBlockString;
+
+    private final Object m_idLock = new Object();
+    private final LinkedList<Integer> m_idBlock = new LinkedList<Integer>();
+
+    private final Object m_batchLock = new Object();
+    private final LinkedList<PendingEvent> m_pending = new LinkedList<PendingEvent>();
+    private boolean m_flushing = false;
+
+    /**
+     * An event waiting to be written as part of a batch. The thread that
+     * submitted it waits until another (or its own) flush marks it done.
+     */
+    private static final class PendingEvent {
+        private final Header m_header;
+        private final Event m_event;
+        private boolean m_done = false;
+        private Exception m_error;
+
+        PendingEvent(final Header header, final Event event) {
+            m_header = header;
+            m_event = event;
+        }
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -102,6 +151,24 @@ public final class JdbcEventWriter extends AbstractJdbcPersister implements Even
 
         LOG.debug("JdbcEventWriter: processing {} nodeid: {} ipaddr: {} serviceid: {} time: {}", event.getUei(), event.getNodeid(), event.getInterface(), event.getService(), event.getTime());
 
+        try {
+            assignDbid(event);
+        } catch (final DataAccessException e) {
+            throw new EventProcessorException(e);
+        } catch (final SQLException e) {
+            throw new EventProcessorException(e);
+        }
+
+        if (m_batchSize > 1) {
+            processBatched(eventHeader, event);
+        } else {
+            processSingle(eventHeader, event);
+        }
+
+        LOG.debug("EventWriter finished for : {}", event.getUei());
+    }
+
+    private void processSingle(final Header eventHeader, final Event event) throws EventProcessorException {
         Connection connection;
         try {
             connection = getDataSource().getConnection();
@@ -118,21 +185,11 @@ public final class JdbcEventWriter extends AbstractJdbcPersister implements Even
                 connection.commit();
             } catch (final SQLException e) {
                 LOG.warn("Error inserting event into the datastore.", e);
-                try {
-                    connection.rollback();
-                } catch (final Throwable e2) {
-                    LOG.warn("Rollback of transaction failed.", e2);
-                }
-
+                rollback(connection);
                 throw e;
             } catch (final DataAccessException e) {
                 LOG.warn("Error inserting event into the datastore.", e);
-                try {
-                    connection.rollback();
-                } catch (final Throwable e2) {
-                    LOG.warn("Rollback of transaction failed.", e2);
-                }
-
+                rollback(connection);
                 throw e;
             }
         } catch (final DataAccessException e) {
@@ -140,14 +197,196 @@ public final class JdbcEventWriter extends AbstractJdbcPersister implements Even
         } catch (SQLException e) {
             throw new EventProcessorException(e);
         } finally {
+            close(connection);
+        }
+    }
+
+    /**
+     * Group-commit style write. The DBID has already been assigned, so it is
+     * available to later processors (the broadcaster) once this method
+     * returns, and the call only returns once the row has been committed.
+     * Whichever caller finds no flush in progress becomes the flusher and
+     * writes every pending event (up to the batch size) in one transaction,
+     * so the buffer is bounded by the number of eventd handler threads.
+     */
+    private void processBatched(final Header eventHeader, final Event event) throws EventProcessorException {
+        final PendingEvent pending = new PendingEvent(eventHeader, event);
+        try {
+            synchronized (m_batchLock) {
+                m_pending.add(pending);
+                m_batchLock.notifyAll();
+            }
+
+            while (true) {
+                final List<PendingEvent> batch;
+                synchronized (m_batchLock) {
+                    while (!pending.m_done && m_flushing) {
+                        m_batchLock.wait();
+                    }
+                    if (pending.m_done) {
+                        break;
+                    }
+                    m_flushing = true;
+
+                    boolean filled = false;
+                    try {
+                        final long deadline = System.currentTimeMillis() + m_maxBatchDelay;
+                        long remaining = m_maxBatchDelay;
+                        while (m_pending.size() < m_batchSize && remaining > 0) {
+                            m_batchLock.wait(remaining);
+                            remaining = deadline - System.currentTimeMillis();
+                        }
+
+                        batch = new ArrayList<PendingEvent>(Math.min(m_pending.size(), m_batchSize));
+                        while (!m_pending.isEmpty() && batch.size() < m_batchSize) {
+                            batch.add(m_pending.removeFirst());
+                        }
+                        filled = true;
+                    } finally {
+                        if (!filled) {
+                            // interrupted while waiting for the batch to fill:
+                            // hand the flush over to the next waiting writer
+                            m_flushing = false;
+                            m_batchLock.notifyAll();
+                        }
+                    }
+                }
+
+                try {
+                    writeBatch(batch);
+                } catch (final RuntimeException e) {
+                    LOG.warn("Unexpected error writing a batch of {} events.", batch.size(), e);
+                    for (final PendingEvent p : batch) {
+                        p.m_error = e;
+                    }
+                } finally {
+                    synchronized (m_batchLock) {
+                        for (final PendingEvent p : batch) {
+                            p.m_done = true;
+                        }
+                        m_flushing = false;
+                        m_batchLock.notifyAll();
+                    }
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            synchronized (m_batchLock) {
+                if (m_pending.remove(pending)) {
+                    throw new EventProcessorException("Interrupted while waiting to write event " + event.getDbid());
+                }
+                // already being written by another thread; wait for the outcome
+                while (!pending.m_done) {
+                    try {
+                        m_batchLock.wait();
+                    } catch (final InterruptedException ie) {
+                        // keep waiting, the interrupt status is already set
+                    }
+                }
+            }
+        }
+
+        if (pending.m_error != null) {
+            throw new EventProcessorException(pending.m_error);
+        }
+    }
+
+    /**
+     * Writes the given events as one JDBC batch in a single transaction. If
+     * the batch fails, each event is retried in its own transaction so that
+     * a single bad event does not cause the others to be lost.
+     */
+    private void writeBatch(final List<PendingEvent> batch) {
+        LOG.debug("writeBatch: writing {} events", batch.size());
+
+        Connection connection = null;
+        final DBUtils d = new DBUtils(getClass());
+        try {
+            connection = getDataSource().getConnection();
+            connection.setAutoCommit(false);
+
+            final PreparedStatement insStmt = connection.prepareStatement(EventdConstants.SQL_DB_INS_EVENT);
+            d.watch(insStmt);
+            for (final PendingEvent p : batch) {
+                bindEvent(insStmt, p.m_header, p.m_event);
+                insStmt.addBatch();
+            }
+            insStmt.executeBatch();
+            connection.commit();
+            return;
+        } catch (final SQLException e) {
+            LOG.warn("Error inserting a batch of {} events into the datastore; retrying individually.", batch.size(), e);
+            rollback(connection);
+        } catch (final DataAccessException e) {
+            LOG.warn("Error inserting a batch of {} events into the datastore; retrying individually.", batch.size(), e);
+            rollback(connection);
+        } finally {
+            d.cleanUp();
+            close(connection);
+        }
+
+        for (final PendingEvent p : batch) {
             try {
-                connection.close();
-            } catch (final SQLException e) {
-                LOG.warn("SQLException while closing database connection.", e);
+                processSingle(p.m_header, p.m_event);
+            } catch (final EventProcessorException e) {
+                p.m_error = e;
             }
         }
+    }
 
-        LOG.debug("EventWriter finished for : {}", event.getUei());
+    private static void rollback(final Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.rollback();
+        } catch (final Throwable e) {
+            LOG.warn("Rollback of transaction failed.", e);
+        }
+    }
+
+    private static void close(final Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (final SQLException e) {
+            LOG.warn("SQLException while closing database connection.", e);
+        }
+    }
+
+    /**
+     * Assigns the event its database ID.
+     */
+    private void assignDbid(final Event event) throws SQLException {
+        final int eventID = allocateId();
+
+        LOG.debug("DBID: {}", eventID);
+
+        synchronized (event) {
+            event.setDbid(eventID);
+        }
+    }
+
+    /**
+     * Returns the next event ID, fetching a whole block of IDs from the
+     * sequence at once when an ID block query is configured.
+     */
+    private int allocateId() throws SQLException {
+        if (m_idBlockSize <= 1 || m_getNextIdBlockString == null) {
+            return getNextId();
+        }
+
+        synchronized (m_idLock) {
+            if (m_idBlock.isEmpty()) {
+                m_idBlock.addAll(new JdbcTemplate(getDataSource()).queryForList(m_getNextIdBlockString, Integer.class, m_idBlockSize));
+                if (m_idBlock.isEmpty()) {
+                    return getNextId();
+                }
+            }
+            return m_idBlock.removeFirst();
+        }
     }
 
     /**
@@ -161,201 +400,277 @@ public final class JdbcEventWriter extends AbstractJdbcPersister implements Even
      *                properties file.
      */
     private void insertEvent(final Header eventHeader, final Event event, final Connection connection) throws SQLException {
-        // Execute the statement to get the next event id
-        final int eventID = getNextId();
-
-        LOG.debug("DBID: {}", eventID);
-
-        synchronized (event) {
-            event.setDbid(eventID);
-        }
         final DBUtils d = new DBUtils(getClass());
 
         try {
             final PreparedStatement insStmt = connection.prepareStatement(EventdConstants.SQL_DB_INS_EVENT);
             d.watch(insStmt);
 
-            // eventID
-            insStmt.setInt(1, eventID);
+            bindEvent(insStmt, eventHeader, event);
 
-            // eventUEI
-            insStmt.setString(2, Constants.format(event.getUei(), EVENT_UEI_FIELD_SIZE));
+            // execute
+            insStmt.executeUpdate();
+        } finally {
+            d.cleanUp();
+        }
 
-            // nodeID
-            final Long nodeid = event.getNodeid();
-            set(insStmt, 3, event.hasNodeid() ? nodeid.intValue() : -1);
+        LOG.debug("SUCCESSFULLY added {} related  data into the EVENTS table.", event.getUei());
+    }
 
-            // eventTime
-            insStmt.setTimestamp(4, getEventTime(event));
+    /**
+     * Binds the columns of the event insert statement for the given event,
+     * which must already have its DBID assigned.
+     */
+    private void bindEvent(final PreparedStatement insStmt, final Header eventHeader, final Event event) throws SQLException {
+        final int eventID = event.getDbid();
 
-            // Resolve the event host to a hostname using the ipInterface table
-            String hostname = getEventHost(event);
+        // eventID
+        insStmt.setInt(1, eventID);
 
-            // eventHost
-            set(insStmt, 5, Constants.format(hostname, EVENT_HOST_FIELD_SIZE));
+        // eventUEI
+        insStmt.setString(2, Constants.format(event.getUei(), EVENT_UEI_FIELD_SIZE));
 
-            // ipAddr
-            set(insStmt, 6, Constants.format(event.getInterface(), EVENT_INTERFACE_FIELD_SIZE));
+        // nodeID
+        final Long nodeid = event.getNodeid();
+        set(insStmt, 3, event.hasNodeid() ? nodeid.intValue() : -1);
 
-            // eventDpName
-            String dpName = "localhost";
-            if (eventHeader != null && eventHeader.getDpName() != null) {
-                dpName = Constants.format(eventHeader.getDpName(), EVENT_DPNAME_FIELD_SIZE);
-            } else if (event.getDistPoller() != null) {
-                dpName = Constants.format(event.getDistPoller(), EVENT_DPNAME_FIELD_SIZE);
-            }
-            insStmt.setString(7, dpName);
+        // eventTime
+        insStmt.setTimestamp(4, getEventTime(event));
 
-            // eventSnmpHost
-            set(insStmt, 8, Constants.format(event.getSnmphost(), EVENT_SNMPHOST_FIELD_SIZE));
+        // Resolve the event host to a hostname using the ipInterface table
+        String hostname = getEventHost(event);
 
-            // service identifier - convert the service name to a service id
-            set(insStmt, 9, getEventServiceId(event));
+        // eventHost
+        set(insStmt, 5, Constants.format(hostname, EVENT_HOST_FIELD_SIZE));
 
-            // eventSnmp
-            if (event.getSnmp() != null) {
-                insStmt.setString(10, SnmpInfo.format(event.getSnmp(), EVENT_SNMP_FIELD_SIZE));
-            } else {
-                insStmt.setNull(10, Types.VARCHAR);
-            }
+        // ipAddr
+        set(insStmt, 6, Constants.format(event.getInterface(), EVENT_INTERFACE_FIELD_SIZE));
 
-            // eventParms
-
-            // Replace any null bytes with a space, otherwise postgres will complain about encoding in UNICODE 
-            final String parametersString=Parameter.format(event);
-            set(insStmt, 11, Constants.format(parametersString, 0));
-
-            // eventCreateTime
-            final Timestamp eventCreateTime = new Timestamp(System.currentTimeMillis());
-            insStmt.setTimestamp(12, eventCreateTime);
-
-            // eventDescr
-            set(insStmt, 13, Constants.format(event.getDescr(), 0));
-
-            // eventLoggroup
-            set(insStmt, 14, (event.getLoggroupCount() > 0) ? Constants.format(event.getLoggroup(), EVENT_LOGGRP_FIELD_SIZE) : null);
-
-            // eventLogMsg
-            // eventLog
-            // eventDisplay
-            if (event.getLogmsg() != null) {
-                // set log message
-                set(insStmt, 15, Constants.format(event.getLogmsg().getContent(), 0));
-                String logdest = event.getLogmsg().getDest();
-                if (logdest.equals("logndisplay")) {
-                    // if 'logndisplay' set both log and display column to yes
-                    set(insStmt, 16, MSG_YES);
-                    set(insStmt, 17, MSG_YES);
-                } else if (logdest.equals("logonly")) {
-                    // if 'logonly' set log column to true
-                    set(insStmt, 16, MSG_YES);
-                    set(insStmt, 17, MSG_NO);
-                } else if (logdest.equals("displayonly")) {
-                    // if 'displayonly' set display column to true
-                    set(insStmt, 16, MSG_NO);
-                    set(insStmt, 17, MSG_YES);
-                } else if (logdest.equals("suppress")) {
-                    // if 'suppress' set both log and display to false
-                    set(insStmt, 16, MSG_NO);
-                    set(insStmt, 17, MSG_NO);
-                }
-            } else {
-                insStmt.setNull(15, Types.VARCHAR);
-
-                /*
-                 * If this is an event that had no match in the event conf
-                 * mark it as to be logged and displayed so that there
-                 * are no events that slip through the system
-                 * without the user knowing about them
-                 */
-                set(insStmt, 17, MSG_YES);
-            }
+        // eventDpName
+        String dpName = "localhost";
+        if (eventHeader != null && eventHeader.getDpName() != null) {
+            dpName = Constants.format(eventHeader.getDpName(), EVENT_DPNAME_FIELD_SIZE);
+        } else if (event.getDistPoller() != null) {
+            dpName = Constants.format(event.getDistPoller(), EVENT_DPNAME_FIELD_SIZE);
+        }
+        insStmt.setString(7, dpName);
 
-            // eventSeverity
-            set(insStmt, 18, OnmsSeverity.get(event.getSeverity()).getId());
+        // eventSnmpHost
+        set(insStmt, 8, Constants.format(event.getSnmphost(), EVENT_SNMPHOST_FIELD_SIZE));
 
-            // eventPathOutage
-            set(insStmt, 19, (event.getPathoutage() != null) ? Constants.format(event.getPathoutage(), EVENT_PATHOUTAGE_FIELD_SIZE) : null);
+        // service identifier - convert the service name to a service id
+        set(insStmt, 9, getEventServiceId(event));
 
-            // eventCorrelation
-            set(insStmt, 20, (event.getCorrelation() != null) ? org.opennms.netmgt.dao.util.Correlation.format(event.getCorrelation(), EVENT_CORRELATION_FIELD_SIZE) : null);
+        // eventSnmp
+        if (event.getSnmp() != null) {
+            insStmt.setString(10, SnmpInfo.format(event.getSnmp(), EVENT_SNMP_FIELD_SIZE));
+        } else {
+            insStmt.setNull(10, Types.VARCHAR);
+        }
 
-            // eventSuppressedCount
-            insStmt.setNull(21, Types.INTEGER);
+        // eventParms
 
-            // eventOperInstruct
-            set(insStmt, 22, Constants.format(event.getOperinstruct(), EVENT_OPERINSTRUCT_FIELD_SIZE));
+        // Replace any null bytes with a space, otherwise postgres will complain about encoding in UNICODE 
+        final String parametersString=Parameter.format(event);
+        set(insStmt, 11, Constants.format(parametersString, 0));
 
-            // eventAutoAction
-            set(insStmt, 23, (event.getAutoactionCount() > 0) ? AutoAction.format(event.getAutoaction(), EVENT_AUTOACTION_FIELD_SIZE) : null);
+        // eventCreateTime
+        final Timestamp eventCreateTime = new Timestamp(System.currentTimeMillis());
+        insStmt.setTimestamp(12, eventCreateTime);
 
-            // eventOperAction / eventOperActionMenuText
-            if (event.getOperactionCount() > 0) {
-                final List<Operaction> a = new ArrayList<Operaction>();
-                final List<String> b = new ArrayList<String>();
+        // eventDescr
+        set(insStmt, 13, Constants.format(event.getDescr(), 0));
 
-                for (final Operaction eoa : event.getOperactionCollection()) {
-                    a.add(eoa);
-                    b.add(eoa.getMenutext());
-                }
+        // eventLoggroup
+        set(insStmt, 14, (event.getLoggroupCount() > 0) ? Constants.format(event.getLoggroup(), EVENT_LOGGRP_FIELD_SIZE) : null);
 
-                set(insStmt, 24, OperatorAction.format(a, EVENT_OPERACTION_FIELD_SIZE));
-                set(insStmt, 25, Constants.format(b, EVENT_OPERACTION_MENU_FIELD_SIZE));
-            } else {
-                insStmt.setNull(24, Types.VARCHAR);
-                insStmt.setNull(25, Types.VARCHAR);
+        // eventLogMsg
+        // eventLog
+        // eventDisplay
+        if (event.getLogmsg() != null) {
+            // set log message
+            set(insStmt, 15, Constants.format(event.getLogmsg().getContent(), 0));
+            String logdest = event.getLogmsg().getDest();
+            if (logdest.equals("logndisplay")) {
+                // if 'logndisplay' set both log and display column to yes
+                set(insStmt, 16, MSG_YES);
+                set(insStmt, 17, MSG_YES);
+            } else if (logdest.equals("logonly")) {
+                // if 'logonly' set log column to true
+                set(insStmt, 16, MSG_YES);
+                set(insStmt, 17, MSG_NO);
+            } else if (logdest.equals("displayonly")) {
+                // if 'displayonly' set display column to true
+                set(insStmt, 16, MSG_NO);
+                set(insStmt, 17, MSG_YES);
+            } else if (logdest.equals("suppress")) {
+                // if 'suppress' set both log and display to false
+                set(insStmt, 16, MSG_NO);
+                set(insStmt, 17, MSG_NO);
             }
+        } else {
+            insStmt.setNull(15, Types.VARCHAR);
+
+            /*
+             * If this is an event that had no match in the event conf
+             * mark it as to be logged and displayed so that there
+             * are no events that slip through the system
+             * without the user knowing about them
+             */
+            set(insStmt, 17, MSG_YES);
+        }
 
-            // eventNotification, this column no longer needed
-            insStmt.setNull(26, Types.VARCHAR);
+        // eventSeverity
+        set(insStmt, 18, OnmsSeverity.get(event.getSeverity()).getId());
 
-            // eventTroubleTicket / eventTroubleTicket state
-            if (event.getTticket() != null) {
-                set(insStmt, 27, Constants.format(event.getTticket().getContent(), EVENT_TTICKET_FIELD_SIZE));
-                set(insStmt, 28, event.getTticket().getState().equals("on") ? 1 : 0);
-            } else {
-                insStmt.setNull(27, Types.VARCHAR);
-                insStmt.setNull(28, Types.INTEGER);
-            }
+        // eventPathOutage
+        set(insStmt, 19, (event.getPathoutage() != null) ? Constants.format(event.getPathoutage(), EVENT_PATHOUTAGE_FIELD_SIZE) : null);
 
-            // eventForward
-            set(insStmt, 29, (event.getForwardCount() > 0) ? org.opennms.netmgt.dao.util.Forward.format(event.getForward(), EVENT_FORWARD_FIELD_SIZE) : null);
+        // eventCorrelation
+        set(insStmt, 20, (event.getCorrelation() != null) ? org.opennms.netmgt.dao.util.Correlation.format(event.getCorrelation(), EVENT_CORRELATION_FIELD_SIZE) : null);
 
-            // event mouseOverText
-            set(insStmt, 30, Constants.format(event.getMouseovertext(), EVENT_MOUSEOVERTEXT_FIELD_SIZE));
+        // eventSuppressedCount
+        insStmt.setNull(21, Types.INTEGER);
 
-            // eventAckUser
-            if (event.getAutoacknowledge() != null && event.getAutoacknowledge().getState().equals("on")) {
-                set(insStmt, 31, Constants.format(event.getAutoacknowledge().getContent(), EVENT_ACKUSER_FIELD_SIZE));
+        // eventOperInstruct
+        set(insStmt, 22, Constants.format(event.getOperinstruct(), EVENT_OPERINSTRUCT_FIELD_SIZE));
 
-                // eventAckTime - if autoacknowledge is present,
-                // set time to event create time
-                set(insStmt, 32, eventCreateTime);
-            } else {
-                insStmt.setNull(31, Types.INTEGER);
-                insStmt.setNull(32, Types.TIMESTAMP);
-            }
+        // eventAutoAction
+        set(insStmt, 23, (event.getAutoactionCount() > 0) ? AutoAction.format(event.getAutoaction(), EVENT_AUTOACTION_FIELD_SIZE) : null);
 
-            // eventSource
-            set(insStmt, 33, Constants.format(event.getSource(), EVENT_SOURCE_FIELD_SIZE));
+        // eventOperAction / eventOperActionMenuText
+        if (event.getOperactionCount() > 0) {
+            final List<Operaction> a = new ArrayList<Operaction>();
+            final List<String> b = new ArrayList<String>();
 
-            // ifindex
-            if (event.hasIfIndex()) {
-                set(insStmt, 34, event.getIfIndex());
-            } else {
-                insStmt.setNull(34, Types.INTEGER);
+            for (final Operaction eoa : event.getOperactionCollection()) {
+                a.add(eoa);
+                b.add(eoa.getMenutext());
             }
-            
-            // execute
-            insStmt.executeUpdate();
-        } finally {
-            d.cleanUp();
+
+            set(insStmt, 24, OperatorAction.format(a, EVENT_OPERACTION_FIELD_SIZE));
+            set(insStmt, 25, Constants.format(b, EVENT_OPERACTION_MENU_FIELD_SIZE));
+        } else {
+            insStmt.setNull(24, Types.VARCHAR);
+            insStmt.setNull(25, Types.VARCHAR);
         }
 
-        LOG.debug("SUCCESSFULLY added {} related  data into the EVENTS table.", event.getUei());
+        // eventNotification, this column no longer needed
+        insStmt.setNull(26, Types.VARCHAR);
+
+        // eventTroubleTicket / eventTroubleTicket state
+        if (event.getTticket() != null) {
+            set(insStmt, 27, Constants.format(event.getTticket().getContent(), EVENT_TTICKET_FIELD_SIZE));
+            set(insStmt, 28, event.getTticket().getState().equals("on") ? 1 : 0);
+        } else {
+            insStmt.setNull(27, Types.VARCHAR);
+            insStmt.setNull(28, Types.INTEGER);
+        }
+
+        // eventForward
+        set(insStmt, 29, (event.getForwardCount() > 0) ? org.opennms.netmgt.dao.util.Forward.format(event.getForward(), EVENT_FORWARD_FIELD_SIZE) : null);
+
+        // event mouseOverText
+        set(insStmt, 30, Constants.format(event.getMouseovertext(), EVENT_MOUSEOVERTEXT_FIELD_SIZE));
+
+        // eventAckUser
+        if (event.getAutoacknowledge() != null && event.getAutoacknowledge().getState().equals("on")) {
+            set(insStmt, 31, Constants.format(event.getAutoacknowledge().getContent(), EVENT_ACKUSER_FIELD_SIZE));
+
+            // eventAckTime - if autoacknowledge is present,
+            // set time to event create time
+            set(insStmt, 32, eventCreateTime);
+        } else {
+            insStmt.setNull(31, Types.INTEGER);
+            insStmt.setNull(32, Types.TIMESTAMP);
+        }
+
+        // eventSource
+        set(insStmt, 33, Constants.format(event.getSource(), EVENT_SOURCE_FIELD_SIZE));
+
+        // ifindex
+        if (event.hasIfIndex()) {
+            set(insStmt, 34, event.getIfIndex());
+        } else {
+            insStmt.setNull(34, Types.INTEGER);
+        }
+        
     }
 
 
+    /**
+     * <p>getBatchSize</p>
+     *
+     * @return a int.
+     */
+    public int getBatchSize() {
+        return m_batchSize;
+    }
+
+    /**
+     * <p>setBatchSize</p>
+     *
+     * @param batchSize the maximum number of events written in one transaction
+     */
+    public void setBatchSize(final int batchSize) {
+        m_batchSize = batchSize;
+    }
+
+    /**
+     * <p>getMaxBatchDelay</p>
+     *
+     * @return a long.
+     */
+    public long getMaxBatchDelay() {
+        return m_maxBatchDelay;
+    }
+
+    /**
+     * <p>setMaxBatchDelay</p>
+     *
+     * @param maxBatchDelay the time in milliseconds to wait for a batch to fill
+     */
+    public void setMaxBatchDelay(final long maxBatchDelay) {
+        m_maxBatchDelay = maxBatchDelay;
+    }
+
+    /**
+     * <p>getIdBlockSize</p>
+     *
+     * @return a int.
+     */
+    public int getIdBlockSize() {
+        return m_idBlockSize;
+    }
+
+    /**
+     * <p>setIdBlockSize</p>
+     *
+     * @param idBlockSize the number of event IDs to fetch per sequence query
+     */
+    public void setIdBlockSize(final int idBlockSize) {
+        m_idBlockSize = idBlockSize;
+    }
+
+    /**
+     * <p>getGetNextIdBlockString</p>
+     *
+     * @return a {@link java.lang.String} object.
+     */
+    public String getGetNextIdBlockString() {
+        return m_getNextIdBlockString;
+    }
+
+    /**
+     * <p>setGetNextIdBlockString</p>
+     *
+     * @param getNextIdBlockString SQL returning one new event ID per row, with
+     *        a single parameter for the number of rows
+     */
+    public void setGetNextIdBlockString(final String getNextIdBlockString) {
+        m_getNextIdBlockString = getNextIdBlockString;
+    }
+
     /**
      * This method is used to convert the event host into a hostname id by
      * performing a lookup in the database. If the conversion is successful then
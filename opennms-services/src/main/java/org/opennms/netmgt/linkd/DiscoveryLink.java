@@ -34,6 +34,7 @@ import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -76,10 +77,16 @@ public final class DiscoveryLink implements ReadyRunnable {
     private List<LinkableNode> m_cdpNodes = new ArrayList<LinkableNode>();
 
     // this is the list of MAC address just parsed by discovery process
-    private List<String> m_macsParsed = new ArrayList<String>();
+    private MacAddressIndex<Boolean> m_macsParsed = new MacAddressIndex<Boolean>();
 
     // this is the list of MAC address excluded by discovery process
-    private List<String> macsExcluded = new ArrayList<String>();
+    private MacAddressIndex<Boolean> macsExcluded = new MacAddressIndex<Boolean>();
+
+    // the bridge identifiers of m_bridgeNodes, in the order a walk over
+    // m_bridgeNodes and their identifiers meets them, and for each
+    // identifier the positions in that order where it was met
+    private List<LinkableNode> m_bridgeIdentifierOwners = new ArrayList<LinkableNode>();
+    private MacAddressIndex<List<Integer>> m_bridgeIdentifierIndex = new MacAddressIndex<List<Integer>>();
 
     // this is the list of atinterfaces for which to be discovery link
     // here there aren't the bridge identifier because they should be
@@ -201,8 +208,10 @@ public final class DiscoveryLink implements ReadyRunnable {
         // This will found all mac address on
         // current package and their association
         // with ip addresses.
-        if (discoveryUsingBridge)
+        if (discoveryUsingBridge) {
+            indexBridgeIdentifiers();
             populateMacToAtInterface();
+        }
 
         // this part could have several special function to get inter-router
         // links, but at the moment we worked much on switches.
@@ -230,6 +239,8 @@ public final class DiscoveryLink implements ReadyRunnable {
         m_cdpNodes.clear();
         m_macsParsed.clear();
         macsExcluded.clear();
+        m_bridgeIdentifierOwners.clear();
+        m_bridgeIdentifierIndex.clear();
         m_lldpNodes.clear();
         m_ospfNodes.clear();
         m_isisNodes.clear();
@@ -258,7 +269,7 @@ public final class DiscoveryLink implements ReadyRunnable {
                 LOG.debug("populateMacToAtInterface: Parsing AtInterface nodeid/ipaddr/macaddr: {}/{}/{}", nodeid, at.getIpAddress(), macAddress);
                 if ((macAddress.indexOf("00000c07ac") == 0) || (macAddress.indexOf("00000c9ff") == 0)) {
                     LOG.debug("populateMacToAtInterface: AtInterface {} is Cisco HSRP address! Not adding to discoverable atinterface.", macAddress);
-                    macsExcluded.add(macAddress);
+                    macsExcluded.put(macAddress, Boolean.TRUE);
                     continue;
                 }
             }
@@ -891,30 +902,64 @@ public final class DiscoveryLink implements ReadyRunnable {
         return macsOnLink;
     }
 
-    private boolean isMacIdentifierOfBridgeNode(String macAddress) {
+    /**
+     * Index the bridge identifiers of the bridge nodes, so that finding the
+     * bridge that owns a MAC address does not walk every bridge.  Bridges
+     * are only re-put under their own node id during a run, so the walk
+     * order of m_bridgeNodes recorded here stays valid until the run ends.
+     */
+    private void indexBridgeIdentifiers() {
+        m_bridgeIdentifierOwners.clear();
+        m_bridgeIdentifierIndex.clear();
         for (final LinkableNode curNode : m_bridgeNodes.values()) {
-            if (curNode.isBridgeIdentifier(macAddress))
-                return true;
+            for (final String curBridgeIdentifier : curNode.getBridgeIdentifiers()) {
+                List<Integer> positions = m_bridgeIdentifierIndex.get(curBridgeIdentifier);
+                if (positions == null) {
+                    positions = new ArrayList<Integer>(1);
+                    m_bridgeIdentifierIndex.put(curBridgeIdentifier, positions);
+                }
+                positions.add(m_bridgeIdentifierOwners.size());
+                m_bridgeIdentifierOwners.add(curNode);
+            }
         }
-        return false;
+        LOG.debug("indexBridgeIdentifiers: indexed {} bridge identifiers on {} bridge nodes", m_bridgeIdentifierOwners.size(), m_bridgeNodes.size());
+    }
+
+    private boolean isMacIdentifierOfBridgeNode(String macAddress) {
+        return m_bridgeIdentifierIndex.containsKey(macAddress);
     }
 
     private LinkableNode getNodeFromMacIdentifierOfBridgeNode(
             final String macAddress) {
-        for (final LinkableNode curNode : m_bridgeNodes.values()) {
-            if (curNode.isBridgeIdentifier(macAddress))
-                return curNode;
-        }
-        return null;
+        final List<Integer> positions = m_bridgeIdentifierIndex.get(macAddress);
+        if (positions == null)
+            return null;
+        return m_bridgeIdentifierOwners.get(positions.get(0));
     }
 
     private List<LinkableNode> getBridgesFromMacs(final Set<String> macs) {
         List<LinkableNode> bridges = new ArrayList<LinkableNode>();
-        for (final LinkableNode curNode : m_bridgeNodes.values()) {
-            for (final String curBridgeIdentifier : curNode.getBridgeIdentifiers()) {
-                if (macs.contains((curBridgeIdentifier)))
-                    bridges.add(curNode);
+        if (macs.size() > m_bridgeIdentifierOwners.size()) {
+            // fewer bridge identifiers than MAC addresses on the port
+            for (final LinkableNode curNode : m_bridgeNodes.values()) {
+                for (final String curBridgeIdentifier : curNode.getBridgeIdentifiers()) {
+                    if (macs.contains((curBridgeIdentifier)))
+                        bridges.add(curNode);
+                }
             }
+            return bridges;
+        }
+        // look the MAC addresses on the port up in the index, and return the
+        // bridges in the order a walk over all the bridge identifiers would
+        final List<Integer> positions = new ArrayList<Integer>();
+        for (final String mac : macs) {
+            final List<Integer> found = m_bridgeIdentifierIndex.get(mac);
+            if (found != null)
+                positions.addAll(found);
+        }
+        Collections.sort(positions);
+        for (final Integer position : positions) {
+            bridges.add(m_bridgeIdentifierOwners.get(position));
         }
         return bridges;
     }
@@ -1171,12 +1216,12 @@ public final class DiscoveryLink implements ReadyRunnable {
             LOG.debug("addLinks: MAC address list on link is empty.");
         } else {
             for (String curMacAddress : macs) {
-                if (m_macsParsed.contains(curMacAddress)) {
+                if (m_macsParsed.containsKey(curMacAddress)) {
                     LOG.warn("addLinks: MAC address {} just found on other bridge port! Skipping...", curMacAddress);
                     continue;
                 }
 
-                if (macsExcluded.contains(curMacAddress)) {
+                if (macsExcluded.containsKey(curMacAddress)) {
                     LOG.warn("addLinks: MAC address {} is excluded from discovery package! Skipping...", curMacAddress);
                     continue;
                 }
@@ -1197,7 +1242,7 @@ public final class DiscoveryLink implements ReadyRunnable {
                     lMac.setParentifindex(ifindex);
                     m_maclinks.add(lMac);
                 }
-                m_macsParsed.add(curMacAddress);
+                m_macsParsed.put(curMacAddress, Boolean.TRUE);
             }
         }
     }
@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.linkd;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A map keyed by MAC address for the bridge discovery.  Addresses in the
+ * form linkd collects them, twelve lower case hex digits, are packed into
+ * a <code>long</code> and kept in an open addressing table, so a forwarding
+ * table with hundreds of thousands of entries costs two arrays instead of
+ * a <code>String</code> and a map entry per address.  Any other key is kept
+ * as is in a regular map, so lookups behave exactly like a
+ * <code>Map&lt;String, V&gt;</code>.
+ *
+ * @param <V> the type of the values
+ */
+final class MacAddressIndex<V> {
+
+    private static final long EMPTY = -1L;
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] m_keys;
+    private Object[] m_values;
+    private int m_size;
+    private final Map<String, V> m_others = new HashMap<String, V>();
+
+    MacAddressIndex() {
+        this(MIN_CAPACITY);
+    }
+
+    MacAddressIndex(final int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * Packs a MAC address into the low 48 bits of a long.
+     *
+     * @return the packed address, or -1 if the string is not twelve lower
+     *         case hex digits
+     */
+    static long encode(final String macAddress) {
+        if (macAddress == null || macAddress.length() != 12) {
+            return EMPTY;
+        }
+        long value = 0;
+        for (int i = 0; i < 12; i++) {
+            final char c = macAddress.charAt(i);
+            final int digit;
+            if (c >= '0' && c <= '9') {
+                digit = c - '0';
+            } else if (c >= 'a' && c <= 'f') {
+                digit = c - 'a' + 10;
+            } else {
+                return EMPTY;
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    V put(final String macAddress, final V value) {
+        final long key = encode(macAddress);
+        if (key == EMPTY) {
+            return m_others.put(macAddress, value);
+        }
+        int slot = slot(key);
+        while (m_keys[slot] != EMPTY) {
+            if (m_keys[slot] == key) {
+                final V old = valueAt(slot);
+                m_values[slot] = value;
+                return old;
+            }
+            slot = (slot + 1) & (m_keys.length - 1);
+        }
+        m_keys[slot] = key;
+        m_values[slot] = value;
+        if (++m_size > m_keys.length / 2) {
+            rehash(m_keys.length * 2);
+        }
+        return null;
+    }
+
+    V get(final String macAddress) {
+        final long key = encode(macAddress);
+        if (key == EMPTY) {
+            return m_others.get(macAddress);
+        }
+        final int slot = find(key);
+        return slot < 0 ? null : valueAt(slot);
+    }
+
+    boolean containsKey(final String macAddress) {
+        final long key = encode(macAddress);
+        if (key == EMPTY) {
+            return m_others.containsKey(macAddress);
+        }
+        return find(key) >= 0;
+    }
+
+    int size() {
+        return m_size + m_others.size();
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Removes every entry and gives the memory of the table back.
+     */
+    void clear() {
+        allocate(MIN_CAPACITY);
+        m_size = 0;
+        m_others.clear();
+    }
+
+    private int find(final long key) {
+        int slot = slot(key);
+        while (m_keys[slot] != EMPTY) {
+            if (m_keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & (m_keys.length - 1);
+        }
+        return -1;
+    }
+
+    private int slot(final long key) {
+        // spread the vendor prefix and the serial over the low bits
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int)(h ^ (h >>> 32)) & (m_keys.length - 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V valueAt(final int slot) {
+        return (V)m_values[slot];
+    }
+
+    private void rehash(final int capacity) {
+        final long[] oldKeys = m_keys;
+        final Object[] oldValues = m_values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slot(oldKeys[i]);
+                while (m_keys[slot] != EMPTY) {
+                    slot = (slot + 1) & (m_keys.length - 1);
+                }
+                m_keys[slot] = oldKeys[i];
+                m_values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(final int capacity) {
+        m_keys = new long[capacity];
+        Arrays.fill(m_keys, EMPTY);
+        m_values = new Object[capacity];
+    }
+
+    private static int capacityFor(final int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
@@ -37,8 +37,10 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.exolab.castor.xml.MarshalException;
 import org.exolab.castor.xml.ValidationException;
@@ -81,6 +83,28 @@ import org.slf4j.LoggerFactory;
 public final class BroadcastEventProcessor implements EventListener {
     
     private static final Logger LOG = LoggerFactory.getLogger(BroadcastEventProcessor.class);
+
+    /**
+     * Events that change the inventory a notification filter rule can be
+     * evaluated against. Cached rule results for the node are dropped
+     * when one of these is seen.
+     */
+    private static final Set<String> INVENTORY_CHANGE_UEIS = new HashSet<String>();
+    static {
+        INVENTORY_CHANGE_UEIS.add(EventConstants.NODE_ADDED_EVENT_UEI);
+        INVENTORY_CHANGE_UEIS.add(EventConstants.NODE_UPDATED_EVENT_UEI);
+        INVENTORY_CHANGE_UEIS.add(EventConstants.NODE_DELETED_EVENT_UEI);
+        INVENTORY_CHANGE_UEIS.add(EventConstants.NODE_LABEL_CHANGED_EVENT_UEI);
+        INVENTORY_CHANGE_UEIS.add(EventConstants.NODE_INFO_CHANGED_EVENT_UEI);
+        INVENTORY_CHANGE_UEIS.add(EventConstants.NODE_CATEGORY_MEMBERSHIP_CHANGED_EVENT_UEI);
+        INVENTORY_CHANGE_UEIS.add(EventConstants.ASSET_INFO_CHANGED_EVENT_UEI);
+        INVENTORY_CHANGE_UEIS.add(EventConstants.NODE_GAINED_INTERFACE_EVENT_UEI);
+        INVENTORY_CHANGE_UEIS.add(EventConstants.INTERFACE_DELETED_EVENT_UEI);
+        INVENTORY_CHANGE_UEIS.add(EventConstants.PRIMARY_SNMP_INTERFACE_CHANGED_EVENT_UEI);
+        INVENTORY_CHANGE_UEIS.add(EventConstants.NODE_GAINED_SERVICE_EVENT_UEI);
+        INVENTORY_CHANGE_UEIS.add(EventConstants.SERVICE_DELETED_EVENT_UEI);
+        INVENTORY_CHANGE_UEIS.add(EventConstants.SERVICE_UNMANAGED_EVENT_UEI);
+    }
     
     /**
      */
@@ -168,6 +192,7 @@ public final class BroadcastEventProcessor implements EventListener {
                 m_userManager.update();
                 m_groupManager.update();
                 m_notificationManager.update();
+                m_notificationManager.clearFilterCache();
                 m_destinationPathManager.update();
                 m_notificationCommandManager.update();
                 ebldr = new EventBuilder(EventConstants.RELOAD_DAEMON_CONFIG_SUCCESSFUL_UEI, getName());
@@ -183,6 +208,8 @@ public final class BroadcastEventProcessor implements EventListener {
             return;
         }
 
+        invalidateFilterCache(event);
+
         boolean notifsOn = computeNullSafeStatus();
 
         if (notifsOn && (checkCriticalPath(event, notifsOn))) {
@@ -193,6 +220,16 @@ public final class BroadcastEventProcessor implements EventListener {
         automaticAcknowledge(event, notifsOn);
     }
 
+    private void invalidateFilterCache(Event event) {
+        if (EventConstants.INTERFACE_REPARENTED_EVENT_UEI.equals(event.getUei())) {
+            // both the old and the new node changed
+            m_notificationManager.clearFilterCache();
+        } else if (INVENTORY_CHANGE_UEIS.contains(event.getUei())) {
+            LOG.debug("invalidateFilterCache: dropping cached filter results for node {} after {}", event.getNodeid(), event.getUei());
+            m_notificationManager.invalidateFilterCache(event.hasNodeid() ? event.getNodeid() : 0L);
+        }
+    }
+
     private boolean isReloadConfigEvent(Event event) {
         boolean isTarget = false;
 
@@ -94,6 +94,8 @@ public class DefaultQueryManager implements QueryManager {
     
     private DataSource m_dataSource;
 
+    private OutageJournal m_outageJournal;
+
     /** {@inheritDoc} */
     @Override
     public void setDataSource(DataSource dataSource) {
@@ -110,6 +112,25 @@ public class DefaultQueryManager implements QueryManager {
         return m_dataSource;
     }
 
+    /**
+     * Writes outages through <code>outageJournal</code> instead of
+     * synchronously on the calling thread.
+     *
+     * @param outageJournal a {@link org.opennms.netmgt.poller.OutageJournal} object.
+     */
+    public void setOutageJournal(OutageJournal outageJournal) {
+        m_outageJournal = outageJournal;
+    }
+
+    /**
+     * <p>getOutageJournal</p>
+     *
+     * @return a {@link org.opennms.netmgt.poller.OutageJournal} object.
+     */
+    public OutageJournal getOutageJournal() {
+        return m_outageJournal;
+    }
+
     private Connection getConnection() throws SQLException {
         return getDataSource().getConnection();
     }
@@ -394,6 +415,16 @@ public class DefaultQueryManager implements QueryManager {
     /** {@inheritDoc} */
     @Override
     public void openOutage(String outageIdSQL, int nodeId, String ipAddr, String svcName, int dbId, String time) {
+        openOutage(outageIdSQL, nodeId, ipAddr, svcName, dbId, time, null);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void openOutage(String outageIdSQL, int nodeId, String ipAddr, String svcName, int dbId, String time, Runnable onDurable) {
+        if (m_outageJournal != null) {
+            m_outageJournal.openOutage(outageIdSQL, nodeId, ipAddr, svcName, dbId, convertEventTimeToTimeStamp(time), onDurable);
+            return;
+        }
         
         int attempt = 0;
         boolean notUpdated = true;
@@ -433,11 +464,28 @@ public class DefaultQueryManager implements QueryManager {
             }
             attempt++;
         }
+
+        // only once the row is written, and outside the retry so that a
+        // failing callback isn't mistaken for a failed write
+        if (!notUpdated && onDurable != null) {
+            onDurable.run();
+        }
     }
 
     /** {@inheritDoc} */
     @Override
     public void resolveOutage(int nodeId, String ipAddr, String svcName, int dbId, String time) {
+        resolveOutage(nodeId, ipAddr, svcName, dbId, time, null);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void resolveOutage(int nodeId, String ipAddr, String svcName, int dbId, String time, Runnable onDurable) {
+        if (m_outageJournal != null) {
+            m_outageJournal.resolveOutage(nodeId, ipAddr, svcName, dbId, convertEventTimeToTimeStamp(time), onDurable);
+            return;
+        }
+
         int attempt = 0;
         boolean notUpdated = true;
         
@@ -468,11 +516,20 @@ public class DefaultQueryManager implements QueryManager {
             }
             attempt++;
         }
+
+        if (!notUpdated && onDurable != null) {
+            onDurable.run();
+        }
     }
     
     /** {@inheritDoc} */
     @Override
     public void reparentOutages(String ipAddr, int oldNodeId, int newNodeId) {
+        if (m_outageJournal != null) {
+            m_outageJournal.reparentOutages(ipAddr, oldNodeId, newNodeId);
+            return;
+        }
+
         try {
             LOG.info("reparenting outages for {}:{} to new node {}", oldNodeId, ipAddr, newNodeId);
             String sql = "update outages set nodeId = ? where nodeId = ? and ipaddr = ?";
@@ -0,0 +1,520 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.poller;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.opennms.core.utils.DBUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+/**
+ * Writes service outages to the database on a background thread.
+ *
+ * <p>Outage operations are queued in the order they are submitted and
+ * written by a single thread, so the operations for any one service are
+ * applied in order. The thread drains up to {@link #setBatchSize(int) batchSize}
+ * queued operations at a time, groups consecutive operations that share a
+ * statement into JDBC batches and commits them in one transaction. The
+ * callback supplied with an operation is run once it has been committed.</p>
+ *
+ * <p>A batch that fails is retried once. If it fails again the operations
+ * are written one at a time so that a single bad row does not lose the
+ * others. An operation that still can't be written is counted in
+ * {@link #getFailedOperationCount()} and its callback is not run.</p>
+ *
+ * <p>The queue holds at most {@link #setQueueCapacity(int) queueCapacity}
+ * operations. When it is full, callers wait for the writer to catch up
+ * instead of letting the backlog grow without bound.</p>
+ */
+public class OutageJournal implements InitializingBean, DisposableBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OutageJournal.class);
+
+    private static final String SQL_SERVICE_ID = "(select serviceId from service where serviceName = ?)";
+
+    private static final String SQL_RESOLVE_OUTAGE = "update outages set svcRegainedEventId=?, ifRegainedService=? where nodeId = ? and ipAddr = ? and serviceId = " + SQL_SERVICE_ID + " and ifRegainedService is null";
+
+    private static final String SQL_REPARENT_OUTAGES = "update outages set nodeId = ? where nodeId = ? and ipaddr = ?";
+
+    /**
+     * A queued write. Operations without a statement are flush markers that
+     * only carry a callback.
+     */
+    private static final class Operation {
+        private final String m_sql;
+        private final Object[] m_values;
+        private final Runnable m_onDurable;
+
+        private Operation(final String sql, final Object[] values, final Runnable onDurable) {
+            m_sql = sql;
+            m_values = values;
+            m_onDurable = onDurable;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder buf = new StringBuilder(m_sql == null ? "flush" : m_sql);
+            if (m_values != null) {
+                for (final Object value : m_values) {
+                    buf.append(' ').append(value);
+                }
+            }
+            return buf.toString();
+        }
+    }
+
+    private static final Operation STOP = new Operation(null, null, null);
+
+    private volatile BlockingQueue<Operation> m_queue;
+
+    private DataSource m_dataSource;
+
+    private int m_batchSize = 500;
+
+    private int m_queueCapacity = 10000;
+
+    private Thread m_writer;
+
+    private final AtomicLong m_flushCount = new AtomicLong(0);
+
+    private final AtomicLong m_operationCount = new AtomicLong(0);
+
+    private final AtomicLong m_totalFlushMillis = new AtomicLong(0);
+
+    private volatile long m_lastFlushMillis = 0;
+
+    private volatile long m_maxFlushMillis = 0;
+
+    private final AtomicLong m_failedOperationCount = new AtomicLong(0);
+
+    private volatile boolean m_healthy = true;
+
+    /**
+     * <p>setDataSource</p>
+     *
+     * @param dataSource a {@link javax.sql.DataSource} object.
+     */
+    public void setDataSource(final DataSource dataSource) {
+        m_dataSource = dataSource;
+    }
+
+    /**
+     * The maximum number of operations written in one transaction.
+     *
+     * @param batchSize a int.
+     */
+    public void setBatchSize(final int batchSize) {
+        m_batchSize = batchSize;
+    }
+
+    /**
+     * The maximum number of operations waiting to be written. Queueing an
+     * operation blocks while the queue is full.
+     *
+     * @param queueCapacity a int.
+     */
+    public void setQueueCapacity(final int queueCapacity) {
+        m_queueCapacity = queueCapacity;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void afterPropertiesSet() {
+        Assert.notNull(m_dataSource, "dataSource must be set");
+        Assert.isTrue(m_batchSize > 0, "batchSize must be positive");
+        Assert.isTrue(m_queueCapacity > 0, "queueCapacity must be positive");
+        Assert.state(m_writer == null, "the journal has already been started");
+
+        m_queue = new LinkedBlockingQueue<Operation>(m_queueCapacity);
+
+        m_writer = new LogPreservingThreadFactory("OutageJournal", 1, true).newThread(new Runnable() {
+            @Override
+            public void run() {
+                writeQueuedOperations();
+            }
+        });
+        m_writer.start();
+    }
+
+    /**
+     * Writes everything that is still queued and stops the writer thread.
+     */
+    @Override
+    public synchronized void destroy() throws InterruptedException {
+        if (m_writer == null) {
+            return;
+        }
+        m_queue.put(STOP);
+        m_writer.join();
+        m_writer = null;
+    }
+
+    /**
+     * Queues the opening of an outage.
+     *
+     * @param outageIdSQL the statement that returns the next outage id
+     * @param nodeId a int.
+     * @param ipAddr a {@link java.lang.String} object.
+     * @param svcName a {@link java.lang.String} object.
+     * @param dbId the id of the event that caused the outage
+     * @param time the time the service was lost
+     * @param onDurable run once the outage has been committed, may be null
+     */
+    public void openOutage(final String outageIdSQL, final int nodeId, final String ipAddr, final String svcName, final int dbId, final Timestamp time, final Runnable onDurable) {
+        LOG.info("openOutage: queueing outage for {}:{}:{} with cause {}:{}", nodeId, ipAddr, svcName, dbId, time);
+        final String sql = "insert into outages (outageId, svcLostEventId, nodeId, ipAddr, serviceId, ifLostService) values ((" + outageIdSQL + "), ?, ?, ?, " + SQL_SERVICE_ID + ", ?)";
+        enqueue(new Operation(sql, new Object[] { Integer.valueOf(dbId), Integer.valueOf(nodeId), ipAddr, svcName, time }, onDurable));
+    }
+
+    /**
+     * Queues the resolution of the open outage of a service.
+     *
+     * @param nodeId a int.
+     * @param ipAddr a {@link java.lang.String} object.
+     * @param svcName a {@link java.lang.String} object.
+     * @param dbId the id of the event that resolved the outage
+     * @param time the time the service was regained
+     * @param onDurable run once the resolution has been committed, may be null
+     */
+    public void resolveOutage(final int nodeId, final String ipAddr, final String svcName, final int dbId, final Timestamp time, final Runnable onDurable) {
+        LOG.info("resolveOutage: queueing resolution for {}:{}:{} with resolution {}:{}", nodeId, ipAddr, svcName, dbId, time);
+        enqueue(new Operation(SQL_RESOLVE_OUTAGE, new Object[] { Integer.valueOf(dbId), time, Integer.valueOf(nodeId), ipAddr, svcName }, onDurable));
+    }
+
+    /**
+     * Queues moving the outages of an interface to another node. It is
+     * ordered with the outage operations queued before and after it.
+     *
+     * @param ipAddr a {@link java.lang.String} object.
+     * @param oldNodeId a int.
+     * @param newNodeId a int.
+     */
+    public void reparentOutages(final String ipAddr, final int oldNodeId, final int newNodeId) {
+        LOG.info("reparentOutages: queueing reparent of outages for {}:{} to new node {}", oldNodeId, ipAddr, newNodeId);
+        enqueue(new Operation(SQL_REPARENT_OUTAGES, new Object[] { Integer.valueOf(newNodeId), Integer.valueOf(oldNodeId), ipAddr }, null));
+    }
+
+    /**
+     * Blocks until every operation queued before this call has been written.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void flush() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        enqueue(new Operation(null, null, new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        }));
+        latch.await();
+    }
+
+    private void enqueue(final Operation op) {
+        Assert.state(m_writer != null, "the journal has not been started");
+        if (m_queue.offer(op)) {
+            return;
+        }
+        if (Thread.currentThread() == m_writer) {
+            // a callback can't wait for its own thread to drain the queue
+            writeOne(op);
+            return;
+        }
+
+        LOG.debug("enqueue: {} outage operations queued, waiting for the writer to catch up", m_queue.size());
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    m_queue.put(op);
+                    return;
+                } catch (final InterruptedException e) {
+                    // dropping the operation would lose an outage, so keep waiting
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @return the number of operations waiting to be written
+     */
+    public int getQueueDepth() {
+        final BlockingQueue<Operation> queue = m_queue;
+        return queue == null ? 0 : queue.size();
+    }
+
+    /**
+     * @return the number of outage operations that could not be written
+     */
+    public long getFailedOperationCount() {
+        return m_failedOperationCount.get();
+    }
+
+    /**
+     * @return false if operations failed to be written in the last transaction
+     */
+    public boolean isHealthy() {
+        return m_healthy;
+    }
+
+    /**
+     * @return the number of transactions written
+     */
+    public long getFlushCount() {
+        return m_flushCount.get();
+    }
+
+    /**
+     * @return the number of outage operations written
+     */
+    public long getOperationCount() {
+        return m_operationCount.get();
+    }
+
+    /**
+     * @return the time taken by the last transaction, in milliseconds
+     */
+    public long getLastFlushMillis() {
+        return m_lastFlushMillis;
+    }
+
+    /**
+     * @return the longest time taken by a transaction, in milliseconds
+     */
+    public long getMaxFlushMillis() {
+        return m_maxFlushMillis;
+    }
+
+    /**
+     * @return the mean time taken by a transaction, in milliseconds
+     */
+    public long getMeanFlushMillis() {
+        final long count = m_flushCount.get();
+        return count == 0 ? 0 : m_totalFlushMillis.get() / count;
+    }
+
+    private void writeQueuedOperations() {
+        final List<Operation> batch = new ArrayList<Operation>(m_batchSize);
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                batch.add(m_queue.take());
+            } catch (final InterruptedException e) {
+                LOG.warn("writeQueuedOperations: interrupted with {} outage operations queued", m_queue.size());
+                Thread.currentThread().interrupt();
+                return;
+            }
+            m_queue.drainTo(batch, m_batchSize - 1);
+
+            final int stop = batch.indexOf(STOP);
+            if (stop >= 0) {
+                // anything queued after the stop marker is still written
+                batch.remove(stop);
+                m_queue.drainTo(batch);
+                stopping = true;
+            }
+
+            try {
+                write(batch);
+            } catch (final RuntimeException e) {
+                // keep the writer alive; the next batch may well succeed
+                LOG.error("writeQueuedOperations: unexpected error writing {} outage operations", batch.size(), e);
+                for (final Operation op : batch) {
+                    if (op.m_sql == null) {
+                        durable(op);
+                    } else {
+                        failed(op);
+                    }
+                }
+            }
+            batch.clear();
+        }
+        LOG.debug("writeQueuedOperations: outage journal stopped");
+    }
+
+    private void write(final List<Operation> batch) {
+        final long start = System.currentTimeMillis();
+        final long failedBefore = m_failedOperationCount.get();
+        boolean hasStatements = false;
+        for (final Operation op : batch) {
+            if (op.m_sql != null) {
+                hasStatements = true;
+                break;
+            }
+        }
+        // a batch of flush markers has nothing to commit
+        boolean written = !hasStatements;
+        for (int attempt = 1; attempt <= 2 && !written; attempt++) {
+            try {
+                writeBatch(batch);
+                written = true;
+            } catch (final SQLException e) {
+                LOG.info("write: attempt {} failed writing {} outage operations", attempt, batch.size(), e);
+            } catch (final RuntimeException e) {
+                LOG.info("write: attempt {} failed writing {} outage operations", attempt, batch.size(), e);
+            }
+        }
+
+        if (!written) {
+            for (final Operation op : batch) {
+                writeOne(op);
+            }
+        } else {
+            for (final Operation op : batch) {
+                durable(op);
+            }
+        }
+
+        final long elapsed = System.currentTimeMillis() - start;
+        m_flushCount.incrementAndGet();
+        m_totalFlushMillis.addAndGet(elapsed);
+        m_lastFlushMillis = elapsed;
+        if (elapsed > m_maxFlushMillis) {
+            m_maxFlushMillis = elapsed;
+        }
+        if (hasStatements) {
+            m_healthy = m_failedOperationCount.get() == failedBefore;
+        }
+        LOG.debug("write: wrote {} outage operations in {}ms, {} still queued", batch.size(), elapsed, m_queue.size());
+    }
+
+    /**
+     * Writes the batch in one transaction, grouping runs of operations that
+     * share a statement into JDBC batches.
+     */
+    private void writeBatch(final List<Operation> batch) throws SQLException {
+        final DBUtils d = new DBUtils(getClass());
+        try {
+            final Connection conn = m_dataSource.getConnection();
+            d.watch(conn);
+            conn.setAutoCommit(false);
+            try {
+                PreparedStatement stmt = null;
+                String stmtSql = null;
+                for (final Operation op : batch) {
+                    if (op.m_sql == null) {
+                        continue;
+                    }
+                    if (!op.m_sql.equals(stmtSql)) {
+                        if (stmt != null) {
+                            stmt.executeBatch();
+                        }
+                        stmt = conn.prepareStatement(op.m_sql);
+                        d.watch(stmt);
+                        stmtSql = op.m_sql;
+                    }
+                    setValues(stmt, op);
+                    stmt.addBatch();
+                }
+                if (stmt != null) {
+                    stmt.executeBatch();
+                }
+                conn.commit();
+            } catch (final SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } finally {
+            d.cleanUp();
+        }
+    }
+
+    private void writeOne(final Operation op) {
+        if (op.m_sql == null) {
+            durable(op);
+            return;
+        }
+        final DBUtils d = new DBUtils(getClass());
+        try {
+            final Connection conn = m_dataSource.getConnection();
+            d.watch(conn);
+            final PreparedStatement stmt = conn.prepareStatement(op.m_sql);
+            d.watch(stmt);
+            setValues(stmt, op);
+            stmt.executeUpdate();
+            durable(op);
+        } catch (final SQLException e) {
+            LOG.error("writeOne: final attempt failed writing outage operation {}", op, e);
+            failed(op);
+        } catch (final RuntimeException e) {
+            LOG.error("writeOne: final attempt failed writing outage operation {}", op, e);
+            failed(op);
+        } finally {
+            d.cleanUp();
+        }
+    }
+
+    private static void setValues(final PreparedStatement stmt, final Operation op) throws SQLException {
+        for (int i = 0; i < op.m_values.length; i++) {
+            stmt.setObject(i + 1, op.m_values[i]);
+        }
+    }
+
+    private void failed(final Operation op) {
+        m_failedOperationCount.incrementAndGet();
+        m_healthy = false;
+    }
+
+    private void durable(final Operation op) {
+        if (op.m_sql != null) {
+            m_operationCount.incrementAndGet();
+        }
+        if (op.m_onDurable != null) {
+            try {
+                op.m_onDurable.run();
+            } catch (final Throwable t) {
+                LOG.warn("durable: callback failed for outage operation {}", op, t);
+            }
+        }
+    }
+}
@@ -58,9 +58,9 @@ import org.opennms.netmgt.poller.pollables.PollableService;
 import org.opennms.netmgt.poller.pollables.PollableServiceConfig;
 import org.opennms.netmgt.poller.pollables.PollableVisitor;
 import org.opennms.netmgt.poller.pollables.PollableVisitorAdaptor;
-import org.opennms.netmgt.scheduler.LegacyScheduler;
 import org.opennms.netmgt.scheduler.Schedule;
 import org.opennms.netmgt.scheduler.Scheduler;
+import org.opennms.netmgt.scheduler.TimingWheelScheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -78,7 +78,7 @@ public abstract class Poller extends AbstractServiceDaemon {
 
     private boolean m_initialized = false;
 
-    private LegacyScheduler m_scheduler = null;
+    private Scheduler m_scheduler = null;
 
     private PollerEventProcessor m_eventProcessor;
 
@@ -86,6 +86,8 @@ public abstract class Poller extends AbstractServiceDaemon {
 
     private QueryManager m_queryManager;
 
+    private OutageJournal m_outageJournal;
+
     private PollerConfig m_pollerConfig;
 
     private PollOutagesConfig m_pollOutagesConfig;
@@ -182,6 +184,24 @@ public abstract class Poller extends AbstractServiceDaemon {
     public QueryManager getQueryManager() {
         return m_queryManager;
     }
+
+    /**
+     * <p>setOutageJournal</p>
+     *
+     * @param outageJournal a {@link org.opennms.netmgt.poller.OutageJournal} object.
+     */
+    public void setOutageJournal(OutageJournal outageJournal) {
+        m_outageJournal = outageJournal;
+    }
+
+    /**
+     * <p>getOutageJournal</p>
+     *
+     * @return a {@link org.opennms.netmgt.poller.OutageJournal} object.
+     */
+    public OutageJournal getOutageJournal() {
+        return m_outageJournal;
+    }
     
     /**
      * <p>getPollerConfig</p>
@@ -231,9 +251,9 @@ public abstract class Poller extends AbstractServiceDaemon {
     /**
      * <p>setScheduler</p>
      *
-     * @param scheduler a {@link org.opennms.netmgt.scheduler.LegacyScheduler} object.
+     * @param scheduler a {@link org.opennms.netmgt.scheduler.Scheduler} object.
      */
-    public void setScheduler(LegacyScheduler scheduler) {
+    public void setScheduler(Scheduler scheduler) {
         m_scheduler = scheduler;
     }
 
@@ -355,7 +375,7 @@ public abstract class Poller extends AbstractServiceDaemon {
         try {
             LOG.debug("init: Creating poller scheduler");
 
-            setScheduler(new LegacyScheduler("Poller", getPollerConfig().getThreads()));
+            setScheduler(new TimingWheelScheduler("Poller", getPollerConfig().getThreads()));
         } catch (RuntimeException e) {
             LOG.error("init: Failed to create poller scheduler", e);
             throw e;
@@ -717,4 +737,24 @@ public abstract class Poller extends AbstractServiceDaemon {
             return 0L;
         }
     }
+
+    public int getOutageQueueDepth() {
+        return m_outageJournal == null ? 0 : m_outageJournal.getQueueDepth();
+    }
+
+    public long getOutageFlushMeanMillis() {
+        return m_outageJournal == null ? 0L : m_outageJournal.getMeanFlushMillis();
+    }
+
+    public long getOutageFlushMaxMillis() {
+        return m_outageJournal == null ? 0L : m_outageJournal.getMaxFlushMillis();
+    }
+
+    public long getOutageWriteFailures() {
+        return m_outageJournal == null ? 0L : m_outageJournal.getFailedOperationCount();
+    }
+
+    public boolean isOutageJournalHealthy() {
+        return m_outageJournal == null || m_outageJournal.isHealthy();
+    }
 }
@@ -149,6 +149,33 @@ public interface QueryManager {
      */
     public void resolveOutage(int nodeId, String ipAddr, String svcName, int dbid, String time);
 
+    /**
+     * Opens an outage and runs <code>onDurable</code> once it has been
+     * committed. The outage may be written after this method returns.
+     *
+     * @param outageIdSQL a {@link java.lang.String} object.
+     * @param nodeId a int.
+     * @param ipAddr a {@link java.lang.String} object.
+     * @param svcName a {@link java.lang.String} object.
+     * @param dbid a int.
+     * @param time a {@link java.lang.String} object.
+     * @param onDurable a {@link java.lang.Runnable} object, may be null.
+     */
+    public void openOutage(String outageIdSQL, int nodeId, String ipAddr, String svcName, int dbid, String time, Runnable onDurable);
+
+    /**
+     * Resolves an outage and runs <code>onDurable</code> once the resolution
+     * has been committed. The outage may be written after this method returns.
+     *
+     * @param nodeId a int.
+     * @param ipAddr a {@link java.lang.String} object.
+     * @param svcName a {@link java.lang.String} object.
+     * @param dbid a int.
+     * @param time a {@link java.lang.String} object.
+     * @param onDurable a {@link java.lang.Runnable} object, may be null.
+     */
+    public void resolveOutage(int nodeId, String ipAddr, String svcName, int dbid, String time, Runnable onDurable);
+
     /**
      * <p>reparentOutages</p>
      *
@@ -61,4 +61,34 @@ public class Pollerd extends AbstractSpringContextJmxServiceDaemon<org.opennms.n
     public long getNumPollsLocal() {
         return getDaemon().getNumPollsLocal();
     }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getOutageQueueDepth() {
+        return getDaemon().getOutageQueueDepth();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getOutageFlushMeanMillis() {
+        return getDaemon().getOutageFlushMeanMillis();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getOutageFlushMaxMillis() {
+        return getDaemon().getOutageFlushMaxMillis();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getOutageWriteFailures() {
+        return getDaemon().getOutageWriteFailures();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isOutageJournalHealthy() {
+        return getDaemon().isOutageJournalHealthy();
+    }
 }
@@ -50,4 +50,39 @@ public interface PollerdMBean extends BaseOnmsMBean {
      * @return the number of polls that have ran on this particular instance
      */
     public long getNumPollsLocal();
+
+    /**
+     * Returns the number of outage writes waiting to be committed.
+     *
+     * @return the number of outage writes waiting to be committed
+     */
+    public int getOutageQueueDepth();
+
+    /**
+     * Returns the mean time taken to commit a batch of outage writes.
+     *
+     * @return the mean time taken to commit a batch of outage writes, in milliseconds
+     */
+    public long getOutageFlushMeanMillis();
+
+    /**
+     * Returns the longest time taken to commit a batch of outage writes.
+     *
+     * @return the longest time taken to commit a batch of outage writes, in milliseconds
+     */
+    public long getOutageFlushMaxMillis();
+
+    /**
+     * Returns the number of outage writes that failed and were dropped.
+     *
+     * @return the number of outage writes that failed and were dropped
+     */
+    public long getOutageWriteFailures();
+
+    /**
+     * Returns whether the last batch of outage writes was committed in full.
+     *
+     * @return false if outage writes failed in the last batch
+     */
+    public boolean isOutageJournalHealthy();
 }
@@ -33,6 +33,7 @@ import java.net.InetAddress;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -50,6 +51,7 @@ import org.opennms.netmgt.poller.ServiceMonitor;
 import org.opennms.netmgt.rrd.RrdDataSource;
 import org.opennms.netmgt.rrd.RrdException;
 import org.opennms.netmgt.rrd.RrdUtils;
+import org.opennms.netmgt.threshd.CollectedValueBroker;
 import org.opennms.netmgt.threshd.LatencyThresholdingSet;
 import org.opennms.netmgt.threshd.ThresholdingEventProxy;
 import org.opennms.netmgt.xml.event.Event;
@@ -150,6 +152,25 @@ public class LatencyStoringServiceMonitorAdaptor implements ServiceMonitor {
         }
 
         updateRRD(rrdPath, svc.getAddress(), rrdBaseName, entries);
+        publishResponseTime(rrdPath, svc, entries);
+    }
+
+    /**
+     * Hands the response times to the latency thresholder, so it does not
+     * have to read them back from the RRD file.
+     */
+    private void publishResponseTime(String rrdPath, MonitoredService svc, LinkedHashMap<String, Number> entries) {
+        CollectedValueBroker broker = CollectedValueBroker.getInstance();
+        if (!broker.isSubscribed(svc.getNodeId())) {
+            return;
+        }
+        Map<String, Double> gauges = new HashMap<String, Double>();
+        for (Map.Entry<String, Number> entry : entries.entrySet()) {
+            if (entry.getValue() != null) {
+                gauges.put(entry.getKey(), entry.getValue().doubleValue());
+            }
+        }
+        broker.publish(svc.getNodeId(), new File(rrdPath, InetAddressUtils.str(svc.getAddress())), System.currentTimeMillis(), gauges, Collections.<String, Double>emptyMap(), Collections.<String, String>emptyMap());
     }
 
     private void applyThresholds(String rrdPath, MonitoredService service, String dsName, LinkedHashMap<String, Number> entries) {
@@ -28,8 +28,8 @@
 
 package org.opennms.netmgt.poller.pollables;
 
-import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -47,7 +47,12 @@ import org.opennms.netmgt.model.PollStatus;
  */
 abstract public class PollableContainer extends PollableElement {
 
-    private final Map<Object, PollableElement> m_members = new HashMap<Object, PollableElement>();
+    /**
+     * Copy-on-write map of the members. Membership rarely changes while the
+     * members are walked on every poll, so readers take no lock and always
+     * see a consistent snapshot.
+     */
+    private volatile Map<Object, PollableElement> m_members = Collections.emptyMap();
 
     /**
      * <p>Constructor for PollableContainer.</p>
@@ -65,7 +70,7 @@ abstract public class PollableContainer extends PollableElement {
      * @param key a {@link java.lang.Object} object.
      * @return a {@link org.opennms.netmgt.poller.pollables.PollableElement} object.
      */
-    protected synchronized PollableElement getMember(Object key) {
+    protected PollableElement getMember(Object key) {
         return m_members.get(key);
     }
 
@@ -74,7 +79,7 @@ abstract public class PollableContainer extends PollableElement {
      *
      * @return a int.
      */
-    protected synchronized int getMemberCount() {
+    protected int getMemberCount() {
         return m_members.size();
     }
     
@@ -83,8 +88,8 @@ abstract public class PollableContainer extends PollableElement {
      *
      * @return a {@link java.util.Collection} object.
      */
-    protected synchronized Collection<PollableElement> getMembers() {
-        return new ArrayList<PollableElement>(m_members.values());
+    protected Collection<PollableElement> getMembers() {
+        return m_members.values();
     }
     
     /**
@@ -102,7 +107,9 @@ abstract public class PollableContainer extends PollableElement {
      */
     protected synchronized void addMember(PollableElement member) {
         Object key = createMemberKey(member);
-        m_members.put(key, member);
+        Map<Object, PollableElement> members = new HashMap<Object, PollableElement>(m_members);
+        members.put(key, member);
+        m_members = Collections.unmodifiableMap(members);
     }
     
     /**
@@ -112,7 +119,9 @@ abstract public class PollableContainer extends PollableElement {
      */
     public synchronized void removeMember(PollableElement member) {
         Object key = createMemberKey(member);
-        m_members.remove(key);
+        Map<Object, PollableElement> members = new HashMap<Object, PollableElement>(m_members);
+        members.remove(key);
+        m_members = Collections.unmodifiableMap(members);
     }
 
     
@@ -207,12 +207,23 @@ public class PollableInterface extends PollableContainer {
     /** {@inheritDoc} */
     @Override
     protected PollStatus poll(PollableElement elem) {
-        PollableService critSvc = getCriticalService();
-        if (getStatus().isUp() || critSvc == null || elem == critSvc)
+        if (isMemberPollable(elem))
             return super.poll(elem);
     
         return PollStatus.down();
     }
+
+    /**
+     * While the interface is down only its critical service is polled, the
+     * other services are taken to be down as well.
+     *
+     * @param elem a member of this interface
+     * @return whether polling elem would actually poll it
+     */
+    boolean isMemberPollable(PollableElement elem) {
+        PollableService critSvc = getCriticalService();
+        return getStatus().isUp() || critSvc == null || elem == critSvc;
+    }
     
     /** {@inheritDoc} */
     @Override
@@ -30,6 +30,8 @@ package org.opennms.netmgt.poller.pollables;
 
 import java.net.InetAddress;
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -52,56 +54,52 @@ public class PollableNode extends PollableContainer {
      * @author brozow
      */
     public class Lock {
-        private Thread m_owner = null;
-        private int m_obtainCount = 0;
+        private final ReentrantLock m_lock = new ReentrantLock();
         
-        public synchronized void obtain() {
-            
-            if (m_owner != Thread.currentThread()) {
+        public void obtain() {
+            if (!m_lock.isHeldByCurrentThread()) {
                 LOG.debug("Trying to obtain lock for {}", PollableNode.this);
-                while (m_owner != null) {
-                    try { wait();} catch (InterruptedException e) { throw new ThreadInterrupted("Lock for "+PollableNode.this+" is unavailable", e);}
-                }
-                m_owner = Thread.currentThread();
+            }
+            try {
+                m_lock.lockInterruptibly();
+            } catch (InterruptedException e) {
+                throw new ThreadInterrupted("Lock for "+PollableNode.this+" is unavailable", e);
+            }
+            if (m_lock.getHoldCount() == 1) {
                 LOG.debug("Obtained lock for {}", PollableNode.this);
             }
-            m_obtainCount++;
         }
         
-        public synchronized void obtain(long timeout) {
-            
-            if (m_owner != Thread.currentThread()) {
+        public void obtain(long timeout) {
+            if (!m_lock.isHeldByCurrentThread()) {
                 LOG.debug("Trying to obtain lock for {}", PollableNode.this);
-                long now = System.currentTimeMillis();
-                long endTime = (timeout == 0 ? Long.MAX_VALUE : now+timeout);
-                while (m_owner != null) {
-                    try { wait(endTime-now);} catch (InterruptedException e) { throw new ThreadInterrupted("Lock for "+PollableNode.this+" is unavailable", e);}
-                    now = System.currentTimeMillis();
-                    if (now >= endTime)
-                        throw new LockUnavailable("Unable to obtain lock for "+PollableNode.this+" before timeout");
+            }
+            try {
+                if (!m_lock.tryLock(timeout, TimeUnit.MILLISECONDS)) {
+                    throw new LockUnavailable("Unable to obtain lock for "+PollableNode.this+" before timeout");
                 }
-                m_owner = Thread.currentThread();
+            } catch (InterruptedException e) {
+                throw new ThreadInterrupted("Lock for "+PollableNode.this+" is unavailable", e);
+            }
+            if (m_lock.getHoldCount() == 1) {
                 LOG.debug("Obtained lock for {}", PollableNode.this);
             }
-            m_obtainCount++;
         }
         
-        public synchronized void release() {
-            if (m_owner == Thread.currentThread()) {
-                m_obtainCount--;
-                if (m_obtainCount == 0) {
+        public void release() {
+            if (m_lock.isHeldByCurrentThread()) {
+                if (m_lock.getHoldCount() == 1) {
                     LOG.debug("Releasing lock for {}", PollableNode.this);
-                    m_owner = null;
-                    notifyAll();
                 }
+                m_lock.unlock();
             }
         }
 
         /**
          * @return
          */
-        public synchronized boolean isLockAvailable() {
-            return m_owner == null;
+        public boolean isLockAvailable() {
+            return !m_lock.isLocked();
         }
 
     }
@@ -55,10 +55,53 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
 
     private final class PollRunner implements Runnable {
     	
+    	private final PollStatus m_polledStatus;
+    	private final PollStatus m_statusBefore;
+    	private final PollableInterface m_interfaceBefore;
+    	private final PollStatus m_interfaceStatusBefore;
     	private volatile PollStatus m_pollStatus;
+
+    	/**
+    	 * Polls the service with the tree lock held.
+    	 */
+    	public PollRunner() {
+    	    this(null, null, null);
+    	}
+
+    	/**
+    	 * Applies a result polled without the tree lock, as long as the tree
+    	 * has not changed while the lock was being acquired.
+    	 */
+    	public PollRunner(PollStatus polledStatus, PollStatus statusBefore, PollableInterface interfaceBefore) {
+    	    m_polledStatus = polledStatus;
+    	    m_statusBefore = statusBefore;
+    	    m_interfaceBefore = interfaceBefore;
+    	    m_interfaceStatusBefore = interfaceBefore == null ? null : interfaceBefore.getStatus();
+    	}
+
+    	private boolean isPolledStatusCurrent() {
+    	    if (m_polledStatus == null) {
+    	        return false;
+    	    }
+    	    final PollableInterface iface = getInterface();
+    	    return iface == m_interfaceBefore
+    	        && iface.getStatus().equals(m_interfaceStatusBefore)
+    	        && getStatus().equals(m_statusBefore)
+    	        && iface.isMemberPollable(PollableService.this);
+    	}
+
             @Override
 		public void run() {
-		    doPoll();
+		    if (isPolledStatusCurrent()) {
+		        m_pendingStatus = m_polledStatus;
+		    } else if (m_polledStatus != null) {
+		        LOG.debug("Discarding poll result for {}, the tree changed before the lock was acquired", PollableService.this);
+		    }
+		    try {
+		        doPoll();
+		    } finally {
+		        m_pendingStatus = null;
+		    }
 		    getNode().processStatusChange(new Date());
 		    m_pollStatus = getStatus();
 		}
@@ -74,6 +117,12 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
     private volatile PollStatus m_oldStatus;
     private volatile Schedule m_schedule;
     private volatile long m_statusChangeTime = 0L;
+
+    /**
+     * The result of a poll taken without the tree lock that is waiting to
+     * be applied to the tree. Only set while the tree lock is held.
+     */
+    private volatile PollStatus m_pendingStatus;
     /**
      * <p>Constructor for PollableService.</p>
      *
@@ -173,9 +222,9 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
     /**
      * <p>setPollConfig</p>
      *
-     * @param pollConfig a {@link org.opennms.netmgt.poller.pollables.PollableServiceConfig} object.
+     * @param pollConfig a {@link org.opennms.netmgt.poller.pollables.PollConfig} object.
      */
-    public void setPollConfig(PollableServiceConfig pollConfig) {
+    public void setPollConfig(PollConfig pollConfig) {
         m_pollConfig = pollConfig;
     }
 
@@ -186,7 +235,12 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
      */
     @Override
     public PollStatus poll() {
-        PollStatus newStatus = m_pollConfig.poll();
+        PollStatus newStatus = m_pendingStatus;
+        if (newStatus == null) {
+            newStatus = m_pollConfig.poll();
+        } else {
+            m_pendingStatus = null;
+        }
         if (!newStatus.isUnknown()) { 
             updateStatus(newStatus);
         }
@@ -308,10 +362,7 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
     @Override
     public void updateStatus(PollStatus newStatus) {
         
-        if (!getContext().isServiceUnresponsiveEnabled()) {
-            if (newStatus.equals(PollStatus.unresponsive()))
-                newStatus = PollStatus.down();
-        }
+        newStatus = effectiveStatus(newStatus);
         
         PollStatus currentStatus = getStatus();
         if (!currentStatus.equals(newStatus)) {
@@ -327,12 +378,28 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
         }
     }
 
+    private PollStatus effectiveStatus(PollStatus status) {
+        if (!getContext().isServiceUnresponsiveEnabled()) {
+            if (status.equals(PollStatus.unresponsive()))
+                return PollStatus.down();
+        }
+        return status;
+    }
+
+    /**
+     * Whether applying the given poll result would change the status of
+     * this service. Unknown results are never applied.
+     */
+    private boolean isStatusChange(PollStatus polledStatus) {
+        return !polledStatus.isUnknown() && !getStatus().equals(effectiveStatus(polledStatus));
+    }
+
     /**
      * <p>setSchedule</p>
      *
      * @param schedule a {@link org.opennms.netmgt.scheduler.Schedule} object.
      */
-    public synchronized void setSchedule(Schedule schedule) {
+    public void setSchedule(Schedule schedule) {
         m_schedule = schedule;
     }
     
@@ -341,7 +408,7 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
      *
      * @return a {@link org.opennms.netmgt.scheduler.Schedule} object.
      */
-    public synchronized Schedule getSchedule() {
+    public Schedule getSchedule() {
         return m_schedule;
     }
     
@@ -400,14 +467,32 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
         LOG.debug("Start Scheduled Poll of service {}", this);
         PollStatus status;
         if (getContext().isNodeProcessingEnabled()) {
-            PollRunner r = new PollRunner();
-            try {
-				withTreeLock(r, timeout);
-            } catch (LockUnavailable e) {
-                LOG.info("Postponing poll for {}", this, e);
-                throw new PostponeNecessary("LockUnavailable postpone poll");
+            final PollableInterface iface = getInterface();
+            final PollRunner r;
+            if (iface.isMemberPollable(this)) {
+                // Poll without holding the tree lock so that the services of a
+                // node are polled concurrently. The lock is only needed when the
+                // result changes our status and has to be propagated to the
+                // interface and node.
+                final PollStatus statusBefore = getStatus();
+                final PollStatus polledStatus = m_pollConfig.poll();
+                r = isStatusChange(polledStatus) ? new PollRunner(polledStatus, statusBefore, iface) : null;
+            } else {
+                // the interface is down and this is not its critical service,
+                // let the interface decide under the lock as it always has
+                r = new PollRunner();
+            }
+            if (r == null) {
+                status = getStatus();
+            } else {
+                try {
+                    withTreeLock(r, timeout);
+                } catch (LockUnavailable e) {
+                    LOG.info("Postponing poll for {}", this, e);
+                    throw new PostponeNecessary("LockUnavailable postpone poll");
+                }
+                status = r.getPollStatus();
             }
-            status = r.getPollStatus();
         }
         else {
             doPoll();
@@ -247,5 +247,33 @@ public class Queued extends AbstractSpringContextJmxServiceDaemon<org.opennms.ne
         }
     }
 
+    /**
+     * <p>getFilesWithSignificantWork</p>
+     *
+     * @return a long.
+     */
+    @Override
+    public long getFilesWithSignificantWork() {
+        if (getStatsStatus()) {
+            return getRrdStrategy().getFilesWithSignificantWork();
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * <p>getFilesWithInsignificantWork</p>
+     *
+     * @return a long.
+     */
+    @Override
+    public long getFilesWithInsignificantWork() {
+        if (getStatsStatus()) {
+            return getRrdStrategy().getFilesWithInsignificantWork();
+        } else {
+            return 0;
+        }
+    }
+
 
 }
@@ -115,5 +115,17 @@ public interface QueuedMBean extends BaseOnmsMBean {
 	 * @return a long.
 	 */
 	public long getStartTime();
+	/**
+	 * <p>getFilesWithSignificantWork</p>
+	 *
+	 * @return a long.
+	 */
+	public long getFilesWithSignificantWork();
+	/**
+	 * <p>getFilesWithInsignificantWork</p>
+	 *
+	 * @return a long.
+	 */
+	public long getFilesWithInsignificantWork();
 
 }
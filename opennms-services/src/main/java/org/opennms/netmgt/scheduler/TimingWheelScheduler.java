@@ -0,0 +1,505 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.scheduler;
+
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link Scheduler} backed by a hierarchical timing wheel.
+ *
+ * <p>Scheduled runnables are rounded up to the next tick and placed in the
+ * bucket of the first wheel whose span covers their due time. The worker
+ * thread advances the lowest wheel one tick at a time and dispatches the
+ * current bucket; when a higher wheel reaches a new tick its bucket is
+ * cascaded down into the finer wheels. Insertion and expiry are constant
+ * time regardless of how many runnables are scheduled, and the worker only
+ * looks at runnables that are actually due.</p>
+ *
+ * <p>Callers never touch the wheels directly: {@link #schedule(long, ReadyRunnable)}
+ * appends to a lock-free queue that the worker drains on every tick, so
+ * rescheduling from the pool threads does not contend with dispatching.</p>
+ *
+ * <p>A runnable that is due but not {@link ReadyRunnable#isReady() ready} is
+ * placed back on the wheel and checked again on the following tick.
+ * Runnables that need a longer back-off (see {@link PostponeNecessary})
+ * reschedule themselves through {@link Reschedulable} exactly as they do
+ * with the {@link LegacyScheduler}.</p>
+ */
+public class TimingWheelScheduler extends AbstractScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TimingWheelScheduler.class);
+
+    /** Default resolution of the lowest wheel, in milliseconds. */
+    public static final long DEFAULT_TICK_MILLIS = 100;
+
+    /** Default number of buckets per wheel. */
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private final long m_tickMillis;
+
+    private final int m_wheelSize;
+
+    /**
+     * Upper bound of the random delay added to each runnable, as a
+     * percentage of its interval.
+     */
+    private final int m_jitterPercent;
+
+    private final Random m_random = new Random();
+
+    /**
+     * Runnables scheduled since the last tick. Only the worker thread
+     * removes from this queue.
+     */
+    private final ConcurrentLinkedQueue<Entry> m_pending = new ConcurrentLinkedQueue<Entry>();
+
+    /**
+     * The wheels, finest first. Only accessed by the worker thread.
+     */
+    private final List<Wheel> m_wheels = new ArrayList<Wheel>();
+
+    /**
+     * Time of the current tick of the lowest wheel. Only accessed by the
+     * worker thread.
+     */
+    private long m_clock;
+
+    /**
+     * The revision for which the wheels were last cleared. Only accessed by
+     * the worker thread.
+     */
+    private long m_clearedRevision = 0;
+
+    private final AtomicInteger m_scheduled = new AtomicInteger(0);
+
+    /**
+     * Guards the revision together with the count of scheduled runnables,
+     * so that a reset can't interleave with a runnable being counted under
+     * the old revision.
+     */
+    private final Object m_countLock = new Object();
+
+    private final AtomicLong m_numTasksExecuted = new AtomicLong(0);
+
+    private volatile long m_revision = 0;
+
+    /**
+     * A scheduled runnable. Entries are chained into their bucket so that
+     * adding and draining a bucket allocates nothing.
+     */
+    private static final class Entry {
+        private final ReadyRunnable m_runnable;
+        private final long m_revision;
+        private long m_deadline;
+        private Entry m_next;
+
+        private Entry(final ReadyRunnable runnable, final long deadline, final long revision) {
+            m_runnable = runnable;
+            m_deadline = deadline;
+            m_revision = revision;
+        }
+    }
+
+    /**
+     * One level of the hierarchy. Bucket <em>i</em> holds the entries whose
+     * due time falls in a tick congruent to <em>i</em> modulo the wheel size.
+     */
+    private static final class Wheel {
+        private final long m_tick;
+        private final long m_span;
+        private final Entry[] m_buckets;
+        private long m_currentTime;
+
+        private Wheel(final long tick, final int size, final long currentTime) {
+            m_tick = tick;
+            m_span = tick * size;
+            m_buckets = new Entry[size];
+            m_currentTime = currentTime - (currentTime % tick);
+        }
+
+        private int indexOf(final long time) {
+            return (int) ((time / m_tick) % m_buckets.length);
+        }
+
+        private void add(final Entry entry) {
+            final int index = indexOf(entry.m_deadline);
+            entry.m_next = m_buckets[index];
+            m_buckets[index] = entry;
+        }
+
+        private Entry drain(final long time) {
+            final int index = indexOf(time);
+            final Entry head = m_buckets[index];
+            m_buckets[index] = null;
+            return head;
+        }
+
+        private void clear() {
+            for (int i = 0; i < m_buckets.length; i++) {
+                m_buckets[i] = null;
+            }
+        }
+    }
+
+    /**
+     * Constructs a new timing wheel scheduler with the default tick and
+     * wheel size and without jitter.
+     *
+     * @param parent
+     *            String prepended to "Scheduler" to create fiber name
+     * @param maxSize
+     *            The maximum size of the thread pool.
+     */
+    public TimingWheelScheduler(final String parent, final int maxSize) {
+        this(parent, maxSize, DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE, 0);
+    }
+
+    /**
+     * Constructs a new timing wheel scheduler.
+     *
+     * @param parent
+     *            String prepended to "Scheduler" to create fiber name
+     * @param maxSize
+     *            The maximum size of the thread pool.
+     * @param tickMillis
+     *            The resolution of the lowest wheel.
+     * @param wheelSize
+     *            The number of buckets in each wheel.
+     * @param jitterPercent
+     *            The upper bound of the random delay added to each
+     *            runnable, as a percentage of its interval. Spreads out
+     *            runnables that share an interval and were scheduled at
+     *            the same time.
+     */
+    public TimingWheelScheduler(final String parent, final int maxSize, final long tickMillis, final int wheelSize, final int jitterPercent) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("tickMillis must be positive");
+        }
+        if (wheelSize < 2) {
+            throw new IllegalArgumentException("wheelSize must be at least 2");
+        }
+        if (jitterPercent < 0 || jitterPercent > 100) {
+            throw new IllegalArgumentException("jitterPercent must be between 0 and 100");
+        }
+        m_status = START_PENDING;
+        m_runner = Executors.newFixedThreadPool(maxSize, new LogPreservingThreadFactory(parent, maxSize, true));
+        m_tickMillis = tickMillis;
+        m_wheelSize = wheelSize;
+        m_jitterPercent = jitterPercent;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void schedule(final long interval, final ReadyRunnable runnable) {
+        LOG.debug("schedule: Adding ready runnable {} at interval {}", runnable, interval);
+
+        final long timeToRun = getCurrentTime() + interval + jitter(interval);
+        final int scheduled;
+        synchronized (m_countLock) {
+            final long revision = getRevision();
+            m_pending.add(new Entry(new ScheduleTimeKeeper(runnable, timeToRun, revision), timeToRun, revision));
+            scheduled = m_scheduled.getAndIncrement();
+        }
+
+        if (scheduled == 0) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    private long jitter(final long interval) {
+        if (m_jitterPercent == 0 || interval <= 0) {
+            return 0;
+        }
+        final long bound = interval * m_jitterPercent / 100;
+        if (bound <= 0) {
+            return 0;
+        }
+        synchronized (m_random) {
+            return (long) (m_random.nextDouble() * bound);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getName() {
+        return m_runner.toString();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getScheduled() {
+        return m_scheduled.get();
+    }
+
+    /**
+     * The main method of the scheduler. Advances the wheels once per tick
+     * and hands the due runnables to the thread pool.
+     */
+    @Override
+    public void run() {
+        synchronized (this) {
+            m_status = RUNNING;
+        }
+
+        LOG.debug("run: scheduler running");
+
+        resetClock(getCurrentTime());
+
+        for (;;) {
+            synchronized (this) {
+                if (m_status != RUNNING && m_status != PAUSED
+                        && m_status != PAUSE_PENDING
+                        && m_status != RESUME_PENDING) {
+                    LOG.debug("run: status = {}, time to exit", m_status);
+                    break;
+                }
+
+                try {
+                    while (m_status == PAUSE_PENDING || m_status == PAUSED) {
+                        if (m_status == PAUSE_PENDING) {
+                            LOG.debug("run: pausing.");
+                        }
+                        m_status = PAUSED;
+                        wait();
+                    }
+
+                    if (m_status == RESUME_PENDING) {
+                        LOG.debug("run: resuming.");
+                        m_status = RUNNING;
+                    }
+
+                    if (m_scheduled.get() == 0) {
+                        LOG.debug("run: no ready runnables scheduled, waiting...");
+                        clearIfReset();
+                        wait();
+                        // Nothing was on the wheels, so there is nothing to catch up on
+                        if (m_scheduled.get() > 0) {
+                            resetClock(getCurrentTime());
+                        }
+                        continue;
+                    }
+
+                    final long sleep = m_clock + m_tickMillis - getCurrentTime();
+                    if (sleep > 0) {
+                        wait(sleep);
+                        continue;
+                    }
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+
+            clearIfReset();
+
+            final long now = getCurrentTime();
+            while (m_clock + m_tickMillis <= now) {
+                advance(m_clock + m_tickMillis);
+            }
+        }
+
+        LOG.debug("run: scheduler exiting, state = STOPPED");
+        synchronized (this) {
+            m_status = STOPPED;
+        }
+    }
+
+    /**
+     * Aligns the wheels on the given time. Only valid while the wheels are
+     * empty.
+     */
+    private void resetClock(final long now) {
+        m_clock = now - (now % m_tickMillis);
+        m_wheels.clear();
+        m_wheels.add(new Wheel(m_tickMillis, m_wheelSize, m_clock));
+    }
+
+    private void clearIfReset() {
+        final long revision = m_revision;
+        if (revision != m_clearedRevision) {
+            for (final Wheel wheel : m_wheels) {
+                wheel.clear();
+            }
+            m_clearedRevision = revision;
+        }
+    }
+
+    /**
+     * Moves the clock to the given tick: cascades the buckets of the coarser
+     * wheels that reached a new tick, then dispatches the due bucket of the
+     * lowest wheel together with anything scheduled since the last tick.
+     */
+    private void advance(final long time) {
+        m_clock = time;
+
+        // Move every wheel forward before cascading so that entries are
+        // re-placed against the new time of the finer wheels
+        final int levels = m_wheels.size();
+        final boolean[] ticked = new boolean[levels];
+        for (int i = 0; i < levels; i++) {
+            final Wheel wheel = m_wheels.get(i);
+            final long wheelTime = time - (time % wheel.m_tick);
+            ticked[i] = wheelTime != wheel.m_currentTime;
+            wheel.m_currentTime = wheelTime;
+        }
+
+        for (int i = levels - 1; i > 0; i--) {
+            if (ticked[i]) {
+                place(m_wheels.get(i).drain(time));
+            }
+        }
+
+        Entry entry;
+        while ((entry = m_pending.poll()) != null) {
+            // round up so that nothing is dispatched before it is due
+            entry.m_deadline = ((entry.m_deadline + m_tickMillis - 1) / m_tickMillis) * m_tickMillis;
+            entry.m_next = null;
+            place(entry);
+        }
+
+        place(m_wheels.get(0).drain(time));
+    }
+
+    /**
+     * Adds a chain of entries to the finest wheel that can hold them, or
+     * dispatches those that are due.
+     */
+    private void place(Entry entry) {
+        while (entry != null) {
+            final Entry next = entry.m_next;
+            entry.m_next = null;
+
+            if (entry.m_revision != m_revision) {
+                // dropped by a reset; the count was already cleared
+            } else if (entry.m_deadline <= m_clock) {
+                dispatch(entry);
+            } else {
+                wheelFor(entry.m_deadline).add(entry);
+            }
+
+            entry = next;
+        }
+    }
+
+    private Wheel wheelFor(final long deadline) {
+        for (int i = 0; ; i++) {
+            if (i == m_wheels.size()) {
+                final Wheel finer = m_wheels.get(i - 1);
+                m_wheels.add(new Wheel(finer.m_span, m_wheelSize, m_clock));
+            }
+            final Wheel wheel = m_wheels.get(i);
+            if (deadline < wheel.m_currentTime + wheel.m_span) {
+                return wheel;
+            }
+        }
+    }
+
+    private void dispatch(final Entry entry) {
+        final ReadyRunnable readyRun = entry.m_runnable;
+        if (!readyRun.isReady()) {
+            entry.m_deadline = m_clock + m_tickMillis;
+            m_wheels.get(0).add(entry);
+            return;
+        }
+
+        LOG.debug("run: found ready runnable {}", readyRun);
+
+        if (readyRun instanceof SchedulerAware) {
+            ((SchedulerAware) readyRun).setScheduler(this);
+        }
+
+        try {
+            m_runner.execute(readyRun);
+        } catch (RejectedExecutionException e) {
+            throw new UndeclaredThrowableException(e);
+        }
+
+        synchronized (m_countLock) {
+            // a reset since the entry was placed has already cleared the count
+            if (entry.m_revision == m_revision) {
+                m_scheduled.decrementAndGet();
+            }
+        }
+        m_numTasksExecuted.incrementAndGet();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getRevision() {
+        return m_revision;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void stop() {
+        synchronized (m_countLock) {
+            m_revision++;
+        }
+        super.stop();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void reset() {
+        // Entries carry the revision they were scheduled under: bumping it
+        // keeps the worker from dispatching them and stops Reschedulable
+        // tasks that are currently running from being rescheduled
+        synchronized (m_countLock) {
+            m_revision++;
+            m_scheduled.set(0);
+        }
+        notifyAll();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getGlobalTasksExecuted() {
+        return getLocalTasksExecuted();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getLocalTasksExecuted() {
+        return m_numTasksExecuted.get();
+    }
+}
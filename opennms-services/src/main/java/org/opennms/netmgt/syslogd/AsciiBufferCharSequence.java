@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.syslogd;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link CharSequence} view of US-ASCII bytes in a {@link ByteBuffer},
+ * so that a received datagram can be matched against the parser patterns
+ * without first being decoded into a String.  Only the pieces that the
+ * parsers keep (hostname, process, message...) are ever copied.
+ *
+ * Bytes outside of US-ASCII read as U+FFFD, the same as decoding the bytes
+ * with the US-ASCII charset.  The view reads the buffer with absolute gets,
+ * so it does not disturb the buffer's position, but it must not be used
+ * after the buffer has been given back to be reused.
+ */
+final class AsciiBufferCharSequence implements CharSequence {
+    private final ByteBuffer m_buffer;
+    private final int m_start;
+    private final int m_end;
+
+    /**
+     * Creates a view of the bytes between the buffer's position and limit.
+     */
+    AsciiBufferCharSequence(final ByteBuffer buffer) {
+        this(buffer, buffer.position(), buffer.limit());
+    }
+
+    private AsciiBufferCharSequence(final ByteBuffer buffer, final int start, final int end) {
+        m_buffer = buffer;
+        m_start = start;
+        m_end = end;
+    }
+
+    @Override
+    public int length() {
+        return m_end - m_start;
+    }
+
+    @Override
+    public char charAt(final int index) {
+        if (index < 0 || index >= length()) {
+            throw new IndexOutOfBoundsException("index " + index + " is outside of 0-" + length());
+        }
+        final byte b = m_buffer.get(m_start + index);
+        return b < 0 ? '\uFFFD' : (char) b;
+    }
+
+    @Override
+    public CharSequence subSequence(final int start, final int end) {
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException("range " + start + "-" + end + " is outside of 0-" + length());
+        }
+        return new AsciiBufferCharSequence(m_buffer, m_start + start, m_start + end);
+    }
+
+    /**
+     * Returns a view without the trailing NUL character that some senders
+     * add to the end of the datagram.
+     */
+    AsciiBufferCharSequence trimTrailingNul() {
+        if (m_end > m_start && m_buffer.get(m_end - 1) == 0) {
+            return new AsciiBufferCharSequence(m_buffer, m_start, m_end - 1);
+        }
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        final char[] chars = new char[length()];
+        for (int i = 0; i < chars.length; i++) {
+            final byte b = m_buffer.get(m_start + i);
+            chars[i] = b < 0 ? '\uFFFD' : (char) b;
+        }
+        return new String(chars);
+    }
+}
@@ -44,9 +44,17 @@ public class JuniperSyslogParser extends SyslogParser {
         super(text);
     }
 
+    protected JuniperSyslogParser(final CharSequence text) {
+        super(text);
+    }
+
     public static SyslogParser getParser(final String text) {
         return new JuniperSyslogParser(text);
     }
+
+    public static SyslogParser getParser(final CharSequence text) {
+        return new JuniperSyslogParser(text);
+    }
     
     @Override
     protected Pattern getPattern() {
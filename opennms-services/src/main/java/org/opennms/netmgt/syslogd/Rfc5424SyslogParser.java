@@ -50,10 +50,18 @@ public class Rfc5424SyslogParser extends SyslogParser {
         super(text);
     }
 
+    protected Rfc5424SyslogParser(final CharSequence text) {
+        super(text);
+    }
+
     public static SyslogParser getParser(final String text) {
         return new Rfc5424SyslogParser(text);
     }
 
+    public static SyslogParser getParser(final CharSequence text) {
+        return new Rfc5424SyslogParser(text);
+    }
+
     @Override
     protected Pattern getPattern() {
         return m_rfc5424Pattern;
@@ -0,0 +1,195 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.syslogd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Finds which of a fixed set of substrings occur in a piece of text with a
+ * single pass over the text, using the Aho-Corasick automaton.  The cost of
+ * a search depends on the length of the text and the number of matches, not
+ * on the number of substrings.
+ */
+final class SubstringMatcher {
+    /** sorted transition characters, per state */
+    private final char[][] m_keys;
+    /** target states of the transitions in m_keys, per state */
+    private final int[][] m_targets;
+    /** failure transition, per state */
+    private final int[] m_fail;
+    /** indexes of the substrings ending at each state, including those of its failure chain */
+    private final int[][] m_outputs;
+    private final int m_count;
+
+    /**
+     * <p>Constructor for SubstringMatcher.</p>
+     *
+     * @param substrings the substrings to look for; results refer to them by their index in this list
+     */
+    SubstringMatcher(final List<String> substrings) {
+        m_count = substrings.size();
+
+        // build the trie
+        final List<Map<Character,Integer>> children = new ArrayList<Map<Character,Integer>>();
+        final List<List<Integer>> outputs = new ArrayList<List<Integer>>();
+        children.add(new TreeMap<Character,Integer>());
+        outputs.add(new ArrayList<Integer>());
+        for (int i = 0; i < substrings.size(); i++) {
+            final String substring = substrings.get(i);
+            int state = 0;
+            for (int j = 0; j < substring.length(); j++) {
+                final Character c = Character.valueOf(substring.charAt(j));
+                Integer next = children.get(state).get(c);
+                if (next == null) {
+                    next = children.size();
+                    children.get(state).put(c, next);
+                    children.add(new TreeMap<Character,Integer>());
+                    outputs.add(new ArrayList<Integer>());
+                }
+                state = next;
+            }
+            outputs.get(state).add(i);
+        }
+
+        final int states = children.size();
+        m_keys = new char[states][];
+        m_targets = new int[states][];
+        m_fail = new int[states];
+        m_outputs = new int[states][];
+        for (int state = 0; state < states; state++) {
+            final Map<Character,Integer> transitions = children.get(state);
+            m_keys[state] = new char[transitions.size()];
+            m_targets[state] = new int[transitions.size()];
+            int k = 0;
+            for (final Map.Entry<Character,Integer> transition : transitions.entrySet()) {
+                m_keys[state][k] = transition.getKey().charValue();
+                m_targets[state][k] = transition.getValue().intValue();
+                k++;
+            }
+        }
+
+        // breadth first, so a state's failure target is complete before the state
+        final LinkedList<Integer> queue = new LinkedList<Integer>();
+        m_outputs[0] = toArray(outputs.get(0));
+        for (final int child : m_targets[0]) {
+            m_fail[child] = 0;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            final int state = queue.removeFirst();
+            final List<Integer> out = outputs.get(state);
+            for (final int inherited : m_outputs[m_fail[state]]) {
+                out.add(inherited);
+            }
+            m_outputs[state] = toArray(out);
+
+            for (int k = 0; k < m_keys[state].length; k++) {
+                final char c = m_keys[state][k];
+                final int child = m_targets[state][k];
+                int fail = m_fail[state];
+                int next;
+                while ((next = transition(fail, c)) < 0 && fail != 0) {
+                    fail = m_fail[fail];
+                }
+                m_fail[child] = next < 0 ? 0 : next;
+                queue.add(child);
+            }
+        }
+    }
+
+    private static int[] toArray(final List<Integer> list) {
+        final int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    private int transition(final int state, final char c) {
+        final int k = Arrays.binarySearch(m_keys[state], c);
+        return k < 0 ? -1 : m_targets[state][k];
+    }
+
+    private int step(int state, final char c) {
+        int next;
+        while ((next = transition(state, c)) < 0 && state != 0) {
+            state = m_fail[state];
+        }
+        return next < 0 ? 0 : next;
+    }
+
+    /**
+     * Returns the number of substrings this matcher was built from.
+     */
+    int size() {
+        return m_count;
+    }
+
+    /**
+     * Returns the indexes of all the substrings that occur in the text.
+     */
+    BitSet findAll(final String text) {
+        final BitSet found = new BitSet(m_count);
+        for (final int index : m_outputs[0]) {
+            found.set(index);
+        }
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            state = step(state, text.charAt(i));
+            for (final int index : m_outputs[state]) {
+                found.set(index);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns true as soon as any of the substrings is found in the text.
+     */
+    boolean containsAny(final String text) {
+        if (m_outputs[0].length > 0) {
+            return true;
+        }
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            state = step(state, text.charAt(i));
+            if (m_outputs[state].length > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
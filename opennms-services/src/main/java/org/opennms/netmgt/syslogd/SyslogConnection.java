@@ -31,6 +31,7 @@ package org.opennms.netmgt.syslogd;
 import java.io.UnsupportedEncodingException;
 import java.net.DatagramPacket;
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
 import java.net.UnknownHostException;
 
 import org.opennms.core.concurrent.WaterfallCallable;
@@ -51,6 +52,14 @@ public class SyslogConnection implements WaterfallCallable {
 
     private final DatagramPacket _packet;
 
+    private final InetAddress _sourceAddress;
+
+    private final int _sourcePort;
+
+    private final ByteBuffer _buffer;
+
+    private final SyslogReceiver _receiver;
+
     private final String _matchPattern;
 
     private final int _hostGroup;
@@ -76,6 +85,34 @@ public class SyslogConnection implements WaterfallCallable {
      */
     public SyslogConnection(final DatagramPacket packet, final String matchPattern, final int hostGroup, final int messageGroup, final UeiList ueiList, final HideMessage hideMessages, final String discardUei) {
         _packet = copyPacket(packet);
+        _sourceAddress = null;
+        _sourcePort = 0;
+        _buffer = null;
+        _receiver = null;
+        _matchPattern = matchPattern;
+        _hostGroup = hostGroup;
+        _messageGroup = messageGroup;
+        _discardUei = discardUei;
+        _ueiList = ueiList;
+        _hideMessages = hideMessages;
+    }
+
+    /**
+     * Constructor for a message received into a pooled buffer.  The message
+     * is parsed straight out of the buffer, which is given back to the
+     * receiver when the call is done.
+     *
+     * @param sourceAddress the address the message came from
+     * @param sourcePort the port the message came from
+     * @param buffer the message, between the buffer's position and limit
+     * @param receiver the receiver that owns the buffer
+     */
+    SyslogConnection(final InetAddress sourceAddress, final int sourcePort, final ByteBuffer buffer, final SyslogReceiver receiver, final String matchPattern, final int hostGroup, final int messageGroup, final UeiList ueiList, final HideMessage hideMessages, final String discardUei) {
+        _packet = null;
+        _sourceAddress = sourceAddress;
+        _sourcePort = sourcePort;
+        _buffer = buffer;
+        _receiver = receiver;
         _matchPattern = matchPattern;
         _hostGroup = hostGroup;
         _messageGroup = messageGroup;
@@ -92,7 +129,12 @@ public class SyslogConnection implements WaterfallCallable {
 
         ConvertToEvent re = null;
         try {
-            re = ConvertToEvent.make(_packet, _matchPattern, _hostGroup,  _messageGroup, _ueiList, _hideMessages, _discardUei);
+            if (_buffer == null) {
+                re = ConvertToEvent.make(_packet, _matchPattern, _hostGroup,  _messageGroup, _ueiList, _hideMessages, _discardUei);
+            } else {
+                re = ConvertToEvent.make(_sourceAddress, _sourcePort, _buffer, _matchPattern, _hostGroup,  _messageGroup, _ueiList, _hideMessages, _discardUei);
+                _receiver.messageParsed();
+            }
 
             LOG.debug("Sending received packet to the SyslogProcessor queue");
 
@@ -102,6 +144,10 @@ public class SyslogConnection implements WaterfallCallable {
             LOG.debug("Failure to convert package", e1);
         } catch (final MessageDiscardedException e) {
             LOG.debug("Message discarded, returning without enqueueing event.", e);
+        } finally {
+            if (_buffer != null) {
+                _receiver.releaseBuffer(_buffer);
+            }
         }
         return null;
     }
@@ -29,7 +29,8 @@
 package org.opennms.netmgt.syslogd;
 
 import java.io.IOException;
-import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.channels.DatagramChannel;
 
 import org.opennms.core.fiber.Fiber;
 import org.opennms.core.utils.InetAddressUtils;
@@ -53,10 +54,31 @@ import org.opennms.netmgt.xml.event.EventReceipt;
  */
 public final class SyslogHandler implements Fiber {
     private static final Logger LOG = LoggerFactory.getLogger(SyslogHandler.class);
+
+    /**
+     * The number of threads reading from the socket.
+     */
+    private static final int RECEIVER_THREADS = Integer.getInteger("org.opennms.netmgt.syslogd.receiverThreads", 2);
+
+    /**
+     * The number of threads turning messages into events.
+     */
+    private static final int CONNECTION_THREADS = Integer.getInteger("org.opennms.netmgt.syslogd.connectionThreads", Runtime.getRuntime().availableProcessors());
+
+    /**
+     * The number of received messages that can wait to be parsed before new
+     * ones are dropped.  Each one holds a 64k direct buffer.
+     */
+    private static final int BUFFER_POOL_SIZE = Integer.getInteger("org.opennms.netmgt.syslogd.bufferPoolSize", 128);
+
+    /**
+     * The socket receive buffer to ask the kernel for.
+     */
+    private static final int RECEIVE_BUFFER_SIZE = Integer.getInteger("org.opennms.netmgt.syslogd.receiveBufferSize", 4 * 1024 * 1024);
     /**
      * The UDP receiver thread.
      */
-    private SyslogReceiver m_receiver;
+    private volatile SyslogReceiver m_receiver;
 
     /**
      * The Fiber's status.
@@ -64,9 +86,9 @@ public final class SyslogHandler implements Fiber {
     private volatile int m_status;
 
     /**
-     * The UDP socket for receipt and transmission of packets from agents.
+     * The UDP channel for receipt of packets from agents.
      */
-    private DatagramSocket m_dgSock;
+    private DatagramChannel m_dgChannel;
 
     private final String m_ForwardingRegexp;
 
@@ -110,7 +132,7 @@ public final class SyslogHandler implements Fiber {
      * <p>Constructor for SyslogHandler.</p>
      */
     public SyslogHandler() {
-        m_dgSock = null;
+        m_dgChannel = null;
         m_dgPort = m_syslogdConfig.getSyslogPort();
         m_dgIp = m_syslogdConfig.getListenAddress();
 
@@ -130,7 +152,7 @@ public final class SyslogHandler implements Fiber {
 
         m_status = START_PENDING;
 
-        m_dgSock = null;
+        m_dgChannel = null;
         m_receiver = null;
         m_logPrefix = null;
     }
@@ -155,13 +177,15 @@ public final class SyslogHandler implements Fiber {
         m_status = STARTING;
 
         try {
+            m_dgChannel = DatagramChannel.open();
             if (m_dgIp != null && m_dgIp.length() != 0) {
-                m_dgSock = new DatagramSocket(m_dgPort, InetAddressUtils.addr(m_dgIp));
+                m_dgChannel.socket().bind(new InetSocketAddress(InetAddressUtils.addr(m_dgIp), m_dgPort));
             } else {
-                m_dgSock = new DatagramSocket(m_dgPort);
+                m_dgChannel.socket().bind(new InetSocketAddress(m_dgPort));
             }
 
-            m_receiver = new SyslogReceiver(m_dgSock, m_ForwardingRegexp,
+            m_receiver = new SyslogReceiver(m_dgChannel, RECEIVER_THREADS, CONNECTION_THREADS, BUFFER_POOL_SIZE, RECEIVE_BUFFER_SIZE,
+                    m_ForwardingRegexp,
                     m_MatchingGroupHost,
                     m_MatchingGroupMessage,
                     m_UeiList,
@@ -211,7 +235,11 @@ public final class SyslogHandler implements Fiber {
             LOG.warn("The thread was interrupted while attempting to join sub-threads", e);
         }
 
-        m_dgSock.close();
+        try {
+            m_dgChannel.close();
+        } catch (IOException e) {
+            LOG.warn("Failed to close the syslog channel", e);
+        }
 
         m_status = STOPPED;
     }
@@ -297,6 +325,46 @@ public final class SyslogHandler implements Fiber {
         m_logPrefix = prefix;
     }
 
+    /**
+     * <p>getMessagesReceived</p>
+     *
+     * @return the number of datagrams read from the socket
+     */
+    public long getMessagesReceived() {
+        final SyslogReceiver receiver = m_receiver;
+        return receiver == null ? 0 : receiver.getMessagesReceived();
+    }
+
+    /**
+     * <p>getMessagesDropped</p>
+     *
+     * @return the number of datagrams dropped because they could not be queued
+     */
+    public long getMessagesDropped() {
+        final SyslogReceiver receiver = m_receiver;
+        return receiver == null ? 0 : receiver.getMessagesDropped();
+    }
+
+    /**
+     * <p>getMessagesParsed</p>
+     *
+     * @return the number of datagrams turned into events
+     */
+    public long getMessagesParsed() {
+        final SyslogReceiver receiver = m_receiver;
+        return receiver == null ? 0 : receiver.getMessagesParsed();
+    }
+
+    /**
+     * <p>getEventsDropped</p>
+     *
+     * @return the number of parsed events dropped because they could not be queued for sending
+     */
+    public long getEventsDropped() {
+        final SyslogReceiver receiver = m_receiver;
+        return receiver == null ? 0 : receiver.getEventsDropped();
+    }
+
     public interface EventHandler {
         public boolean processEvent(Event event);
 
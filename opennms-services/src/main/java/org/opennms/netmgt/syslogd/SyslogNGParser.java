@@ -44,10 +44,18 @@ public class SyslogNGParser extends SyslogParser {
         super(text);
     }
 
+    protected SyslogNGParser(final CharSequence text) {
+        super(text);
+    }
+
     public static SyslogParser getParser(final String text) {
         return new SyslogNGParser(text);
     }
 
+    public static SyslogParser getParser(final CharSequence text) {
+        return new SyslogNGParser(text);
+    }
+
     @Override
     protected Pattern getPattern() {
         return m_syslogNGPattern;
@@ -45,12 +45,22 @@ public class SyslogParser {
     private static final Logger LOG = LoggerFactory.getLogger(SyslogParser.class);
     private static Pattern m_pattern = Pattern.compile("^.*$");
     private Matcher m_matcher = null;
-    private final String m_text;
+    private final CharSequence m_text;
+    private String m_string = null;
     private Boolean m_found = null;
     private Boolean m_matched = null;
     private boolean m_traceEnabled = false;
 
     protected SyslogParser(final String text) {
+        this((CharSequence) text);
+    }
+
+    /**
+     * Parsers that only work through their pattern's {@link Matcher} can be
+     * handed a view of the received bytes instead of a decoded String; only
+     * the matched groups are then copied.
+     */
+    protected SyslogParser(final CharSequence text) {
         m_text = text;
         m_traceEnabled = LOG.isTraceEnabled();
     }
@@ -76,6 +86,13 @@ public class SyslogParser {
     }
 
     protected String getText() {
+        if (m_string == null) {
+            m_string = m_text.toString();
+        }
+        return m_string;
+    }
+
+    protected CharSequence getCharSequence() {
         return m_text;
     }
 
@@ -29,21 +29,29 @@
 package org.opennms.netmgt.syslogd;
 
 import java.io.IOException;
-import java.io.InterruptedIOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
 import java.net.SocketException;
-import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.opennms.core.concurrent.LogPreservingThreadFactory;
-import org.opennms.core.concurrent.WaterfallExecutor;
 import org.opennms.core.logging.Logging;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,6 +59,19 @@ import org.opennms.netmgt.config.syslogd.HideMessage;
 import org.opennms.netmgt.config.syslogd.UeiList;
 
 /**
+ * Reads syslog datagrams from a {@link DatagramChannel} with several
+ * receiver threads, each waiting on its own {@link Selector}, into a pool of
+ * direct buffers.  The receiver threads only read and hand off: parsing
+ * ({@link SyslogConnection}) runs on a pool of threads and sending the
+ * events ({@link SyslogProcessor}) on another, so a slow parse or a busy
+ * eventd no longer stops the socket from being drained.
+ *
+ * When every pooled buffer is in use the datagram is still read, so that
+ * the kernel buffer keeps draining, but it is dropped and counted instead of
+ * being lost silently.  Likewise the queue of events waiting to be sent is
+ * bounded by the pool size, and an event that finds it full is dropped and
+ * counted.
+ *
  * @deprecated This class should be combined with {@link SyslogHandler}
  * 
  * @author <a href="mailto:weave@oculan.com">Brian Weaver</a>
@@ -62,21 +83,32 @@ class SyslogReceiver implements Runnable {
 
     private static final int SOCKET_TIMEOUT = 500;
 
+    /**
+     * Large enough for any UDP datagram.
+     */
+    private static final int MAX_PACKET_SIZE = 0xffff;
+
     /**
      * The Fiber's status.
      */
     private volatile boolean m_stop;
 
     /**
-     * The UDP socket for receipt and transmission of packets from agents.
+     * The UDP channel for receipt of packets from agents.
      */
-    private final DatagramSocket m_dgSock;
+    private final DatagramChannel m_channel;
+
+    private final int m_receiverThreads;
+
+    private final int m_receiveBufferSize;
 
     /**
      * The context thread
      */
     private Thread m_context;
 
+    private final List<Thread> m_helpers = new ArrayList<Thread>();
+
     private final String m_matchPattern;
 
     private final int m_hostGroup;
@@ -89,20 +121,53 @@ class SyslogReceiver implements Runnable {
 
     private final HideMessage m_HideMessages;
 
-    private final List<ExecutorService> m_executors = new ArrayList<ExecutorService>();
+    /**
+     * Runs the {@link SyslogConnection} tasks.
+     */
+    private final ExecutorService m_connectionExecutor;
+
+    /**
+     * Runs the {@link SyslogProcessor} tasks.
+     */
+    private final ExecutorService m_processorExecutor;
+
+    /**
+     * Buffers not currently holding a message.  Buffers are allocated on
+     * demand up to the pool size.
+     */
+    private final BlockingQueue<ByteBuffer> m_buffers;
+
+    private final int m_bufferPoolSize;
+
+    private final AtomicInteger m_buffersAllocated = new AtomicInteger();
+
+    private final AtomicLong m_messagesReceived = new AtomicLong();
+
+    private final AtomicLong m_messagesDropped = new AtomicLong();
+
+    private final AtomicLong m_messagesParsed = new AtomicLong();
+
+    private final AtomicLong m_eventsDropped = new AtomicLong();
 
     /**
      * construct a new receiver
      *
-     * @param sock
+     * @param channel a bound channel
+     * @param receiverThreads the number of threads reading from the channel
+     * @param connectionThreads the number of threads parsing messages
+     * @param bufferPoolSize the maximum number of messages waiting to be parsed
+     * @param receiveBufferSize the socket receive buffer size to ask for
      * @param matchPattern
      * @param hostGroup
      * @param messageGroup
      */
-    SyslogReceiver(DatagramSocket sock, String matchPattern, int hostGroup, int messageGroup,
+    SyslogReceiver(DatagramChannel channel, int receiverThreads, int connectionThreads, int bufferPoolSize, int receiveBufferSize,
+                   String matchPattern, int hostGroup, int messageGroup,
                    UeiList ueiList, HideMessage hideMessages, String discardUei) {
         m_stop = false;
-        m_dgSock = sock;
+        m_channel = channel;
+        m_receiverThreads = Math.max(receiverThreads, 1);
+        m_receiveBufferSize = receiveBufferSize;
         m_matchPattern = matchPattern;
         m_hostGroup = hostGroup;
         m_messageGroup = messageGroup;
@@ -110,24 +175,36 @@ class SyslogReceiver implements Runnable {
         m_UeiList = ueiList;
         m_HideMessages = hideMessages;
 
-        m_executors.add(new ThreadPoolExecutor(
-            1,
-            Integer.MAX_VALUE,
-            100L,
+        m_bufferPoolSize = Math.max(bufferPoolSize, 1);
+        m_buffers = new ArrayBlockingQueue<ByteBuffer>(m_bufferPoolSize);
+
+        // the buffer pool bounds the number of queued connections
+        m_connectionExecutor = new ThreadPoolExecutor(
+            Math.max(connectionThreads, 1),
+            Math.max(connectionThreads, 1),
+            1000L,
             TimeUnit.MILLISECONDS,
             new LinkedBlockingQueue<Runnable>(),
-            new LogPreservingThreadFactory(getClass().getSimpleName(), Integer.MAX_VALUE, false)
-        ));
+            new LogPreservingThreadFactory(SyslogConnection.class.getSimpleName(), Integer.MAX_VALUE, false)
+        );
 
-        m_executors.add(new ThreadPoolExecutor(
+        // parsed events no longer hold a buffer, so bound their queue too
+        m_processorExecutor = new ThreadPoolExecutor(
+            1,
             1,
-            Integer.MAX_VALUE,
-            100L,
+            1000L,
             TimeUnit.MILLISECONDS,
-            new LinkedBlockingQueue<Runnable>(),
-            new LogPreservingThreadFactory(getClass().getSimpleName(), Integer.MAX_VALUE, false)
-        ));
-}
+            new ArrayBlockingQueue<Runnable>(m_bufferPoolSize),
+            new LogPreservingThreadFactory(SyslogProcessor.class.getSimpleName(), Integer.MAX_VALUE, false),
+            new RejectedExecutionHandler() {
+                @Override
+                public void rejectedExecution(final Runnable task, final ThreadPoolExecutor executor) {
+                    m_eventsDropped.incrementAndGet();
+                    LOG.debug("The syslog event queue is full, dropping an event");
+                }
+            }
+        );
+    }
 
     /*
      * stop the current receiver
@@ -137,17 +214,20 @@ class SyslogReceiver implements Runnable {
     void stop() throws InterruptedException {
         m_stop = true;
 
-        // Shut down the thread pools that are executing SyslogConnection and SyslogProcessor tasks
-        for (ExecutorService service : m_executors) {
-            service.shutdown();
+        // the receiver threads notice the flag within SOCKET_TIMEOUT
+        for (Thread helper : m_helpers) {
+            helper.join();
         }
 
         if (m_context != null) {
             LOG.debug("Stopping and joining thread context {}", m_context.getName());
-            m_context.interrupt();
             m_context.join();
             LOG.debug("Thread context stopped and joined");
         }
+
+        // Shut down the thread pools that are executing SyslogConnection and SyslogProcessor tasks
+        m_connectionExecutor.shutdown();
+        m_processorExecutor.shutdown();
     }
 
     /**
@@ -167,67 +247,189 @@ class SyslogReceiver implements Runnable {
         } else
             LOG.debug("Thread context started");
 
-        // allocate a buffer
-        final int length = 0xffff;
-        final byte[] buffer = new byte[length];
-
-        // set an SO timeout to make sure we don't block forever
-        // if a socket is closed.
+        // Increase the receive buffer for the socket so bursts are absorbed
         try {
-            LOG.debug("Setting socket timeout to {}ms", SOCKET_TIMEOUT);
-            m_dgSock.setSoTimeout(SOCKET_TIMEOUT);
+            LOG.debug("Setting receive buffer size to {}", m_receiveBufferSize);
+            m_channel.socket().setReceiveBufferSize(m_receiveBufferSize);
+            LOG.debug("Receive buffer size is {}", m_channel.socket().getReceiveBufferSize());
         } catch (SocketException e) {
-            LOG.warn("An I/O error occured while trying to set the socket timeout", e);
+            LOG.info("Failed to set the receive buffer to {}", m_receiveBufferSize, e);
         }
 
-        // Increase the receive buffer for the socket
         try {
-            LOG.debug("Setting receive buffer size to {}", length);
-            m_dgSock.setReceiveBufferSize(length);
-        } catch (SocketException e) {
-            LOG.info("Failed to set the receive buffer to {}", length, e);
+            m_channel.configureBlocking(false);
+        } catch (IOException e) {
+            LOG.error("Unable to make the syslog channel non-blocking, exiting", e);
+            return;
         }
-        // set to avoid numerous tracing message
-        boolean ioInterrupted = false;
-        // now start processing incoming requests
-        while (!m_stop) {
-            if (m_context.isInterrupted()) {
-                LOG.debug("Thread context interrupted");
-                break;
-            }
 
-            try {
-                if (!ioInterrupted) {
-                    LOG.debug("Waiting on a datagram to arrive");
+        for (int i = 1; i < m_receiverThreads; i++) {
+            final Thread helper = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Logging.putPrefix(Syslogd.LOG4J_CATEGORY);
+                    receive();
                 }
+            }, m_context.getName() + "-" + i);
+            helper.start();
+            m_helpers.add(helper);
+        }
+
+        receive();
+
+        LOG.debug("Thread context exiting");
+    }
 
-                DatagramPacket pkt = new DatagramPacket(buffer, length);
-                m_dgSock.receive(pkt);
-
-                //SyslogConnection *Must* copy packet data and InetAddress as DatagramPacket is a mutable type
-                WaterfallExecutor.waterfall(m_executors, new SyslogConnection(pkt, m_matchPattern, m_hostGroup, m_messageGroup, m_UeiList, m_HideMessages, m_discardUei));
-                ioInterrupted = false; // reset the flag
-            } catch (SocketTimeoutException e) {
-                ioInterrupted = true;
-                continue;
-            } catch (InterruptedIOException e) {
-                ioInterrupted = true;
-                continue;
-            } catch (ExecutionException e) {
-                LOG.error("Task execution failed in {}", this.getClass().getSimpleName(), e);
-                break;
-            } catch (InterruptedException e) {
-                LOG.error("Task interrupted in {}", this.getClass().getSimpleName(), e);
-                break;
+    /**
+     * The loop run by each receiver thread.
+     */
+    private void receive() {
+        final Selector selector;
+        try {
+            selector = Selector.open();
+            m_channel.register(selector, SelectionKey.OP_READ);
+        } catch (IOException e) {
+            LOG.error("Unable to register with the syslog channel, exiting", e);
+            return;
+        }
+
+        // used to read, and drop, datagrams when the pool is exhausted
+        final ByteBuffer scratch = ByteBuffer.allocate(MAX_PACKET_SIZE);
+
+        try {
+            // now start processing incoming requests
+            while (!m_stop) {
+                if (selector.select(SOCKET_TIMEOUT) == 0) {
+                    continue;
+                }
+                selector.selectedKeys().clear();
+
+                // drain the channel; another receiver thread may be doing the same
+                while (!m_stop) {
+                    ByteBuffer buffer = acquireBuffer();
+                    final ByteBuffer target = buffer == null ? scratch : buffer;
+                    target.clear();
+
+                    final SocketAddress source = m_channel.receive(target);
+                    if (source == null) {
+                        if (buffer != null) releaseBuffer(buffer);
+                        break;
+                    }
+                    m_messagesReceived.incrementAndGet();
+
+                    if (buffer == null) {
+                        m_messagesDropped.incrementAndGet();
+                        LOG.debug("No free buffer for a syslog message from {}, dropping it", source);
+                        continue;
+                    }
+
+                    target.flip();
+                    final InetSocketAddress from = (InetSocketAddress) source;
+                    final SyslogConnection connection = new SyslogConnection(from.getAddress(), from.getPort(), buffer, this, m_matchPattern, m_hostGroup, m_messageGroup, m_UeiList, m_HideMessages, m_discardUei);
+                    try {
+                        m_connectionExecutor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                final Callable<?> next;
+                                try {
+                                    next = connection.call();
+                                } catch (final RuntimeException e) {
+                                    LOG.warn("Unexpected error parsing a syslog message from {}", from, e);
+                                    return;
+                                }
+                                if (next != null) {
+                                    m_processorExecutor.execute(new Runnable() {
+                                        @Override
+                                        public void run() {
+                                            try {
+                                                next.call();
+                                            } catch (final Exception e) {
+                                                LOG.warn("Unexpected error sending a syslog event", e);
+                                            }
+                                        }
+                                    });
+                                }
+                            }
+                        });
+                    } catch (RejectedExecutionException e) {
+                        m_messagesDropped.incrementAndGet();
+                        releaseBuffer(buffer);
+                    }
+                }
+            }
+        } catch (ClosedChannelException e) {
+            LOG.debug("The syslog channel was closed, exiting");
+        } catch (IOException e) {
+            LOG.error("An I/O exception occured on the datagram receipt port, exiting", e);
+        } finally {
+            try {
+                selector.close();
             } catch (IOException e) {
-                LOG.error("An I/O exception occured on the datagram receipt port, exiting", e);
-                break;
+                LOG.debug("Failed to close selector", e);
             }
+        }
+    }
 
-        } // end while status OK
+    private ByteBuffer acquireBuffer() {
+        final ByteBuffer buffer = m_buffers.poll();
+        if (buffer != null) {
+            return buffer;
+        }
+        if (m_buffersAllocated.incrementAndGet() <= m_bufferPoolSize) {
+            return ByteBuffer.allocateDirect(MAX_PACKET_SIZE);
+        }
+        m_buffersAllocated.decrementAndGet();
+        return null;
+    }
 
-        LOG.debug("Thread context exiting");
+    /**
+     * Gives a buffer back to the pool once its message has been parsed.
+     */
+    void releaseBuffer(final ByteBuffer buffer) {
+        m_buffers.offer(buffer);
+    }
 
+    /**
+     * Counts a message that was successfully turned into an event.
+     */
+    void messageParsed() {
+        m_messagesParsed.incrementAndGet();
+    }
+
+    /**
+     * <p>getMessagesReceived</p>
+     *
+     * @return the number of datagrams read from the socket
+     */
+    long getMessagesReceived() {
+        return m_messagesReceived.get();
+    }
+
+    /**
+     * <p>getMessagesDropped</p>
+     *
+     * @return the number of datagrams read but dropped because there was no room to queue them
+     */
+    long getMessagesDropped() {
+        return m_messagesDropped.get();
+    }
+
+    /**
+     * <p>getMessagesParsed</p>
+     *
+     * @return the number of datagrams successfully turned into events
+     */
+    long getMessagesParsed() {
+        return m_messagesParsed.get();
+    }
+
+    /**
+     * <p>getEventsDropped</p>
+     *
+     * @return the number of parsed events dropped because there was no room to queue them for sending
+     */
+    long getEventsDropped() {
+        return m_eventsDropped.get();
     }
 
     /**
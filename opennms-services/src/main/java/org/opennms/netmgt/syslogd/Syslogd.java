@@ -169,6 +169,42 @@ import org.slf4j.LoggerFactory;
         LOG.debug("Stopped the Syslog UDP Receiver");
     }
 
+    /**
+     * <p>getMessagesReceived</p>
+     *
+     * @return the number of syslog datagrams received
+     */
+    public long getMessagesReceived() {
+        return m_udpEventReceiver == null ? 0 : m_udpEventReceiver.getMessagesReceived();
+    }
+
+    /**
+     * <p>getMessagesDropped</p>
+     *
+     * @return the number of syslog datagrams dropped because they could not be queued
+     */
+    public long getMessagesDropped() {
+        return m_udpEventReceiver == null ? 0 : m_udpEventReceiver.getMessagesDropped();
+    }
+
+    /**
+     * <p>getMessagesParsed</p>
+     *
+     * @return the number of syslog datagrams turned into events
+     */
+    public long getMessagesParsed() {
+        return m_udpEventReceiver == null ? 0 : m_udpEventReceiver.getMessagesParsed();
+    }
+
+    /**
+     * <p>getEventsDropped</p>
+     *
+     * @return the number of syslog events dropped because they could not be queued for sending
+     */
+    public long getEventsDropped() {
+        return m_udpEventReceiver == null ? 0 : m_udpEventReceiver.getEventsDropped();
+    }
+
     /**
      * Returns the singular instance of the syslogd daemon. There can be only
      * one instance of this service per virtual machine.
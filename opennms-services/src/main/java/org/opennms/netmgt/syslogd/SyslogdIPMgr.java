@@ -28,13 +28,15 @@
 
 package org.opennms.netmgt.syslogd;
 
+import java.net.InetAddress;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.opennms.core.db.DataSourceFactory;
+import org.opennms.netmgt.utils.IpNodeIndex;
 
 /**
  * This class represents a singular instance that is used to map trap IP
@@ -48,14 +50,18 @@ import org.opennms.core.db.DataSourceFactory;
 final class SyslogdIPMgr {
     /**
      * The SQL statement used to extract the list of currently known IP
-     * addresses and their node IDs from the IP Interface table.
+     * addresses and their node IDs from the IP Interface table. Primary
+     * SNMP interfaces come last, so they win when an address is on more
+     * than one node.
      */
-    private final static String IP_LOAD_SQL = "SELECT ipAddr, nodeid FROM ipInterface";
+    private final static String IP_LOAD_SQL = "SELECT ipAddr, nodeid FROM ipInterface ORDER BY CASE WHEN isSnmpPrimary = 'P' THEN 1 ELSE 0 END";
 
     /**
-     * A Map of IP addresses and node IDs
+     * IP addresses and node IDs. Reloads and updates are synchronized on
+     * this class, so an update made while a reload is reading the database
+     * is applied after it rather than lost.
      */
-    private static Map<String,Long> m_knownips = new ConcurrentHashMap<String,Long>();
+    private static final IpNodeIndex m_knownips = new IpNodeIndex();
 
     /**
      * Clears and synchronizes the internal known IP address cache with the
@@ -82,11 +88,15 @@ final class SyslogdIPMgr {
             final ResultSet rs = s.executeQuery(IP_LOAD_SQL);
 
             if (rs != null) {
-                m_knownips.clear();
+                final Map<InetAddress, Integer> knownips = new LinkedHashMap<InetAddress, Integer>();
                 while (rs.next()) {
-                    m_knownips.put(rs.getString(1), rs.getLong(2));
+                    final InetAddress addr = IpNodeIndex.parse(rs.getString(1));
+                    if (addr != null) {
+                        knownips.put(addr, rs.getInt(2));
+                    }
                 }
                 rs.close();
+                m_knownips.load(knownips);
             }
 
         } finally {
@@ -111,11 +121,8 @@ final class SyslogdIPMgr {
      * @param addr The IP Address to query.
      * @return The node ID of the IP Address if known.
      */
-    static synchronized long getNodeId(final String addr) {
-        if (addr == null) {
-            return -1;
-        }
-        return longValue(m_knownips.get(addr));
+    static long getNodeId(final String addr) {
+        return m_knownips.getNodeId(addr);
     }
 
     /**
@@ -125,11 +132,11 @@ final class SyslogdIPMgr {
      * @param nodeid The Node ID to add.
      * @return The nodeid if it existed in the map.
      */
-    static long setNodeId(final String addr, final long nodeid) {
+    static synchronized long setNodeId(final String addr, final long nodeid) {
         if (addr == null || nodeid == -1)
             return -1;
 
-        return longValue(m_knownips.put(addr, nodeid));
+        return m_knownips.setNodeId(IpNodeIndex.parse(addr), (int) nodeid);
     }
 
     /**
@@ -138,14 +145,8 @@ final class SyslogdIPMgr {
      * @param addr The address to remove from the node ID map.
      * @return The nodeid that was in the map.
      */
-    static long removeNodeId(final String addr) {
-        if (addr == null)
-            return -1;
-        return longValue(m_knownips.remove(addr));
-    }
-
-    private static long longValue(final Long result) {
-        return (result == null ? -1 : result);
+    static synchronized long removeNodeId(final String addr) {
+        return m_knownips.removeNodeId(IpNodeIndex.parse(addr));
     }
 
 } // end SyslodIPMgr
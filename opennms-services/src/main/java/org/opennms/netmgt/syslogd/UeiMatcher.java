@@ -0,0 +1,300 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.syslogd;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.opennms.netmgt.config.syslogd.HideMatch;
+import org.opennms.netmgt.config.syslogd.HideMessage;
+import org.opennms.netmgt.config.syslogd.ParameterAssignment;
+import org.opennms.netmgt.config.syslogd.UeiList;
+import org.opennms.netmgt.config.syslogd.UeiMatch;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The syslogd uei-match and hide-match configuration, compiled once so that
+ * matching a message does no per-message pattern compilation.
+ *
+ * All the substring expressions are searched for with a single
+ * {@link SubstringMatcher} pass over the message, and every regular
+ * expression is compiled up front.  Rules are still evaluated in
+ * configuration order and the first matching rule wins.
+ */
+final class UeiMatcher {
+    private static final Logger LOG = LoggerFactory.getLogger(UeiMatcher.class);
+
+    private static final class Rule {
+        final UeiMatch uei;
+        final Set<String> facilities;
+        final Set<String> severities;
+        final Pattern process;
+        final Pattern hostname;
+        final Pattern hostaddr;
+        /** index into the substring matcher, or -1 for a regex rule */
+        final int substring;
+        final Pattern regex;
+        /** false if one of the rule's expressions failed to compile, so it can never match */
+        final boolean valid;
+
+        Rule(final UeiMatch uei, final int substring, final Map<String,Pattern> patterns) {
+            this.uei = uei;
+            this.facilities = lowerCase(uei.getFacilityCollection());
+            this.severities = lowerCase(uei.getSeverityCollection());
+            this.substring = substring;
+
+            boolean ok = true;
+            this.process = uei.getProcessMatch() == null ? null : compile(uei.getProcessMatch().getExpression(), patterns);
+            ok &= uei.getProcessMatch() == null || process != null;
+            this.hostname = uei.getHostnameMatch() == null ? null : compile(uei.getHostnameMatch().getExpression(), patterns);
+            ok &= uei.getHostnameMatch() == null || hostname != null;
+            this.hostaddr = uei.getHostaddrMatch() == null ? null : compile(uei.getHostaddrMatch().getExpression(), patterns);
+            ok &= uei.getHostaddrMatch() == null || hostaddr != null;
+            this.regex = substring < 0 ? compile(uei.getMatch().getExpression(), patterns) : null;
+            ok &= substring >= 0 || regex != null;
+            this.valid = ok;
+        }
+
+        boolean otherStuffMatches(final String facility, final String severity, final SyslogMessage message, final String hostAddress) {
+            return (facilities.isEmpty() || facilities.contains(facility)) &&
+                   (severities.isEmpty() || severities.contains(severity)) &&
+                   find(process, message.getProcessName()) &&
+                   find(hostname, message.getHostName()) &&
+                   find(hostaddr, hostAddress);
+        }
+
+        private static boolean find(final Pattern pattern, final String input) {
+            if (pattern == null) return true;
+            if (input == null) return false;
+            return pattern.matcher(input).find();
+        }
+    }
+
+    private final UeiList m_ueiList;
+    private final HideMessage m_hideMessage;
+    private final Rule[] m_rules;
+    private final SubstringMatcher m_ueiSubstrings;
+    private final SubstringMatcher m_hideSubstrings;
+    private final Pattern[] m_hideRegexes;
+    /** true if any rule has a hostaddr-match, resolving the host address is not free */
+    private final boolean m_needsHostAddress;
+
+    /**
+     * <p>Constructor for UeiMatcher.</p>
+     *
+     * @param ueiList the uei-match rules, may be null
+     * @param hideMessage the hide-match rules, may be null
+     */
+    UeiMatcher(final UeiList ueiList, final HideMessage hideMessage) {
+        m_ueiList = ueiList;
+        m_hideMessage = hideMessage;
+
+        final Map<String,Pattern> patterns = new HashMap<String,Pattern>();
+
+        final List<Rule> rules = new ArrayList<Rule>();
+        final List<String> substrings = new ArrayList<String>();
+        if (ueiList != null) {
+            for (final UeiMatch uei : ueiList.getUeiMatchCollection()) {
+                final String type = uei.getMatch().getType();
+                final Rule rule;
+                if (type.equals("substr")) {
+                    rule = new Rule(uei, substrings.size(), patterns);
+                    substrings.add(uei.getMatch().getExpression());
+                } else if (type.startsWith("regex")) {
+                    rule = new Rule(uei, -1, patterns);
+                } else {
+                    continue;
+                }
+                if (rule.valid) {
+                    rules.add(rule);
+                }
+            }
+        }
+        m_rules = rules.toArray(new Rule[rules.size()]);
+        boolean needsHostAddress = false;
+        for (final Rule rule : m_rules) {
+            needsHostAddress |= rule.hostaddr != null;
+        }
+        m_needsHostAddress = needsHostAddress;
+        m_ueiSubstrings = new SubstringMatcher(substrings);
+
+        final List<String> hideSubstrings = new ArrayList<String>();
+        final List<Pattern> hideRegexes = new ArrayList<Pattern>();
+        if (hideMessage != null) {
+            for (final HideMatch hide : hideMessage.getHideMatchCollection()) {
+                final String expression = hide.getMatch().getExpression();
+                if (hide.getMatch().getType().equals("substr")) {
+                    hideSubstrings.add(expression);
+                } else if (hide.getMatch().getType().equals("regex")) {
+                    final Pattern pattern = compile(expression, patterns);
+                    if (pattern != null) {
+                        hideRegexes.add(pattern);
+                    }
+                }
+            }
+        }
+        m_hideSubstrings = new SubstringMatcher(hideSubstrings);
+        m_hideRegexes = hideRegexes.toArray(new Pattern[hideRegexes.size()]);
+
+        LOG.debug("Compiled {} uei-match rules ({} substring) and {} hide-match rules", m_rules.length, substrings.size(), hideSubstrings.size() + m_hideRegexes.length);
+    }
+
+    private static Set<String> lowerCase(final List<String> values) {
+        if (values.isEmpty()) {
+            return Collections.emptySet();
+        }
+        final Set<String> set = new HashSet<String>();
+        for (final String value : values) {
+            set.add(value.toLowerCase());
+        }
+        return set;
+    }
+
+    private static Pattern compile(final String expression, final Map<String,Pattern> patterns) {
+        Pattern pattern = patterns.get(expression);
+        if (pattern == null && !patterns.containsKey(expression)) {
+            try {
+                pattern = Pattern.compile(expression, Pattern.MULTILINE);
+            } catch (final PatternSyntaxException pse) {
+                LOG.warn("Failed to compile regex pattern '{}'", expression, pse);
+            }
+            patterns.put(expression, pattern);
+        }
+        return pattern;
+    }
+
+    /**
+     * Returns true if this matcher was compiled from exactly these
+     * configuration objects.
+     */
+    boolean isCompiledFrom(final UeiList ueiList, final HideMessage hideMessage) {
+        return m_ueiList == ueiList && m_hideMessage == hideMessage;
+    }
+
+    /**
+     * Applies the first uei-match rule that matches the message to the event
+     * being built: sets its UEI and adds any parameters from regex groups.
+     *
+     * @return true if a rule matched
+     * @throws MessageDiscardedException if the matching rule's UEI is the discard UEI
+     */
+    boolean match(final SyslogMessage message, final String facilityTxt, final String priorityTxt, final EventBuilder bldr, final String discardUei) throws MessageDiscardedException {
+        final boolean traceEnabled = LOG.isTraceEnabled();
+        final String facility = facilityTxt.toLowerCase();
+        final String severity = priorityTxt.toLowerCase();
+        final String matchedText = message.getMatchedMessage();
+        final String regexText = matchedText != null ? matchedText : message.getFullText();
+        final String hostAddress = m_needsHostAddress ? message.getHostAddress() : null;
+
+        BitSet substringMatches = null;
+        for (final Rule rule : m_rules) {
+            if (!rule.otherStuffMatches(facility, severity, message, hostAddress)) {
+                continue;
+            }
+
+            if (rule.substring >= 0) {
+                if (substringMatches == null) {
+                    // one pass over the message finds every substring rule that matches
+                    substringMatches = matchedText == null ? new BitSet() : m_ueiSubstrings.findAll(matchedText);
+                }
+                if (substringMatches.get(rule.substring)) {
+                    if (discardUei.equals(rule.uei.getUei())) {
+                        if (traceEnabled) LOG.trace("Specified UEI '{}' is same as discard-uei, discarding this message.", rule.uei.getUei());
+                        throw new MessageDiscardedException();
+                    }
+                    if (traceEnabled) LOG.trace("Changed the UEI of a Syslogd event, based on substring match, to : {}", rule.uei.getUei());
+                    bldr.setUei(rule.uei.getUei());
+                    return true;
+                }
+                if (traceEnabled) LOG.trace("No substring match for text of a Syslogd event to : {}", rule.uei.getMatch().getExpression());
+            } else {
+                final Matcher msgMat = rule.regex.matcher(regexText);
+                if (msgMat.find()) {
+                    if (discardUei.equals(rule.uei.getUei())) {
+                        LOG.debug("Specified UEI '{}' is same as discard-uei, discarding this message.", rule.uei.getUei());
+                        throw new MessageDiscardedException();
+                    }
+                    bldr.setUei(rule.uei.getUei());
+                    addParameters(rule.uei, msgMat, bldr, traceEnabled);
+                    return true;
+                }
+                if (traceEnabled) LOG.trace("Message '{}' did not regex-match pattern '{}'", message.getMessage(), rule.uei.getMatch().getExpression());
+            }
+        }
+        return false;
+    }
+
+    private static void addParameters(final UeiMatch uei, final Matcher msgMat, final EventBuilder bldr, final boolean traceEnabled) {
+        if (msgMat.groupCount() > 0 && uei.getMatch().isDefaultParameterMapping()) {
+            if (traceEnabled) LOG.trace("Doing default parameter mappings for this regex match.");
+            for (int groupNum = 1; groupNum <= msgMat.groupCount(); groupNum++) {
+                if (traceEnabled) LOG.trace("Added parm 'group{}' with value '{}' to Syslogd event based on regex match group", groupNum, msgMat.group(groupNum));
+                bldr.addParam("group"+groupNum, msgMat.group(groupNum));
+            }
+        }
+        if (msgMat.groupCount() > 0 && uei.getParameterAssignmentCount() > 0) {
+            if (traceEnabled) LOG.trace("Doing user-specified parameter assignments for this regex match.");
+            for (ParameterAssignment assignment : uei.getParameterAssignmentCollection()) {
+                String parmName = assignment.getParameterName();
+                String parmValue = msgMat.group(assignment.getMatchingGroup());
+                parmValue = parmValue == null ? "" : parmValue;
+                bldr.addParam(parmName, parmValue);
+                if (traceEnabled) LOG.trace("Added parm '{}' with value '{}' to Syslogd event based on user-specified parameter assignment", parmName, parmValue);
+            }
+        }
+    }
+
+    /**
+     * Returns true if any hide-match rule matches the full text of the
+     * message.
+     */
+    boolean shouldHide(final String fullText) {
+        if (m_hideSubstrings.size() > 0 && m_hideSubstrings.containsAny(fullText)) {
+            return true;
+        }
+        for (final Pattern pattern : m_hideRegexes) {
+            if (pattern.matcher(fullText).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
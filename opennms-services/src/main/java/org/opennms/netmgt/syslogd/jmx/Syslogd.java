@@ -88,4 +88,28 @@ public class Syslogd implements SyslogdMBean {
     public String getStatusText() {
         return org.opennms.core.fiber.Fiber.STATUS_NAMES[getStatus()];
     }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getMessagesReceived() {
+        return org.opennms.netmgt.syslogd.Syslogd.getInstance().getMessagesReceived();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getMessagesDropped() {
+        return org.opennms.netmgt.syslogd.Syslogd.getInstance().getMessagesDropped();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getMessagesParsed() {
+        return org.opennms.netmgt.syslogd.Syslogd.getInstance().getMessagesParsed();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getEventsDropped() {
+        return org.opennms.netmgt.syslogd.Syslogd.getInstance().getEventsDropped();
+    }
 }
@@ -37,4 +37,23 @@ import org.opennms.netmgt.daemon.BaseOnmsMBean;
  * @version $Id: $
  */
 public interface SyslogdMBean extends BaseOnmsMBean {
+    /**
+     * @return the number of syslog datagrams received
+     */
+    long getMessagesReceived();
+
+    /**
+     * @return the number of syslog datagrams dropped because they could not be queued
+     */
+    long getMessagesDropped();
+
+    /**
+     * @return the number of syslog datagrams turned into events
+     */
+    long getMessagesParsed();
+
+    /**
+     * @return the number of syslog events dropped because they could not be queued for sending
+     */
+    long getEventsDropped();
 }
@@ -0,0 +1,382 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.threshd;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hands the values collected by Collectd and the poller to the Threshd
+ * thresholders, so that they do not have to read them back from the RRD
+ * files that were just written.
+ *
+ * <p>Thresholders {@link #subscribe(int) subscribe} to the nodes they
+ * check. Values are only kept for subscribed nodes. Each collected resource
+ * is published under the directory it is (or would be) persisted to, so a
+ * thresholder can look values up with the same directory it would otherwise
+ * read the RRD files from. Counters are published as per-second rates,
+ * which is what an RRD fetch returns for them.</p>
+ *
+ * <p>Every value keeps the time it was collected at. A datasource that
+ * later collections stop reporting ages out on its own instead of being
+ * served as fresh along with the values that are still collected.</p>
+ */
+public class CollectedValueBroker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CollectedValueBroker.class);
+
+    private static final CollectedValueBroker s_instance = new CollectedValueBroker();
+
+    /**
+     * The values published for one resource in one collection.
+     */
+    public static final class PublishedResource {
+        private final long m_timestamp;
+        private final Map<String, Double> m_values;
+        private final Map<String, Long> m_valueTimes;
+        private final Map<String, CounterStateStore.Sample> m_counters;
+        private final Map<String, String> m_strings;
+
+        PublishedResource(final long timestamp, final Map<String, Double> values, final Map<String, Long> valueTimes, final Map<String, CounterStateStore.Sample> counters, final Map<String, String> strings) {
+            m_timestamp = timestamp;
+            m_values = values;
+            m_valueTimes = valueTimes;
+            m_counters = counters;
+            m_strings = strings;
+        }
+
+        /**
+         * @return the time of the latest collection, in milliseconds
+         */
+        public long getTimestamp() {
+            return m_timestamp;
+        }
+
+        /**
+         * @param ds the datasource name
+         * @return the value of a gauge, or the rate of a counter, or null
+         */
+        public Double getValue(final String ds) {
+            return m_values.get(ds);
+        }
+
+        /**
+         * @param ds the datasource name
+         * @return the time the value of ds was collected at in milliseconds,
+         *         or 0 if it was never published
+         */
+        public long getValueTimestamp(final String ds) {
+            final Long time = m_valueTimes.get(ds);
+            return time == null ? 0 : time.longValue();
+        }
+
+        /**
+         * @param name the string attribute name
+         * @return the value of the string attribute, or null
+         */
+        public String getString(final String name) {
+            return m_strings.get(name);
+        }
+    }
+
+    private final ConcurrentHashMap<Integer, AtomicInteger> m_subscriptions = new ConcurrentHashMap<Integer, AtomicInteger>();
+
+    private final ConcurrentHashMap<File, PublishedResource> m_published = new ConcurrentHashMap<File, PublishedResource>();
+
+    private final ConcurrentHashMap<Integer, Set<File>> m_nodeResources = new ConcurrentHashMap<Integer, Set<File>>();
+
+    private final AtomicLong m_valuesServed = new AtomicLong(0);
+
+    /**
+     * Returns the broker shared by Collectd, Pollerd and Threshd.
+     *
+     * @return a {@link org.opennms.netmgt.threshd.CollectedValueBroker} object.
+     */
+    public static CollectedValueBroker getInstance() {
+        return s_instance;
+    }
+
+    /**
+     * Starts keeping the values collected for a node. Subscriptions are
+     * counted, so every call must be matched by {@link #unsubscribe(int)}.
+     *
+     * @param nodeId a int.
+     */
+    public synchronized void subscribe(final int nodeId) {
+        final Integer key = Integer.valueOf(nodeId);
+        final AtomicInteger count = m_subscriptions.get(key);
+        if (count == null) {
+            m_subscriptions.put(key, new AtomicInteger(1));
+        } else {
+            count.incrementAndGet();
+        }
+        LOG.debug("subscribe: thresholding node {} from collected values", nodeId);
+    }
+
+    /**
+     * Releases a subscription made with {@link #subscribe(int)}. The values
+     * of a node are dropped once it has no subscriptions left.
+     *
+     * @param nodeId a int.
+     */
+    public synchronized void unsubscribe(final int nodeId) {
+        final Integer key = Integer.valueOf(nodeId);
+        final AtomicInteger count = m_subscriptions.get(key);
+        if (count != null && count.decrementAndGet() <= 0) {
+            m_subscriptions.remove(key);
+            final Set<File> dirs = m_nodeResources.remove(key);
+            if (dirs != null) {
+                for (final File dir : dirs) {
+                    m_published.remove(dir);
+                }
+            }
+            LOG.debug("unsubscribe: no longer keeping collected values for node {}", nodeId);
+        }
+    }
+
+    /**
+     * <p>isSubscribed</p>
+     *
+     * @param nodeId a int.
+     * @return true if a thresholder wants the values collected for the node
+     */
+    public boolean isSubscribed(final int nodeId) {
+        final AtomicInteger count = m_subscriptions.get(Integer.valueOf(nodeId));
+        return count != null && count.get() > 0;
+    }
+
+    /**
+     * Publishes the values collected for a resource. Nothing is kept if no
+     * thresholder has subscribed to the node.
+     *
+     * @param nodeId the node the resource belongs to
+     * @param resourceDir the directory the resource is persisted to
+     * @param timestamp the collection time in milliseconds
+     * @param gauges the collected gauge values, by datasource
+     * @param counters the collected raw counter values, by datasource
+     * @param strings the collected string attributes
+     */
+    public void publish(final int nodeId, final File resourceDir, final long timestamp, final Map<String, Double> gauges, final Map<String, Double> counters, final Map<String, String> strings) {
+        if (!isSubscribed(nodeId)) {
+            return;
+        }
+        final Integer key = Integer.valueOf(nodeId);
+        Set<File> dirs = m_nodeResources.get(key);
+        if (dirs == null) {
+            final Set<File> created = Collections.newSetFromMap(new ConcurrentHashMap<File, Boolean>());
+            dirs = m_nodeResources.putIfAbsent(key, created);
+            if (dirs == null) dirs = created;
+        }
+
+        final File dir = resourceDir.getAbsoluteFile();
+        final PublishedResource last = m_published.get(dir);
+        // Several services can collect into the same directory, so keep what
+        // the others published; each value keeps its own collection time
+        final Map<String, Double> values = last == null ? new HashMap<String, Double>() : new HashMap<String, Double>(last.m_values);
+        final Map<String, Long> valueTimes = last == null ? new HashMap<String, Long>() : new HashMap<String, Long>(last.m_valueTimes);
+        final Map<String, CounterStateStore.Sample> raw = last == null ? new HashMap<String, CounterStateStore.Sample>() : new HashMap<String, CounterStateStore.Sample>(last.m_counters);
+        final Map<String, String> allStrings = last == null ? new HashMap<String, String>() : new HashMap<String, String>(last.m_strings);
+        final Long collected = Long.valueOf(timestamp);
+        for (final Map.Entry<String, Double> entry : gauges.entrySet()) {
+            values.put(entry.getKey(), entry.getValue());
+            valueTimes.put(entry.getKey(), collected);
+        }
+        allStrings.putAll(strings);
+        for (final Map.Entry<String, Double> entry : counters.entrySet()) {
+            final CounterStateStore.Sample previous = raw.put(entry.getKey(), new CounterStateStore.Sample(timestamp, entry.getValue().doubleValue(), 0));
+            final long interval = previous == null ? 0 : (timestamp - previous.getTimestamp()) / 1000;
+            if (interval > 0) {
+                values.put(entry.getKey(), rate(previous.getValue(), entry.getValue().doubleValue(), interval));
+                valueTimes.put(entry.getKey(), collected);
+            } else {
+                // there is no rate until the counter has been collected twice
+                values.remove(entry.getKey());
+                valueTimes.remove(entry.getKey());
+            }
+        }
+        dirs.add(dir);
+        final long latest = last == null ? timestamp : Math.max(timestamp, last.m_timestamp);
+        m_published.put(dir, new PublishedResource(latest, values, valueTimes, raw, allStrings));
+        if (!isSubscribed(nodeId)) {
+            // the last subscription was released while publishing
+            m_published.remove(dir);
+        }
+    }
+
+    /**
+     * The rate of a counter between two samples, adjusting for a 32 or 64
+     * bit wrap the way RRD does.
+     */
+    static double rate(final double last, final double current, final long intervalSeconds) {
+        double delta = current - last;
+        if (delta < 0) {
+            delta += Math.pow(2, 32);
+            if (delta < 0) {
+                delta += Math.pow(2, 64) - Math.pow(2, 32);
+            }
+        }
+        return delta / intervalSeconds;
+    }
+
+    /**
+     * <p>getResource</p>
+     *
+     * @param resourceDir the directory the resource is persisted to
+     * @return the values last published for the resource, or null
+     */
+    public PublishedResource getResource(final File resourceDir) {
+        return m_published.get(resourceDir.getAbsoluteFile());
+    }
+
+    /**
+     * <p>getResource</p>
+     *
+     * @param resourceDir the directory the resource is persisted to
+     * @param maxAge the maximum age of the resource in milliseconds
+     * @return the values published for the resource, or null if nothing was
+     *         published for it within maxAge
+     */
+    public PublishedResource getResource(final File resourceDir, final long maxAge) {
+        final PublishedResource resource = getResource(resourceDir);
+        if (resource == null || System.currentTimeMillis() - resource.getTimestamp() > maxAge) {
+            return null;
+        }
+        return resource;
+    }
+
+    /**
+     * Returns a value published for a resource, if it is recent enough.
+     *
+     * @param resourceDir the directory the resource is persisted to
+     * @param ds the datasource name
+     * @param maxAge the maximum age of the value in milliseconds
+     * @return the value, or null if it was not published within maxAge
+     */
+    public Double getValue(final File resourceDir, final String ds, final long maxAge) {
+        final PublishedResource resource = getResource(resourceDir);
+        if (resource == null || System.currentTimeMillis() - resource.getValueTimestamp(ds) > maxAge) {
+            return null;
+        }
+        final Double value = resource.getValue(ds);
+        if (value == null || value.isNaN()) {
+            return null;
+        }
+        m_valuesServed.incrementAndGet();
+        return value;
+    }
+
+    /**
+     * Returns the directories of the resources published for a node within
+     * <code>maxAge</code>.
+     *
+     * @param nodeId a int.
+     * @param maxAge the maximum age of the resources in milliseconds
+     * @return a {@link java.util.Collection} object.
+     */
+    public Collection<File> getResourceDirectories(final int nodeId, final long maxAge) {
+        final Set<File> published = m_nodeResources.get(Integer.valueOf(nodeId));
+        if (published == null) {
+            return Collections.emptySet();
+        }
+        final long oldest = System.currentTimeMillis() - maxAge;
+        final Set<File> dirs = new HashSet<File>();
+        for (final File dir : published) {
+            final PublishedResource resource = m_published.get(dir);
+            if (resource != null && resource.getTimestamp() >= oldest) {
+                dirs.add(dir);
+            }
+        }
+        return dirs;
+    }
+
+    /**
+     * <p>hasResources</p>
+     *
+     * @param nodeId a int.
+     * @return true if values have been published for the node
+     */
+    public boolean hasResources(final int nodeId) {
+        final Set<File> dirs = m_nodeResources.get(Integer.valueOf(nodeId));
+        return dirs != null && !dirs.isEmpty();
+    }
+
+    /**
+     * <p>hasResources</p>
+     *
+     * @param nodeId a int.
+     * @param maxAge the maximum age of the resources in milliseconds
+     * @return true if values have been published for the node within maxAge
+     */
+    public boolean hasResources(final int nodeId, final long maxAge) {
+        final Set<File> published = m_nodeResources.get(Integer.valueOf(nodeId));
+        if (published == null) {
+            return false;
+        }
+        final long oldest = System.currentTimeMillis() - maxAge;
+        for (final File dir : published) {
+            final PublishedResource resource = m_published.get(dir);
+            if (resource != null && resource.getTimestamp() >= oldest) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of values handed to thresholders. Each one is an
+     * RRD fetch that did not have to be made.
+     *
+     * @return a long.
+     */
+    public long getValuesServed() {
+        return m_valuesServed.get();
+    }
+
+    /**
+     * Drops every subscription and published value.
+     */
+    public synchronized void clear() {
+        m_subscriptions.clear();
+        m_nodeResources.clear();
+        m_published.clear();
+        m_valuesServed.set(0);
+    }
+}
@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.threshd;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.opennms.netmgt.collectd.AbstractCollectionSetVisitor;
+import org.opennms.netmgt.config.collector.CollectionAttribute;
+import org.opennms.netmgt.config.collector.CollectionResource;
+import org.opennms.netmgt.config.collector.CollectionSet;
+import org.opennms.netmgt.model.RrdRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Publishes the attributes of a collection set to the
+ * {@link CollectedValueBroker}, for the Threshd thresholders to check.
+ *
+ * One instance is used per CollectableService, like
+ * {@link ThresholdingVisitor}.
+ */
+public class CollectedValuePublisher extends AbstractCollectionSetVisitor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CollectedValuePublisher.class);
+
+    private final CollectedValueBroker m_broker;
+
+    private final int m_nodeId;
+
+    private final RrdRepository m_repository;
+
+    private final Map<String, Double> m_gauges = new HashMap<String, Double>();
+
+    private final Map<String, Double> m_counters = new HashMap<String, Double>();
+
+    private final Map<String, String> m_strings = new HashMap<String, String>();
+
+    private long m_timestamp;
+
+    /**
+     * <p>Constructor for CollectedValuePublisher.</p>
+     *
+     * @param broker a {@link org.opennms.netmgt.threshd.CollectedValueBroker} object.
+     * @param nodeId a int.
+     * @param repository a {@link org.opennms.netmgt.model.RrdRepository} object.
+     */
+    public CollectedValuePublisher(final CollectedValueBroker broker, final int nodeId, final RrdRepository repository) {
+        m_broker = broker;
+        m_nodeId = nodeId;
+        m_repository = repository;
+        m_timestamp = System.currentTimeMillis();
+    }
+
+    /**
+     * <p>isSubscribed</p>
+     *
+     * @return true if a thresholder wants the values collected for this node
+     */
+    public boolean isSubscribed() {
+        return m_broker.isSubscribed(m_nodeId);
+    }
+
+    @Override
+    public void visitCollectionSet(final CollectionSet set) {
+        m_timestamp = set.getCollectionTimestamp() == null ? System.currentTimeMillis() : set.getCollectionTimestamp().getTime();
+    }
+
+    @Override
+    public void visitResource(final CollectionResource resource) {
+        m_gauges.clear();
+        m_counters.clear();
+        m_strings.clear();
+    }
+
+    @Override
+    public void visitAttribute(final CollectionAttribute attribute) {
+        final String type = attribute.getType() == null ? "" : attribute.getType().toLowerCase();
+        if (type.contains("string")) {
+            final String value = attribute.getStringValue();
+            if (value != null) {
+                m_strings.put(attribute.getName(), value);
+            }
+            return;
+        }
+
+        final String numValue = attribute.getNumericValue();
+        if (numValue == null) {
+            return;
+        }
+        try {
+            final Double value = Double.valueOf(numValue);
+            if (type.startsWith("counter")) {
+                m_counters.put(attribute.getName(), value);
+            } else {
+                m_gauges.put(attribute.getName(), value);
+            }
+        } catch (final NumberFormatException e) {
+            LOG.debug("visitAttribute: {} does not have a numeric value: {}", attribute.getName(), numValue);
+        }
+    }
+
+    @Override
+    public void completeResource(final CollectionResource resource) {
+        if (m_gauges.isEmpty() && m_counters.isEmpty()) {
+            return;
+        }
+        m_broker.publish(m_nodeId, resource.getResourceDir(m_repository), m_timestamp, m_gauges, m_counters, m_strings);
+    }
+
+    @Override
+    public String toString() {
+        return "CollectedValuePublisher for node " + m_nodeId;
+    }
+}
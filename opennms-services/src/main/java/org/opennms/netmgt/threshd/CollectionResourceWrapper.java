@@ -32,7 +32,6 @@ import java.io.File;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.opennms.netmgt.collectd.AliasedResource;
 import org.opennms.netmgt.collectd.IfInfo;
@@ -69,39 +68,18 @@ public class CollectionResourceWrapper {
     private final CollectionResource m_resource;
     private final Map<String, CollectionAttribute> m_attributes;
     
-    /**
-     * Keeps track of both the Double value, and when it was collected, for the static cache of attributes
-     * 
-     * This is necessary for the *correct* calculation of Counter rates, across variable collection times and possible
-     * collection failures (see NMS-4244)
-     * 
-     * Just a holder class for two associated values; no need for the formality of accessors
-     */
-    static class CacheEntry {
-        final Date timestamp;
-        final Double value;
-        public CacheEntry(final Date timestamp, final Double value) {
-            if (timestamp == null) {
-                throw new IllegalArgumentException("Illegal null timestamp in cache value");
-            } else if (value == null) {
-                throw new IllegalArgumentException("Illegal null value in cache value");
-            }
-            this.timestamp = timestamp;
-            this.value = value;
-        }
-    }
-
     /*
-     * Holds last values for counter attributes (in order to calculate delta)
+     * Holds last values and collection times for counter attributes, in order to calculate
+     * rates correctly across variable collection times and collection failures (see NMS-4244)
      */
-    static final ConcurrentHashMap<String, CacheEntry> s_cache = new ConcurrentHashMap<String,CacheEntry>();
+    private static final CounterStateStore s_counterState = CounterStateStore.getInstance();
     
     /*
      * To avoid update static cache on every call of getAttributeValue.
      * In some cases, the same DS could be needed in many thresholds definitions for same resource.
      * See Bug 3193
      */
-    private final Map<String, Double> m_localCache = new HashMap<String,Double>();
+    private final Map<CounterStateStore.Key, Double> m_localCache = new HashMap<CounterStateStore.Key,Double>();
     
     /*
      * Holds interface ifInfo data for interface resource only. This avoid multiple calls to database for same resource.
@@ -315,7 +293,7 @@ public class CollectionResourceWrapper {
             return null;
         }
         // Generating a unique ID for the node/resourceType/resource/metric combination.
-        String id =  "node[" + m_nodeId + "].resourceType[" + m_resource.getResourceTypeName() + "].instance[" + m_resource.getLabel() + "].metric[" + ds + "]";
+        CounterStateStore.Key id = new CounterStateStore.Key(m_nodeId, m_resource.getResourceTypeName(), m_resource.getLabel(), ds);
         Double current = null;
         try {
             current = Double.parseDouble(numValue);
@@ -334,18 +312,18 @@ public class CollectionResourceWrapper {
     /*
      * This will return the rate based on configured collection step
      */
-    private Double getCounterValue(String id, Double current) {
+    private Double getCounterValue(CounterStateStore.Key id, Double current) {
         synchronized (m_localCache) {
 
         if (m_localCache.containsKey(id) == false) {
-            // Atomically replace the CacheEntry with the new value
-            CacheEntry last = s_cache.put(id, new CacheEntry(m_collectionTimestamp, current));
-            LOG.debug("getCounterValue: id={}, last={}, current={}", id, (last==null ? last : last.value +"@"+ last.timestamp), current);
+            // Atomically replace the last sample with the new value
+            CounterStateStore.Sample last = s_counterState.put(id, m_collectionTimestamp.getTime(), current.doubleValue());
+            LOG.debug("getCounterValue: id={}, last={}, current={}", id, last, current);
             if (last == null) {
                 m_localCache.put(id, Double.NaN);
                 LOG.info("getCounterValue: unknown last value for {}, ignoring current", id);
             } else {                
-                Double delta = current.doubleValue() - last.value.doubleValue();
+                Double delta = current.doubleValue() - last.getValue();
                 // wrapped counter handling(negative delta), rrd style
                 if (delta < 0) {
                     double newDelta = delta.doubleValue();
@@ -356,14 +334,14 @@ public class CollectionResourceWrapper {
                         // try 64-bit adjustment
                         newDelta += Math.pow(2, 64) - Math.pow(2, 32);
                     }
-                    LOG.info("getCounterValue: {}(counter) wrapped counter adjusted last={}@{}, current={}, olddelta={}, newdelta={}", id, last.value, last.timestamp, current, delta, newDelta);
+                    LOG.info("getCounterValue: {}(counter) wrapped counter adjusted last={}@{}, current={}, olddelta={}, newdelta={}", id, last.getValue(), last.getTimestamp(), current, delta, newDelta);
                     delta = newDelta;
                 }
                 // Get the interval between when this current collection was taken, and the last time this
                 // value was collected (and had a counter rate calculated for it).
                 // If the interval is zero, than the current rate must returned as 0.0 since there can be 
                 // no delta across a time interval of zero.
-                long interval = ( m_collectionTimestamp.getTime() - last.timestamp.getTime() ) / 1000;
+                long interval = ( m_collectionTimestamp.getTime() - last.getTimestamp() ) / 1000;
                 if (interval > 0) {
                     final Double value = (delta/interval);
                     LOG.debug("getCounterValue: id={}, value={}, delta={}, interval={}", id, value, delta, interval);
@@ -371,8 +349,8 @@ public class CollectionResourceWrapper {
                 } else {
                     LOG.info("getCounterValue: invalid zero-length rate interval for {}, returning rate of zero", id);
                     m_localCache.put(id, 0.0);
-                    // Restore the original value inside the static cache
-                    s_cache.put(id, last);
+                    // Restore the original value inside the counter store
+                    s_counterState.restore(id, last);
                 }
             }
         }
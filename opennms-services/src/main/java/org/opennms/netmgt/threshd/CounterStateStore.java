@@ -0,0 +1,401 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.threshd;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds the last collected value of every thresholded counter so that
+ * {@link CollectionResourceWrapper} can turn counters into rates.
+ *
+ * <p>Values are stored as primitives under a {@link Key} made of the node,
+ * resource type, resource instance and metric. The resource type and metric
+ * names come from a small, fixed set and are interned.</p>
+ *
+ * <p>Each entry remembers the interval between its last two samples. An
+ * entry that has not been updated for {@link #TTL_INTERVALS} of those
+ * intervals (or for {@link #DEFAULT_TTL} if only one sample has been seen)
+ * belongs to a resource that is no longer collected and is evicted. Expired
+ * entries are swept at most once every {@link #SWEEP_INTERVAL}.</p>
+ *
+ * <p>If the <code>org.opennms.thresholds.counterStateFile</code> system
+ * property is set, the store is written to that file when collection stops
+ * and read back when it starts, so that the first collection after a restart
+ * still produces a rate.</p>
+ */
+public class CounterStateStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CounterStateStore.class);
+
+    /** The number of missed collection intervals after which an entry expires. */
+    public static final int TTL_INTERVALS = Integer.getInteger("org.opennms.thresholds.counterState.ttlIntervals", 5);
+
+    /** The lifetime of an entry whose collection interval is not known yet, in milliseconds. */
+    public static final long DEFAULT_TTL = Long.getLong("org.opennms.thresholds.counterState.defaultTtl", 24L * 60 * 60 * 1000);
+
+    /** The minimum time between two sweeps for expired entries, in milliseconds. */
+    public static final long SWEEP_INTERVAL = Long.getLong("org.opennms.thresholds.counterState.sweepInterval", 5L * 60 * 1000);
+
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private static final CounterStateStore s_instance = new CounterStateStore();
+
+    /**
+     * Identifies one counter of one resource.
+     */
+    public static final class Key {
+        private final int m_nodeId;
+        private final String m_resourceType;
+        private final String m_instance;
+        private final String m_metric;
+        private final int m_hashCode;
+
+        public Key(final int nodeId, final String resourceType, final String instance, final String metric) {
+            m_nodeId = nodeId;
+            m_resourceType = resourceType == null ? null : resourceType.intern();
+            m_instance = instance;
+            m_metric = metric == null ? null : metric.intern();
+
+            int hash = nodeId;
+            hash = 31 * hash + (m_resourceType == null ? 0 : m_resourceType.hashCode());
+            hash = 31 * hash + (m_instance == null ? 0 : m_instance.hashCode());
+            hash = 31 * hash + (m_metric == null ? 0 : m_metric.hashCode());
+            m_hashCode = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return m_hashCode;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof Key)) return false;
+            final Key other = (Key) obj;
+            return m_nodeId == other.m_nodeId
+                && m_hashCode == other.m_hashCode
+                && m_resourceType == other.m_resourceType
+                && m_metric == other.m_metric
+                && (m_instance == null ? other.m_instance == null : m_instance.equals(other.m_instance));
+        }
+
+        @Override
+        public String toString() {
+            return "node[" + m_nodeId + "].resourceType[" + m_resourceType + "].instance[" + m_instance + "].metric[" + m_metric + "]";
+        }
+    }
+
+    /**
+     * A collected counter value and the time it was collected.
+     */
+    public static final class Sample {
+        private final long m_timestamp;
+        private final double m_value;
+        private final long m_interval;
+
+        Sample(final long timestamp, final double value, final long interval) {
+            m_timestamp = timestamp;
+            m_value = value;
+            m_interval = interval;
+        }
+
+        /**
+         * @return the collection time in milliseconds
+         */
+        public long getTimestamp() {
+            return m_timestamp;
+        }
+
+        /**
+         * @return the collected value
+         */
+        public double getValue() {
+            return m_value;
+        }
+
+        long getExpiration() {
+            return m_timestamp + (m_interval > 0 ? m_interval * TTL_INTERVALS : DEFAULT_TTL);
+        }
+
+        @Override
+        public String toString() {
+            return m_value + "@" + m_timestamp;
+        }
+    }
+
+    private final ConcurrentHashMap<Key, Sample> m_samples = new ConcurrentHashMap<Key, Sample>();
+
+    private final AtomicLong m_nextSweep = new AtomicLong(0);
+
+    private boolean m_snapshotLoaded = false;
+
+    /**
+     * Returns the store shared by Collectd and Threshd.
+     *
+     * @return a {@link org.opennms.netmgt.threshd.CounterStateStore} object.
+     */
+    public static CounterStateStore getInstance() {
+        return s_instance;
+    }
+
+    /**
+     * Stores a new sample for <code>key</code>.
+     *
+     * @param key the counter
+     * @param timestamp the collection time in milliseconds
+     * @param value the collected value
+     * @return the sample it replaced, or null if there was none
+     */
+    public Sample put(final Key key, final long timestamp, final double value) {
+        sweepIfDue();
+        while (true) {
+            final Sample last = m_samples.get(key);
+            final long interval = last == null ? 0 : timestamp - last.getTimestamp();
+            final Sample next = new Sample(timestamp, value, interval > 0 ? interval : (last == null ? 0 : last.m_interval));
+            if (last == null ? m_samples.putIfAbsent(key, next) == null : m_samples.replace(key, last, next)) {
+                return last;
+            }
+        }
+    }
+
+    /**
+     * Puts back a sample returned by {@link #put(Key, long, double)}.
+     *
+     * @param key the counter
+     * @param sample the sample to restore
+     */
+    public void restore(final Key key, final Sample sample) {
+        m_samples.put(key, sample);
+    }
+
+    /**
+     * <p>get</p>
+     *
+     * @param key the counter
+     * @return the last sample stored for <code>key</code>, or null
+     */
+    public Sample get(final Key key) {
+        return m_samples.get(key);
+    }
+
+    /**
+     * <p>containsKey</p>
+     *
+     * @param key the counter
+     * @return true if a sample is stored for <code>key</code>
+     */
+    public boolean containsKey(final Key key) {
+        return m_samples.containsKey(key);
+    }
+
+    /**
+     * <p>size</p>
+     *
+     * @return the number of stored counters
+     */
+    public int size() {
+        return m_samples.size();
+    }
+
+    /**
+     * Removes every stored sample.
+     */
+    public void clear() {
+        m_samples.clear();
+    }
+
+    private void sweepIfDue() {
+        final long now = System.currentTimeMillis();
+        final long due = m_nextSweep.get();
+        if (now >= due && m_nextSweep.compareAndSet(due, now + SWEEP_INTERVAL)) {
+            sweep(now);
+        }
+    }
+
+    /**
+     * Removes the samples that expired before <code>now</code>.
+     *
+     * @param now the current time in milliseconds
+     * @return the number of samples removed
+     */
+    int sweep(final long now) {
+        int removed = 0;
+        for (final Iterator<Map.Entry<Key, Sample>> it = m_samples.entrySet().iterator(); it.hasNext(); ) {
+            if (it.next().getValue().getExpiration() < now) {
+                it.remove();
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            LOG.debug("sweep: evicted {} expired counters, {} remain", removed, m_samples.size());
+        }
+        return removed;
+    }
+
+    private static File getSnapshotFile() {
+        final String file = System.getProperty("org.opennms.thresholds.counterStateFile");
+        return file == null || file.trim().isEmpty() ? null : new File(file);
+    }
+
+    /**
+     * Reads the snapshot file, if one is configured and has not been read
+     * yet.
+     */
+    public synchronized void loadSnapshot() {
+        final File file = getSnapshotFile();
+        if (file == null || m_snapshotLoaded) {
+            return;
+        }
+        m_snapshotLoaded = true;
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            final int count = load(file, System.currentTimeMillis());
+            LOG.info("loadSnapshot: loaded {} counters from {}", count, file);
+        } catch (final IOException e) {
+            LOG.warn("loadSnapshot: unable to read counter snapshot {}", file, e);
+        }
+    }
+
+    /**
+     * Writes the snapshot file, if one is configured.
+     */
+    public synchronized void saveSnapshot() {
+        final File file = getSnapshotFile();
+        if (file == null) {
+            return;
+        }
+        try {
+            final int count = save(file);
+            LOG.info("saveSnapshot: saved {} counters to {}", count, file);
+        } catch (final IOException e) {
+            LOG.warn("saveSnapshot: unable to write counter snapshot {}", file, e);
+        }
+    }
+
+    /**
+     * Writes every stored sample to <code>file</code>.
+     *
+     * @param file the file to write
+     * @return the number of samples written
+     * @throws IOException if the file cannot be written
+     */
+    int save(final File file) throws IOException {
+        final File tmp = new File(file.getPath() + ".tmp");
+        int count = 0;
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeInt(SNAPSHOT_VERSION);
+            for (final Map.Entry<Key, Sample> entry : m_samples.entrySet()) {
+                final Key key = entry.getKey();
+                final Sample sample = entry.getValue();
+                out.writeBoolean(true);
+                out.writeInt(key.m_nodeId);
+                writeString(out, key.m_resourceType);
+                writeString(out, key.m_instance);
+                writeString(out, key.m_metric);
+                out.writeLong(sample.m_timestamp);
+                out.writeDouble(sample.m_value);
+                out.writeLong(sample.m_interval);
+                count++;
+            }
+            out.writeBoolean(false);
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+        if (!tmp.renameTo(file)) {
+            file.delete();
+            if (!tmp.renameTo(file)) {
+                throw new IOException("unable to rename " + tmp + " to " + file);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Reads the samples in <code>file</code> that have not expired by
+     * <code>now</code>. Samples already in the store are kept.
+     *
+     * @param file the file to read
+     * @param now the current time in milliseconds
+     * @return the number of samples read
+     * @throws IOException if the file cannot be read
+     */
+    int load(final File file, final long now) throws IOException {
+        int count = 0;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            final int version = in.readInt();
+            if (version != SNAPSHOT_VERSION) {
+                throw new IOException("unsupported counter snapshot version " + version);
+            }
+            while (in.readBoolean()) {
+                final Key key = new Key(in.readInt(), readString(in), readString(in), readString(in));
+                final Sample sample = new Sample(in.readLong(), in.readDouble(), in.readLong());
+                if (sample.getExpiration() >= now && m_samples.putIfAbsent(key, sample) == null) {
+                    count++;
+                }
+            }
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+        return count;
+    }
+
+    private static void writeString(final DataOutputStream out, final String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(final DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
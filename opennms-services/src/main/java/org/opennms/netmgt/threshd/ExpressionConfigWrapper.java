@@ -51,6 +51,18 @@ import org.opennms.netmgt.config.threshd.Expression;
 public class ExpressionConfigWrapper extends BaseThresholdDefConfigWrapper {
     private static final Logger LOG = LoggerFactory.getLogger(ExpressionConfigWrapper.class);
 
+	/**
+	 * The engine shared by all threshold expressions. It caches parsed
+	 * expressions by their text, so reloading the thresholding configuration
+	 * does not parse unchanged expressions again.
+	 */
+	private static final JexlEngine s_engine = new JexlEngine();
+	static {
+		s_engine.setCache(Integer.getInteger("org.opennms.threshd.expressionCacheSize", 512));
+	}
+
+	private static final MathBinding s_math = new MathBinding();
+
 	/**
 	 * This class is used to sniff all of the variable names that a script tries
 	 * to use out of the ScriptContext during a call to eval(). This will allow
@@ -93,23 +105,62 @@ public class ExpressionConfigWrapper extends BaseThresholdDefConfigWrapper {
 		}
 	}
 
+	/**
+	 * Resolves the variables of an expression directly against the values
+	 * being thresholded, without copying them. Variables the expression
+	 * assigns go to a scratch map that is cleared after each evaluation.
+	 * One instance is kept per thread and reused for every evaluation.
+	 */
+	private static class ValuesContext implements JexlContext {
+		private Map<String, Double> m_values;
+		private final Map<String, Object> m_assigned = new HashMap<String, Object>();
+
+		@Override
+		public Object get(String key) {
+			if (m_assigned.containsKey(key)) {
+				return m_assigned.get(key);
+			} else if ("math".equals(key)) {
+				return s_math;
+			} else if ("datasources".equals(key)) {
+				return m_values; // To workaround NMS-5019
+			}
+			return m_values.get(key);
+		}
+
+		@Override
+		public boolean has(String key) {
+			return m_assigned.containsKey(key) || "math".equals(key) || "datasources".equals(key) || m_values.containsKey(key);
+		}
+
+		@Override
+		public void set(String key, Object value) {
+			m_assigned.put(key, value);
+		}
+	}
+
+	private static final ThreadLocal<ValuesContext> s_context = new ThreadLocal<ValuesContext>() {
+		@Override
+		protected ValuesContext initialValue() {
+			return new ValuesContext();
+		}
+	};
+
 	private final Expression m_expression;
+	private final org.apache.commons.jexl2.Expression m_compiled;
 	private final Collection<String> m_datasources;
 	public ExpressionConfigWrapper(Expression expression) throws ThresholdExpressionException {
 		super(expression);
 		m_expression = expression;
 
-		// Fetch an instance of the JEXL script engine
-		JexlEngine expressionParser = new JexlEngine();
-
 		BindingsSniffer sniffer = new BindingsSniffer();
-		sniffer.put("math", new MathBinding());
+		sniffer.put("math", s_math);
 		sniffer.put("datasources", new HashMap<String,Double>()); // To workaround NMS-5019
 
-		// Test parsing of the expression and collect the variable names by using
-		// a Bindings instance that sniffs all of the variable names
+		// Parse the expression once, then collect the variable names by evaluating
+		// it with a Bindings instance that sniffs all of the variable names
 		try {
-			expressionParser.createExpression(m_expression.getExpression()).evaluate(sniffer);
+			m_compiled = s_engine.createExpression(m_expression.getExpression());
+			m_compiled.evaluate(sniffer);
 		} catch (Throwable e) {
 			throw new ThresholdExpressionException("Could not parse threshold expression:" + e.getMessage(), e);
 		}
@@ -180,18 +231,18 @@ public class ExpressionConfigWrapper extends BaseThresholdDefConfigWrapper {
 
 	@Override
 	public double evaluate(Map<String, Double> values) throws ThresholdExpressionException {
-		// Add all of the variable values to the script context
-		BindingsSniffer context = new BindingsSniffer();
-		context.putAll(values);
-		context.set("datasources",  new HashMap<String, Double>(values)); // To workaround NMS-5019
-		context.put("math", new MathBinding());
+		// Bind the variable values to this thread's context
+		ValuesContext context = s_context.get();
+		context.m_values = values;
 		double result = Double.NaN;
 		try {
-		    // Fetch an instance of the JEXL script engine to evaluate the script expression
-		    Object resultObject = new JexlEngine().createExpression(m_expression.getExpression()).evaluate(context);
-		    result = Double.parseDouble(resultObject.toString());
+		    Object resultObject = m_compiled.evaluate(context);
+		    result = resultObject instanceof Number ? ((Number)resultObject).doubleValue() : Double.parseDouble(resultObject.toString());
 		} catch (Throwable e) {
 			throw new ThresholdExpressionException("Error while evaluating expression "+m_expression.getExpression()+": " + e.getMessage(), e);
+		} finally {
+		    context.m_values = null;
+		    context.m_assigned.clear();
 		}
 		return result;
 	}
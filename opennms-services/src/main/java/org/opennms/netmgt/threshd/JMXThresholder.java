@@ -340,6 +340,7 @@ public abstract class JMXThresholder implements ServiceThresholder {
         // Add nodeId as an attribute of the interface for retrieval
         // by the check() method.
         iface.setAttribute(NODE_ID_KEY, Integer.valueOf(nodeId));
+        CollectedValueBroker.getInstance().subscribe(nodeId);
 
         // Debug
         final String hostAddress = InetAddressUtils.str(ipAddr);
@@ -370,7 +371,10 @@ public abstract class JMXThresholder implements ServiceThresholder {
      */
     @Override
     public void release(ThresholdNetworkInterface iface) {
-        // Nothing to release...
+        Integer nodeId = iface.getAttribute(NODE_ID_KEY);
+        if (nodeId != null) {
+            CollectedValueBroker.getInstance().unsubscribe(nodeId);
+        }
     }
 
     /**
@@ -481,8 +485,9 @@ public abstract class JMXThresholder implements ServiceThresholder {
         Map<String, Double> values=new HashMap<String,Double>();
         for(String ds: requiredDatasources) {
             File dsFile=new File(directory,ds+RrdUtils.getExtension());
-            Double thisValue=null;
-            if(dsFile.exists()) {
+            // Use the value Collectd published, if any, before fetching it from the RRD file
+            Double thisValue=CollectedValueBroker.getInstance().getValue(directory, ds, interval + range);
+            if(thisValue == null && dsFile.exists()) {
                 try {
                     if (range != 0) {
                         LOG.debug("checking values within {} mS of last possible PDP", range);
@@ -121,12 +121,16 @@ public class LatencyInterface {
 		return InetAddressUtils.str(getInetAddress());
 	}
 
-	File getLatencyDir() throws ThresholdingException {
+	File getLatencyPath() {
 		String repository = getNetworkInterface().getAttribute(LatencyThresholder.RRD_REPOSITORY_KEY);
 	    LOG.debug("check: rrd repository=", repository);
 	    // Get File object representing the
 	    // '/opt/OpenNMS/share/rrd/<svc_name>/<ipAddress>/' directory
-	    File latencyDir = new File(repository + File.separator + getHostAddress());
+	    return new File(repository + File.separator + getHostAddress());
+	}
+
+	File getLatencyDir() throws ThresholdingException {
+	    File latencyDir = getLatencyPath();
 	    if (!latencyDir.exists()) {
 	        throw new ThresholdingException("Latency directory for " + getServiceName() + "/" + getHostAddress() + " does not exist. Threshold checking failed for " + getHostAddress(), LatencyThresholder.THRESHOLDING_FAILED);
 	    } else if (!RrdFileConstants.isValidRRDLatencyDir(latencyDir)) {
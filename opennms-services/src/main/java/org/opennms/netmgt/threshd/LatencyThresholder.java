@@ -237,6 +237,7 @@ final class LatencyThresholder implements ServiceThresholder {
         // by the check() method.
         //
         iface.setAttribute(NODE_ID_KEY, new Integer(nodeId));
+        CollectedValueBroker.getInstance().subscribe(nodeId);
 
         // Retrieve the collection of Threshold objects associated with
         // the defined thresholding group and build maps of
@@ -323,7 +324,10 @@ final class LatencyThresholder implements ServiceThresholder {
      */
     @Override
     public void release(ThresholdNetworkInterface iface) {
-        // Nothing to release...
+        Integer nodeId = iface.getAttribute(NODE_ID_KEY);
+        if (nodeId != null) {
+            CollectedValueBroker.getInstance().unsubscribe(nodeId);
+        }
     }
 
     /**
@@ -87,6 +87,8 @@ public final class SnmpThresholder implements ServiceThresholder {
 
     private IfInfoGetter m_ifInfoGetter;
 
+    private final CollectedValueBroker m_broker = CollectedValueBroker.getInstance();
+
     /**
      * <P>
      * Returns the name of the service that the plug-in collects ("SNMP").
@@ -166,6 +168,7 @@ public final class SnmpThresholder implements ServiceThresholder {
     public void initialize(ThresholdNetworkInterface netIface, Map<?,?> parms) {
         SnmpThresholdNetworkInterface snmpThresholdNetworkInterface = new SnmpThresholdNetworkInterface(m_thresholdsDao, netIface, parms);
         m_snmpThresholdNetworkInterfaces.put(netIface, snmpThresholdNetworkInterface);
+        m_broker.subscribe(snmpThresholdNetworkInterface.getNodeId());
 
         SnmpThresholdConfiguration config = snmpThresholdNetworkInterface.getThresholdConfiguration();
 
@@ -211,7 +214,10 @@ public final class SnmpThresholder implements ServiceThresholder {
      */
     @Override
     public void release(ThresholdNetworkInterface iface) {
-        m_snmpThresholdNetworkInterfaces.remove(iface);
+        SnmpThresholdNetworkInterface removed = m_snmpThresholdNetworkInterfaces.remove(iface);
+        if (removed != null) {
+            m_broker.unsubscribe(removed.getNodeId());
+        }
     }
 
     /**
@@ -244,20 +250,33 @@ public final class SnmpThresholder implements ServiceThresholder {
          * -----------------------------------------------------------
          */
 
+        // Create empty Events object to hold any threshold events generated during the thresholding check
+        Events events = new Events();
+
+        // Date stamp for all outgoing events
+        Date date = new Date();
+
         // Get File object representing the node directory
         File nodeDirectory = new File(config.getRrdRepository(), snmpThresholdNetworkInterface.getNodeId().toString());
+
+        if (m_broker.hasResources(snmpThresholdNetworkInterface.getNodeId(), config.getInterval() + config.getRange())) {
+            // Collectd handed us the values, there is no need to walk the RRD files.
+            // If it stopped publishing, fall back to the RRD files below.
+            try {
+                checkPublishedResources(nodeDirectory, snmpThresholdNetworkInterface, date, events);
+            } catch (IllegalArgumentException e) {
+                LOG.info("check: Threshold checking failed for primary SNMP interface {}", snmpThresholdNetworkInterface.getIpAddress(), e);
+                return THRESHOLDING_FAILED;
+            }
+            return sendEvents(events, eproxy);
+        }
+
         if (!RrdFileConstants.isValidRRDNodeDir(nodeDirectory)) {
             LOG.info("Node directory for {}/{} does not exist or is not a valid RRD node directory.", snmpThresholdNetworkInterface.getNodeId(), snmpThresholdNetworkInterface.getIpAddress());
             LOG.info("Threshold checking failed for primary SNMP interface {}", snmpThresholdNetworkInterface.getIpAddress());
             return THRESHOLDING_FAILED;
         }
 
-        // Create empty Events object to hold any threshold events generated during the thresholding check
-        Events events = new Events();
-
-        // Date stamp for all outgoing events
-        Date date = new Date();
-
         try {
         	checkNodeDir(nodeDirectory, snmpThresholdNetworkInterface, date, events);
         } catch (IllegalArgumentException e) {
@@ -317,7 +336,10 @@ public final class SnmpThresholder implements ServiceThresholder {
             }
         }
 
-        
+        return sendEvents(events, eproxy);
+    }
+
+    private int sendEvents(Events events, EventProxy eproxy) {
         // Send created events
         if (events.getEventCount() > 0) {
             try {
@@ -333,6 +355,46 @@ public final class SnmpThresholder implements ServiceThresholder {
         return THRESHOLDING_SUCCEEDED;
     }
 
+    /**
+     * Performs threshold checking on the resources Collectd published for
+     * the node, using their directories to tell node, interface and generic
+     * resources apart the same way the RRD walk does.
+     *
+     * @param nodeDirectory the RRD directory of the node
+     * @param snmpIface a {@link org.opennms.netmgt.threshd.SnmpThresholdNetworkInterface} object.
+     * @param date
+     *            Source for timestamp to be used for all generated events
+     * @param events
+     *            Castor events object containing any events to be generated as
+     *            a result of threshold checking.
+     * @throws java.lang.IllegalArgumentException if any.
+     */
+    protected void checkPublishedResources(File nodeDirectory, SnmpThresholdNetworkInterface snmpIface, Date date, Events events) throws IllegalArgumentException {
+        SnmpThresholdConfiguration config = snmpIface.getThresholdConfiguration();
+        File nodeDir = nodeDirectory.getAbsoluteFile();
+        long maxAge = config.getInterval() + config.getRange();
+
+        for (File directory : m_broker.getResourceDirectories(snmpIface.getNodeId(), maxAge)) {
+            File parent = directory.getParentFile();
+            if (directory.equals(nodeDir)) {
+                checkNodeDir(directory, snmpIface, date, events);
+            } else if (nodeDir.equals(parent)) {
+                checkIfDir(directory, snmpIface, date, events);
+            } else if (parent != null && nodeDir.equals(parent.getParentFile())) {
+                ThresholdResourceType thresholdResourceType = config.getGenericResourceTypeMap().get(parent.getName());
+                if (thresholdResourceType == null) {
+                    continue;
+                }
+                for (Set<ThresholdEntity> threshEntities : thresholdResourceType.getThresholdMap().values()) {
+                    for (ThresholdEntity thresholdEntity : threshEntities) {
+                        String dsLabelValue = getDataSourceLabel(directory, snmpIface, thresholdEntity);
+                        processThresholdForResource(directory, snmpIface, date, events, thresholdEntity, dsLabelValue);
+                    }
+                }
+            }
+        }
+    }
+
     /**
      * Performs threshold checking on an SNMP RRD node directory.
      *
@@ -377,11 +439,18 @@ public final class SnmpThresholder implements ServiceThresholder {
         Collection<String> requiredDatasources=threshold.getRequiredDatasources();
         Map<String, Double> values=new HashMap<String,Double>();
         String group = snmpIface.getThresholdConfiguration().getGroupName();
+        boolean published = m_broker.getResource(directory, thresholdConfiguration.getInterval() + thresholdConfiguration.getRange()) != null;
         for(String ds: requiredDatasources) {
-            File dsFile= ResourceTypeUtils.getRrdFileForDs(directory,ds);
             Double dsValue=null;
-            if(dsFile.exists() && passedThresholdFilters(directory, group, threshold.getDatasourceType(), ds)) {
-                dsValue = getDataSourceValue(thresholdConfiguration, dsFile, ds);
+            if (published) {
+                if (passedThresholdFilters(directory, group, threshold.getDatasourceType(), ds)) {
+                    dsValue = m_broker.getValue(directory, ds, thresholdConfiguration.getInterval() + thresholdConfiguration.getRange());
+                }
+            } else {
+                File dsFile= ResourceTypeUtils.getRrdFileForDs(directory,ds);
+                if(dsFile.exists() && passedThresholdFilters(directory, group, threshold.getDatasourceType(), ds)) {
+                    dsValue = getDataSourceValue(thresholdConfiguration, dsFile, ds);
+                }
             }
             if(dsValue==null) {
                 LOG.info("Could not get data source value for '{}'.  Not evaluating threshold.", ds);
@@ -725,7 +794,7 @@ public final class SnmpThresholder implements ServiceThresholder {
                 populateIfDataMap(info, nodeId, ifLabel);
                 value = info.get(attribute);
             } else {
-                value = ResourceTypeUtils.getStringProperty(resourceDirectory, attribute);
+                value = getStringProperty(resourceDirectory, attribute);
             }
         } catch (Throwable e) {
             LOG.warn("Can't get value for attribute {}.", attribute, e);
@@ -741,7 +810,7 @@ public final class SnmpThresholder implements ServiceThresholder {
         
         try {
             String key = threshold.getDatasourceLabel();
-            dsLabelValue = (key == null ? null : ResourceTypeUtils.getStringProperty(directory, key));
+            dsLabelValue = (key == null ? null : getStringProperty(directory, key));
         } catch (DataAccessException e) {
             LOG.debug ("getDataSourceLabel: I/O exception when looking for strings.properties file for node id: " + snmpIface.getNodeId() + " looking here: " + directory, e);
         }
@@ -751,6 +820,18 @@ public final class SnmpThresholder implements ServiceThresholder {
     }
 
 
+    /**
+     * Prefer the string attributes Collectd published over reading
+     * strings.properties.
+     */
+    private String getStringProperty(File directory, String key) {
+        CollectedValueBroker.PublishedResource published = m_broker.getResource(directory);
+        if (published != null && published.getString(key) != null) {
+            return published.getString(key);
+        }
+        return ResourceTypeUtils.getStringProperty(directory, key);
+    }
+
     /**
      * ifLabel will either be set to null for node level
      * datasource values
@@ -48,8 +48,9 @@ import org.opennms.netmgt.config.threshd.Package;
 import org.opennms.netmgt.config.threshd.Thresholder;
 import org.opennms.netmgt.daemon.AbstractServiceDaemon;
 import org.opennms.netmgt.model.capsd.DbIfServiceEntry;
-import org.opennms.netmgt.scheduler.LegacyScheduler;
 import org.opennms.netmgt.scheduler.ReadyRunnable;
+import org.opennms.netmgt.scheduler.Scheduler;
+import org.opennms.netmgt.scheduler.TimingWheelScheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.dao.DataRetrievalFailureException;
@@ -85,7 +86,7 @@ public final class Threshd extends AbstractServiceDaemon {
     /**
      * Reference to the threshd scheduler
      */
-    private volatile LegacyScheduler m_scheduler;
+    private volatile Scheduler m_scheduler;
 
     /**
      * Indicates if all the existing interfaces have been scheduled
@@ -131,6 +132,9 @@ public final class Threshd extends AbstractServiceDaemon {
         //
         initializeThresholders();
 
+        // Pick up the counter values saved when thresholding last stopped
+        CounterStateStore.getInstance().loadSnapshot();
+
         // Create a scheduler
         //
         initializeScheduler();
@@ -183,14 +187,14 @@ public final class Threshd extends AbstractServiceDaemon {
             }
         };
 
-        m_scheduler.schedule(interfaceScheduler, 0);
+        m_scheduler.schedule(0, interfaceScheduler);
     }
 
     private void initializeScheduler() {
         try {
             LOG.debug("start: Creating threshd scheduler");
 
-            m_scheduler = new LegacyScheduler("Threshd", m_threshdConfig.getConfiguration().getThreads());
+            m_scheduler = new TimingWheelScheduler("Threshd", m_threshdConfig.getConfiguration().getThreads());
         } catch (RuntimeException e) {
             LOG.error("start: Failed to create threshd scheduler", e);
             throw e;
@@ -269,6 +273,7 @@ public final class Threshd extends AbstractServiceDaemon {
         if (m_receiver != null) {
             m_receiver.close();
         }
+        CounterStateStore.getInstance().saveSnapshot();
 	}
 
     /**
@@ -299,9 +304,9 @@ public final class Threshd extends AbstractServiceDaemon {
     /**
      * Returns reference to the scheduler
      *
-     * @return a {@link org.opennms.netmgt.scheduler.LegacyScheduler} object.
+     * @return a {@link org.opennms.netmgt.scheduler.Scheduler} object.
      */
-    public LegacyScheduler getScheduler() {
+    public Scheduler getScheduler() {
         return m_scheduler;
     }
 
@@ -446,7 +451,7 @@ public final class Threshd extends AbstractServiceDaemon {
                 // interval (default is 5 minutes). This should give
                 // the collector a chance to update the RRD file so
                 // there is data available to be fetched.
-                m_scheduler.schedule(tSvc, tSvc.getInterval());
+                m_scheduler.schedule(tSvc.getInterval(), tSvc);
 
                 LOG.debug("scheduleService: {}/{} scheduled for {} threshold checking", nodeId, ipAddress, svcName);
             } catch (RuntimeException rE) {
@@ -274,6 +274,13 @@ public final class ThresholdEntity implements Cloneable {
             if (getDatasourceType().equals("if")) {
                 LOG.debug("Fetching last value from dataSource '{}'", datasource);
 
+                // The poller publishes the response times it stores, so the RRD file is only read when it did not
+                dsValue = CollectedValueBroker.getInstance().getValue(latIface.getLatencyPath(), datasource, latParms.getInterval() + latParms.getRange());
+                if (dsValue != null) {
+                    LOG.debug("Last value published for dataSource '{}' was {}", datasource, dsValue);
+                    return dsValue;
+                }
+
                 File rrdFile = new  File(latIface.getLatencyDir(), datasource+RrdUtils.getExtension());
                 if (!rrdFile.exists()) {
                     LOG.info("rrd file {} does not exist", rrdFile);
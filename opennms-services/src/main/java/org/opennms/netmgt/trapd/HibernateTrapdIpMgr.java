@@ -29,12 +29,10 @@
 package org.opennms.netmgt.trapd;
 
 import java.net.InetAddress;
-import java.util.HashMap;
-import java.util.Map;
 
-import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.dao.api.IpInterfaceDao;
 import org.opennms.netmgt.model.OnmsIpInterface;
+import org.opennms.netmgt.utils.IpNodeIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
@@ -56,9 +54,11 @@ public class HibernateTrapdIpMgr implements TrapdIpMgr, InitializingBean {
     private IpInterfaceDao m_ipInterfaceDao;
     
     /**
-     * A Map of IP addresses and node IDs
+     * IP addresses and node IDs. Reloads and updates are synchronized on
+     * this manager, so an update made while a reload is reading the
+     * database is applied after it rather than lost.
      */
-    private Map<InetAddress, Integer> m_knownips = new HashMap<InetAddress, Integer>();
+    private final IpNodeIndex m_knownips = new IpNodeIndex();
 
     /**
      * Default construct for the instance.
@@ -75,7 +75,7 @@ public class HibernateTrapdIpMgr implements TrapdIpMgr, InitializingBean {
     @Transactional(readOnly = true)
     @Override
     public synchronized void dataSourceSync() {
-        m_knownips = m_ipInterfaceDao.getInterfacesForNodes();
+        m_knownips.load(m_ipInterfaceDao.getInterfacesForNodes());
     }
 
     /* (non-Javadoc)
@@ -83,11 +83,8 @@ public class HibernateTrapdIpMgr implements TrapdIpMgr, InitializingBean {
      */
     /** {@inheritDoc} */
     @Override
-    public synchronized long getNodeId(String addr) {
-        if (addr == null) {
-            return -1;
-        }
-        return longValue(m_knownips.get(InetAddressUtils.getInetAddress(addr)));
+    public long getNodeId(String addr) {
+        return m_knownips.getNodeId(addr);
     }
 
     /* (non-Javadoc)
@@ -99,14 +96,15 @@ public class HibernateTrapdIpMgr implements TrapdIpMgr, InitializingBean {
         if (addr == null || nodeid == -1) {
             return -1;
         }
+        final InetAddress address = IpNodeIndex.parse(addr);
         // Only add the address if it doesn't exist on the map. If it exists, only replace the current one if the new address is primary.
         boolean add = true;
-        if (m_knownips.containsKey(InetAddressUtils.getInetAddress(addr))) {
+        if (m_knownips.getNodeId(address) != -1) {
             OnmsIpInterface intf = m_ipInterfaceDao.findByNodeIdAndIpAddress(Integer.valueOf((int) nodeid), addr);
             add = intf != null && intf.isPrimary();
             LOG.info("setNodeId: address found {}. Should be added? {}", intf, add);
         }
-        return add ? longValue(m_knownips.put(InetAddressUtils.getInetAddress(addr), Integer.valueOf((int) nodeid))) : -1;
+        return add ? m_knownips.setNodeId(address, (int) nodeid) : -1;
     }
 
     /* (non-Javadoc)
@@ -115,10 +113,7 @@ public class HibernateTrapdIpMgr implements TrapdIpMgr, InitializingBean {
     /** {@inheritDoc} */
     @Override
     public synchronized long removeNodeId(String addr) {
-        if (addr == null) {
-            return -1;
-        }
-        return longValue(m_knownips.remove(InetAddressUtils.getInetAddress(addr)));
+        return m_knownips.removeNodeId(IpNodeIndex.parse(addr));
     }
 
     /* (non-Javadoc)
@@ -132,10 +127,6 @@ public class HibernateTrapdIpMgr implements TrapdIpMgr, InitializingBean {
         m_knownips.clear();
     }
 
-    private static long longValue(Integer result) {
-        return (result == null ? -1 : result.longValue());
-    }
-
     /**
      * <p>afterPropertiesSet</p>
      *
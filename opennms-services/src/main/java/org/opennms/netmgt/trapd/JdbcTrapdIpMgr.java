@@ -28,13 +28,15 @@
 
 package org.opennms.netmgt.trapd;
 
+import java.net.InetAddress;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import javax.sql.DataSource;
 
+import org.opennms.netmgt.utils.IpNodeIndex;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowCallbackHandler;
@@ -52,14 +54,18 @@ public class JdbcTrapdIpMgr implements TrapdIpMgr, InitializingBean {
     
     /**
      * The SQL statement used to extract the list of currently known IP
-     * addresses and their node IDs from the IP Interface table.
+     * addresses and their node IDs from the IP Interface table. Primary
+     * SNMP interfaces come last, so they win when an address is on more
+     * than one node.
      */
-    private final  String IP_LOAD_SQL = "SELECT ipAddr, nodeid FROM ipInterface";
+    private final  String IP_LOAD_SQL = "SELECT ipAddr, nodeid FROM ipInterface ORDER BY CASE WHEN isSnmpPrimary = 'P' THEN 1 ELSE 0 END";
 
     /**
-     * A Map of IP addresses and node IDs
+     * IP addresses and node IDs. Reloads and updates are synchronized on
+     * this manager, so an update made while a reload is reading the
+     * database is applied after it rather than lost.
      */
-    private Map<String, Long> m_knownips = new HashMap<String, Long>();
+    private final IpNodeIndex m_knownips = new IpNodeIndex();
 
     /**
      * Default construct for the instance.
@@ -75,14 +81,19 @@ public class JdbcTrapdIpMgr implements TrapdIpMgr, InitializingBean {
      */
     @Override
     public synchronized void dataSourceSync() {
-        m_knownips.clear();
+        final Map<InetAddress, Integer> knownips = new LinkedHashMap<InetAddress, Integer>();
 
         new JdbcTemplate(m_dataSource).query(IP_LOAD_SQL, new RowCallbackHandler() {
             @Override
             public void processRow(ResultSet rs) throws SQLException {
-                m_knownips.put(rs.getString(1), rs.getLong(2));
+                final InetAddress addr = IpNodeIndex.parse(rs.getString(1));
+                if (addr != null) {
+                    knownips.put(addr, rs.getInt(2));
+                }
             }
         });
+
+        m_knownips.load(knownips);
     }
 
     /* (non-Javadoc)
@@ -90,11 +101,8 @@ public class JdbcTrapdIpMgr implements TrapdIpMgr, InitializingBean {
      */
     /** {@inheritDoc} */
     @Override
-    public synchronized long getNodeId(String addr) {
-        if (addr == null) {
-            return -1;
-        }
-        return longValue(m_knownips.get(addr));
+    public long getNodeId(String addr) {
+        return m_knownips.getNodeId(addr);
     }
 
     /* (non-Javadoc)
@@ -107,7 +115,7 @@ public class JdbcTrapdIpMgr implements TrapdIpMgr, InitializingBean {
             return -1;
         }
         
-        return longValue(m_knownips.put(addr, Long.valueOf(nodeid)));
+        return m_knownips.setNodeId(IpNodeIndex.parse(addr), (int) nodeid);
     }
 
     /* (non-Javadoc)
@@ -116,10 +124,7 @@ public class JdbcTrapdIpMgr implements TrapdIpMgr, InitializingBean {
     /** {@inheritDoc} */
     @Override
     public synchronized long removeNodeId(String addr) {
-        if (addr == null) {
-            return -1;
-        }
-        return longValue(m_knownips.remove(addr));
+        return m_knownips.removeNodeId(IpNodeIndex.parse(addr));
     }
 
     /* (non-Javadoc)
@@ -133,10 +138,6 @@ public class JdbcTrapdIpMgr implements TrapdIpMgr, InitializingBean {
         m_knownips.clear();
     }
 
-    private static long longValue(Long result) {
-        return (result == null ? -1 : result.longValue());
-    }
-
     /**
      * <p>getDataSource</p>
      *
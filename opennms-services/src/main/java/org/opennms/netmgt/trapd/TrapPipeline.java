@@ -0,0 +1,408 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.trapd;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.opennms.netmgt.model.events.EventForwarder;
+import org.opennms.netmgt.snmp.TrapNotification;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Events;
+import org.opennms.netmgt.xml.event.Log;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+/**
+ * Moves received traps through decoding and on to eventd in stages, so
+ * that the SNMP listener thread only has to queue them.
+ *
+ * <p>Received traps are queued on a bounded queue. Decoder threads take
+ * them off, decode them, resolve the node and the event configuration and
+ * queue the resulting events on a second bounded queue. A single sender
+ * thread drains up to {@link #setBatchSize(int) batchSize} events at a
+ * time and sends them to eventd as one {@link Log}.</p>
+ *
+ * <p>When the receive queue is full the {@link OverloadPolicy} decides what
+ * happens to the trap. The decoders wait for room on the send queue, so
+ * traps are only ever dropped as they are received, and every drop is
+ * counted.</p>
+ */
+public class TrapPipeline implements InitializingBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TrapPipeline.class);
+
+    private static final long POLL_MILLIS = 100;
+
+    /**
+     * What to do with a trap that arrives while the receive queue is full.
+     */
+    public static enum OverloadPolicy {
+        /** Drop the trap that just arrived. */
+        DROP_NEWEST,
+        /** Drop the oldest queued trap to make room. */
+        DROP_OLDEST,
+        /** Wait for room, which blocks the SNMP listener thread. */
+        BLOCK
+    }
+
+    private TrapQueueProcessorFactory m_processorFactory;
+
+    private int m_queueSize = 50000;
+
+    private int m_batchSize = 100;
+
+    private int m_decoderThreads = 1;
+
+    private OverloadPolicy m_overloadPolicy = OverloadPolicy.DROP_NEWEST;
+
+    private BlockingQueue<TrapNotification> m_receiveQueue;
+
+    private BlockingQueue<Event> m_sendQueue;
+
+    private List<Thread> m_decoders = new ArrayList<Thread>();
+
+    private Thread m_sender;
+
+    private volatile boolean m_running = false;
+
+    private volatile boolean m_decoding = false;
+
+    private final AtomicLong m_trapsReceived = new AtomicLong(0);
+
+    private final AtomicLong m_trapsDropped = new AtomicLong(0);
+
+    private final AtomicLong m_trapsDecoded = new AtomicLong(0);
+
+    private final AtomicLong m_decodeNanos = new AtomicLong(0);
+
+    private final AtomicLong m_eventsSent = new AtomicLong(0);
+
+    private final AtomicLong m_batchesSent = new AtomicLong(0);
+
+    private final AtomicLong m_sendNanos = new AtomicLong(0);
+
+    /**
+     * <p>setProcessorFactory</p>
+     *
+     * @param processorFactory a {@link org.opennms.netmgt.trapd.TrapQueueProcessorFactory} object.
+     */
+    public void setProcessorFactory(final TrapQueueProcessorFactory processorFactory) {
+        m_processorFactory = processorFactory;
+    }
+
+    /**
+     * The number of traps, and of events, that can be queued between stages.
+     *
+     * @param queueSize a int.
+     */
+    public void setQueueSize(final int queueSize) {
+        m_queueSize = queueSize;
+    }
+
+    /**
+     * The maximum number of events sent to eventd at once.
+     *
+     * @param batchSize a int.
+     */
+    public void setBatchSize(final int batchSize) {
+        m_batchSize = batchSize;
+    }
+
+    /**
+     * The number of threads decoding traps. With more than one thread,
+     * events may reach eventd in a different order than their traps arrived.
+     *
+     * @param decoderThreads a int.
+     */
+    public void setDecoderThreads(final int decoderThreads) {
+        m_decoderThreads = decoderThreads;
+    }
+
+    /**
+     * <p>setOverloadPolicy</p>
+     *
+     * @param overloadPolicy a {@link org.opennms.netmgt.trapd.TrapPipeline.OverloadPolicy} object.
+     */
+    public void setOverloadPolicy(final OverloadPolicy overloadPolicy) {
+        m_overloadPolicy = overloadPolicy;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void afterPropertiesSet() {
+        Assert.notNull(m_processorFactory, "processorFactory must be set");
+        Assert.notNull(m_overloadPolicy, "overloadPolicy must be set");
+        Assert.isTrue(m_queueSize > 0, "queueSize must be positive");
+        Assert.isTrue(m_batchSize > 0, "batchSize must be positive");
+        Assert.isTrue(m_decoderThreads > 0, "decoderThreads must be positive");
+
+        m_receiveQueue = new ArrayBlockingQueue<TrapNotification>(m_queueSize);
+        m_sendQueue = new ArrayBlockingQueue<Event>(m_queueSize);
+    }
+
+    /**
+     * Starts the decoder and sender threads. Traps queued while the
+     * pipeline was stopped are processed once it starts.
+     */
+    public synchronized void start() {
+        if (m_running) {
+            return;
+        }
+        m_running = true;
+        m_decoding = true;
+
+        final ThreadFactory decoderFactory = new LogPreservingThreadFactory("TrapdDecoder", m_decoderThreads, true);
+        for (int i = 0; i < m_decoderThreads; i++) {
+            final Thread decoder = decoderFactory.newThread(new Runnable() {
+                @Override
+                public void run() {
+                    decodeTraps();
+                }
+            });
+            m_decoders.add(decoder);
+            decoder.start();
+        }
+
+        m_sender = new LogPreservingThreadFactory("TrapdSender", 1, true).newThread(new Runnable() {
+            @Override
+            public void run() {
+                sendEvents();
+            }
+        });
+        m_sender.start();
+    }
+
+    /**
+     * Processes the traps that are still queued and stops the threads.
+     *
+     * @throws java.lang.InterruptedException if any.
+     */
+    public synchronized void stop() throws InterruptedException {
+        if (!m_running) {
+            return;
+        }
+        m_running = false;
+        for (final Thread decoder : m_decoders) {
+            decoder.join();
+        }
+        m_decoders.clear();
+
+        m_decoding = false;
+        m_sender.join();
+        m_sender = null;
+    }
+
+    /**
+     * Queues a received trap. This is called on the SNMP listener thread,
+     * so unless the overload policy is {@link OverloadPolicy#BLOCK} it never
+     * waits.
+     *
+     * @param trapNotification a {@link org.opennms.netmgt.snmp.TrapNotification} object.
+     */
+    public void receive(final TrapNotification trapNotification) {
+        m_trapsReceived.incrementAndGet();
+        switch (m_overloadPolicy) {
+        case BLOCK:
+            try {
+                m_receiveQueue.put(trapNotification);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                dropped();
+            }
+            break;
+        case DROP_OLDEST:
+            while (!m_receiveQueue.offer(trapNotification)) {
+                if (m_receiveQueue.poll() != null) {
+                    dropped();
+                }
+            }
+            break;
+        default:
+            if (!m_receiveQueue.offer(trapNotification)) {
+                dropped();
+            }
+        }
+    }
+
+    private void dropped() {
+        final long dropped = m_trapsDropped.incrementAndGet();
+        if (dropped % 1000 == 1) {
+            LOG.warn("receive: the trap queue is full, {} traps have been dropped", dropped);
+        }
+    }
+
+    private void decodeTraps() {
+        final List<Event> events = new ArrayList<Event>(2);
+        try {
+            while (m_running || !m_receiveQueue.isEmpty()) {
+                final TrapNotification trap = m_receiveQueue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (trap == null) {
+                    continue;
+                }
+
+                final long start = System.nanoTime();
+                events.clear();
+                try {
+                    m_processorFactory.getInstance(trap).process(events);
+                } catch (final Throwable e) {
+                    LOG.error("Unexpected error processing trap: {}", e, e);
+                }
+                m_decodeNanos.addAndGet(System.nanoTime() - start);
+                m_trapsDecoded.incrementAndGet();
+
+                for (final Event event : events) {
+                    m_sendQueue.put(event);
+                }
+            }
+        } catch (final InterruptedException e) {
+            LOG.warn("decodeTraps: interrupted, {} traps left unprocessed", m_receiveQueue.size());
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void sendEvents() {
+        final List<Event> batch = new ArrayList<Event>(m_batchSize);
+        try {
+            while (true) {
+                final Event first = m_sendQueue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (!m_decoding) {
+                        return;
+                    }
+                    continue;
+                }
+                batch.clear();
+                batch.add(first);
+                m_sendQueue.drainTo(batch, m_batchSize - 1);
+                send(batch);
+            }
+        } catch (final InterruptedException e) {
+            LOG.warn("sendEvents: interrupted, {} events left unsent", m_sendQueue.size());
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void send(final List<Event> batch) {
+        final long start = System.nanoTime();
+        try {
+            final Events events = new Events();
+            for (final Event event : batch) {
+                events.addEvent(event);
+            }
+            final Log eventLog = new Log();
+            eventLog.setEvents(events);
+            getEventForwarder().sendNow(eventLog);
+            m_eventsSent.addAndGet(batch.size());
+            LOG.debug("send: sent {} events to eventd", batch.size());
+        } catch (final Throwable e) {
+            LOG.error("send: failed to send {} events to eventd", batch.size(), e);
+        }
+        m_sendNanos.addAndGet(System.nanoTime() - start);
+        m_batchesSent.incrementAndGet();
+    }
+
+    private EventForwarder getEventForwarder() {
+        return m_processorFactory.getEventManager();
+    }
+
+    /**
+     * @return the number of traps waiting to be decoded
+     */
+    public int getReceiveQueueDepth() {
+        return m_receiveQueue.size();
+    }
+
+    /**
+     * @return the number of events waiting to be sent to eventd
+     */
+    public int getSendQueueDepth() {
+        return m_sendQueue.size();
+    }
+
+    /**
+     * @return the number of traps received
+     */
+    public long getTrapsReceived() {
+        return m_trapsReceived.get();
+    }
+
+    /**
+     * @return the number of traps dropped because the receive queue was full
+     */
+    public long getTrapsDropped() {
+        return m_trapsDropped.get();
+    }
+
+    /**
+     * @return the number of traps decoded
+     */
+    public long getTrapsDecoded() {
+        return m_trapsDecoded.get();
+    }
+
+    /**
+     * @return the mean time taken to decode a trap, in microseconds
+     */
+    public long getDecodeMeanMicros() {
+        final long decoded = m_trapsDecoded.get();
+        return decoded == 0 ? 0 : m_decodeNanos.get() / decoded / 1000;
+    }
+
+    /**
+     * @return the number of events sent to eventd
+     */
+    public long getEventsSent() {
+        return m_eventsSent.get();
+    }
+
+    /**
+     * @return the number of batches sent to eventd
+     */
+    public long getBatchesSent() {
+        return m_batchesSent.get();
+    }
+
+    /**
+     * @return the mean time taken to send a batch to eventd, in microseconds
+     */
+    public long getSendMeanMicros() {
+        final long batches = m_batchesSent.get();
+        return batches == 0 ? 0 : m_sendNanos.get() / batches / 1000;
+    }
+}
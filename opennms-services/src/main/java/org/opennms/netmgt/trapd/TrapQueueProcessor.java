@@ -31,6 +31,8 @@ package org.opennms.netmgt.trapd;
 import static org.opennms.core.utils.InetAddressUtils.addr;
 
 import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
 
 import org.opennms.core.concurrent.WaterfallCallable;
@@ -155,21 +157,38 @@ class TrapQueueProcessor implements WaterfallCallable, InitializingBean {
     @Override
     public Callable<Void> call() {
         try {
-            processTrapEvent(((EventCreator)m_trapNotification.getTrapProcessor()).getEvent());
-        } catch (IllegalArgumentException e) {
-            LOG.info(e.getMessage());
+            final List<Event> events = new ArrayList<Event>(2);
+            process(events);
+            for (final Event event : events) {
+                m_eventMgr.sendNow(event);
+            }
         } catch (Throwable e) {
             LOG.error("Unexpected error processing trap: {}", e, e);
         }
         return null;
     }
 
+    /**
+     * Converts the trap and adds the events to send to eventd for it to
+     * <code>events</code>, without sending them.
+     *
+     * @param events the list to add the events to
+     */
+    void process(final List<Event> events) {
+        try {
+            processTrapEvent(((EventCreator)m_trapNotification.getTrapProcessor()).getEvent(), events);
+        } catch (IllegalArgumentException e) {
+            LOG.info(e.getMessage());
+        }
+    }
+
     /**
      * <p>processTrapEvent</p>
      *
      * @param event a {@link org.opennms.netmgt.xml.event.Event} object.
+     * @param events the list to add the events to send to
      */
-    private void processTrapEvent(final Event event) {
+    private void processTrapEvent(final Event event, final List<Event> events) {
     	final InetAddress trapInterface = event.getInterfaceAddress();
 
     	final org.opennms.netmgt.xml.eventconf.Event econf = m_eventConfDao.findByEvent(event);
@@ -190,34 +209,33 @@ class TrapQueueProcessor implements WaterfallCallable, InitializingBean {
             }
         }
 
-        // send the event to eventd
-        m_eventMgr.sendNow(event);
+        // queue the event for eventd
+        events.add(event);
 
-        LOG.debug("Trap successfully converted and sent to eventd with UEI {}", event.getUei());
+        LOG.debug("Trap successfully converted with UEI {}", event.getUei());
 
         if (!event.hasNodeid() && m_newSuspect) {
-            sendNewSuspectEvent(InetAddressUtils.str(trapInterface));
+            events.add(createNewSuspectEvent(InetAddressUtils.str(trapInterface)));
 
-            LOG.debug("Sent newSuspectEvent for interface: {}", trapInterface);
+            LOG.debug("Created newSuspectEvent for interface: {}", trapInterface);
 
         }
     }
 
     /**
-     * Send a newSuspect event for the interface
+     * Create a newSuspect event for the interface
      * 
      * @param trapInterface
      *            The interface for which the newSuspect event is to be
      *            generated
      */
-    private void sendNewSuspectEvent(String trapInterface) {
+    private Event createNewSuspectEvent(String trapInterface) {
         // construct event with 'trapd' as source
         EventBuilder bldr = new EventBuilder(org.opennms.netmgt.EventConstants.NEW_SUSPECT_INTERFACE_EVENT_UEI, "trapd");
         bldr.setInterface(addr(trapInterface));
         bldr.setHost(LOCALHOST_ADDRESS);
 
-        // send the event to eventd
-        m_eventMgr.sendNow(bldr.getEvent());
+        return bldr.getEvent();
     }
 
     /**
@@ -89,6 +89,20 @@ public class TrapQueueProcessorFactory implements InitializingBean {
     @Autowired
     private EventConfDao m_eventConfDao;
 
+    /**
+     * @return the eventConfDao
+     */
+    public EventConfDao getEventConfDao() {
+        return m_eventConfDao;
+    }
+
+    /**
+     * @param eventConfDao the eventConfDao to set
+     */
+    public void setEventConfDao(EventConfDao eventConfDao) {
+        m_eventConfDao = eventConfDao;
+    }
+
     /**
      * The constructor
      */
@@ -33,7 +33,6 @@ import java.lang.reflect.UndeclaredThrowableException;
 import java.net.InetAddress;
 import java.sql.SQLException;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
 
 import javax.annotation.Resource;
 
@@ -88,15 +87,9 @@ public class Trapd extends AbstractServiceDaemon implements TrapProcessorFactory
     private int m_status = START_PENDING;
 
     /**
-     * The thread pool that processes traps
+     * The stages that decode traps and send them to eventd
      */
-    private ExecutorService m_backlogQ;
-
-    /**
-     * The queue processing thread
-     */
-    @Autowired
-    private TrapQueueProcessorFactory m_processorFactory;
+    private TrapPipeline m_pipeline;
 
     /**
      * The class instance used to receive new events from for the system.
@@ -148,7 +141,7 @@ public class Trapd extends AbstractServiceDaemon implements TrapProcessorFactory
     /** {@inheritDoc} */
     @Override
     public void trapReceived(TrapNotification trapNotification) {
-        m_backlogQ.submit(m_processorFactory.getInstance(trapNotification));
+        m_pipeline.receive(trapNotification);
     }
 
     /**
@@ -158,7 +151,7 @@ public class Trapd extends AbstractServiceDaemon implements TrapProcessorFactory
     public synchronized void onInit() {
         BeanUtils.assertAutowiring(this);
 
-        Assert.state(m_backlogQ != null, "backlogQ must be set");
+        Assert.state(m_pipeline != null, "pipeline must be set");
 
         try {
             m_trapdIpMgr.dataSourceSync();
@@ -217,7 +210,9 @@ public class Trapd extends AbstractServiceDaemon implements TrapProcessorFactory
     public synchronized void onStart() {
         m_status = STARTING;
 
-        LOG.debug("start: Initializing the trapd config factory");
+        LOG.debug("start: Starting the trap pipeline");
+
+        m_pipeline.start();
 
         m_status = RUNNING;
 
@@ -288,7 +283,12 @@ public class Trapd extends AbstractServiceDaemon implements TrapProcessorFactory
 
         LOG.debug("stop: Stopping queue processor.");
 
-        m_backlogQ.shutdown();
+        try {
+            m_pipeline.stop();
+        } catch (final InterruptedException e) {
+            LOG.warn("stop: interrupted while processing the queued traps", e);
+            Thread.currentThread().interrupt();
+        }
 
         m_eventReader.close();
 
@@ -332,21 +332,21 @@ public class Trapd extends AbstractServiceDaemon implements TrapProcessorFactory
     }
 
     /**
-     * <p>getBacklogQ</p>
+     * <p>getPipeline</p>
      *
-     * @return a {@link java.util.concurrent.ExecutorService} object.
+     * @return a {@link org.opennms.netmgt.trapd.TrapPipeline} object.
      */
-    public ExecutorService getBacklogQ() {
-        return m_backlogQ;
+    public TrapPipeline getPipeline() {
+        return m_pipeline;
     }
 
     /**
-     * <p>setBacklogQ</p>
+     * <p>setPipeline</p>
      *
-     * @param backlogQ a {@link java.util.concurrent.ExecutorService} object.
+     * @param pipeline a {@link org.opennms.netmgt.trapd.TrapPipeline} object.
      */
-    public void setBacklogQ(ExecutorService backlogQ) {
-        m_backlogQ = backlogQ;
+    public void setPipeline(TrapPipeline pipeline) {
+        m_pipeline = pipeline;
     }
 
     public static String getLoggingCategory() {
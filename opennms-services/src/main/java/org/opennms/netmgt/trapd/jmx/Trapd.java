@@ -48,4 +48,58 @@ public class Trapd extends AbstractSpringContextJmxServiceDaemon<org.opennms.net
     protected String getSpringContext() {
         return "trapDaemonContext";       
     }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getReceiveQueueDepth() {
+        return getDaemon().getPipeline().getReceiveQueueDepth();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getSendQueueDepth() {
+        return getDaemon().getPipeline().getSendQueueDepth();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getTrapsReceived() {
+        return getDaemon().getPipeline().getTrapsReceived();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getTrapsDropped() {
+        return getDaemon().getPipeline().getTrapsDropped();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getTrapsDecoded() {
+        return getDaemon().getPipeline().getTrapsDecoded();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getDecodeMeanMicros() {
+        return getDaemon().getPipeline().getDecodeMeanMicros();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getEventsSent() {
+        return getDaemon().getPipeline().getEventsSent();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getBatchesSent() {
+        return getDaemon().getPipeline().getBatchesSent();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getSendMeanMicros() {
+        return getDaemon().getPipeline().getSendMeanMicros();
+    }
 }
@@ -37,4 +37,49 @@ import org.opennms.netmgt.daemon.BaseOnmsMBean;
  * @version $Id: $
  */
 public interface TrapdMBean extends BaseOnmsMBean {
+
+    /**
+     * @return the number of traps waiting to be decoded
+     */
+    public int getReceiveQueueDepth();
+
+    /**
+     * @return the number of events waiting to be sent to eventd
+     */
+    public int getSendQueueDepth();
+
+    /**
+     * @return the number of traps received
+     */
+    public long getTrapsReceived();
+
+    /**
+     * @return the number of traps dropped because the receive queue was full
+     */
+    public long getTrapsDropped();
+
+    /**
+     * @return the number of traps decoded
+     */
+    public long getTrapsDecoded();
+
+    /**
+     * @return the mean time taken to decode a trap, in microseconds
+     */
+    public long getDecodeMeanMicros();
+
+    /**
+     * @return the number of events sent to eventd
+     */
+    public long getEventsSent();
+
+    /**
+     * @return the number of batches sent to eventd
+     */
+    public long getBatchesSent();
+
+    /**
+     * @return the mean time taken to send a batch to eventd, in microseconds
+     */
+    public long getSendMeanMicros();
 }
@@ -0,0 +1,425 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.utils;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.opennms.core.utils.InetAddressUtils;
+
+/**
+ * Maps IP addresses to the ids of the nodes they belong to.
+ *
+ * <p>Lookups read an immutable snapshot and never lock, so the daemons that
+ * resolve the node of every message they receive do not contend with each
+ * other or with updates.</p>
+ *
+ * <p>IPv4 addresses are kept as <code>int</code> keys and IPv6 addresses as
+ * pairs of <code>long</code> keys, in open addressed tables of primitive
+ * node ids, so a large index holds no per-address objects.</p>
+ *
+ * <p>Single address updates do not rebuild the tables. They go into a small
+ * map of pending changes that lookups check first, and the changes are
+ * folded into new tables once there are enough of them to pay for the
+ * copy.</p>
+ */
+public class IpNodeIndex {
+
+    private static final int EMPTY = 0;
+
+    /**
+     * Marks a removed address in a table of pending changes.
+     */
+    private static final int REMOVED = -1;
+
+    /**
+     * The fewest pending changes worth folding into new tables.
+     */
+    private static final int MIN_PENDING = 256;
+
+    /**
+     * An open addressed table of 32-bit keys. A node id of 0 marks an empty
+     * slot, since node ids start at 1. Tables are only modified before they
+     * are published.
+     */
+    private static final class V4Table {
+        private final int[] m_keys;
+        private final int[] m_nodes;
+        private int m_size;
+
+        private V4Table(final int expected) {
+            final int capacity = capacityFor(expected);
+            m_keys = new int[capacity];
+            m_nodes = new int[capacity];
+        }
+
+        private int slot(final int key) {
+            final int mask = m_keys.length - 1;
+            int i = mix(key) & mask;
+            while (m_nodes[i] != EMPTY && m_keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+        private int get(final int key) {
+            final int node = m_nodes[slot(key)];
+            return node == EMPTY ? -1 : node;
+        }
+
+        private int raw(final int key) {
+            return m_nodes[slot(key)];
+        }
+
+        private void put(final int key, final int nodeId) {
+            final int i = slot(key);
+            if (m_nodes[i] == EMPTY) {
+                m_size++;
+            }
+            m_keys[i] = key;
+            m_nodes[i] = nodeId;
+        }
+
+        /**
+         * Builds a new table from this one with the given changes applied.
+         */
+        private V4Table apply(final V4Table changes) {
+            final V4Table table = new V4Table(m_size + changes.m_size);
+            for (int i = 0; i < m_keys.length; i++) {
+                if (m_nodes[i] != EMPTY && changes.raw(m_keys[i]) == EMPTY) {
+                    table.put(m_keys[i], m_nodes[i]);
+                }
+            }
+            for (int i = 0; i < changes.m_keys.length; i++) {
+                if (changes.m_nodes[i] != EMPTY && changes.m_nodes[i] != REMOVED) {
+                    table.put(changes.m_keys[i], changes.m_nodes[i]);
+                }
+            }
+            return table;
+        }
+    }
+
+    /**
+     * An open addressed table of 128-bit keys, kept as two longs.
+     */
+    private static final class V6Table {
+        private final long[] m_high;
+        private final long[] m_low;
+        private final int[] m_nodes;
+        private int m_size;
+
+        private V6Table(final int expected) {
+            final int capacity = capacityFor(expected);
+            m_high = new long[capacity];
+            m_low = new long[capacity];
+            m_nodes = new int[capacity];
+        }
+
+        private int slot(final long high, final long low) {
+            final int mask = m_nodes.length - 1;
+            int i = mix((int)(high ^ (high >>> 32) ^ low ^ (low >>> 32))) & mask;
+            while (m_nodes[i] != EMPTY && (m_high[i] != high || m_low[i] != low)) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+        private int get(final long high, final long low) {
+            final int node = m_nodes[slot(high, low)];
+            return node == EMPTY ? -1 : node;
+        }
+
+        private int raw(final long high, final long low) {
+            return m_nodes[slot(high, low)];
+        }
+
+        private void put(final long high, final long low, final int nodeId) {
+            final int i = slot(high, low);
+            if (m_nodes[i] == EMPTY) {
+                m_size++;
+            }
+            m_high[i] = high;
+            m_low[i] = low;
+            m_nodes[i] = nodeId;
+        }
+
+        /**
+         * Builds a new table from this one with the given changes applied.
+         */
+        private V6Table apply(final V6Table changes) {
+            final V6Table table = new V6Table(m_size + changes.m_size);
+            for (int i = 0; i < m_nodes.length; i++) {
+                if (m_nodes[i] != EMPTY && changes.raw(m_high[i], m_low[i]) == EMPTY) {
+                    table.put(m_high[i], m_low[i], m_nodes[i]);
+                }
+            }
+            for (int i = 0; i < changes.m_nodes.length; i++) {
+                if (changes.m_nodes[i] != EMPTY && changes.m_nodes[i] != REMOVED) {
+                    table.put(changes.m_high[i], changes.m_low[i], changes.m_nodes[i]);
+                }
+            }
+            return table;
+        }
+    }
+
+    /**
+     * The published state: the tables, and the changes made since they were
+     * built. Only the map of pending changes is ever modified after
+     * publication, and only by a thread holding the index's lock.
+     */
+    private static final class Snapshot {
+        private final V4Table m_v4;
+        private final V6Table m_v6;
+        private final ConcurrentHashMap<InetAddress, Integer> m_pending = new ConcurrentHashMap<InetAddress, Integer>();
+
+        private Snapshot(final V4Table v4, final V6Table v6) {
+            m_v4 = v4;
+            m_v6 = v6;
+        }
+    }
+
+    private volatile Snapshot m_snapshot = new Snapshot(new V4Table(0), new V6Table(0));
+
+    private volatile int m_size = 0;
+
+    /**
+     * Returns the id of the node an address belongs to.
+     *
+     * @param addr a {@link java.net.InetAddress} object.
+     * @return the node id, or -1 if the address is not known
+     */
+    public int getNodeId(final InetAddress addr) {
+        if (addr == null) {
+            return -1;
+        }
+        return getNodeId(m_snapshot, addr);
+    }
+
+    private static int getNodeId(final Snapshot snapshot, final InetAddress addr) {
+        if (!snapshot.m_pending.isEmpty()) {
+            final Integer pending = snapshot.m_pending.get(addr);
+            if (pending != null) {
+                return pending.intValue() == REMOVED ? -1 : pending.intValue();
+            }
+        }
+        final byte[] bytes = addr.getAddress();
+        if (addr instanceof Inet4Address) {
+            return snapshot.m_v4.get(v4Key(bytes));
+        }
+        return snapshot.m_v6.get(v6High(bytes), v6Low(bytes));
+    }
+
+    /**
+     * Returns the id of the node an address belongs to.
+     *
+     * @param addr the address as a string
+     * @return the node id, or -1 if the address is not known or not valid
+     */
+    public int getNodeId(final String addr) {
+        return getNodeId(parse(addr));
+    }
+
+    /**
+     * Maps an address to a node.
+     *
+     * @param addr a {@link java.net.InetAddress} object.
+     * @param nodeId a int.
+     * @return the node the address was mapped to before, or -1
+     */
+    public synchronized int setNodeId(final InetAddress addr, final int nodeId) {
+        if (addr == null || nodeId < 1) {
+            return -1;
+        }
+        return change(addr, nodeId);
+    }
+
+    /**
+     * Forgets an address.
+     *
+     * @param addr a {@link java.net.InetAddress} object.
+     * @return the node the address was mapped to, or -1
+     */
+    public synchronized int removeNodeId(final InetAddress addr) {
+        if (addr == null) {
+            return -1;
+        }
+        return change(addr, REMOVED);
+    }
+
+    private int change(final InetAddress addr, final int nodeId) {
+        final Snapshot snapshot = m_snapshot;
+        final int previous = getNodeId(snapshot, addr);
+        if (previous == (nodeId == REMOVED ? -1 : nodeId)) {
+            return previous;
+        }
+        snapshot.m_pending.put(addr, nodeId);
+        m_size += (previous == -1 ? 1 : 0) - (nodeId == REMOVED ? 1 : 0);
+        if (snapshot.m_pending.size() >= Math.max(MIN_PENDING, m_size / 8)) {
+            fold(snapshot);
+        }
+        return previous;
+    }
+
+    /**
+     * Builds new tables with the pending changes applied and publishes them
+     * with no pending changes. Lookups that still hold the old snapshot see
+     * the same mapping through its tables and pending changes.
+     */
+    private void fold(final Snapshot snapshot) {
+        int v4Count = 0;
+        for (final InetAddress addr : snapshot.m_pending.keySet()) {
+            if (addr instanceof Inet4Address) {
+                v4Count++;
+            }
+        }
+        final V4Table v4 = new V4Table(v4Count);
+        final V6Table v6 = new V6Table(snapshot.m_pending.size() - v4Count);
+        for (final Map.Entry<InetAddress, Integer> entry : snapshot.m_pending.entrySet()) {
+            final byte[] bytes = entry.getKey().getAddress();
+            if (entry.getKey() instanceof Inet4Address) {
+                v4.put(v4Key(bytes), entry.getValue().intValue());
+            } else {
+                v6.put(v6High(bytes), v6Low(bytes), entry.getValue().intValue());
+            }
+        }
+        m_snapshot = new Snapshot(v4Count == 0 ? snapshot.m_v4 : snapshot.m_v4.apply(v4),
+                                  v4Count == snapshot.m_pending.size() ? snapshot.m_v6 : snapshot.m_v6.apply(v6));
+    }
+
+    /**
+     * Replaces the whole index.
+     *
+     * @param nodeIds the node id of each address
+     */
+    public synchronized void load(final Map<InetAddress, Integer> nodeIds) {
+        int v4Count = 0;
+        for (final InetAddress addr : nodeIds.keySet()) {
+            if (addr instanceof Inet4Address) {
+                v4Count++;
+            }
+        }
+        final V4Table v4 = new V4Table(v4Count);
+        final V6Table v6 = new V6Table(nodeIds.size() - v4Count);
+        for (final Map.Entry<InetAddress, Integer> entry : nodeIds.entrySet()) {
+            if (entry.getKey() == null || entry.getValue() == null || entry.getValue().intValue() < 1) {
+                continue;
+            }
+            final byte[] bytes = entry.getKey().getAddress();
+            if (entry.getKey() instanceof Inet4Address) {
+                v4.put(v4Key(bytes), entry.getValue().intValue());
+            } else {
+                v6.put(v6High(bytes), v6Low(bytes), entry.getValue().intValue());
+            }
+        }
+        m_snapshot = new Snapshot(v4, v6);
+        m_size = v4.m_size + v6.m_size;
+    }
+
+    /**
+     * Forgets every address.
+     */
+    public synchronized void clear() {
+        m_snapshot = new Snapshot(new V4Table(0), new V6Table(0));
+        m_size = 0;
+    }
+
+    /**
+     * @return the number of addresses in the index
+     */
+    public int size() {
+        return m_size;
+    }
+    /**
+     * Parses an address, returning null rather than throwing if it is not
+     * valid. Host names are not resolved.
+     *
+     * @param addr the address as a string
+     * @return a {@link java.net.InetAddress} object, or null
+     */
+    public static InetAddress parse(final String addr) {
+        if (addr == null || !isLiteral(addr)) {
+            return null;
+        }
+        try {
+            return InetAddressUtils.addr(addr);
+        } catch (final IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static boolean isLiteral(final String addr) {
+        if (addr.indexOf(':') >= 0) {
+            return true;
+        }
+        for (int i = 0; i < addr.length(); i++) {
+            final char c = addr.charAt(i);
+            if ((c < '0' || c > '9') && c != '.' && c != ' ') {
+                return false;
+            }
+        }
+        return addr.trim().length() > 0;
+    }
+
+    private static int capacityFor(final int expected) {
+        // keep the tables at most half full
+        int capacity = 16;
+        while (capacity < expected * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int mix(final int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int v4Key(final byte[] bytes) {
+        return ((bytes[0] & 0xff) << 24) | ((bytes[1] & 0xff) << 16) | ((bytes[2] & 0xff) << 8) | (bytes[3] & 0xff);
+    }
+
+    private static long v6High(final byte[] bytes) {
+        return toLong(bytes, 0);
+    }
+
+    private static long v6Low(final byte[] bytes) {
+        return toLong(bytes, 8);
+    }
+
+    private static long toLong(final byte[] bytes, final int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            value = (value << 8) | (bytes[i] & 0xff);
+        }
+        return value;
+    }
+}
@@ -123,7 +123,8 @@ public class AutomationProcessor implements ClusterRunnable, Reschedulable {
                 
                 Connection conn = Transaction.getConnection(m_trigger.getDataSource());
 
-                Statement triggerStatement = conn.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_READ_ONLY);
+                // keep the rows open across the per-batch commits of the action, if any
+                Statement triggerStatement = conn.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_READ_ONLY, ResultSet.HOLD_CURSORS_OVER_COMMIT);
                 Transaction.register(triggerStatement);
 
                 ResultSet triggerResultSet = triggerStatement.executeQuery(getTriggerSQL());
@@ -190,17 +191,31 @@ public class AutomationProcessor implements ClusterRunnable, Reschedulable {
     	private final TriggerProcessor m_trigger;
     	private final ResultSet m_resultSet;
     	private final boolean m_successful;
+    	private final int m_rowCount;
     	
 		public TriggerResults(TriggerProcessor trigger, ResultSet set, boolean successful) {
+			this(trigger, set, successful, 0);
+		}
+
+		public TriggerResults(TriggerProcessor trigger, ResultSet set, boolean successful, int rowCount) {
 			m_trigger = trigger;
 			m_resultSet = set;
 			m_successful = successful;
+			m_rowCount = rowCount;
 		}
 		
 		public boolean hasTrigger() {
 			return m_trigger.hasTrigger();
 		}
 
+		public TriggerProcessor getTrigger() {
+			return m_trigger;
+		}
+
+        public int getRowCount() {
+            return m_rowCount;
+        }
+
         public ResultSet getResultSet() {
             return m_resultSet;
         }
@@ -220,6 +235,11 @@ public class AutomationProcessor implements ClusterRunnable, Reschedulable {
         private final String m_automationName;
         private final Action m_action;
 
+        // row counts of the last run, read by the automation for its statistics
+        private transient int m_rowsAffected;
+        private transient int m_batches;
+        private transient boolean m_setBased;
+
         public ActionProcessor(String automationName, Action action) {
             m_automationName = automationName;
             m_action = action;
@@ -290,6 +310,26 @@ public class AutomationProcessor implements ClusterRunnable, Reschedulable {
         
         }
 
+        /**
+         * Resolves the action tokens to trigger column indexes once so they
+         * don't have to be looked up by name for every row.
+         */
+        int[] getActionColumnIndexes(ResultSet rs) throws SQLException {
+            List<String> actionColumns = getActionColumns();
+            int[] indexes = new int[actionColumns.size()];
+            int i = 0;
+            for (String actionColumnName : actionColumns) {
+                indexes[i++] = rs.findColumn(actionColumnName);
+            }
+            return indexes;
+        }
+
+        void assignStatementParameters(PreparedStatement stmt, ResultSet rs, int[] columnIndexes) throws SQLException {
+            for (int i = 0; i < columnIndexes.length; i++) {
+                stmt.setObject(i + 1, rs.getObject(columnIndexes[i]));
+            }
+        }
+
         /**
          * Counts the number of tokens in an Action Statement.
          * @param targetString
@@ -319,7 +359,8 @@ public class AutomationProcessor implements ClusterRunnable, Reschedulable {
             } else {
                 //Convert the sql to a PreparedStatement
                 PreparedStatement actionStatement = createPreparedStatement();
-                actionStatement.executeUpdate();
+                m_rowsAffected = actionStatement.executeUpdate();
+                m_batches = 1;
                 return true;
             }
         }
@@ -330,25 +371,110 @@ public class AutomationProcessor implements ClusterRunnable, Reschedulable {
             triggerResultSet.beforeFirst();
             
             PreparedStatement actionStatement = createPreparedStatement();
-        
-            //Loop through the select results
-            while (triggerResultSet.next()) {                        
-                //Convert the sql to a PreparedStatement
-                assignStatementParameters(actionStatement, triggerResultSet);
-                actionStatement.executeUpdate();
+            int[] columnIndexes = getActionColumnIndexes(triggerResultSet);
+            int batchSize = m_action.getBatchSize();
+
+            if (batchSize <= 1) {
+                //Loop through the select results
+                while (triggerResultSet.next()) {
+                    assignStatementParameters(actionStatement, triggerResultSet, columnIndexes);
+                    m_rowsAffected += actionStatement.executeUpdate();
+                    m_batches++;
+                }
+                return true;
+            }
+
+            // send the rows in batches; only commit each batch when asked to,
+            // since a later failure can't roll back what was committed
+            boolean commitBatches = m_action.getCommitBatches();
+            int pending = 0;
+            while (triggerResultSet.next()) {
+                assignStatementParameters(actionStatement, triggerResultSet, columnIndexes);
+                actionStatement.addBatch();
+                if (++pending == batchSize) {
+                    executeBatch(actionStatement);
+                    if (commitBatches) {
+                        Transaction.commit(m_action.getDataSource());
+                    }
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                executeBatch(actionStatement);
+            }
+
+            return true;
+        }
+
+        private void executeBatch(PreparedStatement actionStatement) throws SQLException {
+            for (int count : actionStatement.executeBatch()) {
+                // drivers may answer SUCCESS_NO_INFO instead of a row count
+                if (count > 0) {
+                    m_rowsAffected += count;
+                }
+            }
+            m_batches++;
+            LOG.debug("executeBatch: action {} for automation {} has changed {} rows in {} batches", m_action.getName(), m_automationName, m_rowsAffected, m_batches);
+        }
+
+        /**
+         * Runs the action once, joined against the trigger query.  Returns
+         * false if the statements can not be combined, in which case the
+         * action has to be run row by row.
+         */
+        boolean processSetBased(TriggerResults triggerResults) throws SQLException {
+            Trigger trigger = triggerResults.getTrigger().getTrigger();
+            if (!m_action.getDataSource().equals(trigger.getDataSource())) {
+                LOG.info("processSetBased: action {} and trigger {} of automation {} use different data sources; running the action row by row", m_action.getName(), trigger.getName(), m_automationName);
+                return false;
             }
 
+            String setBasedSQL = SetBasedStatement.rewrite(triggerResults.getTrigger().getTriggerSQL(), getActionSQL());
+            if (setBasedSQL == null) {
+                LOG.info("processSetBased: action {} of automation {} can not be joined against its trigger; running the action row by row", m_action.getName(), m_automationName);
+                return false;
+            }
+
+            LOG.debug("processSetBased: This action SQL: {}\nTurned into this: {}", getActionSQL(), setBasedSQL);
+
+            Connection conn = Transaction.getConnection(m_action.getDataSource());
+            Statement stmt = conn.createStatement();
+            Transaction.register(stmt);
+            m_rowsAffected = stmt.executeUpdate(setBasedSQL);
+            m_batches = 1;
+            m_setBased = true;
             return true;
         }
 
+		void resetCounts() {
+			m_rowsAffected = 0;
+			m_batches = 0;
+			m_setBased = false;
+		}
+
 		boolean processAction(TriggerResults triggerResults) throws SQLException {
 			if (triggerResults.hasTrigger()) {
+			    if (m_action.getSetBased() && processSetBased(triggerResults)) {
+			        return true;
+			    }
 			    return processTriggerResults(triggerResults);
 			} else {
 			    return execute();
 			}
 		}
 
+		int getRowsAffected() {
+		    return m_rowsAffected;
+		}
+
+		int getBatches() {
+		    return m_batches;
+		}
+
+		boolean isSetBased() {
+		    return m_setBased;
+		}
+
 		public String getName() {
 			return m_action.getName();
 		}
@@ -664,11 +790,17 @@ public class AutomationProcessor implements ClusterRunnable, Reschedulable {
         LOG.debug("runAutomation: Executing trigger: {}", m_automation.getTriggerName());
         
         
+        long startTime = System.currentTimeMillis();
+        int triggerRows = 0;
+        boolean failed = false;
+        m_action.resetCounts();
+
         Transaction.begin();
         try {
             LOG.debug("runAutomation: Processing automation: {}", m_automation.getName());
 
             TriggerResults results = processTrigger();
+            triggerRows = results.getRowCount();
             
             boolean success = false;
             if (results.isSuccessful()) {
@@ -678,6 +810,7 @@ public class AutomationProcessor implements ClusterRunnable, Reschedulable {
 			return success;
 
         } catch (Throwable e) {
+            failed = true;
         	Transaction.rollbackOnly();
             LOG.warn("runAutomation: Could not execute automation: {}", m_automation.getName(), e);
             return false;
@@ -685,7 +818,11 @@ public class AutomationProcessor implements ClusterRunnable, Reschedulable {
 
             LOG.debug("runAutomation: Ending processing of automation: {}", m_automation.getName());
             
-            Transaction.end();         
+            try {
+                Transaction.end();
+            } finally {
+                AutomationStats.forAutomation(m_automation.getName()).runCompleted(!failed, System.currentTimeMillis() - startTime, triggerRows, m_action.getRowsAffected(), m_action.getBatches(), m_action.isSetBased());
+            }
         }
 
     }
@@ -712,7 +849,8 @@ public class AutomationProcessor implements ClusterRunnable, Reschedulable {
 			
             ResultSet triggerResultSet = m_trigger.runTriggerQuery();
 
-            TriggerResults triggerResults = new TriggerResults(m_trigger, triggerResultSet, verifyRowCount(triggerResultSet));
+            int resultRows = countRows(triggerResultSet);
+            TriggerResults triggerResults = new TriggerResults(m_trigger, triggerResultSet, verifyRowCount(resultRows), resultRows);
 
 			return triggerResults;
             
@@ -733,12 +871,13 @@ public class AutomationProcessor implements ClusterRunnable, Reschedulable {
             return true;
         }
         
-        
-        int resultRows;
-        boolean validRows = true;
         //determine if number of rows required by the trigger row-count and operator were
         //met by the trigger query, if so we'll run the action
-        resultRows = countRows(triggerResultSet);
+        return verifyRowCount(countRows(triggerResultSet));
+    }
+
+    private boolean verifyRowCount(int resultRows) {
+        boolean validRows = true;
         
         int triggerRowCount = m_trigger.getTrigger().getRowCount();
         String triggerOperator = m_trigger.getTrigger().getOperator();
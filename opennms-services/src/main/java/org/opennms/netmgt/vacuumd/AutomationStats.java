@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.vacuumd;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Run counters, row counts and timings for a single automation.  The
+ * statistics are kept by automation name so they survive a configuration
+ * reload.
+ */
+public class AutomationStats implements AutomationStatsMBean {
+    private static final Logger LOG = LoggerFactory.getLogger(AutomationStats.class);
+
+    private static final ConcurrentMap<String, AutomationStats> s_stats = new ConcurrentHashMap<String, AutomationStats>();
+
+    private final String m_automationName;
+
+    private final AtomicLong m_runs = new AtomicLong();
+    private final AtomicLong m_failures = new AtomicLong();
+    private final AtomicLong m_totalRowsAffected = new AtomicLong();
+    private final AtomicLong m_totalDuration = new AtomicLong();
+    private final AtomicLong m_maxDuration = new AtomicLong();
+    private volatile long m_lastTriggerRows;
+    private volatile long m_lastRowsAffected;
+    private volatile long m_lastBatches;
+    private volatile boolean m_lastRunSetBased;
+    private volatile long m_lastDuration;
+
+    AutomationStats(final String automationName) {
+        m_automationName = automationName;
+    }
+
+    /**
+     * Returns the statistics for the named automation, creating and
+     * registering them with the platform MBean server on first use.
+     *
+     * @param automationName the name of the automation
+     * @return the statistics for the automation
+     */
+    public static AutomationStats forAutomation(final String automationName) {
+        AutomationStats stats = s_stats.get(automationName);
+        if (stats == null) {
+            final AutomationStats created = new AutomationStats(automationName);
+            stats = s_stats.putIfAbsent(automationName, created);
+            if (stats == null) {
+                stats = created;
+                stats.register();
+            }
+        }
+        return stats;
+    }
+
+    private void register() {
+        try {
+            final ObjectName objectName = new ObjectName("OpenNMS:Name=Vacuumd,Automation=" + ObjectName.quote(m_automationName));
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+        } catch (final JMException e) {
+            LOG.warn("Unable to register statistics for automation {}", m_automationName, e);
+        }
+    }
+
+    void runCompleted(final boolean successful, final long duration, final int triggerRows, final int rowsAffected, final int batches, final boolean setBased) {
+        m_runs.incrementAndGet();
+        if (!successful) {
+            m_failures.incrementAndGet();
+        }
+        m_lastDuration = duration;
+        m_totalDuration.addAndGet(duration);
+        long max = m_maxDuration.get();
+        while (duration > max && !m_maxDuration.compareAndSet(max, duration)) {
+            max = m_maxDuration.get();
+        }
+        m_lastTriggerRows = triggerRows;
+        m_lastRowsAffected = rowsAffected;
+        m_lastBatches = batches;
+        m_lastRunSetBased = setBased;
+        if (successful) {
+            m_totalRowsAffected.addAndGet(rowsAffected);
+        }
+    }
+
+    @Override
+    public String getAutomationName() {
+        return m_automationName;
+    }
+
+    @Override
+    public long getRuns() {
+        return m_runs.get();
+    }
+
+    @Override
+    public long getFailures() {
+        return m_failures.get();
+    }
+
+    @Override
+    public long getLastTriggerRows() {
+        return m_lastTriggerRows;
+    }
+
+    @Override
+    public long getLastRowsAffected() {
+        return m_lastRowsAffected;
+    }
+
+    @Override
+    public long getTotalRowsAffected() {
+        return m_totalRowsAffected.get();
+    }
+
+    @Override
+    public long getLastBatches() {
+        return m_lastBatches;
+    }
+
+    @Override
+    public boolean isLastRunSetBased() {
+        return m_lastRunSetBased;
+    }
+
+    @Override
+    public long getLastDuration() {
+        return m_lastDuration;
+    }
+
+    @Override
+    public double getAverageDuration() {
+        final long runs = m_runs.get();
+        return runs == 0 ? 0.0 : (double)m_totalDuration.get() / runs;
+    }
+
+    @Override
+    public long getMaxDuration() {
+        return m_maxDuration.get();
+    }
+
+    @Override
+    public void reset() {
+        m_runs.set(0);
+        m_failures.set(0);
+        m_totalRowsAffected.set(0);
+        m_totalDuration.set(0);
+        m_maxDuration.set(0);
+        m_lastTriggerRows = 0;
+        m_lastRowsAffected = 0;
+        m_lastBatches = 0;
+        m_lastRunSetBased = false;
+        m_lastDuration = 0;
+    }
+}
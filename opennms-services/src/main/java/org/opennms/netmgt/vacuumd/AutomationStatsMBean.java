@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.vacuumd;
+
+/**
+ * JMX view of a single automation.  One of these is registered for each
+ * automation that has run as
+ * <code>OpenNMS:Name=Vacuumd,Automation=&lt;automation name&gt;</code>.
+ */
+public interface AutomationStatsMBean {
+    /**
+     * @return the name of the automation
+     */
+    String getAutomationName();
+
+    /**
+     * @return the number of times the automation has run
+     */
+    long getRuns();
+
+    /**
+     * @return the number of runs that were rolled back
+     */
+    long getFailures();
+
+    /**
+     * @return the number of rows the trigger returned on the last run
+     */
+    long getLastTriggerRows();
+
+    /**
+     * @return the number of rows the action changed on the last run
+     */
+    long getLastRowsAffected();
+
+    /**
+     * @return the total number of rows the action has changed
+     */
+    long getTotalRowsAffected();
+
+    /**
+     * @return the number of statements or batches sent on the last run
+     */
+    long getLastBatches();
+
+    /**
+     * @return whether the last run joined the action against the trigger
+     *         instead of running it once per row
+     */
+    boolean isLastRunSetBased();
+
+    /**
+     * @return the time, in milliseconds, the last run took
+     */
+    long getLastDuration();
+
+    /**
+     * @return the mean time, in milliseconds, a run took
+     */
+    double getAverageDuration();
+
+    /**
+     * @return the longest time, in milliseconds, a run took
+     */
+    long getMaxDuration();
+
+    /**
+     * Reset the counters.
+     */
+    void reset();
+}
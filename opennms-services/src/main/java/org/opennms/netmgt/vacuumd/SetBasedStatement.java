@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.vacuumd;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Rewrites an action that is run once per trigger row into a single
+ * statement that joins the action against the trigger query.
+ *
+ * <p>Only a plain <code>UPDATE</code> or <code>DELETE</code> with at most
+ * one top-level <code>WHERE</code> is rewritten.  The trigger becomes a
+ * sub-select in the <code>FROM</code> (or <code>USING</code>) clause and
+ * every <code>${column}</code> token becomes a reference to that
+ * sub-select.  The token columns are renamed inside the sub-select so they
+ * can not clash with unqualified columns of the target table.</p>
+ *
+ * <p>For example</p>
+ * <pre>
+ * UPDATE alarms SET severity = 2 WHERE reductionKey = ${clearKey}
+ * </pre>
+ * <p>becomes</p>
+ * <pre>
+ * UPDATE alarms SET severity = 2
+ *   FROM (SELECT clearKey AS vacuumd_0 FROM (&lt;trigger&gt;) AS vacuumd_rows) AS vacuumd_trigger
+ *  WHERE reductionKey = vacuumd_trigger.vacuumd_0
+ * </pre>
+ */
+final class SetBasedStatement {
+    static final String TRIGGER_ALIAS = "vacuumd_trigger";
+
+    private static final Pattern TOKEN = Pattern.compile("\\$\\{(\\w+)\\}");
+    private static final Pattern UPDATE = Pattern.compile("^\\s*update\\s", Pattern.CASE_INSENSITIVE);
+    private static final Pattern DELETE = Pattern.compile("^\\s*delete\\s+from\\s", Pattern.CASE_INSENSITIVE);
+
+    private SetBasedStatement() {
+    }
+
+    /**
+     * Returns the combined statement, or <code>null</code> if the action
+     * can not safely be rewritten and has to be run once per trigger row.
+     *
+     * @param triggerSQL the trigger query
+     * @param actionSQL the action statement containing <code>${column}</code> tokens
+     * @return the set-based statement or <code>null</code>
+     */
+    static String rewrite(final String triggerSQL, final String actionSQL) {
+        if (triggerSQL == null || actionSQL == null) {
+            return null;
+        }
+        final String trigger = stripTerminator(triggerSQL);
+        final String action = stripTerminator(actionSQL);
+        if (hasComment(trigger) || hasComment(action) || !TOKEN.matcher(action).find()) {
+            return null;
+        }
+
+        final String joinKeyword;
+        if (UPDATE.matcher(action).find()) {
+            if (!findTopLevel(action, "from").isEmpty()) {
+                return null;
+            }
+            joinKeyword = "FROM";
+        } else if (DELETE.matcher(action).find()) {
+            if (!findTopLevel(action, "using").isEmpty()) {
+                return null;
+            }
+            joinKeyword = "USING";
+        } else {
+            return null;
+        }
+        if (!findTopLevel(action, "returning").isEmpty()) {
+            return null;
+        }
+
+        final List<Integer> wheres = findTopLevel(action, "where");
+        if (wheres.size() > 1) {
+            return null;
+        }
+
+        // give every distinct token column a name the target table will not have
+        final Map<String, String> columns = new LinkedHashMap<String, String>();
+        final StringBuffer body = new StringBuffer();
+        final Matcher m = TOKEN.matcher(action);
+        while (m.find()) {
+            final String column = m.group(1).toLowerCase();
+            String alias = columns.get(column);
+            if (alias == null) {
+                alias = "vacuumd_" + columns.size();
+                columns.put(column, alias);
+            }
+            m.appendReplacement(body, TRIGGER_ALIAS + "." + alias);
+        }
+        m.appendTail(body);
+
+        final StringBuilder select = new StringBuilder("SELECT ");
+        boolean first = true;
+        for (final Map.Entry<String, String> entry : columns.entrySet()) {
+            if (!first) {
+                select.append(", ");
+            }
+            select.append(entry.getKey()).append(" AS ").append(entry.getValue());
+            first = false;
+        }
+        select.append(" FROM (").append(trigger).append(") AS vacuumd_rows");
+
+        final String join = " " + joinKeyword + " (" + select + ") AS " + TRIGGER_ALIAS + " ";
+
+        // the tokens were replaced by longer text, so find the WHERE again
+        final String rewritten = body.toString();
+        final List<Integer> rewrittenWheres = findTopLevel(rewritten, "where");
+        if (rewrittenWheres.size() != wheres.size()) {
+            return null;
+        }
+        if (rewrittenWheres.isEmpty()) {
+            return rewritten + join;
+        }
+        final int where = rewrittenWheres.get(0);
+        return rewritten.substring(0, where) + join + rewritten.substring(where);
+    }
+
+    private static String stripTerminator(final String sql) {
+        String s = sql.trim();
+        while (s.endsWith(";")) {
+            s = s.substring(0, s.length() - 1).trim();
+        }
+        return s;
+    }
+
+    private static boolean hasComment(final String sql) {
+        return sql.contains("--") || sql.contains("/*");
+    }
+
+    /**
+     * Finds the offsets of a keyword that is outside of any parentheses or
+     * quoted text.
+     */
+    static List<Integer> findTopLevel(final String sql, final String keyword) {
+        final List<Integer> found = new ArrayList<Integer>();
+        final int len = sql.length();
+        final int klen = keyword.length();
+        int depth = 0;
+        char quote = 0;
+        for (int i = 0; i < len; i++) {
+            final char c = sql.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (depth == 0
+                    && (i == 0 || !isIdentifierChar(sql.charAt(i - 1)))
+                    && i + klen <= len
+                    && sql.regionMatches(true, i, keyword, 0, klen)
+                    && (i + klen == len || !isIdentifierChar(sql.charAt(i + klen)))) {
+                found.add(i);
+                i += klen - 1;
+            }
+        }
+        return found;
+    }
+
+    private static boolean isIdentifierChar(final char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '.';
+    }
+}
@@ -0,0 +1,195 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.collectd;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.opennms.core.utils.InetAddressUtils;
+
+public class CollectableServiceRegistryTest {
+
+    private final CollectableServiceRegistry m_registry = new CollectableServiceRegistry();
+
+    private static CollectableService service(final int nodeId, final String address, final String packageName, final String serviceName) {
+        final CollectableService cSvc = createNiceMock(CollectableService.class);
+        expect(cSvc.getNodeId()).andReturn(nodeId).anyTimes();
+        expect(cSvc.getAddress()).andReturn(InetAddressUtils.addr(address)).anyTimes();
+        expect(cSvc.getPackageName()).andReturn(packageName).anyTimes();
+        expect(cSvc.getServiceName()).andReturn(serviceName).anyTimes();
+        replay(cSvc);
+        return cSvc;
+    }
+
+    @Test
+    public void testAddAndRemove() {
+        final InetAddress address = InetAddressUtils.addr("192.168.1.1");
+        final CollectableService snmp = service(1, "192.168.1.1", "example1", "SNMP");
+        final CollectableService jmx = service(1, "192.168.1.1", "example1", "JMX");
+
+        assertTrue(m_registry.add(snmp));
+        assertTrue(m_registry.add(jmx));
+        assertEquals(2, m_registry.size());
+        assertTrue(m_registry.contains(1, address, "example1", "SNMP"));
+        assertTrue(m_registry.contains(1, address, "example1", "JMX"));
+        assertEquals(2, m_registry.getByNode(1).size());
+        assertEquals(2, m_registry.getByAddress(address).size());
+
+        assertTrue(m_registry.remove(snmp));
+        assertFalse("a service can only be removed once", m_registry.remove(snmp));
+        assertFalse(m_registry.contains(1, address, "example1", "SNMP"));
+        assertEquals(1, m_registry.size());
+        assertEquals(1, m_registry.getByNode(1).size());
+        assertEquals(1, m_registry.getByAddress(address).size());
+
+        assertTrue(m_registry.remove(jmx));
+        assertEquals(0, m_registry.size());
+        assertTrue(m_registry.getByNode(1).isEmpty());
+        assertTrue(m_registry.getByAddress(address).isEmpty());
+        assertEquals("empty index buckets should be dropped", 0, m_registry.indexSize());
+    }
+
+    @Test
+    public void testSameAddressOnTwoNodes() {
+        final InetAddress address = InetAddressUtils.addr("10.1.1.1");
+        final CollectableService node1 = service(1, "10.1.1.1", "example1", "SNMP");
+        final CollectableService node2 = service(2, "10.1.1.1", "example1", "SNMP");
+
+        assertTrue(m_registry.add(node1));
+        assertTrue(m_registry.contains(1, address, "example1", "SNMP"));
+        assertFalse("node 2 doesn't collect the address yet", m_registry.contains(2, address, "example1", "SNMP"));
+
+        assertTrue(m_registry.add(node2));
+        assertEquals(2, m_registry.getByAddress(address).size());
+
+        assertTrue(m_registry.remove(node1));
+        assertFalse(m_registry.contains(1, address, "example1", "SNMP"));
+        assertTrue(m_registry.contains(2, address, "example1", "SNMP"));
+        assertTrue(m_registry.getByNode(1).isEmpty());
+        assertEquals(1, m_registry.getByAddress(address).size());
+        assertEquals(2, m_registry.indexSize());
+    }
+
+    @Test
+    public void testReparentDropsEmptyBucket() {
+        final InetAddress address = InetAddressUtils.addr("10.1.1.1");
+        final CollectableService cSvc = service(1, "10.1.1.1", "example1", "SNMP");
+
+        assertTrue(m_registry.add(cSvc));
+        m_registry.reparent(cSvc, 2);
+
+        assertTrue(m_registry.getByNode(1).isEmpty());
+        assertEquals(1, m_registry.getByNode(2).size());
+        assertFalse(m_registry.contains(1, address, "example1", "SNMP"));
+        assertTrue(m_registry.contains(2, address, "example1", "SNMP"));
+        assertEquals(2, m_registry.indexSize());
+    }
+
+    @Test
+    public void testDuplicateRejected() {
+        final InetAddress address = InetAddressUtils.addr("192.168.1.1");
+        final CollectableService first = service(1, "192.168.1.1", "example1", "SNMP");
+        final CollectableService duplicate = service(1, "192.168.1.1", "example1", "SNMP");
+
+        assertTrue(m_registry.add(first));
+        assertFalse(m_registry.add(duplicate));
+
+        assertEquals(1, m_registry.size());
+        assertEquals(1, m_registry.getByNode(1).size());
+        assertSame(first, m_registry.getByAddress(address).iterator().next());
+
+        // removing the rejected duplicate must not touch the registered service
+        assertFalse(m_registry.remove(duplicate));
+        assertTrue(m_registry.contains(1, address, "example1", "SNMP"));
+    }
+
+    @Test
+    public void testConcurrentAdd() throws Exception {
+        final int threads = 8;
+        final int servicesPerThread = 200;
+
+        // every thread tries to register its own copy of the same services
+        final CollectableService[][] services = new CollectableService[threads][servicesPerThread];
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < servicesPerThread; i++) {
+                services[t][i] = service(i % 10, "10.0." + (i / 100) + "." + (i % 100), "example1", "SNMP");
+            }
+        }
+
+        final AtomicInteger added = new AtomicInteger(0);
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            final CollectableService[] mine = services[t];
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    for (final CollectableService cSvc : mine) {
+                        if (m_registry.add(cSvc)) {
+                            added.incrementAndGet();
+                        }
+                    }
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(servicesPerThread, added.get());
+        assertEquals(servicesPerThread, m_registry.size());
+        assertEquals(servicesPerThread, m_registry.getAll().size());
+
+        int indexedByNode = 0;
+        for (int nodeId = 0; nodeId < 10; nodeId++) {
+            indexedByNode += m_registry.getByNode(nodeId).size();
+        }
+        assertEquals(servicesPerThread, indexedByNode);
+        assertEquals(1, m_registry.getByAddress(InetAddressUtils.addr("10.0.1.5")).size());
+    }
+}
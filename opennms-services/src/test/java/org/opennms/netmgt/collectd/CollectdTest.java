@@ -37,6 +37,7 @@ import static org.opennms.core.utils.InetAddressUtils.addr;
 import java.io.File;
 import java.net.InetAddress;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -379,6 +380,53 @@ public class CollectdTest extends TestCase {
         m_easyMockUtils.verifyAll();
     }
 
+    /**
+     * The first collection of each existing interface is spread over the
+     * collection interval rather than all of them starting at once.
+     */
+    public void testExistingInterfacesStaggered() throws CollectionInitializationException {
+        String svcName = "SNMP";
+        m_collectdPackage.getService(svcName).setInterval(300000);
+
+        setupCollector(svcName);
+
+        OnmsNode node = new OnmsNode();
+        node.setId(1);
+        List<OnmsIpInterface> ifaces = new ArrayList<OnmsIpInterface>();
+        for (int i = 1; i <= 4; i++) {
+            OnmsIpInterface iface = new OnmsIpInterface("192.168.1." + i, node);
+            iface.setId(i);
+            ifaces.add(iface);
+            expect(m_ipIfDao.load(iface.getId())).andReturn(iface).atLeastOnce();
+        }
+        expect(m_ipIfDao.findByServiceType(svcName)).andReturn(ifaces);
+        m_collector.initialize(isA(CollectionAgent.class), isAMap(String.class, Object.class));
+        expectLastCall().times(4);
+
+        setupTransactionManager();
+
+        expect(m_collectorConfigDao.getPackages()).andReturn(Collections.singleton(m_collectdPackage)).anyTimes();
+
+        m_easyMockUtils.replayAll();
+
+        m_collectd.init();
+        m_collectd.start();
+
+        // runs the scheduling of the existing interfaces
+        m_scheduler.next();
+
+        assertEquals("scheduler entry count", 4, m_scheduler.getEntryCount());
+        List<Long> offsets = new ArrayList<Long>(m_scheduler.getEntries().keySet());
+        assertEquals(Arrays.asList(0L, 75000L, 150000L, 225000L), offsets);
+        for (List<ReadyRunnable> entries : m_scheduler.getEntries().values()) {
+            assertEquals(1, entries.size());
+        }
+
+        m_collectd.stop();
+
+        m_easyMockUtils.verifyAll();
+    }
+
     @SuppressWarnings("unchecked")
     private <K> Collection<K> isACollection(Class<K> innerClass) {
         return isA(Collection.class);
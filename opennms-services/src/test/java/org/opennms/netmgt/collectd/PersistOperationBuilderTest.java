@@ -28,6 +28,9 @@
 
 package org.opennms.netmgt.collectd;
 
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
 import java.io.File;
 import java.io.IOException;
 import java.util.Collections;
@@ -119,6 +122,17 @@ public class PersistOperationBuilderTest {
         builder.commit();
     }
 
+    @Test
+    public void testIsExactAsDouble() {
+        assertTrue(PersistOperationBuilder.isExactAsDouble("U"));
+        assertTrue(PersistOperationBuilder.isExactAsDouble("7.69"));
+        assertTrue(PersistOperationBuilder.isExactAsDouble("5000000000"));
+        assertTrue(PersistOperationBuilder.isExactAsDouble("9007199254740992"));
+        assertTrue(PersistOperationBuilder.isExactAsDouble("-9007199254740992"));
+        assertFalse(PersistOperationBuilder.isExactAsDouble("9007199254740993"));
+        assertFalse(PersistOperationBuilder.isExactAsDouble("18446744073709551615"));
+    }
+
     @Test
     public void testCommitWithDeclaredAttribute() throws Exception {
         File nodeDir = m_fileAnticipator.expecting(getSnmpRrdDirectory(), m_node.getId().toString());
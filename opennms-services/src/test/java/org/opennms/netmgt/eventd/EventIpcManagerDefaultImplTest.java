@@ -30,9 +30,11 @@ package org.opennms.netmgt.eventd;
 
 import static org.opennms.core.utils.InetAddressUtils.addr;
 
+import java.io.File;
 import java.lang.Thread.UncaughtExceptionHandler;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
 import junit.framework.TestCase;
 
@@ -424,6 +426,132 @@ public class EventIpcManagerDefaultImplTest extends TestCase {
         assertTrue("could not remove broadcasted event--did it make it?", m_listener.getEvents().remove(e));
     }
     
+    public void testRemoveEventListenerWithUeiThenBroadcast() throws Exception {
+        EventBuilder bldr = new EventBuilder("uei.opennms.org/foo", "testRemoveEventListenerWithUeiThenBroadcast");
+        Event e = bldr.getEvent();
+
+        m_mocks.replayAll();
+
+        m_manager.addEventListener(m_listener, "uei.opennms.org/");
+        m_manager.broadcastNow(e);
+        m_manager.removeEventListener(m_listener, "uei.opennms.org/");
+        m_manager.broadcastNow(e);
+        Thread.sleep(100);
+
+        m_mocks.verifyAll();
+
+        assertTrue("could not remove broadcasted event--did it make it?", m_listener.getEvents().remove(e));
+    }
+
+    public void testBroadcastToManyListenersWithOverlappingUeis() throws Exception {
+        EventBuilder bldr = new EventBuilder("uei.opennms.org/nodes/nodeDown", "testBroadcastToManyListenersWithOverlappingUeis");
+        Event e = bldr.getEvent();
+
+        m_mocks.replayAll();
+
+        List<NamedEventListener> listeners = new ArrayList<NamedEventListener>();
+        for (int i = 0; i < 200; i++) {
+            NamedEventListener listener = new NamedEventListener("listener" + i);
+            listeners.add(listener);
+            List<String> ueis = new ArrayList<String>();
+            ueis.add("uei.opennms.org/nodes/nodeDown");
+            ueis.add("uei.opennms.org/nodes/");
+            ueis.add("uei.opennms.org/" + i);
+            m_manager.addEventListener(listener, ueis);
+        }
+        NamedEventListener unrelated = new NamedEventListener("unrelated");
+        m_manager.addEventListener(unrelated, "uei.opennms.org/nodes/nodeUp");
+
+        for (int i = 0; i < 10; i++) {
+            m_manager.broadcastNow(e);
+        }
+        Thread.sleep(500);
+
+        m_mocks.verifyAll();
+
+        for (NamedEventListener listener : listeners) {
+            assertEquals("events received by " + listener.getName(), 10, listener.getEvents().size());
+        }
+        assertEquals("events received by unrelated listener", 0, unrelated.getEvents().size());
+    }
+
+    public void testFullQueueWithSpillPolicy() throws Exception {
+        File spoolDirectory = File.createTempFile("eventd-spool", "");
+        spoolDirectory.delete();
+
+        EventIpcManagerDefaultImpl manager = new EventIpcManagerDefaultImpl();
+        manager.setEventHandler(m_eventHandler);
+        manager.setHandlerPoolSize(5);
+        manager.setHandlerQueueLength(1);
+        manager.setListenerQueuePolicy("spill");
+        manager.setListenerSpoolDirectory(spoolDirectory);
+        manager.afterPropertiesSet();
+
+        m_mocks.replayAll();
+
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingEventListener listener = new BlockingEventListener("spilling listener", release);
+        manager.addEventListener(listener);
+
+        for (int i = 0; i < 10; i++) {
+            manager.broadcastNow(new EventBuilder("uei.opennms.org/test/" + i, "testFullQueueWithSpillPolicy").getEvent());
+        }
+
+        EventListenerQueueStatsMBean stats = manager.getListenerQueueStats("spilling listener");
+        assertEquals("events queued", 10, stats.getEventsQueued());
+        assertEquals("events dropped", 0, stats.getEventsDropped());
+        assertTrue("some events should have been spilled", stats.getEventsSpilled() > 0);
+
+        release.countDown();
+        for (int i = 0; i < 50 && listener.getEvents().size() < 10; i++) {
+            Thread.sleep(100);
+        }
+
+        m_mocks.verifyAll();
+
+        assertEquals("events received", 10, listener.getEvents().size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals("events should be received in order", "uei.opennms.org/test/" + i, listener.getEvents().get(i).getUei());
+        }
+        assertEquals("spooled events", 0, stats.getSpooledEvents());
+        manager.removeEventListener(listener);
+    }
+
+    public void testFullQueueWithCoalescePolicy() throws Exception {
+        EventIpcManagerDefaultImpl manager = new EventIpcManagerDefaultImpl();
+        manager.setEventHandler(m_eventHandler);
+        manager.setHandlerPoolSize(5);
+        manager.setHandlerQueueLength(1);
+        manager.setListenerQueuePolicy("coalesce");
+        manager.afterPropertiesSet();
+
+        m_mocks.replayAll();
+
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingEventListener listener = new BlockingEventListener("coalescing listener", release);
+        manager.addEventListener(listener);
+
+        // the first is taken by the listener thread, the second queued and the rest coalesced with it
+        for (int i = 0; i < 5; i++) {
+            manager.broadcastNow(new EventBuilder("uei.opennms.org/test/duplicate", "testFullQueueWithCoalescePolicy").getEvent());
+            Thread.sleep(20);
+        }
+        manager.broadcastNow(new EventBuilder("uei.opennms.org/test/other", "testFullQueueWithCoalescePolicy").getEvent());
+
+        EventListenerQueueStatsMBean stats = manager.getListenerQueueStats("coalescing listener");
+        assertEquals("events coalesced", 3, stats.getEventsCoalesced());
+        assertEquals("events dropped", 1, stats.getEventsDropped());
+
+        release.countDown();
+        for (int i = 0; i < 50 && stats.getEventsProcessed() < 2; i++) {
+            Thread.sleep(100);
+        }
+
+        m_mocks.verifyAll();
+
+        assertEquals("events received", 2, listener.getEvents().size());
+        manager.removeEventListener(listener);
+    }
 
     /**
      * This is the type of exception we want to catch.
@@ -454,6 +582,51 @@ public class EventIpcManagerDefaultImplTest extends TestCase {
         m_mocks.verifyAll();
     }
     
+    public static class NamedEventListener implements EventListener {
+        private final String m_name;
+        private final List<Event> m_events = new ArrayList<Event>();
+
+        public NamedEventListener(String name) {
+            m_name = name;
+        }
+
+        @Override
+        public String getName() {
+            return m_name;
+        }
+
+        @Override
+        public synchronized void onEvent(Event e) {
+            m_events.add(e);
+        }
+
+        public synchronized List<Event> getEvents() {
+            return new ArrayList<Event>(m_events);
+        }
+    }
+
+    /**
+     * A listener that holds up its first event until released.
+     */
+    public static class BlockingEventListener extends NamedEventListener {
+        private final CountDownLatch m_release;
+
+        public BlockingEventListener(String name, CountDownLatch release) {
+            super(name);
+            m_release = release;
+        }
+
+        @Override
+        public void onEvent(Event e) {
+            try {
+                m_release.await();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            super.onEvent(e);
+        }
+    }
+
     public class MockEventListener implements EventListener {
         private List<Event> m_events = new ArrayList<Event>();
         
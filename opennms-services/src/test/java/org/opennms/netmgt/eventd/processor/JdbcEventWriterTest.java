@@ -29,6 +29,13 @@
 package org.opennms.netmgt.eventd.processor;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.opennms.core.test.db.PopulatedTemporaryDatabaseTestCase;
 import org.opennms.netmgt.EventConstants;
@@ -37,6 +44,8 @@ import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.netmgt.snmp.SnmpUtils;
 import org.opennms.netmgt.snmp.SnmpValue;
 import org.opennms.netmgt.xml.event.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * This class tests some of the quirky behaviors of presisting events.
@@ -44,6 +53,8 @@ import org.opennms.netmgt.xml.event.Event;
  */
 @SuppressWarnings("deprecation")
 public class JdbcEventWriterTest extends PopulatedTemporaryDatabaseTestCase {
+    private static final Logger LOG = LoggerFactory.getLogger(JdbcEventWriterTest.class);
+
     private JdbcEventWriter m_jdbcEventWriter;
 
     @Override
@@ -214,4 +225,110 @@ public class JdbcEventWriterTest extends PopulatedTemporaryDatabaseTestCase {
         assertEquals("event count", 1, getJdbcTemplate().queryForInt("select count(*) from events"));
         assertEquals("event service ID", serviceId, getJdbcTemplate().queryForInt("select serviceID from events"));
     }
+
+    public void testBatchedWritesAssignDbidBeforeReturning() throws Exception {
+        m_jdbcEventWriter.setBatchSize(50);
+        m_jdbcEventWriter.setIdBlockSize(20);
+        m_jdbcEventWriter.setGetNextIdBlockString("SELECT nextval('eventsNxtId') FROM generate_series(1, ?)");
+
+        final List<Integer> dbids = writeConcurrently(8, 100);
+
+        assertEquals("event count", 800, getJdbcTemplate().queryForInt("select count(*) from events"));
+        assertEquals("distinct dbids", 800, getJdbcTemplate().queryForInt("select count(distinct eventId) from events"));
+        for (final Integer dbid : dbids) {
+            assertNotNull("dbid must be assigned before process() returns", dbid);
+            assertEquals("event " + dbid + " must be committed before process() returns", 1, getJdbcTemplate().queryForInt("select count(*) from events where eventId = ?", dbid));
+        }
+    }
+
+    public void testBatchedWriteWithBadEventDoesNotLoseOthers() throws Exception {
+        m_jdbcEventWriter.setBatchSize(10);
+        m_jdbcEventWriter.setMaxBatchDelay(50);
+
+        final Event good = new EventBuilder("uei.opennms.org/good", "someSource").setLogDest("logndisplay").getEvent();
+        final Event bad = new EventBuilder("uei.opennms.org/bad", "someSource").setLogDest("logndisplay").getEvent();
+        // eventSource is NOT NULL, so the database rejects this one
+        bad.setSource(null);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<Boolean> goodResult = executor.submit(processCallable(good));
+            final Future<Boolean> badResult = executor.submit(processCallable(bad));
+            assertTrue("good event should be written", goodResult.get());
+            assertFalse("bad event should fail", badResult.get());
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals("event count", 1, getJdbcTemplate().queryForInt("select count(*) from events"));
+        assertEquals("good event", 1, getJdbcTemplate().queryForInt("select count(*) from events where eventId = ?", good.getDbid()));
+    }
+
+    /**
+     * Not a strict benchmark, but logs the throughput of single-row and
+     * batched writes against the temporary database for comparison.
+     */
+    public void testBatchedThroughput() throws Exception {
+        final int threads = 8;
+        final int eventsPerThread = 250;
+
+        long start = System.currentTimeMillis();
+        writeConcurrently(threads, eventsPerThread);
+        final long singleMillis = Math.max(1, System.currentTimeMillis() - start);
+
+        m_jdbcEventWriter.setBatchSize(100);
+        m_jdbcEventWriter.setIdBlockSize(100);
+        m_jdbcEventWriter.setGetNextIdBlockString("SELECT nextval('eventsNxtId') FROM generate_series(1, ?)");
+
+        start = System.currentTimeMillis();
+        writeConcurrently(threads, eventsPerThread);
+        final long batchedMillis = Math.max(1, System.currentTimeMillis() - start);
+
+        final int total = threads * eventsPerThread;
+        LOG.info("single-row writes: {} events/sec, batched writes: {} events/sec", (total * 1000L / singleMillis), (total * 1000L / batchedMillis));
+        assertEquals("event count", 2 * total, getJdbcTemplate().queryForInt("select count(*) from events"));
+    }
+
+    private List<Integer> writeConcurrently(final int threads, final int eventsPerThread) throws Exception {
+        final List<Integer> dbids = Collections.synchronizedList(new ArrayList<Integer>());
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        for (int j = 0; j < eventsPerThread; j++) {
+                            final EventBuilder builder = new EventBuilder("uei.opennms.org/test/batch", "JdbcEventWriterTest");
+                            builder.setLogDest("logndisplay");
+                            final Event event = builder.getEvent();
+                            m_jdbcEventWriter.process(null, event);
+                            dbids.add(event.getDbid());
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (final Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        return dbids;
+    }
+
+    private Callable<Boolean> processCallable(final Event event) {
+        return new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                try {
+                    m_jdbcEventWriter.process(null, event);
+                    return true;
+                } catch (final Exception e) {
+                    return false;
+                }
+            }
+        };
+    }
 }
@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.linkd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class MacAddressIndexTest {
+    private static final Logger LOG = LoggerFactory.getLogger(MacAddressIndexTest.class);
+
+    /**
+     * Number of switches and forwarding entries in the synthetic tables of
+     * {@link #testForwardingTableLookups()}.  Setting either one turns the
+     * test into a benchmark that logs its timings; otherwise small tables are
+     * used.
+     */
+    private static final int BENCHMARK_BRIDGES = Integer.getInteger("org.opennms.linkd.benchmarkBridges", 0);
+    private static final int BENCHMARK_ENTRIES = Integer.getInteger("org.opennms.linkd.benchmarkEntries", 0);
+    private static final boolean BENCHMARK = BENCHMARK_BRIDGES > 0 || BENCHMARK_ENTRIES > 0;
+    private static final int BENCHMARK_PORTS = 48;
+
+    @Test
+    public void testEncode() {
+        assertEquals(0L, MacAddressIndex.encode("000000000000"));
+        assertEquals(0xffffffffffffL, MacAddressIndex.encode("ffffffffffff"));
+        assertEquals(0x0019aa3c2e01L, MacAddressIndex.encode("0019aa3c2e01"));
+        // only the form linkd collects MAC addresses in is packed
+        assertEquals(-1L, MacAddressIndex.encode("0019AA3C2E01"));
+        assertEquals(-1L, MacAddressIndex.encode("00:19:aa:3c:2e:01"));
+        assertEquals(-1L, MacAddressIndex.encode("0019aa3c2e"));
+        assertEquals(-1L, MacAddressIndex.encode(null));
+    }
+
+    @Test
+    public void testPutAndGet() {
+        final MacAddressIndex<Integer> index = new MacAddressIndex<Integer>();
+        assertTrue(index.isEmpty());
+
+        assertNull(index.put("0019aa3c2e01", 1));
+        assertNull(index.put("0019AA3C2E01", 2));
+        assertNull(index.put("not-a-mac", 3));
+        assertEquals(Integer.valueOf(1), index.put("0019aa3c2e01", 4));
+
+        assertEquals(3, index.size());
+        assertEquals(Integer.valueOf(4), index.get("0019aa3c2e01"));
+        assertEquals(Integer.valueOf(2), index.get("0019AA3C2E01"));
+        assertEquals(Integer.valueOf(3), index.get("not-a-mac"));
+        assertTrue(index.containsKey("not-a-mac"));
+        assertFalse(index.containsKey("0019aa3c2e02"));
+        assertNull(index.get("0019aa3c2e02"));
+
+        index.clear();
+        assertTrue(index.isEmpty());
+        assertFalse(index.containsKey("0019aa3c2e01"));
+        assertFalse(index.containsKey("not-a-mac"));
+    }
+
+    @Test
+    public void testGrowMatchesHashMap() {
+        final Random random = new Random(42);
+        final MacAddressIndex<Integer> index = new MacAddressIndex<Integer>();
+        final Map<String, Integer> expected = new HashMap<String, Integer>();
+
+        for (int i = 0; i < 50000; i++) {
+            // a narrow range so that some addresses repeat
+            final String mac = mac(random.nextInt(40000));
+            assertEquals(expected.put(mac, i), index.put(mac, i));
+        }
+
+        assertEquals(expected.size(), index.size());
+        for (final Map.Entry<String, Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), index.get(entry.getKey()));
+        }
+        for (int i = 40000; i < 41000; i++) {
+            assertFalse(index.containsKey(mac(i)));
+        }
+    }
+
+    /**
+     * Builds forwarding tables for a number of switches holding a number of
+     * entries in all, and runs the lookups
+     * of a bridge discovery over them: which MAC addresses on a port belong
+     * to a bridge, and whether a MAC address was already linked.  Compares
+     * the string collections DiscoveryLink used with the packed index.
+     */
+    @Test
+    public void testForwardingTableLookups() {
+        final int bridgeCount = BENCHMARK_BRIDGES > 0 ? BENCHMARK_BRIDGES : (BENCHMARK ? 200 : 10);
+        final int entryCount = BENCHMARK_ENTRIES > 0 ? BENCHMARK_ENTRIES : (BENCHMARK ? 100000 : 2000);
+        final Random random = new Random(7);
+
+        final List<String> bridgeIdentifiers = new ArrayList<String>(bridgeCount);
+        for (int i = 0; i < bridgeCount; i++) {
+            bridgeIdentifiers.add(mac(0x00d0b7000000L + i));
+        }
+
+        // hosts are learned on every switch, the bridges on the uplinks
+        final int hosts = Math.max(1, entryCount / bridgeCount * 4);
+        final List<Set<String>> ports = new ArrayList<Set<String>>();
+        for (int bridge = 0; bridge < bridgeCount; bridge++) {
+            final List<Set<String>> bridgePorts = new ArrayList<Set<String>>(BENCHMARK_PORTS);
+            for (int port = 0; port < BENCHMARK_PORTS; port++) {
+                bridgePorts.add(new HashSet<String>());
+            }
+            for (int entry = 0; entry < entryCount / bridgeCount; entry++) {
+                bridgePorts.get(random.nextInt(BENCHMARK_PORTS)).add(mac(0x001b21000000L + random.nextInt(hosts)));
+            }
+            bridgePorts.get(0).addAll(bridgeIdentifiers);
+            ports.addAll(bridgePorts);
+        }
+
+        final long stringLookups = runStringLookups(bridgeIdentifiers, ports);
+        final long indexLookups = runIndexLookups(bridgeIdentifiers, ports);
+        assertEquals(stringLookups, indexLookups);
+    }
+
+    private static long runStringLookups(final List<String> bridgeIdentifiers, final List<Set<String>> ports) {
+        final long start = System.nanoTime();
+        final Set<String> parsed = new HashSet<String>();
+        long found = 0;
+        for (final Set<String> macs : ports) {
+            for (final String bridgeIdentifier : bridgeIdentifiers) {
+                if (macs.contains(bridgeIdentifier)) found++;
+            }
+            for (final String mac : macs) {
+                if (!bridgeIdentifiers.contains(mac) && parsed.add(mac)) found++;
+            }
+        }
+        if (BENCHMARK) {
+            LOG.info("String collections: {} matches in {}ms", found, (System.nanoTime() - start) / 1000000);
+        }
+        return found;
+    }
+
+    private static long runIndexLookups(final List<String> bridgeIdentifiers, final List<Set<String>> ports) {
+        final long start = System.nanoTime();
+        final MacAddressIndex<Integer> bridges = new MacAddressIndex<Integer>(bridgeIdentifiers.size());
+        for (int i = 0; i < bridgeIdentifiers.size(); i++) {
+            bridges.put(bridgeIdentifiers.get(i), i);
+        }
+        final MacAddressIndex<Boolean> parsed = new MacAddressIndex<Boolean>();
+        long found = 0;
+        for (final Set<String> macs : ports) {
+            for (final String mac : macs) {
+                if (bridges.containsKey(mac)) {
+                    found++;
+                } else if (parsed.put(mac, Boolean.TRUE) == null) {
+                    found++;
+                }
+            }
+        }
+        if (BENCHMARK) {
+            LOG.info("MacAddressIndex: {} matches in {}ms", found, (System.nanoTime() - start) / 1000000);
+        }
+        return found;
+    }
+
+    private static String mac(final long value) {
+        return String.format("%012x", value);
+    }
+}
@@ -143,6 +143,18 @@ public class MockQueryManager implements QueryManager {
         // TODO Auto-generated method stub
 
     }
+
+    @Override
+    public void openOutage(String outageIdSQL, int nodeId, String ipAddr, String svcName, int dbid, String time, Runnable onDurable) {
+        openOutage(outageIdSQL, nodeId, ipAddr, svcName, dbid, time);
+        if (onDurable != null) onDurable.run();
+    }
+
+    @Override
+    public void resolveOutage(int nodeId, String ipAddr, String svcName, int dbid, String time, Runnable onDurable) {
+        resolveOutage(nodeId, ipAddr, svcName, dbid, time);
+        if (onDurable != null) onDurable.run();
+    }
     
     
     @Override
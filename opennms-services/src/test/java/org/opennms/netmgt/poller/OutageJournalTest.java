@@ -0,0 +1,244 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.poller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.core.test.db.MockDatabase;
+import org.opennms.netmgt.mock.MockNetwork;
+import org.opennms.netmgt.mock.MockService;
+import org.opennms.netmgt.xml.event.Event;
+
+public class OutageJournalTest {
+
+    private static final int CYCLES = 5;
+
+    private MockNetwork m_mNetwork;
+    private MockDatabase m_db;
+    private OutageJournal m_journal;
+    private List<MockService> m_services = new ArrayList<MockService>();
+
+    @Before
+    public void setUp() throws Exception {
+        MockLogAppender.setupLogging();
+
+        m_mNetwork = new MockNetwork();
+        m_mNetwork.addNode(1, "Router");
+        m_mNetwork.addInterface("192.168.1.1");
+        m_services.add(m_mNetwork.addService("ICMP"));
+        m_services.add(m_mNetwork.addService("SMTP"));
+        m_mNetwork.addInterface("192.168.1.2");
+        m_services.add(m_mNetwork.addService("ICMP"));
+        m_services.add(m_mNetwork.addService("SMTP"));
+        m_mNetwork.addNode(2, "Server");
+        m_mNetwork.addInterface("192.168.1.3");
+        m_services.add(m_mNetwork.addService("ICMP"));
+        m_services.add(m_mNetwork.addService("HTTP"));
+        // the target of testReparentIsOrdered
+        m_mNetwork.addInterface("192.168.1.1");
+        m_mNetwork.addService("ICMP");
+
+        m_db = new MockDatabase();
+        m_db.populate(m_mNetwork);
+
+        m_journal = new OutageJournal();
+        m_journal.setDataSource(m_db);
+        m_journal.setBatchSize(20);
+        m_journal.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        m_journal.destroy();
+        MockLogAppender.assertNoWarningsOrGreater();
+    }
+
+    @Test
+    public void testOpenResolveInOrder() throws Exception {
+        final AtomicInteger durable = new AtomicInteger(0);
+        final Runnable onDurable = new Runnable() {
+            @Override
+            public void run() {
+                durable.incrementAndGet();
+            }
+        };
+
+        for (int i = 0; i < CYCLES; i++) {
+            for (final MockService svc : m_services) {
+                open(svc, onDurable);
+            }
+            for (final MockService svc : m_services) {
+                resolve(svc, onDurable);
+            }
+        }
+        m_journal.flush();
+
+        final int operations = CYCLES * m_services.size() * 2;
+        assertEquals(operations, durable.get());
+        assertEquals(operations, m_journal.getOperationCount());
+        assertEquals(0, m_journal.getQueueDepth());
+        assertTrue("expected operations to be batched, but there were " + m_journal.getFlushCount() + " flushes", m_journal.getFlushCount() < operations);
+
+        for (final MockService svc : m_services) {
+            assertEquals(CYCLES, m_db.countOutagesForService(svc));
+            assertEquals(0, m_db.countOpenOutagesForService(svc));
+        }
+    }
+
+    @Test
+    public void testFailedOperationDoesNotLoseBatch() throws Exception {
+        final MockService svc = m_services.get(0);
+        final Event lost = svc.createDownEvent();
+        m_db.writeEvent(lost);
+
+        // the service lookup returns null, so this insert violates a constraint
+        m_journal.openOutage(m_db.getNextOutageIdStatement(), svc.getNodeId(), svc.getIpAddr(), "NoSuchService", lost.getDbid(), m_db.convertEventTimeToTimeStamp(lost.getTime()), null);
+        open(svc, null);
+        m_journal.flush();
+
+        assertEquals(1, m_db.countOpenOutagesForService(svc));
+        assertEquals(1, m_journal.getOperationCount());
+        assertEquals(1, m_journal.getFailedOperationCount());
+        MockLogAppender.resetEvents();
+    }
+
+    @Test
+    public void testFullQueueBlocksUntilWritten() throws Exception {
+        m_journal.destroy();
+        m_journal = new OutageJournal();
+        m_journal.setDataSource(m_db);
+        m_journal.setBatchSize(1);
+        m_journal.setQueueCapacity(2);
+        m_journal.afterPropertiesSet();
+
+        for (int i = 0; i < CYCLES; i++) {
+            for (final MockService svc : m_services) {
+                open(svc, null);
+                resolve(svc, null);
+            }
+        }
+        m_journal.flush();
+
+        assertEquals(CYCLES * m_services.size() * 2, m_journal.getOperationCount());
+        assertEquals(0, m_journal.getFailedOperationCount());
+        assertEquals(CYCLES * m_services.size(), m_db.countOutages());
+        assertEquals(0, m_db.countOpenOutages());
+    }
+
+    @Test
+    public void testWriterSurvivesUnexpectedErrors() throws Exception {
+        m_journal.destroy();
+
+        // every connection fails until the failures are used up
+        final AtomicInteger failures = new AtomicInteger(3);
+        final DataSource failing = (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { DataSource.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                if ("getConnection".equals(method.getName()) && failures.getAndDecrement() > 0) {
+                    throw new IllegalStateException("connection pool is closed");
+                }
+                try {
+                    return method.invoke(m_db, args);
+                } catch (final InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        });
+
+        m_journal = new OutageJournal();
+        m_journal.setDataSource(failing);
+        m_journal.afterPropertiesSet();
+
+        final MockService svc = m_services.get(0);
+        open(svc, null);
+        m_journal.flush();
+
+        assertEquals(1, m_journal.getFailedOperationCount());
+        assertEquals(false, m_journal.isHealthy());
+        assertEquals(0, m_db.countOpenOutagesForService(svc));
+
+        // the writer thread is still there to write the next outage
+        open(svc, null);
+        m_journal.flush();
+
+        assertEquals(1, m_journal.getFailedOperationCount());
+        assertEquals(true, m_journal.isHealthy());
+        assertEquals(1, m_db.countOpenOutagesForService(svc));
+        MockLogAppender.resetEvents();
+    }
+
+    @Test
+    public void testReparentIsOrdered() throws Exception {
+        final MockService svc = m_services.get(0);
+        open(svc, null);
+        m_journal.reparentOutages(svc.getIpAddr(), svc.getNodeId(), 2);
+        m_journal.flush();
+
+        assertEquals(0, m_db.countOutagesForService(svc));
+        assertEquals(1, m_db.countOutages("nodeId = 2 and ipAddr = '" + svc.getIpAddr() + "'"));
+    }
+
+    @Test
+    public void testDestroyWritesQueuedOperations() throws Exception {
+        for (final MockService svc : m_services) {
+            open(svc, null);
+        }
+        m_journal.destroy();
+
+        assertEquals(m_services.size(), m_db.countOpenOutages());
+    }
+
+    private void open(final MockService svc, final Runnable onDurable) {
+        final Event lost = svc.createDownEvent();
+        m_db.writeEvent(lost);
+        m_journal.openOutage(m_db.getNextOutageIdStatement(), svc.getNodeId(), svc.getIpAddr(), svc.getSvcName(), lost.getDbid(), m_db.convertEventTimeToTimeStamp(lost.getTime()), onDurable);
+    }
+
+    private void resolve(final MockService svc, final Runnable onDurable) {
+        final Event regained = svc.createUpEvent();
+        m_db.writeEvent(regained);
+        m_journal.resolveOutage(svc.getNodeId(), svc.getIpAddr(), svc.getSvcName(), regained.getDbid(), m_db.convertEventTimeToTimeStamp(regained.getTime()), onDurable);
+    }
+}
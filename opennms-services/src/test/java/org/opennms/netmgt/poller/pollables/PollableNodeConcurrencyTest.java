@@ -0,0 +1,355 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.poller.pollables;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.EventConstants;
+import org.opennms.netmgt.model.PollStatus;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.scheduler.ReadyRunnable;
+import org.opennms.netmgt.scheduler.Schedule;
+import org.opennms.netmgt.scheduler.ScheduleInterval;
+import org.opennms.netmgt.scheduler.ScheduleTimer;
+import org.opennms.netmgt.xml.event.Event;
+
+/**
+ * Polls a single node with 1000 services from many threads at once to make
+ * sure that services of the same node no longer serialise behind the node
+ * lock, and that outages are still propagated exactly once.
+ */
+public class PollableNodeConcurrencyTest {
+
+    private static final int NODE_ID = 1;
+
+    private static final int INTERFACES = 10;
+
+    private static final int SERVICES_PER_INTERFACE = 100;
+
+    private static final long POLL_MILLIS = 2;
+
+    private static final int THREADS = 50;
+
+    private final AtomicInteger m_activePolls = new AtomicInteger(0);
+
+    private final AtomicInteger m_maxActivePolls = new AtomicInteger(0);
+
+    private CountingPollContext m_context;
+
+    private PollableNetwork m_network;
+
+    private final List<PollableService> m_services = new ArrayList<PollableService>();
+
+    private final List<MockMonitor> m_monitors = new ArrayList<MockMonitor>();
+
+    private ExecutorService m_executor;
+
+    @Before
+    public void setUp() throws Exception {
+        m_context = new CountingPollContext();
+        m_network = new PollableNetwork(m_context);
+
+        final ScheduleTimer timer = new ScheduleTimer() {
+            @Override
+            public void schedule(long interval, ReadyRunnable schedule) {
+            }
+
+            @Override
+            public long getCurrentTime() {
+                return System.currentTimeMillis();
+            }
+        };
+
+        for (int i = 0; i < INTERFACES; i++) {
+            final InetAddress addr = InetAddressUtils.addr("192.168.1." + (i + 1));
+            for (int j = 0; j < SERVICES_PER_INTERFACE; j++) {
+                final PollableService svc = m_network.createService(NODE_ID, "Router", addr, "SVC" + j);
+                final MockMonitor monitor = new MockMonitor();
+                svc.setPollConfig(monitor);
+                svc.setSchedule(new Schedule(svc, monitor, timer));
+                svc.updateStatus(PollStatus.up());
+                m_services.add(svc);
+                m_monitors.add(monitor);
+            }
+        }
+        m_network.recalculateStatus();
+        m_network.resetStatusChanged();
+
+        m_executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        m_executor.shutdownNow();
+    }
+
+    @Test
+    public void testServicesOfOneNodePollConcurrently() throws Exception {
+        pollAll();
+
+        assertTrue("services of the same node were polled one at a time", m_maxActivePolls.get() > 1);
+        assertEquals(0, m_context.getEventCount());
+        assertTrue(getNode().getStatus().isUp());
+    }
+
+    @Test
+    public void testOutagePropagationUnderLoad() throws Exception {
+        // every service on the first interface and a few on the second
+        for (int j = 0; j < SERVICES_PER_INTERFACE; j++) {
+            m_monitors.get(j).setStatus(PollStatus.down());
+        }
+        for (int j = 0; j < 10; j++) {
+            m_monitors.get(SERVICES_PER_INTERFACE + j).setStatus(PollStatus.down());
+        }
+
+        pollAll();
+
+        for (int i = 0; i < m_services.size(); i++) {
+            assertEquals(m_services.get(i).toString(), m_monitors.get(i).getStatus(), m_services.get(i).getStatus());
+        }
+        assertTrue(m_services.get(0).getInterface().getStatus().isDown());
+        assertTrue(m_services.get(SERVICES_PER_INTERFACE).getInterface().getStatus().isUp());
+        assertTrue(getNode().getStatus().isUp());
+
+        assertEquals(1, m_context.getEventCount(EventConstants.INTERFACE_DOWN_EVENT_UEI));
+        assertEquals(10, m_context.getEventCount(EventConstants.NODE_LOST_SERVICE_EVENT_UEI));
+        assertEquals(0, m_context.getEventCount(EventConstants.NODE_DOWN_EVENT_UEI));
+        assertEquals(11, m_context.getEventCount());
+
+        // bring everything back, and polling again sends the matching up events
+        for (final MockMonitor monitor : m_monitors) {
+            monitor.setStatus(PollStatus.up());
+        }
+
+        pollAll();
+
+        assertTrue(m_services.get(0).getInterface().getStatus().isUp());
+        assertEquals(1, m_context.getEventCount(EventConstants.INTERFACE_UP_EVENT_UEI));
+        assertEquals(10, m_context.getEventCount(EventConstants.NODE_REGAINED_SERVICE_EVENT_UEI));
+    }
+
+    @Test
+    public void testServicesOnDownInterfaceAreNotPolled() throws Exception {
+        m_context.setCriticalServiceName("SVC0");
+        for (int j = 0; j < SERVICES_PER_INTERFACE; j++) {
+            m_monitors.get(j).setStatus(PollStatus.down());
+        }
+
+        pollAll();
+        assertTrue(m_services.get(0).getInterface().getStatus().isDown());
+
+        for (final MockMonitor monitor : m_monitors) {
+            monitor.resetPollCount();
+        }
+
+        pollAll();
+
+        // only the critical service of the down interface is polled
+        assertEquals(1, m_monitors.get(0).getPollCount());
+        for (int j = 1; j < SERVICES_PER_INTERFACE; j++) {
+            assertEquals(m_services.get(j).toString(), 0, m_monitors.get(j).getPollCount());
+        }
+        // the services on the interfaces that are up are still polled
+        assertEquals(1, m_monitors.get(SERVICES_PER_INTERFACE + 1).getPollCount());
+    }
+
+    private PollableNode getNode() {
+        return m_network.getNode(NODE_ID);
+    }
+
+    /**
+     * Polls every service once on the thread pool.
+     */
+    private void pollAll() throws Exception {
+        final List<Future<PollStatus>> futures = new ArrayList<Future<PollStatus>>(m_services.size());
+        for (final PollableService svc : m_services) {
+            futures.add(m_executor.submit(new Callable<PollStatus>() {
+                @Override
+                public PollStatus call() throws Exception {
+                    return svc.doRun();
+                }
+            }));
+        }
+        for (final Future<PollStatus> future : futures) {
+            future.get();
+        }
+    }
+
+    /**
+     * Stands in for the service monitor: returns the configured status
+     * after a short delay and records how many polls overlap.
+     */
+    private class MockMonitor implements PollConfig, ScheduleInterval {
+        private volatile PollStatus m_status = PollStatus.up();
+        private final AtomicInteger m_pollCount = new AtomicInteger(0);
+
+        public PollStatus getStatus() {
+            return m_status;
+        }
+
+        public void setStatus(final PollStatus status) {
+            m_status = status;
+        }
+
+        public int getPollCount() {
+            return m_pollCount.get();
+        }
+
+        public void resetPollCount() {
+            m_pollCount.set(0);
+        }
+
+        @Override
+        public PollStatus poll() {
+            m_pollCount.incrementAndGet();
+            final int active = m_activePolls.incrementAndGet();
+            int max;
+            while (active > (max = m_maxActivePolls.get()) && !m_maxActivePolls.compareAndSet(max, active));
+            try {
+                Thread.sleep(POLL_MILLIS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                m_activePolls.decrementAndGet();
+            }
+            return m_status;
+        }
+
+        @Override
+        public long getCurrentTime() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public void refresh() {
+        }
+
+        @Override
+        public void refreshThresholds() {
+        }
+
+        @Override
+        public long getInterval() {
+            return 300000;
+        }
+
+        @Override
+        public boolean scheduledSuspension() {
+            return false;
+        }
+    }
+
+    private static class CountingPollContext implements PollContext {
+        private final ConcurrentMap<String, AtomicInteger> m_events = new ConcurrentHashMap<String, AtomicInteger>();
+        private volatile String m_criticalServiceName = null;
+
+        public void setCriticalServiceName(final String criticalServiceName) {
+            m_criticalServiceName = criticalServiceName;
+        }
+
+        public int getEventCount(final String uei) {
+            final AtomicInteger count = m_events.get(uei);
+            return count == null ? 0 : count.get();
+        }
+
+        public int getEventCount() {
+            int total = 0;
+            for (final AtomicInteger count : m_events.values()) {
+                total += count.get();
+            }
+            return total;
+        }
+
+        @Override
+        public String getCriticalServiceName() {
+            return m_criticalServiceName;
+        }
+
+        @Override
+        public boolean isNodeProcessingEnabled() {
+            return true;
+        }
+
+        @Override
+        public boolean isPollingAllIfCritServiceUndefined() {
+            return true;
+        }
+
+        @Override
+        public PollEvent sendEvent(final Event event) {
+            m_events.putIfAbsent(event.getUei(), new AtomicInteger(0));
+            m_events.get(event.getUei()).incrementAndGet();
+            return new PendingPollEvent(event);
+        }
+
+        @Override
+        public Event createEvent(final String uei, final int nodeId, final InetAddress address, final String svcName, final Date date, final String reason) {
+            final EventBuilder bldr = new EventBuilder(uei, "Test", date);
+            bldr.setNodeid(nodeId);
+            bldr.setInterface(address);
+            bldr.setService(svcName);
+            return bldr.getEvent();
+        }
+
+        @Override
+        public void openOutage(final PollableService pSvc, final PollEvent svcLostEvent) {
+        }
+
+        @Override
+        public void resolveOutage(final PollableService pSvc, final PollEvent svcRegainEvent) {
+        }
+
+        @Override
+        public boolean isServiceUnresponsiveEnabled() {
+            return false;
+        }
+
+        @Override
+        public void reparentOutages(final String ipAddr, final int oldNodeId, final int newNodeId) {
+        }
+    }
+}
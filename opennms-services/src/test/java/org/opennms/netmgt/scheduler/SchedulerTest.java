@@ -54,6 +54,14 @@ public class SchedulerTest {
         };
     }
 
+    public static Callable<Scheduler> createTimingWheelScheduler() {
+        return new Callable<Scheduler>() {
+            public Scheduler call() {
+                return new TimingWheelScheduler("test", 1);
+            }
+        };
+    }
+
     public static Callable<Scheduler> createDistributedScheduler() {
         return new Callable<Scheduler>() {
             public Scheduler call() {
@@ -67,6 +75,7 @@ public class SchedulerTest {
     @Parameters()
     public static Collection<Object[]> data() {
         Object[][] data = new Object[][] { { createLegacyScheduler() },
+                { createTimingWheelScheduler() },
                 { createDistributedScheduler() } };
         return Arrays.asList(data);
     }
@@ -0,0 +1,293 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.scheduler;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.opennms.core.fiber.Fiber;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Timing wheel specific tests. The life-cycle and rescheduling behaviour
+ * is covered by {@link SchedulerTest}.
+ */
+public class TimingWheelSchedulerTest {
+    private static final Logger LOG = LoggerFactory.getLogger(TimingWheelSchedulerTest.class);
+
+    /**
+     * Number of tasks scheduled by {@link #testDispatchBenchmark()}. The
+     * benchmark only runs when this is set.
+     */
+    private static final int BENCHMARK_TASKS = Integer.getInteger("org.opennms.scheduler.benchmarkTasks", 0);
+
+    @Test
+    public void testCascadeAcrossWheels() throws Exception {
+        // 10ms ticks on 4 buckets: the lowest wheel only spans 40ms, so
+        // these delays land on the second, third and fourth wheels
+        final TimingWheelScheduler scheduler = new TimingWheelScheduler("test", 2, 10, 4, 0);
+        scheduler.start();
+
+        final long[] delays = { 5, 45, 170, 700, 1500 };
+        final TimedTask[] tasks = new TimedTask[delays.length];
+        for (int i = 0; i < delays.length; i++) {
+            tasks[i] = new TimedTask(System.currentTimeMillis() + delays[i]);
+            scheduler.schedule(delays[i], tasks[i]);
+        }
+
+        for (final TimedTask task : tasks) {
+            await().atMost(5, TimeUnit.SECONDS).until(hasRun(task), is(true));
+            assertTrue("task ran " + (-task.getLateness()) + "ms early", task.getLateness() >= 0);
+            assertTrue("task ran " + task.getLateness() + "ms late", task.getLateness() < 500);
+        }
+        assertEquals(0, scheduler.getScheduled());
+        assertEquals(delays.length, scheduler.getLocalTasksExecuted());
+
+        scheduler.stop();
+        await().until(getStatus(scheduler), is(Fiber.STOPPED));
+    }
+
+    @Test
+    public void testNotReadyIsRetried() throws Exception {
+        final TimingWheelScheduler scheduler = new TimingWheelScheduler("test", 1, 10, 8, 0);
+        scheduler.start();
+
+        final AtomicInteger checks = new AtomicInteger(0);
+        final TimedTask task = new TimedTask(0) {
+            @Override
+            public boolean isReady() {
+                return checks.incrementAndGet() > 3;
+            }
+        };
+        scheduler.schedule(20, task);
+
+        await().until(hasRun(task), is(true));
+        assertEquals(4, checks.get());
+        assertEquals(0, scheduler.getScheduled());
+
+        scheduler.stop();
+        await().until(getStatus(scheduler), is(Fiber.STOPPED));
+    }
+
+    @Test
+    public void testJitterDelaysWithinBound() throws Exception {
+        final TimingWheelScheduler scheduler = new TimingWheelScheduler("test", 2, 10, 8, 50);
+        scheduler.start();
+
+        final TimedTask[] tasks = new TimedTask[20];
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = new TimedTask(System.currentTimeMillis() + 200);
+            scheduler.schedule(200, tasks[i]);
+        }
+
+        for (final TimedTask task : tasks) {
+            await().atMost(5, TimeUnit.SECONDS).until(hasRun(task), is(true));
+            assertTrue(task.getLateness() >= 0);
+            assertTrue("task ran " + task.getLateness() + "ms late", task.getLateness() < 100 + 500);
+        }
+
+        scheduler.stop();
+        await().until(getStatus(scheduler), is(Fiber.STOPPED));
+    }
+
+    @Test
+    public void testResetRacingSchedule() throws Exception {
+        final TimingWheelScheduler scheduler = new TimingWheelScheduler("test", 2, 10, 8, 0);
+        scheduler.start();
+
+        final Thread[] schedulers = new Thread[4];
+        for (int i = 0; i < schedulers.length; i++) {
+            schedulers[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 2000; j++) {
+                        scheduler.schedule(10, new TimedTask(0));
+                    }
+                }
+            };
+            schedulers[i].start();
+        }
+        while (isAlive(schedulers)) {
+            scheduler.reset();
+            Thread.sleep(1);
+        }
+
+        // whatever survived the last reset runs, and nothing dropped by a
+        // reset is left counted
+        await().atMost(5, TimeUnit.SECONDS).until(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return scheduler.getScheduled();
+            }
+        }, is(0));
+
+        scheduler.stop();
+        await().until(getStatus(scheduler), is(Fiber.STOPPED));
+    }
+
+    private static boolean isAlive(final Thread[] threads) {
+        for (final Thread thread : threads) {
+            if (thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Schedules {@link #BENCHMARK_TASKS} tasks over four intervals on both
+     * the legacy and the timing wheel scheduler, and compares how late the
+     * tasks ran and how much CPU the dispatching thread used.
+     */
+    @Test
+    public void testDispatchBenchmark() throws Exception {
+        if (BENCHMARK_TASKS <= 0) {
+            return;
+        }
+        runBenchmark("LegacyScheduler", new LegacyScheduler("legacy", 4));
+        runBenchmark("TimingWheelScheduler", new TimingWheelScheduler("wheel", 4));
+    }
+
+    private static void runBenchmark(final String name, final AbstractScheduler scheduler) throws Exception {
+        // The worker thread is named after the pool as it is when the
+        // scheduler starts
+        final String workerName = scheduler.getName();
+        scheduler.start();
+
+        final AtomicInteger done = new AtomicInteger(0);
+        final AtomicLong totalLateness = new AtomicLong(0);
+        final AtomicLong maxLateness = new AtomicLong(0);
+
+        final long start = System.currentTimeMillis();
+        for (int i = 0; i < BENCHMARK_TASKS; i++) {
+            final long interval = 1000 * (1 + i % 4);
+            final long due = System.currentTimeMillis() + interval;
+            scheduler.schedule(interval, new ReadyRunnable() {
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void run() {
+                    final long lateness = System.currentTimeMillis() - due;
+                    totalLateness.addAndGet(lateness);
+                    long max;
+                    while (lateness > (max = maxLateness.get()) && !maxLateness.compareAndSet(max, lateness));
+                    done.incrementAndGet();
+                }
+            });
+        }
+        final long scheduled = System.currentTimeMillis() - start;
+
+        final Thread worker = findThread(workerName);
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        final long cpuBefore = threads.getThreadCpuTime(worker.getId());
+
+        await().atMost(2, TimeUnit.MINUTES).until(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return done.get();
+            }
+        }, is(BENCHMARK_TASKS));
+
+        final long cpu = threads.getThreadCpuTime(worker.getId()) - cpuBefore;
+        LOG.info("{}: {} tasks scheduled in {}ms, dispatch latency mean {}ms max {}ms, dispatcher CPU {}ms",
+                 name, BENCHMARK_TASKS, scheduled, totalLateness.get() / BENCHMARK_TASKS, maxLateness.get(), cpu / 1000000);
+
+        scheduler.stop();
+        await().until(getStatus(scheduler), is(Fiber.STOPPED));
+    }
+
+    private static Thread findThread(final String name) {
+        for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (name.equals(thread.getName())) {
+                return thread;
+            }
+        }
+        throw new IllegalStateException("no thread named " + name);
+    }
+
+    private static Callable<Integer> getStatus(final Scheduler scheduler) {
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return scheduler.getStatus();
+            }
+        };
+    }
+
+    private static Callable<Boolean> hasRun(final TimedTask task) {
+        return new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return task.hasRun();
+            }
+        };
+    }
+
+    private static class TimedTask implements ReadyRunnable {
+        private final long m_due;
+        private volatile long m_ranAt = -1;
+
+        public TimedTask(final long due) {
+            m_due = due;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void run() {
+            m_ranAt = System.currentTimeMillis();
+        }
+
+        public boolean hasRun() {
+            return m_ranAt >= 0;
+        }
+
+        public long getLateness() {
+            return m_ranAt - m_due;
+        }
+    }
+}
@@ -29,6 +29,7 @@
 package org.opennms.netmgt.syslogd;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.opennms.core.utils.InetAddressUtils.addr;
 
 import java.io.IOException;
@@ -36,6 +37,7 @@ import java.io.InputStream;
 import java.lang.reflect.UndeclaredThrowableException;
 import java.net.BindException;
 import java.net.DatagramPacket;
+import java.net.DatagramSocket;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
@@ -100,6 +102,12 @@ import org.springframework.transaction.annotation.Transactional;
 public class SyslogdLoadTest implements InitializingBean {
     private static final Logger LOG = LoggerFactory.getLogger(SyslogdLoadTest.class);
 
+    /**
+     * Number of messages replayed by {@link #testReplayCorpusOverLoopback()}
+     * when benchmarking; otherwise a handful are sent and nothing is timed.
+     */
+    private static final int BENCHMARK_MESSAGES = Integer.getInteger("org.opennms.syslogd.benchmarkMessages", 0);
+
     private EventCounter m_eventCounter;
     private static final String MATCH_PATTERN = "^.*\\s(19|20)\\d\\d([-/.])(0[1-9]|1[012])\\2(0[1-9]|[12][0-9]|3[01])(\\s+)(\\S+)(\\s)(\\S.+)";
     private static final int HOST_GROUP = 6;
@@ -224,6 +232,60 @@ public class SyslogdLoadTest implements InitializingBean {
         System.err.println(String.format("total time: %d, wait time: %d, events per second: %8.4f", total, (end - mid), eventsPerSecond));
     }
 
+    /**
+     * Replays a small corpus of syslog messages over loopback to the real
+     * receiver as fast as one thread can send them, and checks the received,
+     * dropped and parsed counts add up.  Timings are only logged when
+     * org.opennms.syslogd.benchmarkMessages is set.
+     */
+    @Test
+    @Transactional
+    public void testReplayCorpusOverLoopback() throws Exception {
+        startSyslogdGracefully();
+
+        final InputStream corpusStream = getClass().getResourceAsStream("/syslog-corpus.txt");
+        final List<String> corpus;
+        try {
+            corpus = IOUtils.readLines(corpusStream, "US-ASCII");
+        } finally {
+            IOUtils.closeQuietly(corpusStream);
+        }
+
+        final int messageCount = BENCHMARK_MESSAGES > 0 ? BENCHMARK_MESSAGES : 200;
+        final InetAddress address = InetAddressUtils.addr("127.0.0.1");
+        final DatagramSocket socket = new DatagramSocket();
+        final long start = System.currentTimeMillis();
+        try {
+            for (int i = 0; i < messageCount; i++) {
+                final byte[] bytes = corpus.get(i % corpus.size()).getBytes("US-ASCII");
+                socket.send(new DatagramPacket(bytes, bytes.length, address, SyslogClient.PORT));
+            }
+        } finally {
+            socket.close();
+        }
+        final long mid = System.currentTimeMillis();
+
+        // wait until everything that was received has been either parsed, discarded or dropped
+        long lastParsed = -1;
+        while (System.currentTimeMillis() - mid < 120000) {
+            Thread.sleep(100);
+            final long parsed = m_syslogd.getMessagesParsed();
+            if (m_syslogd.getMessagesReceived() >= messageCount || parsed == lastParsed) {
+                break;
+            }
+            lastParsed = parsed;
+        }
+        final long end = System.currentTimeMillis();
+
+        if (BENCHMARK_MESSAGES > 0) {
+            LOG.info("sent: {} in {}ms, received: {}, dropped: {}, parsed: {}, events dropped: {}, total time: {}ms, messages per second: {}",
+                    messageCount, (mid - start), m_syslogd.getMessagesReceived(), m_syslogd.getMessagesDropped(), m_syslogd.getMessagesParsed(),
+                    m_syslogd.getEventsDropped(), (end - start), String.format("%.1f", m_syslogd.getMessagesParsed() * 1000.0 / Math.max(end - start, 1)));
+        }
+        assertTrue(m_syslogd.getMessagesReceived() > 0);
+        assertTrue(m_syslogd.getMessagesParsed() <= m_syslogd.getMessagesReceived() - m_syslogd.getMessagesDropped());
+    }
+
     @Test
     @Transactional
     public void testRfcSyslog() throws Exception {
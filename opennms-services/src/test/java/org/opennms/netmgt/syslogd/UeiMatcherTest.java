@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.syslogd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Date;
+
+import org.junit.Test;
+import org.opennms.netmgt.config.SyslogdConfigFactory;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.xml.event.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class UeiMatcherTest {
+    private static final Logger LOG = LoggerFactory.getLogger(UeiMatcherTest.class);
+
+    private static final String DISCARD = "DISCARD-MATCHING-MESSAGES";
+
+    /**
+     * Number of messages timed by {@link #testMatchingWith500Rules()}; the
+     * timing only runs when this is set.
+     */
+    private static final int BENCHMARK_MESSAGES = Integer.getInteger("org.opennms.syslogd.benchmarkMatchMessages", 0);
+
+    private static SyslogdConfigFactory config(final String ueiMatches, final String hideMatches) throws Exception {
+        final String xml = "<syslogd-configuration>\n" +
+                "  <configuration syslog-port=\"10514\" discard-uei=\"" + DISCARD + "\"/>\n" +
+                "  <ueiList>\n" + ueiMatches + "  </ueiList>\n" +
+                "  <hideMessage>\n" + hideMatches + "  </hideMessage>\n" +
+                "</syslogd-configuration>\n";
+        return new SyslogdConfigFactory(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+    }
+
+    private static String ueiMatch(final String type, final String expression, final String uei) {
+        return "    <ueiMatch><match type=\"" + type + "\" expression=\"" + expression + "\"/><uei>" + uei + "</uei></ueiMatch>\n";
+    }
+
+    private static UeiMatcher matcher(final SyslogdConfigFactory config) {
+        return new UeiMatcher(config.getUeiList(), config.getHideMessages());
+    }
+
+    private static SyslogMessage message(final String text) {
+        return new SyslogMessage(SyslogFacility.USER.getFacilityNumber(), SyslogSeverity.INFORMATIONAL.getSeverityNumber(), new Date(), "127.0.0.1", "test", 1234, text);
+    }
+
+    private static Event match(final UeiMatcher matcher, final SyslogMessage message) throws MessageDiscardedException {
+        final EventBuilder bldr = new EventBuilder("uei.opennms.org/syslogd/default", "test");
+        matcher.match(message, message.getFacility().toString(), message.getSeverity().toString(), bldr, DISCARD);
+        return bldr.getEvent();
+    }
+
+    @Test
+    public void testSubstringMatcher() {
+        final SubstringMatcher matcher = new SubstringMatcher(Arrays.asList("he", "she", "his", "hers", "xyz"));
+        final BitSet found = matcher.findAll("ushers");
+        assertTrue(found.get(0));
+        assertTrue(found.get(1));
+        assertFalse(found.get(2));
+        assertTrue(found.get(3));
+        assertFalse(found.get(4));
+
+        assertTrue(matcher.containsAny("this"));
+        assertFalse(matcher.containsAny("abc"));
+        assertTrue(new SubstringMatcher(Arrays.asList("")).containsAny(""));
+        assertFalse(new SubstringMatcher(Arrays.<String>asList()).containsAny("anything"));
+    }
+
+    @Test
+    public void testFirstMatchingRuleWins() throws Exception {
+        final UeiMatcher matcher = matcher(config(
+                ueiMatch("regex", "fo+bar", "uei.opennms.org/test/first") +
+                ueiMatch("substr", "bar", "uei.opennms.org/test/second") +
+                ueiMatch("substr", "baz", "uei.opennms.org/test/third"), ""));
+
+        assertEquals("uei.opennms.org/test/first", match(matcher, message("a foooobar happened")).getUei());
+        assertEquals("uei.opennms.org/test/second", match(matcher, message("a bar happened")).getUei());
+        assertEquals("uei.opennms.org/test/third", match(matcher, message("a baz happened")).getUei());
+        assertEquals("uei.opennms.org/syslogd/default", match(matcher, message("nothing happened")).getUei());
+    }
+
+    @Test
+    public void testRegexGroupsBecomeParameters() throws Exception {
+        final UeiMatcher matcher = matcher(config(ueiMatch("regex", "(\\d+) out of (\\d+)", "uei.opennms.org/test/groups"), ""));
+
+        final Event event = match(matcher, message("3 out of 4 tests failed"));
+        assertEquals("uei.opennms.org/test/groups", event.getUei());
+        assertEquals(2, event.getParmCollection().size());
+        assertEquals("group1", event.getParmCollection().get(0).getParmName());
+        assertEquals("3", event.getParmCollection().get(0).getValue().getContent());
+    }
+
+    @Test
+    public void testDiscard() throws Exception {
+        final UeiMatcher matcher = matcher(config(ueiMatch("substr", "JUNK", DISCARD), ""));
+        try {
+            match(matcher, message("this is JUNK"));
+            fail("message should have been discarded");
+        } catch (final MessageDiscardedException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testHide() throws Exception {
+        final UeiMatcher matcher = matcher(config("",
+                "    <hideMatch><match type=\"substr\" expression=\"password\"/></hideMatch>\n" +
+                "    <hideMatch><match type=\"regex\" expression=\"secret\\d+\"/></hideMatch>\n"));
+
+        assertTrue(matcher.shouldHide(message("my password is 1234").getFullText()));
+        assertTrue(matcher.shouldHide(message("my secret42").getFullText()));
+        assertFalse(matcher.shouldHide(message("my secret").getFullText()));
+    }
+
+    @Test
+    public void testInvalidRegexNeverMatches() throws Exception {
+        final UeiMatcher matcher = matcher(config(
+                ueiMatch("regex", "(unclosed", "uei.opennms.org/test/broken") +
+                ueiMatch("substr", "unclosed", "uei.opennms.org/test/fine"), ""));
+
+        assertEquals("uei.opennms.org/test/fine", match(matcher, message("(unclosed")).getUei());
+    }
+
+    /**
+     * 500 rules, half substring and half regex, where most messages match
+     * none of them: the worst case, since every rule has to be considered.
+     */
+    @Test
+    public void testMatchingWith500Rules() throws Exception {
+        final StringBuilder rules = new StringBuilder();
+        for (int i = 0; i < 250; i++) {
+            rules.append(ueiMatch("substr", "substring rule " + i + " fired", "uei.opennms.org/test/substr/" + i));
+            rules.append(ueiMatch("regex", "regex rule " + i + ": (\\d+) of (\\d+)", "uei.opennms.org/test/regex/" + i));
+        }
+        final UeiMatcher matcher = matcher(config(rules.toString(), "    <hideMatch><match type=\"substr\" expression=\"password\"/></hideMatch>\n"));
+
+        final SyslogMessage[] messages = new SyslogMessage[] {
+                message("interface GigabitEthernet0/1 changed state to down"),
+                message("session opened for user root by (uid=0)"),
+                message("substring rule 249 fired"),
+                message("regex rule 125: 3 of 4")
+        };
+
+        assertEquals("uei.opennms.org/syslogd/default", match(matcher, messages[0]).getUei());
+        assertEquals("uei.opennms.org/syslogd/default", match(matcher, messages[1]).getUei());
+        assertEquals("uei.opennms.org/test/substr/249", match(matcher, messages[2]).getUei());
+        assertEquals("uei.opennms.org/test/regex/125", match(matcher, messages[3]).getUei());
+
+        if (BENCHMARK_MESSAGES <= 0) {
+            return;
+        }
+
+        final int count = BENCHMARK_MESSAGES;
+        // warm up
+        for (int i = 0; i < count / 10; i++) {
+            match(matcher, messages[i % messages.length]);
+        }
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            final SyslogMessage message = messages[i % messages.length];
+            match(matcher, message);
+            matcher.shouldHide(message.getFullText());
+        }
+        final long elapsed = Math.max(System.nanoTime() - start, 1);
+
+        LOG.info("500 rules: {} messages in {}ms ({} messages/sec)", count, elapsed / 1000000, String.format("%.0f", count * 1000000000.0 / elapsed));
+    }
+}
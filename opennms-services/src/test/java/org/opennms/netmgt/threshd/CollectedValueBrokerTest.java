@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.threshd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CollectedValueBrokerTest {
+
+    private static final long MAX_AGE = 300000;
+
+    private CollectedValueBroker m_broker;
+    private File m_nodeDir;
+
+    @Before
+    public void setUp() {
+        m_broker = new CollectedValueBroker();
+        m_nodeDir = new File("target/snmp/1");
+    }
+
+    @Test
+    public void testNothingKeptWithoutSubscription() {
+        publish(m_nodeDir, System.currentTimeMillis(), "load", 1.0);
+        assertFalse(m_broker.hasResources(1));
+        assertNull(m_broker.getResource(m_nodeDir));
+    }
+
+    @Test
+    public void testSubscriptionsAreCounted() {
+        m_broker.subscribe(1);
+        m_broker.subscribe(1);
+        publish(m_nodeDir, System.currentTimeMillis(), "load", 1.0);
+        assertTrue(m_broker.hasResources(1));
+
+        m_broker.unsubscribe(1);
+        assertTrue(m_broker.isSubscribed(1));
+        assertNotNull(m_broker.getResource(m_nodeDir));
+
+        m_broker.unsubscribe(1);
+        assertFalse(m_broker.isSubscribed(1));
+        assertFalse(m_broker.hasResources(1));
+        assertNull(m_broker.getResource(m_nodeDir));
+    }
+
+    @Test
+    public void testGaugeLookupByDirectory() {
+        m_broker.subscribe(1);
+        publish(m_nodeDir, System.currentTimeMillis(), "load", 2.5);
+
+        // relative and absolute forms of the directory are the same resource
+        assertEquals(2.5, m_broker.getValue(m_nodeDir.getAbsoluteFile(), "load", MAX_AGE), 0.0);
+        assertNull(m_broker.getValue(m_nodeDir, "missing", MAX_AGE));
+        assertEquals(1, m_broker.getValuesServed());
+        assertEquals(Collections.singleton(m_nodeDir.getAbsoluteFile()), m_broker.getResourceDirectories(1, MAX_AGE));
+    }
+
+    @Test
+    public void testStaleValuesAreNotServed() {
+        m_broker.subscribe(1);
+        publish(m_nodeDir, System.currentTimeMillis() - 2 * MAX_AGE, "load", 2.5);
+
+        assertNull(m_broker.getValue(m_nodeDir, "load", MAX_AGE));
+        assertTrue(m_broker.getResourceDirectories(1, MAX_AGE).isEmpty());
+        assertEquals(0, m_broker.getValuesServed());
+    }
+
+    @Test
+    public void testNaNIsNotServed() {
+        m_broker.subscribe(1);
+        publish(m_nodeDir, System.currentTimeMillis(), "load", Double.NaN);
+        assertNull(m_broker.getValue(m_nodeDir, "load", MAX_AGE));
+    }
+
+    @Test
+    public void testCounterRate() {
+        m_broker.subscribe(1);
+        final File ifDir = new File(m_nodeDir, "eth0");
+        final long now = System.currentTimeMillis();
+        publishCounter(ifDir, now - 300000, "ifInOctets", 1000.0);
+        assertNull(m_broker.getValue(ifDir, "ifInOctets", MAX_AGE));
+
+        publishCounter(ifDir, now, "ifInOctets", 31000.0);
+        assertEquals(100.0, m_broker.getValue(ifDir, "ifInOctets", MAX_AGE), 0.0);
+    }
+
+    @Test
+    public void testCounterWrap() {
+        assertEquals(10.0, CollectedValueBroker.rate(Math.pow(2, 32) - 50, 50, 10), 0.0);
+        assertEquals(Math.pow(2, 21), CollectedValueBroker.rate(Math.pow(2, 64) - Math.pow(2, 20), Math.pow(2, 20), 1), 0.0);
+    }
+
+    @Test
+    public void testPublishesToTheSameDirectoryAreMerged() {
+        m_broker.subscribe(1);
+        final long now = System.currentTimeMillis();
+        publish(m_nodeDir, now - 1000, "load", 1.0);
+        publish(m_nodeDir, now, "memory", 2.0);
+
+        assertEquals(1.0, m_broker.getValue(m_nodeDir, "load", MAX_AGE), 0.0);
+        assertEquals(2.0, m_broker.getValue(m_nodeDir, "memory", MAX_AGE), 0.0);
+    }
+
+    @Test
+    public void testValuesNoLongerCollectedAgeOut() {
+        m_broker.subscribe(1);
+        final long now = System.currentTimeMillis();
+        publish(m_nodeDir, now - 2 * MAX_AGE, "load", 1.0);
+        publish(m_nodeDir, now, "memory", 2.0);
+
+        // the resource is fresh, but load was not reported by the latest collection
+        assertNotNull(m_broker.getResource(m_nodeDir, MAX_AGE));
+        assertNull(m_broker.getValue(m_nodeDir, "load", MAX_AGE));
+        assertEquals(2.0, m_broker.getValue(m_nodeDir, "memory", MAX_AGE), 0.0);
+    }
+
+    @Test
+    public void testHasRecentResources() {
+        m_broker.subscribe(1);
+        publish(m_nodeDir, System.currentTimeMillis() - 2 * MAX_AGE, "load", 1.0);
+
+        // published once, but not within the interval: thresholders fall back to the RRD files
+        assertTrue(m_broker.hasResources(1));
+        assertFalse(m_broker.hasResources(1, MAX_AGE));
+        assertNull(m_broker.getResource(m_nodeDir, MAX_AGE));
+
+        publish(m_nodeDir, System.currentTimeMillis(), "load", 1.0);
+        assertTrue(m_broker.hasResources(1, MAX_AGE));
+    }
+
+    @Test
+    public void testStrings() {
+        m_broker.subscribe(1);
+        final File resourceDir = new File(m_nodeDir, "hrStorageIndex/1");
+        m_broker.publish(1, resourceDir, System.currentTimeMillis(), Collections.<String, Double>emptyMap(), Collections.<String, Double>emptyMap(), Collections.singletonMap("hrStorageDescr", "/"));
+        assertEquals("/", m_broker.getResource(resourceDir).getString("hrStorageDescr"));
+    }
+
+    private void publish(final File dir, final long timestamp, final String ds, final double value) {
+        final Map<String, Double> gauges = new HashMap<String, Double>();
+        gauges.put(ds, value);
+        m_broker.publish(1, dir, timestamp, gauges, Collections.<String, Double>emptyMap(), Collections.<String, String>emptyMap());
+    }
+
+    private void publishCounter(final File dir, final long timestamp, final String ds, final double value) {
+        final Map<String, Double> counters = new HashMap<String, Double>();
+        counters.put(ds, value);
+        m_broker.publish(1, dir, timestamp, Collections.<String, Double>emptyMap(), counters, Collections.<String, String>emptyMap());
+    }
+}
@@ -78,7 +78,7 @@ public class CollectionResourceWrapperTest {
 
     @Before
     public void setUp() throws Exception {
-        CollectionResourceWrapper.s_cache.clear();
+        CounterStateStore.getInstance().clear();
         MockLogAppender.setupLogging();
     }
 
@@ -137,7 +137,7 @@ public class CollectionResourceWrapperTest {
 
         // Add Counter Attribute
         String attributeName = "myCounter";
-        String attributeId = "node[1].resourceType[node].instance[null].metric[" + attributeName + "]";
+        CounterStateStore.Key attributeId = new CounterStateStore.Key(1, "node", null, attributeName);
         Map<String, CollectionAttribute> attributes = new HashMap<String, CollectionAttribute>();
         SnmpAttribute attribute = addAttributeToCollectionResource(resource, attributeName, "counter", "0", 1000);
         attributes.put(attribute.getName(), attribute);
@@ -148,10 +148,10 @@ public class CollectionResourceWrapperTest {
         // Get counter value - first time
         CollectionResourceWrapper wrapper = createWrapper(resource, attributes, baseDate);
 
-        Assert.assertFalse(CollectionResourceWrapper.s_cache.containsKey(attributeId));
+        Assert.assertFalse(CounterStateStore.getInstance().containsKey(attributeId));
         Assert.assertEquals(Double.NaN, wrapper.getAttributeValue(attributeName)); // Last value is null
         Assert.assertEquals(Double.NaN, wrapper.getAttributeValue(attributeName)); // Last value is null
-        Assert.assertEquals(1000.0, CollectionResourceWrapper.s_cache.get(attributeId).value);
+        Assert.assertEquals(1000.0, CounterStateStore.getInstance().get(attributeId).getValue(), 0.0);
 
         // Increase counter
         attribute = addAttributeToCollectionResource(resource, attributeName, "counter", "0", 2500);
@@ -161,15 +161,15 @@ public class CollectionResourceWrapperTest {
        
         // Get counter value - second time
         // Last value is 1000.0, so 2500-1000/300 = 1500/300 =  5.
-        Assert.assertEquals(1000.0, CollectionResourceWrapper.s_cache.get(attributeId).value);
+        Assert.assertEquals(1000.0, CounterStateStore.getInstance().get(attributeId).getValue(), 0.0);
         Assert.assertEquals(5.0, wrapper.getAttributeValue(attributeName));
         //Validate that the cached counter value has been updated
-        Assert.assertEquals(2500.0, CollectionResourceWrapper.s_cache.get(attributeId).value);
+        Assert.assertEquals(2500.0, CounterStateStore.getInstance().get(attributeId).getValue(), 0.0);
         //but that calling getAttributeValue doesn't re-calculate the rate inappropriately
         Assert.assertEquals(5.0, wrapper.getAttributeValue(attributeName));
-        Assert.assertEquals(2500.0, CollectionResourceWrapper.s_cache.get(attributeId).value);
+        Assert.assertEquals(2500.0, CounterStateStore.getInstance().get(attributeId).getValue(), 0.0);
         Assert.assertEquals(5.0, wrapper.getAttributeValue(attributeName));
-        Assert.assertEquals(2500.0, CollectionResourceWrapper.s_cache.get(attributeId).value);
+        Assert.assertEquals(2500.0, CounterStateStore.getInstance().get(attributeId).getValue(), 0.0);
 
         // Increase counter
         attribute = addAttributeToCollectionResource(resource, attributeName, "counter", "0", 5500);
@@ -179,13 +179,13 @@ public class CollectionResourceWrapperTest {
 
         // Get counter value - third time
         // Last value is 2500.0, so 5500-2500/300 = 3000/300 =  10;
-        Assert.assertEquals(2500.0, CollectionResourceWrapper.s_cache.get(attributeId).value);
+        Assert.assertEquals(2500.0, CounterStateStore.getInstance().get(attributeId).getValue(), 0.0);
         Assert.assertEquals(10.0, wrapper.getAttributeValue(attributeName));
-        Assert.assertEquals(5500.0, CollectionResourceWrapper.s_cache.get(attributeId).value);
+        Assert.assertEquals(5500.0, CounterStateStore.getInstance().get(attributeId).getValue(), 0.0);
         Assert.assertEquals(10.0, wrapper.getAttributeValue(attributeName));
-        Assert.assertEquals(5500.0, CollectionResourceWrapper.s_cache.get(attributeId).value);
+        Assert.assertEquals(5500.0, CounterStateStore.getInstance().get(attributeId).getValue(), 0.0);
         Assert.assertEquals(10.0, wrapper.getAttributeValue(attributeName));
-        Assert.assertEquals(5500.0, CollectionResourceWrapper.s_cache.get(attributeId).value);
+        Assert.assertEquals(5500.0, CounterStateStore.getInstance().get(attributeId).getValue(), 0.0);
     }
         
     
@@ -205,7 +205,7 @@ public class CollectionResourceWrapperTest {
 
 		// Add Counter Attribute
 		String attributeName = "myCounter";
-	        String attributeId = "node[1].resourceType[node].instance[null].metric[" + attributeName + "]";
+	        CounterStateStore.Key attributeId = new CounterStateStore.Key(1, "node", null, attributeName);
 		Map<String, CollectionAttribute> attributes = new HashMap<String, CollectionAttribute>();
 		SnmpAttribute attribute = addAttributeToCollectionResource(resource,
 				attributeName, "counter", "0", 1000);
@@ -219,14 +219,13 @@ public class CollectionResourceWrapperTest {
 		CollectionResourceWrapper wrapper = createWrapper(resource, attributes,
 				baseDate);
 
-		Assert.assertFalse(CollectionResourceWrapper.s_cache
-				.containsKey(attributeId));
+		Assert.assertFalse(CounterStateStore.getInstance().containsKey(attributeId));
 		Assert.assertEquals(Double.NaN,
 				wrapper.getAttributeValue(attributeName)); // Last value is null
 		Assert.assertEquals(Double.NaN,
 				wrapper.getAttributeValue(attributeName)); // Last value is null
 		Assert.assertEquals(1000.0,
-				CollectionResourceWrapper.s_cache.get(attributeId).value);
+				CounterStateStore.getInstance().get(attributeId).getValue(), 0.0);
 
         // Increase counter
         attribute = addAttributeToCollectionResource(resource, attributeName, "counter", "0", 2500);
@@ -236,13 +235,13 @@ public class CollectionResourceWrapperTest {
        
         // Get counter value - second time
         // Last value is 1000.0, so 2500-1000/300 = 1500/300 =  5.
-        Assert.assertEquals(1000.0, CollectionResourceWrapper.s_cache.get(attributeId).value);
+        Assert.assertEquals(1000.0, CounterStateStore.getInstance().get(attributeId).getValue(), 0.0);
         Assert.assertEquals(5.0, wrapper.getAttributeValue(attributeName));
         //Validate that the cached counter value has been updated
-        Assert.assertEquals(2500.0, CollectionResourceWrapper.s_cache.get(attributeId).value);
+        Assert.assertEquals(2500.0, CounterStateStore.getInstance().get(attributeId).getValue(), 0.0);
         //but that calling getAttributeValue doesn't re-calculate the rate inappropriately or update the static cache
         Assert.assertEquals(5.0, wrapper.getAttributeValue(attributeName));
-        Assert.assertEquals(2500.0, CollectionResourceWrapper.s_cache.get(attributeId).value);
+        Assert.assertEquals(2500.0, CounterStateStore.getInstance().get(attributeId).getValue(), 0.0);
 
 		// Now create a collection that is missing the counter value; we're
 		// expecting null result and no cache updates
@@ -257,10 +256,10 @@ public class CollectionResourceWrapperTest {
 		// No change, so we expect the cache to have (and continue to) remain
 		// the same, and to get no attribute value out
 		Assert.assertEquals(2500.0,
-				CollectionResourceWrapper.s_cache.get(attributeId).value);
+				CounterStateStore.getInstance().get(attributeId).getValue(), 0.0);
 		Assert.assertNull(wrapper.getAttributeValue(attributeName)); 
 		Assert.assertEquals(2500.0,
-				CollectionResourceWrapper.s_cache.get(attributeId).value);
+				CounterStateStore.getInstance().get(attributeId).getValue(), 0.0);
 
 		// Now if we collect successfully again, we expect the counter to be the
 		// change divided by two collection cycles
@@ -277,16 +276,16 @@ public class CollectionResourceWrapperTest {
 		// Last value is 5500, but we've had two collection cycles, so
 		// 7300-2500/600 = 4800/600 = 8
 		Assert.assertEquals(2500.0,
-				CollectionResourceWrapper.s_cache.get(attributeId).value);
+				CounterStateStore.getInstance().get(attributeId).getValue(), 0.0);
 		Assert.assertEquals(8.0, wrapper.getAttributeValue(attributeName));
 		Assert.assertEquals(7300.0,
-				CollectionResourceWrapper.s_cache.get(attributeId).value);
+				CounterStateStore.getInstance().get(attributeId).getValue(), 0.0);
 		Assert.assertEquals(8.0, wrapper.getAttributeValue(attributeName));
 		Assert.assertEquals(7300.0,
-				CollectionResourceWrapper.s_cache.get(attributeId).value);
+				CounterStateStore.getInstance().get(attributeId).getValue(), 0.0);
 		Assert.assertEquals(8.0, wrapper.getAttributeValue(attributeName));
 		Assert.assertEquals(7300.0,
-				CollectionResourceWrapper.s_cache.get(attributeId).value);
+				CounterStateStore.getInstance().get(attributeId).getValue(), 0.0);
 
 		EasyMock.verify(agent);
 	}
@@ -303,7 +302,7 @@ public class CollectionResourceWrapperTest {
 
         // Add Counter Attribute
         String attributeName = "myCounter";
-        String attributeId = "node[1].resourceType[node].instance[null].metric[" + attributeName + "]";
+        CounterStateStore.Key attributeId = new CounterStateStore.Key(1, "node", null, attributeName);
         Map<String, CollectionAttribute> attributes = new HashMap<String, CollectionAttribute>();
         BigInteger initialValue = new BigDecimal(Math.pow(2, 32) - 20000).toBigInteger();
         SnmpAttribute attribute = addAttributeToCollectionResource(resource, attributeName, "counter", "0", initialValue);
@@ -311,10 +310,10 @@ public class CollectionResourceWrapperTest {
         
         // Get counter value - first time
         CollectionResourceWrapper wrapper = createWrapper(resource, attributes, baseDate);
-        Assert.assertFalse(CollectionResourceWrapper.s_cache.containsKey(attributeId));
+        Assert.assertFalse(CounterStateStore.getInstance().containsKey(attributeId));
         Assert.assertEquals(Double.NaN, wrapper.getAttributeValue(attributeName)); // Last value is null
         Assert.assertEquals(Double.NaN, wrapper.getAttributeValue(attributeName)); // Last value is null
-        Assert.assertEquals(initialValue.doubleValue(), CollectionResourceWrapper.s_cache.get(attributeId).value);
+        Assert.assertEquals(initialValue.doubleValue(), CounterStateStore.getInstance().get(attributeId).getValue(), 0.0);
 
         // Increase counter
         attribute = addAttributeToCollectionResource(resource, attributeName, "counter", "0", new BigInteger("40000"));
@@ -323,13 +322,13 @@ public class CollectionResourceWrapperTest {
 
         // Get counter value - second time (wrap)
         // last = MAX - 20000, new = 40000; then last - new = 60000, rate: 60000/300 = 200
-        Assert.assertEquals(initialValue.doubleValue(), CollectionResourceWrapper.s_cache.get(attributeId).value);
+        Assert.assertEquals(initialValue.doubleValue(), CounterStateStore.getInstance().get(attributeId).getValue(), 0.0);
         Assert.assertEquals(200.0, wrapper.getAttributeValue(attributeName));
-        Assert.assertEquals(40000.0, CollectionResourceWrapper.s_cache.get(attributeId).value);
+        Assert.assertEquals(40000.0, CounterStateStore.getInstance().get(attributeId).getValue(), 0.0);
         Assert.assertEquals(200.0, wrapper.getAttributeValue(attributeName));
-        Assert.assertEquals(40000.0, CollectionResourceWrapper.s_cache.get(attributeId).value);
+        Assert.assertEquals(40000.0, CounterStateStore.getInstance().get(attributeId).getValue(), 0.0);
         Assert.assertEquals(200.0, wrapper.getAttributeValue(attributeName));
-        Assert.assertEquals(40000.0, CollectionResourceWrapper.s_cache.get(attributeId).value);
+        Assert.assertEquals(40000.0, CounterStateStore.getInstance().get(attributeId).getValue(), 0.0);
 
         EasyMock.verify(agent);
     }
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.threshd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CounterStateStoreTest {
+
+    private static final long INTERVAL = 300000;
+
+    private CounterStateStore m_store;
+    private File m_snapshot;
+
+    @Before
+    public void setUp() throws Exception {
+        m_store = new CounterStateStore();
+        m_snapshot = File.createTempFile("counterState", ".dat");
+    }
+
+    @After
+    public void tearDown() {
+        m_snapshot.delete();
+    }
+
+    @Test
+    public void testKeyEquality() {
+        final CounterStateStore.Key key = new CounterStateStore.Key(1, "interfaceSnmp", "eth0", new String("ifInOctets"));
+        assertEquals(key, new CounterStateStore.Key(1, new String("interfaceSnmp"), new String("eth0"), "ifInOctets"));
+        assertEquals(key.hashCode(), new CounterStateStore.Key(1, "interfaceSnmp", "eth0", "ifInOctets").hashCode());
+        assertFalse(key.equals(new CounterStateStore.Key(2, "interfaceSnmp", "eth0", "ifInOctets")));
+        assertFalse(key.equals(new CounterStateStore.Key(1, "interfaceSnmp", "eth1", "ifInOctets")));
+        assertEquals(new CounterStateStore.Key(1, "node", null, "x"), new CounterStateStore.Key(1, "node", null, "x"));
+    }
+
+    @Test
+    public void testPutReturnsLastSample() {
+        final CounterStateStore.Key key = new CounterStateStore.Key(1, "node", null, "myCounter");
+        assertNull(m_store.put(key, 1000, 10.0));
+        final CounterStateStore.Sample last = m_store.put(key, 2000, 20.0);
+        assertEquals(1000, last.getTimestamp());
+        assertEquals(10.0, last.getValue(), 0.0);
+        assertEquals(20.0, m_store.get(key).getValue(), 0.0);
+
+        m_store.restore(key, last);
+        assertEquals(10.0, m_store.get(key).getValue(), 0.0);
+    }
+
+    @Test
+    public void testSweepUsesLearnedInterval() {
+        final long now = System.currentTimeMillis();
+        final CounterStateStore.Key stale = new CounterStateStore.Key(1, "node", null, "stale");
+        final CounterStateStore.Key live = new CounterStateStore.Key(1, "node", null, "live");
+        final CounterStateStore.Key single = new CounterStateStore.Key(1, "node", null, "single");
+
+        m_store.put(stale, now, 1.0);
+        m_store.put(stale, now + INTERVAL, 2.0);
+        m_store.put(live, now, 1.0);
+        m_store.put(live, now + INTERVAL, 2.0);
+        m_store.put(single, now + INTERVAL, 1.0);
+
+        // live keeps being collected, stale misses more than TTL_INTERVALS collections
+        final long later = now + INTERVAL * (CounterStateStore.TTL_INTERVALS + 2);
+        m_store.put(live, later, 3.0);
+
+        assertEquals(1, m_store.sweep(later));
+        assertFalse(m_store.containsKey(stale));
+        assertTrue(m_store.containsKey(live));
+        // with only one sample the default time to live applies
+        assertTrue(m_store.containsKey(single));
+        assertEquals(2, m_store.sweep(now + INTERVAL + CounterStateStore.DEFAULT_TTL + 1));
+        assertFalse(m_store.containsKey(single));
+        assertEquals(0, m_store.size());
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        final long now = System.currentTimeMillis();
+        final CounterStateStore.Key key = new CounterStateStore.Key(1, "interfaceSnmp", "eth0", "ifInOctets");
+        final CounterStateStore.Key nodeKey = new CounterStateStore.Key(2, "node", null, "myCounter");
+        m_store.put(key, now - INTERVAL, 1000.0);
+        m_store.put(key, now, 2500.0);
+        m_store.put(nodeKey, now, 42.0);
+
+        assertEquals(2, m_store.save(m_snapshot));
+
+        final CounterStateStore loaded = new CounterStateStore();
+        assertEquals(2, loaded.load(m_snapshot, now));
+        assertEquals(2500.0, loaded.get(key).getValue(), 0.0);
+        assertEquals(now, loaded.get(key).getTimestamp());
+        assertEquals(42.0, loaded.get(nodeKey).getValue(), 0.0);
+
+        // samples that have expired since the snapshot are not loaded
+        final CounterStateStore late = new CounterStateStore();
+        assertEquals(1, late.load(m_snapshot, now + INTERVAL * (CounterStateStore.TTL_INTERVALS + 1)));
+        assertFalse(late.containsKey(key));
+        assertTrue(late.containsKey(nodeKey));
+    }
+}
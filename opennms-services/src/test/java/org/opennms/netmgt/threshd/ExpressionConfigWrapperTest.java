@@ -33,14 +33,40 @@ import java.util.Map;
 
 import junit.framework.Assert;
 
+import org.apache.commons.jexl2.JexlEngine;
+import org.apache.commons.jexl2.MapContext;
 import org.junit.Test;
 import org.opennms.netmgt.config.threshd.Expression;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * 
  * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
  */
 public class ExpressionConfigWrapperTest {
+    private static final Logger LOG = LoggerFactory.getLogger(ExpressionConfigWrapperTest.class);
+
+    /**
+     * The expression thresholds in the default thresholds.xml.
+     */
+    private static final String[] DEFAULT_EXPRESSIONS = {
+        "ifInErrors + ifOutErrors",
+        "ifInDiscards + ifOutDiscards",
+        "ifInOctets * 8 / 1000000 / ifHighSpeed * 100",
+        "ifOutOctets * 8 / 1000000 / ifHighSpeed * 100",
+        "hrStorageUsed / hrStorageSize * 100.0",
+        "loadavg5 / 100.0",
+        "memAvailSwap / memTotalSwap * 100.0",
+        "(memAvailReal + memCached) / memTotalReal * 100.0",
+        "memAvailReal / memTotalReal * 100.0"
+    };
+
+    /**
+     * Number of evaluations of each expression made by {@link #testEvaluateBenchmark()}.
+     * The benchmark only runs when this is set.
+     */
+    private static final int BENCHMARK_EVALUATIONS = Integer.getInteger("org.opennms.threshd.benchmarkEvaluations", 0);
     
     /* See NMS-5014 */
     @Test
@@ -79,4 +105,98 @@ public class ExpressionConfigWrapperTest {
         Assert.assertEquals(60.0, wrapper.evaluate(values));
     }
 
+    @Test
+    public void testDefaultExpressions() throws Exception {
+        for (final String expression : DEFAULT_EXPRESSIONS) {
+            final ExpressionConfigWrapper wrapper = createWrapper(expression);
+            final Map<String, Double> values = createValues(wrapper);
+            Assert.assertEquals(expression, evaluateUncached(expression, values), wrapper.evaluate(values));
+        }
+    }
+
+    @Test
+    public void testAssignment() throws Exception {
+        final ExpressionConfigWrapper wrapper = createWrapper("bits = ifInOctets * 8");
+        final Map<String, Double> values = new HashMap<String, Double>();
+        values.put("ifInOctets", 10.0);
+        Assert.assertEquals(80.0, wrapper.evaluate(values));
+        values.put("ifInOctets", 20.0);
+        Assert.assertEquals(160.0, wrapper.evaluate(values));
+        // the assigned variable must not leak into the values being thresholded
+        Assert.assertFalse(values.containsKey("bits"));
+    }
+
+    @Test
+    public void testEvaluateBenchmark() throws Exception {
+        if (BENCHMARK_EVALUATIONS <= 0) {
+            return;
+        }
+
+        final ExpressionConfigWrapper[] wrappers = new ExpressionConfigWrapper[DEFAULT_EXPRESSIONS.length];
+        @SuppressWarnings("unchecked")
+        final Map<String, Double>[] values = new Map[DEFAULT_EXPRESSIONS.length];
+        for (int i = 0; i < DEFAULT_EXPRESSIONS.length; i++) {
+            wrappers[i] = createWrapper(DEFAULT_EXPRESSIONS[i]);
+            values[i] = createValues(wrappers[i]);
+        }
+
+        // warm up both paths before timing them
+        for (int n = 0; n < BENCHMARK_EVALUATIONS / 10; n++) {
+            for (int i = 0; i < DEFAULT_EXPRESSIONS.length; i++) {
+                evaluateUncached(DEFAULT_EXPRESSIONS[i], values[i]);
+                wrappers[i].evaluate(values[i]);
+            }
+        }
+
+        double uncachedSum = 0;
+        long start = System.nanoTime();
+        for (int n = 0; n < BENCHMARK_EVALUATIONS; n++) {
+            for (int i = 0; i < DEFAULT_EXPRESSIONS.length; i++) {
+                uncachedSum += evaluateUncached(DEFAULT_EXPRESSIONS[i], values[i]);
+            }
+        }
+        final long uncached = System.nanoTime() - start;
+
+        double cachedSum = 0;
+        start = System.nanoTime();
+        for (int n = 0; n < BENCHMARK_EVALUATIONS; n++) {
+            for (int i = 0; i < DEFAULT_EXPRESSIONS.length; i++) {
+                cachedSum += wrappers[i].evaluate(values[i]);
+            }
+        }
+        final long cached = System.nanoTime() - start;
+
+        Assert.assertEquals(uncachedSum, cachedSum);
+
+        final long evaluations = (long) BENCHMARK_EVALUATIONS * DEFAULT_EXPRESSIONS.length;
+        LOG.info("{} expression evaluations: parsed per call {}ns/op, compiled once {}ns/op", evaluations, uncached / evaluations, cached / evaluations);
+    }
+
+    private static ExpressionConfigWrapper createWrapper(final String expression) throws ThresholdExpressionException {
+        final Expression exp = new Expression();
+        exp.setExpression(expression);
+        return new ExpressionConfigWrapper(exp);
+    }
+
+    private static Map<String, Double> createValues(final ExpressionConfigWrapper wrapper) {
+        final Map<String, Double> values = new HashMap<String, Double>();
+        double value = 1000.0;
+        for (final String ds : wrapper.getRequiredDatasources()) {
+            values.put(ds, value);
+            value += 250.0;
+        }
+        return values;
+    }
+
+    /**
+     * Evaluates an expression the way thresholds were evaluated before
+     * expressions were compiled once per configuration load.
+     */
+    private static double evaluateUncached(final String expression, final Map<String, Double> values) {
+        final MapContext context = new MapContext(new HashMap<String, Object>(values));
+        context.set("datasources", new HashMap<String, Double>(values));
+        context.set("math", new ExpressionConfigWrapper.MathBinding());
+        return Double.parseDouble(new JexlEngine().createExpression(expression).evaluate(context).toString());
+    }
+
 }
@@ -196,7 +196,7 @@ public class ThresholdingVisitorTest {
     @Before
     public void setUp() throws Exception {
         // Resets Counters Cache Data
-        CollectionResourceWrapper.s_cache.clear();
+        CounterStateStore.getInstance().clear();
 
         MockLogAppender.setupLogging();
 
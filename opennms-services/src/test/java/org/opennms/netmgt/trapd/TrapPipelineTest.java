@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.trapd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.EventConstants;
+import org.opennms.netmgt.config.EventConfDao;
+import org.opennms.netmgt.dao.mock.MockEventIpcManager;
+import org.opennms.netmgt.snmp.SnmpObjId;
+import org.opennms.netmgt.snmp.TrapIdentity;
+import org.opennms.netmgt.snmp.TrapNotification;
+import org.opennms.netmgt.snmp.TrapProcessor;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Log;
+
+public class TrapPipelineTest {
+
+    private static final InetAddress KNOWN = InetAddressUtils.addr("192.168.1.1");
+
+    private static final InetAddress UNKNOWN = InetAddressUtils.addr("192.168.1.2");
+
+    private static class RecordingEventIpcManager extends MockEventIpcManager {
+        private final List<Event> m_events = new ArrayList<Event>();
+        private int m_batches = 0;
+        private int m_largestBatch = 0;
+
+        @Override
+        public synchronized void sendNow(final Log eventLog) {
+            final int size = eventLog.getEvents().getEventCount();
+            m_events.addAll(eventLog.getEvents().getEventCollection());
+            m_batches++;
+            m_largestBatch = Math.max(m_largestBatch, size);
+        }
+    }
+
+    private RecordingEventIpcManager m_eventMgr;
+
+    private TrapQueueProcessorFactory m_processorFactory;
+
+    private MockTrapdIpMgr m_trapdIpMgr;
+
+    private TrapPipeline m_pipeline;
+
+    @Before
+    public void setUp() {
+        m_eventMgr = new RecordingEventIpcManager();
+        m_trapdIpMgr = new MockTrapdIpMgr();
+        m_trapdIpMgr.setNodeId(InetAddressUtils.str(KNOWN), 1);
+
+        final EventConfDao eventConfDao = EasyMock.createNiceMock(EventConfDao.class);
+        EasyMock.replay(eventConfDao);
+
+        m_processorFactory = new TrapQueueProcessorFactory();
+        m_processorFactory.setEventManager(m_eventMgr);
+        m_processorFactory.setEventConfDao(eventConfDao);
+        m_processorFactory.setNewSuspect(false);
+
+        m_pipeline = new TrapPipeline();
+        m_pipeline.setProcessorFactory(m_processorFactory);
+        m_pipeline.setQueueSize(10);
+        m_pipeline.setBatchSize(4);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        m_pipeline.stop();
+    }
+
+    @Test
+    public void testTrapsAreSentInBatches() throws InterruptedException {
+        m_pipeline.afterPropertiesSet();
+        for (int i = 0; i < 10; i++) {
+            m_pipeline.receive(trap(KNOWN, i));
+        }
+        m_pipeline.start();
+        m_pipeline.stop();
+
+        assertEquals(10, m_eventMgr.m_events.size());
+        assertEquals(10, m_pipeline.getEventsSent());
+        assertEquals(10, m_pipeline.getTrapsDecoded());
+        assertEquals(m_eventMgr.m_batches, m_pipeline.getBatchesSent());
+        assertTrue(m_eventMgr.m_largestBatch <= 4);
+        for (int i = 0; i < 10; i++) {
+            final Event event = m_eventMgr.m_events.get(i);
+            assertEquals(i, event.getSnmp().getSpecific());
+            assertEquals(1, event.getNodeid().longValue());
+        }
+        assertEquals(0, m_pipeline.getReceiveQueueDepth());
+        assertEquals(0, m_pipeline.getSendQueueDepth());
+    }
+
+    @Test
+    public void testDropNewest() throws InterruptedException {
+        m_pipeline.afterPropertiesSet();
+        for (int i = 0; i < 12; i++) {
+            m_pipeline.receive(trap(KNOWN, i));
+        }
+        assertEquals(12, m_pipeline.getTrapsReceived());
+        assertEquals(2, m_pipeline.getTrapsDropped());
+        assertEquals(10, m_pipeline.getReceiveQueueDepth());
+
+        m_pipeline.start();
+        m_pipeline.stop();
+        assertEquals(0, m_eventMgr.m_events.get(0).getSnmp().getSpecific());
+        assertEquals(9, m_eventMgr.m_events.get(9).getSnmp().getSpecific());
+    }
+
+    @Test
+    public void testDropOldest() throws InterruptedException {
+        m_pipeline.setOverloadPolicy(TrapPipeline.OverloadPolicy.DROP_OLDEST);
+        m_pipeline.afterPropertiesSet();
+        for (int i = 0; i < 12; i++) {
+            m_pipeline.receive(trap(KNOWN, i));
+        }
+        assertEquals(2, m_pipeline.getTrapsDropped());
+
+        m_pipeline.start();
+        m_pipeline.stop();
+        assertEquals(10, m_eventMgr.m_events.size());
+        assertEquals(2, m_eventMgr.m_events.get(0).getSnmp().getSpecific());
+        assertEquals(11, m_eventMgr.m_events.get(9).getSnmp().getSpecific());
+    }
+
+    @Test
+    public void testNewSuspectIsBatchedWithTheTrap() throws InterruptedException {
+        m_processorFactory.setNewSuspect(true);
+        m_pipeline.afterPropertiesSet();
+        m_pipeline.start();
+        m_pipeline.receive(trap(UNKNOWN, 1));
+        m_pipeline.receive(trap(KNOWN, 2));
+        m_pipeline.stop();
+
+        assertEquals(3, m_eventMgr.m_events.size());
+        assertEquals(EventConstants.NEW_SUSPECT_INTERFACE_EVENT_UEI, m_eventMgr.m_events.get(1).getUei());
+        assertEquals(InetAddressUtils.str(UNKNOWN), m_eventMgr.m_events.get(1).getInterface());
+    }
+
+    @Test
+    public void testRestart() throws InterruptedException {
+        m_pipeline.afterPropertiesSet();
+        m_pipeline.start();
+        m_pipeline.receive(trap(KNOWN, 1));
+        m_pipeline.stop();
+        m_pipeline.receive(trap(KNOWN, 2));
+        m_pipeline.start();
+        m_pipeline.stop();
+
+        assertEquals(2, m_eventMgr.m_events.size());
+    }
+
+    private TrapNotification trap(final InetAddress address, final int specific) {
+        final EventCreator creator = new EventCreator(m_trapdIpMgr);
+        creator.setVersion("v1");
+        creator.setCommunity("public");
+        creator.setTimeStamp(0);
+        creator.setAgentAddress(address);
+        creator.setTrapAddress(address);
+        creator.setTrapIdentity(new TrapIdentity(SnmpObjId.get(".1.3.6.1.4.1.5813"), 6, specific));
+        return new TrapNotification() {
+            @Override
+            public TrapProcessor getTrapProcessor() {
+                return creator;
+            }
+        };
+    }
+}
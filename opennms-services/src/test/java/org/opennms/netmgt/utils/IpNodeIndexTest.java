@@ -0,0 +1,195 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.utils.InetAddressUtils;
+
+public class IpNodeIndexTest {
+
+    private IpNodeIndex m_index;
+
+    @Before
+    public void setUp() {
+        m_index = new IpNodeIndex();
+    }
+
+    @Test
+    public void testIpv4() {
+        assertEquals(-1, m_index.getNodeId("192.168.1.1"));
+        assertEquals(-1, m_index.setNodeId(addr("192.168.1.1"), 1));
+        assertEquals(1, m_index.getNodeId("192.168.1.1"));
+        assertEquals(1, m_index.getNodeId(addr("192.168.1.1")));
+        assertEquals(-1, m_index.getNodeId("192.168.1.2"));
+
+        assertEquals(1, m_index.setNodeId(addr("192.168.1.1"), 2));
+        assertEquals(2, m_index.getNodeId("192.168.1.1"));
+        assertEquals(1, m_index.size());
+
+        assertEquals(2, m_index.removeNodeId(addr("192.168.1.1")));
+        assertEquals(-1, m_index.getNodeId("192.168.1.1"));
+        assertEquals(-1, m_index.removeNodeId(addr("192.168.1.1")));
+        assertEquals(0, m_index.size());
+    }
+
+    @Test
+    public void testIpv6() {
+        m_index.setNodeId(addr("fe80::1"), 1);
+        m_index.setNodeId(addr("fe80::2"), 2);
+        m_index.setNodeId(addr("::c0a8:101"), 3);
+        m_index.setNodeId(addr("192.168.1.1"), 4);
+
+        assertEquals(1, m_index.getNodeId("fe80:0:0:0:0:0:0:1"));
+        assertEquals(2, m_index.getNodeId("fe80::2"));
+        // an IPv4 compatible IPv6 address is not the IPv4 address
+        assertEquals(3, m_index.getNodeId("::c0a8:101"));
+        assertEquals(4, m_index.getNodeId("192.168.1.1"));
+
+        assertEquals(1, m_index.removeNodeId(addr("fe80::1")));
+        assertEquals(-1, m_index.getNodeId("fe80::1"));
+        assertEquals(2, m_index.getNodeId("fe80::2"));
+    }
+
+    @Test
+    public void testLoadReplacesEverything() {
+        m_index.setNodeId(addr("10.0.0.1"), 9);
+
+        final Map<InetAddress, Integer> nodeIds = new HashMap<InetAddress, Integer>();
+        for (int i = 0; i < 1000; i++) {
+            nodeIds.put(InetAddressUtils.getInetAddress(new byte[] { 10, 1, (byte)(i >> 8), (byte)i }), i + 1);
+        }
+        nodeIds.put(addr("2001:db8::1"), 2000);
+        m_index.load(nodeIds);
+
+        assertEquals(1001, m_index.size());
+        assertEquals(-1, m_index.getNodeId("10.0.0.1"));
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i + 1, m_index.getNodeId(InetAddressUtils.getInetAddress(new byte[] { 10, 1, (byte)(i >> 8), (byte)i })));
+        }
+        assertEquals(2000, m_index.getNodeId("2001:db8::1"));
+
+        m_index.clear();
+        assertEquals(0, m_index.size());
+        assertEquals(-1, m_index.getNodeId("2001:db8::1"));
+    }
+
+    @Test
+    public void testGrowsAndShrinks() {
+        for (int i = 0; i < 300; i++) {
+            m_index.setNodeId(InetAddressUtils.getInetAddress(new byte[] { 10, 0, (byte)(i >> 8), (byte)i }), i + 1);
+        }
+        for (int i = 0; i < 300; i += 2) {
+            assertEquals(i + 1, m_index.removeNodeId(InetAddressUtils.getInetAddress(new byte[] { 10, 0, (byte)(i >> 8), (byte)i })));
+        }
+        assertEquals(150, m_index.size());
+        for (int i = 0; i < 300; i++) {
+            assertEquals(i % 2 == 0 ? -1 : i + 1, m_index.getNodeId(InetAddressUtils.getInetAddress(new byte[] { 10, 0, (byte)(i >> 8), (byte)i })));
+        }
+    }
+
+    @Test
+    public void testUpdatesAfterLoad() {
+        final Map<InetAddress, Integer> nodeIds = new HashMap<InetAddress, Integer>();
+        for (int i = 0; i < 2000; i++) {
+            nodeIds.put(InetAddressUtils.getInetAddress(new byte[] { 10, 2, (byte)(i >> 8), (byte)i }), i + 1);
+        }
+        m_index.load(nodeIds);
+
+        // enough changes that some are folded into new tables and some are still pending
+        for (int i = 0; i < 1000; i++) {
+            final InetAddress addr = InetAddressUtils.getInetAddress(new byte[] { 10, 2, (byte)(i >> 8), (byte)i });
+            if (i % 2 == 0) {
+                assertEquals(i + 1, m_index.removeNodeId(addr));
+            } else {
+                assertEquals(i + 1, m_index.setNodeId(addr, i + 5000));
+            }
+        }
+        m_index.setNodeId(addr("2001:db8::2"), 7);
+
+        assertEquals(1501, m_index.size());
+        for (int i = 0; i < 2000; i++) {
+            final int expected = i >= 1000 ? i + 1 : i % 2 == 0 ? -1 : i + 5000;
+            assertEquals(expected, m_index.getNodeId(InetAddressUtils.getInetAddress(new byte[] { 10, 2, (byte)(i >> 8), (byte)i })));
+        }
+        assertEquals(7, m_index.getNodeId("2001:db8::2"));
+        assertEquals(-1, m_index.removeNodeId(addr("10.2.0.0")));
+        assertEquals(1501, m_index.size());
+    }
+
+    @Test
+    public void testConcurrentUpdates() throws Exception {
+        final Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int thread = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 1000; i++) {
+                        m_index.setNodeId(InetAddressUtils.getInetAddress(new byte[] { 10, (byte)thread, (byte)(i >> 8), (byte)i }), i + 1);
+                    }
+                    for (int i = 0; i < 1000; i += 2) {
+                        m_index.removeNodeId(InetAddressUtils.getInetAddress(new byte[] { 10, (byte)thread, (byte)(i >> 8), (byte)i }));
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(2000, m_index.size());
+        assertEquals(-1, m_index.getNodeId("10.3.3.230"));
+        assertEquals(998, m_index.getNodeId("10.3.3.229"));
+    }
+
+    @Test
+    public void testInvalidAddresses() {
+        assertEquals(-1, m_index.getNodeId((String)null));
+        assertEquals(-1, m_index.getNodeId((InetAddress)null));
+        assertEquals(-1, m_index.getNodeId("not.an.address"));
+        assertEquals(-1, m_index.setNodeId(null, 1));
+        assertEquals(-1, m_index.removeNodeId(null));
+        // host names are not resolved
+        assertNull(IpNodeIndex.parse("localhost"));
+    }
+
+    private static InetAddress addr(final String addr) {
+        return InetAddressUtils.addr(addr);
+    }
+}
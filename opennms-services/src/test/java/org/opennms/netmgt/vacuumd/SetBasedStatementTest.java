@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.vacuumd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class SetBasedStatementTest {
+
+    @Test
+    public void testUpdateIsJoinedBeforeWhere() {
+        String sql = SetBasedStatement.rewrite(
+            "SELECT *, now() AS _ts FROM alarms WHERE alarmType=2;",
+            "UPDATE alarms SET lastautomationtime = ${_ts} WHERE alarmType=1 AND reductionKey = ${clearKey} AND lastEventTime < ${lastEventTime}"
+        );
+        assertEquals("UPDATE alarms SET lastautomationtime = vacuumd_trigger.vacuumd_0"
+            + "  FROM (SELECT _ts AS vacuumd_0, clearkey AS vacuumd_1, lasteventtime AS vacuumd_2"
+            + " FROM (SELECT *, now() AS _ts FROM alarms WHERE alarmType=2) AS vacuumd_rows) AS vacuumd_trigger"
+            + " WHERE alarmType=1 AND reductionKey = vacuumd_trigger.vacuumd_1 AND lastEventTime < vacuumd_trigger.vacuumd_2", sql);
+    }
+
+    @Test
+    public void testDeleteUsesUsing() {
+        String sql = SetBasedStatement.rewrite("SELECT alarmid FROM alarms", "DELETE FROM alarms WHERE alarmid = ${alarmId}");
+        assertEquals("DELETE FROM alarms  USING (SELECT alarmid AS vacuumd_0 FROM (SELECT alarmid FROM alarms) AS vacuumd_rows) AS vacuumd_trigger"
+            + " WHERE alarmid = vacuumd_trigger.vacuumd_0", sql);
+    }
+
+    @Test
+    public void testNestedWhereIsIgnored() {
+        String sql = SetBasedStatement.rewrite("SELECT nodeid FROM node",
+            "UPDATE ipinterface SET ismanaged = 'D' WHERE nodeid = ${nodeId} AND ipaddr IN (SELECT ipaddr FROM ifservices WHERE status = 'D')");
+        assertEquals("UPDATE ipinterface SET ismanaged = 'D'  FROM (SELECT nodeid AS vacuumd_0 FROM (SELECT nodeid FROM node) AS vacuumd_rows) AS vacuumd_trigger"
+            + " WHERE nodeid = vacuumd_trigger.vacuumd_0 AND ipaddr IN (SELECT ipaddr FROM ifservices WHERE status = 'D')", sql);
+    }
+
+    @Test
+    public void testUnsupportedStatements() {
+        // no tokens
+        assertNull(SetBasedStatement.rewrite("SELECT alarmid FROM alarms", "DELETE FROM alarms WHERE severity = 2"));
+        // not an UPDATE or DELETE
+        assertNull(SetBasedStatement.rewrite("SELECT alarmid FROM alarms", "INSERT INTO foo VALUES (${alarmId})"));
+        // already has a FROM clause
+        assertNull(SetBasedStatement.rewrite("SELECT alarmid FROM alarms", "UPDATE alarms SET severity = 2 FROM foo WHERE alarmid = ${alarmId}"));
+        // returns rows
+        assertNull(SetBasedStatement.rewrite("SELECT alarmid FROM alarms", "DELETE FROM alarms WHERE alarmid = ${alarmId} RETURNING alarmid"));
+        // comments could hide keywords
+        assertNull(SetBasedStatement.rewrite("SELECT alarmid FROM alarms -- all", "DELETE FROM alarms WHERE alarmid = ${alarmId}"));
+    }
+
+    @Test
+    public void testQuotedKeywordsAreIgnored() {
+        String sql = SetBasedStatement.rewrite("SELECT alarmid FROM alarms",
+            "UPDATE alarms SET logmsg = 'cleared where it was from' WHERE alarmid = ${alarmId}");
+        assertEquals("UPDATE alarms SET logmsg = 'cleared where it was from'  FROM (SELECT alarmid AS vacuumd_0 FROM (SELECT alarmid FROM alarms) AS vacuumd_rows) AS vacuumd_trigger"
+            + " WHERE alarmid = vacuumd_trigger.vacuumd_0", sql);
+    }
+}